@@ -0,0 +1,182 @@
+package com.griefcraft.benchmark;
+
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.lwc.LWCPlugin;
+import com.griefcraft.sql.Database;
+import com.griefcraft.sql.PhysDB;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Boots just enough of LWC to run the benchmarks without a server: a stub {@link Server}, an
+ * {@link LWC} instance with its configuration in a temporary folder and an in-memory SQLite database.
+ */
+public final class BenchmarkEnvironment {
+
+    /**
+     * The world the benchmark protections are in
+     */
+    public static final String WORLD = "world";
+
+    /**
+     * The owner of the benchmark protections
+     */
+    public static final String OWNER = "069a79f4-44e9-4726-a5be-fca90e38aaf5";
+
+    private static LWC lwc;
+
+    private BenchmarkEnvironment() {
+    }
+
+    /**
+     * Start LWC, once per JVM
+     *
+     * @return
+     */
+    public static synchronized LWC start() throws Exception {
+        if (lwc != null) {
+            return lwc;
+        }
+
+        File dataFolder = Files.createTempDirectory("lwc-benchmark").toFile();
+        Server server = stub(Server.class,
+                "getLogger", Logger.getLogger("Benchmark"),
+                "getName", "Benchmark",
+                "getVersion", "benchmark",
+                "getBukkitVersion", "benchmark",
+                "isPrimaryThread", true);
+        Bukkit.setServer(server);
+
+        PluginDescriptionFile description = new PluginDescriptionFile("LWC", "benchmark", LWCPlugin.class.getName());
+        LWCPlugin plugin = new LWCPlugin(new JavaPluginLoader(server), description, dataFolder,
+                new File(dataFolder, "LWC.jar")) {
+        };
+
+        lwc = new LWC(plugin);
+        lwc.getConfiguration().setProperty("database.path", ":memory:");
+        return lwc;
+    }
+
+    /**
+     * Open a new in-memory database with the LWC schema
+     *
+     * @return
+     */
+    public static PhysDB openDatabase() throws Exception {
+        start();
+
+        PhysDB database = new PhysDB(Database.Type.SQLite);
+
+        if (!database.connect()) {
+            throw new IllegalStateException("Could not open the in-memory SQLite database");
+        }
+
+        database.load();
+        return database;
+    }
+
+    /**
+     * Insert protections in a row of chests along the x axis. Every other protection has rights and flags.
+     *
+     * @param database
+     * @param count
+     */
+    public static void insertProtections(PhysDB database, int count) throws SQLException {
+        String sql = "INSERT INTO " + database.getPrefix() + "protections (owner, type, x, y, z, data, blockId, world, password, date, last_accessed) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+        database.setAutoCommit(false);
+
+        try (PreparedStatement statement = database.getConnection().prepareStatement(sql)) {
+            for (int i = 0; i < count; i++) {
+                String data = i % 2 == 0 ? "{\"rights\":[{\"name\":\"" + OWNER + "\",\"rights\":1,\"type\":1}],\"flags\":[{\"id\":3}]}" : null;
+
+                statement.setString(1, OWNER);
+                statement.setInt(2, 2);
+                statement.setInt(3, i);
+                statement.setInt(4, 64);
+                statement.setInt(5, 0);
+                statement.setString(6, data);
+                statement.setInt(7, 54);
+                statement.setString(8, WORLD);
+                statement.setString(9, "");
+                statement.setString(10, "2020-01-01 00:00:00");
+                statement.setLong(11, 1577836800L);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        } finally {
+            database.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Create a stub of a Bukkit interface. Methods return the value given for their name, or the
+     * default value of their return type.
+     *
+     * @param type
+     * @param answers method name / return value pairs
+     * @param <T>
+     * @return
+     */
+    public static <T> T stub(Class<T> type, Object... answers) {
+        Map<String, Object> values = new HashMap<>();
+
+        for (int i = 0; i + 1 < answers.length; i += 2) {
+            values.put((String) answers[i], answers[i + 1]);
+        }
+
+        return type.cast(Proxy.newProxyInstance(BenchmarkEnvironment.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+
+                    if (values.containsKey(name)) {
+                        return values.get(name);
+                    }
+
+                    if (name.equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    } else if (name.equals("equals")) {
+                        return proxy == args[0];
+                    } else if (name.equals("toString")) {
+                        return type.getSimpleName() + "Stub";
+                    }
+
+                    return defaultValue(method.getReturnType());
+                }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0F;
+        } else if (type == double.class) {
+            return 0D;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        }
+
+        return 0;
+    }
+
+}
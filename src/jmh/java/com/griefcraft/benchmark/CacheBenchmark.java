@@ -0,0 +1,159 @@
+package com.griefcraft.benchmark;
+
+import com.griefcraft.cache.LRUCache;
+import com.griefcraft.cache.ProtectionCache;
+import com.griefcraft.cache.WeakLRUCache;
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.model.Protection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and inserts on the protection cache and the LRU caches backing it. The churn benchmarks
+ * insert keys past the capacity so every put evicts an entry.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    @Param({"10000"})
+    public int capacity;
+
+    private ProtectionCache protectionCache;
+    private LRUCache<Integer, Object> lruCache;
+    private WeakLRUCache<Integer, Object> weakLruCache;
+
+    /**
+     * Protections that are cached
+     */
+    private Protection[] protections;
+
+    /**
+     * Cache keys of protections that are cached
+     */
+    private String[] hitKeys;
+
+    /**
+     * Cache keys that are not cached
+     */
+    private String[] missKeys;
+
+    /**
+     * Values held strongly so the weak cache does not lose them
+     */
+    private Object[] values;
+
+    private int index = 0;
+    private int nextKey = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        LWC lwc = BenchmarkEnvironment.start();
+        lwc.getConfiguration().setProperty("core.cacheSize", capacity);
+
+        protectionCache = new ProtectionCache(lwc);
+        lruCache = new LRUCache<>(capacity);
+        weakLruCache = new WeakLRUCache<>(capacity);
+
+        protections = new Protection[capacity];
+        hitKeys = new String[capacity];
+        missKeys = new String[capacity];
+        values = new Object[capacity * 2];
+
+        for (int i = 0; i < capacity; i++) {
+            Protection protection = new Protection();
+            protection.setId(i + 1);
+            protection.setWorld(BenchmarkEnvironment.WORLD);
+            protection.setX(i);
+            protection.setY(64);
+            protection.setZ(0);
+            protection.setOwner(BenchmarkEnvironment.OWNER);
+
+            protections[i] = protection;
+            protectionCache.addProtection(protection);
+            hitKeys[i] = protection.getCacheKey();
+            missKeys[i] = protectionCache.cacheKey(BenchmarkEnvironment.WORLD, i, 64, 1);
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new Object();
+        }
+
+        for (int i = 0; i < capacity; i++) {
+            lruCache.put(i, values[i]);
+            weakLruCache.put(i, values[i]);
+        }
+
+        nextKey = capacity;
+    }
+
+    private int next() {
+        int current = index;
+        index = (index + 1) % capacity;
+        return current;
+    }
+
+    @Benchmark
+    public Protection protectionCacheHit() {
+        return protectionCache.getProtection(hitKeys[next()]);
+    }
+
+    @Benchmark
+    public Protection protectionCacheById() {
+        return protectionCache.getProtectionById(next() + 1);
+    }
+
+    @Benchmark
+    public boolean protectionCacheMiss() {
+        String cacheKey = missKeys[next()];
+
+        if (protectionCache.isKnownNull(cacheKey)) {
+            return true;
+        }
+
+        return protectionCache.getProtection(cacheKey) != null;
+    }
+
+    @Benchmark
+    public void protectionCachePut() {
+        protectionCache.addProtection(protections[next()]);
+    }
+
+    @Benchmark
+    public Object lruCacheGet() {
+        return lruCache.get(nextKey - 1 - next());
+    }
+
+    @Benchmark
+    public Object lruCacheChurn() {
+        int key = nextKey++;
+        return lruCache.put(key, values[key % values.length]);
+    }
+
+    @Benchmark
+    public Object weakLruCacheGet() {
+        return weakLruCache.get(nextKey - 1 - next());
+    }
+
+    @Benchmark
+    public Object weakLruCacheChurn() {
+        int key = nextKey++;
+        return weakLruCache.put(key, values[key % values.length]);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.griefcraft.benchmark;
+
+import com.griefcraft.model.Protection;
+import com.griefcraft.sql.PhysDB;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding protections from an in-memory SQLite database, half of which have rights and flags.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    @Param({"1000"})
+    public int protections;
+
+    private PhysDB database;
+    private PreparedStatement selectAll;
+
+    @Setup
+    public void setup() throws Exception {
+        database = BenchmarkEnvironment.openDatabase();
+        BenchmarkEnvironment.insertProtections(database, protections);
+
+        selectAll = database.getConnection().prepareStatement("SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
+                + database.getPrefix() + "protections");
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.dispose();
+    }
+
+    /**
+     * Throughput is in full scans per second; multiply by {@link #protections} for protections per second
+     *
+     * @param blackhole
+     */
+    @Benchmark
+    public void resolveProtection(Blackhole blackhole) throws Exception {
+        try (ResultSet set = selectAll.executeQuery()) {
+            while (set.next()) {
+                Protection protection = database.resolveProtection(set);
+                blackhole.consume(protection);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,263 @@
+package com.griefcraft.benchmark;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.griefcraft.cache.BlockCache;
+import com.griefcraft.cache.ProtectionCache;
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.lwc.LWCPlugin;
+import com.griefcraft.model.Protection;
+import com.griefcraft.util.Statistics;
+import com.griefcraft.util.statistics.TickBudget;
+import com.griefcraft.util.statistics.Timer;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.Chest;
+import org.bukkit.block.Hopper;
+import org.bukkit.entity.TNTPrimed;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntFunction;
+
+/**
+ * Boots LWC on a mock Bukkit server against SQLite and replays generated event streams through the
+ * registered listeners, reporting throughput, latency percentiles and allocations per scenario along
+ * with the tick budget and allocations of every handler.
+ * <p/>
+ * Usage: ListenerLoadTest [events per scenario] [protections]
+ */
+public final class ListenerLoadTest {
+
+    /**
+     * The amount of events fired between two server ticks, i.e 10k events per second at 20 tps
+     */
+    private static final int EVENTS_PER_TICK = 500;
+
+    /**
+     * The amount of blocks in one explosion
+     */
+    private static final int EXPLOSION_SIZE = 64;
+
+    private final ServerMock server;
+    private final LWC lwc;
+    private final World world;
+    private final PlayerMock owner;
+    private final int protections;
+
+    /**
+     * The protected chests and a hopper below each of them
+     */
+    private final Block[] chests;
+    private final Inventory[] chestInventories;
+    private final Inventory[] hopperInventories;
+
+    private ListenerLoadTest(int protections) {
+        this.server = MockBukkit.mock();
+        this.lwc = MockBukkit.load(LWCPlugin.class).getLWC();
+        this.world = server.addSimpleWorld(BenchmarkEnvironment.WORLD);
+        this.owner = server.addPlayer();
+        this.protections = protections;
+        this.chests = new Block[protections];
+        this.chestInventories = new Inventory[protections];
+        this.hopperInventories = new Inventory[protections];
+    }
+
+    public static void main(String[] args) {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int protections = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        ListenerLoadTest test = new ListenerLoadTest(protections);
+
+        try {
+            test.populate();
+            test.run(events);
+        } finally {
+            MockBukkit.unmock();
+        }
+    }
+
+    /**
+     * Place and protect the chests
+     */
+    private void populate() {
+        int blockId = BlockCache.getInstance().getBlockId(Material.CHEST);
+        String ownerId = owner.getUniqueId().toString();
+
+        for (int i = 0; i < protections; i++) {
+            int x = i % 100;
+            int z = i / 100;
+
+            Block chest = world.getBlockAt(x * 2, 65, z * 2);
+            chest.setType(Material.CHEST);
+            world.getBlockAt(x * 2, 64, z * 2).setType(Material.HOPPER);
+
+            lwc.getPhysicalDatabase().registerProtection(blockId, Protection.Type.PRIVATE, world.getName(), ownerId,
+                    "", chest.getX(), chest.getY(), chest.getZ());
+
+            chests[i] = chest;
+            // the listener finds the protection through the inventory holder, so each inventory is held by a
+            // stub of the block state at its location
+            Location hopper = chest.getLocation().subtract(0, 1, 0);
+            Chest chestHolder = BenchmarkEnvironment.stub(Chest.class, "getLocation", chest.getLocation(),
+                    "getBlock", chest, "getWorld", world, "getType", Material.CHEST);
+            Hopper hopperHolder = BenchmarkEnvironment.stub(Hopper.class, "getLocation", hopper,
+                    "getBlock", hopper.getBlock(), "getWorld", world, "getType", Material.HOPPER);
+
+            chestInventories[i] = BenchmarkEnvironment.stub(Inventory.class, "getLocation", chest.getLocation(),
+                    "getSize", 27, "getHolder", chestHolder);
+            hopperInventories[i] = BenchmarkEnvironment.stub(Inventory.class, "getLocation", hopper,
+                    "getSize", 5, "getHolder", hopperHolder);
+        }
+
+        // let the database thread and any scheduled work catch up
+        server.getScheduler().performTicks(40);
+        lwc.getDatabaseThread().flush();
+
+        lwc.getTickBudget().setTrackAllocations(true);
+    }
+
+    private void run(int events) {
+        ItemStack item = new ItemStack(Material.COBBLESTONE);
+        TNTPrimed tnt = BenchmarkEnvironment.stub(TNTPrimed.class, "getWorld", world);
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-14s %10s %12s %10s %10s %10s %14s",
+                "scenario", "events", "events/s", "p50", "p99", "max", "bytes/event"));
+
+        requireLookup(new InventoryMoveItemEvent(chestInventories[0], item, hopperInventories[0], false));
+
+        scenario("hopper-moves", events, i -> {
+            int index = i % protections;
+            return new InventoryMoveItemEvent(chestInventories[index], item, hopperInventories[index], false);
+        });
+
+        scenario("explosions", events / EXPLOSION_SIZE, i -> {
+            List<Block> blocks = new ArrayList<>(EXPLOSION_SIZE);
+
+            for (int j = 0; j < EXPLOSION_SIZE; j++) {
+                Block chest = chests[(i * EXPLOSION_SIZE + j) % protections];
+                blocks.add(j % 2 == 0 ? chest : chest.getRelative(BlockFace.DOWN));
+            }
+
+            Location center = blocks.get(0).getLocation();
+            return new EntityExplodeEvent(tnt, center, blocks, 1F);
+        });
+
+        scenario("chest-opens", events, i -> new PlayerInteractEvent(owner, Action.RIGHT_CLICK_BLOCK, null,
+                chests[i % protections], BlockFace.NORTH));
+
+        printBudget();
+    }
+
+    /**
+     * Make sure an event of a scenario gets as far as a protection lookup, so the scenario does not only
+     * measure a listener returning early
+     *
+     * @param event
+     */
+    private void requireLookup(Event event) {
+        ProtectionCache cache = lwc.getProtectionCache();
+        long before = cache.getHits().get() + cache.getMisses().get();
+
+        server.getPluginManager().callEvent(event);
+
+        if (cache.getHits().get() + cache.getMisses().get() == before) {
+            throw new IllegalStateException(event.getEventName() + " does not reach a protection lookup");
+        }
+    }
+
+    /**
+     * Fire a stream of events, ticking the server every {@link #EVENTS_PER_TICK} events
+     *
+     * @param name
+     * @param events
+     * @param generator creates the n-th event
+     */
+    private void scenario(String name, int events, IntFunction<Event> generator) {
+        Timer timer = Statistics.getRegistry().timer("lwc_load_test_event_seconds", "Time spent handling one event",
+                "scenario", name);
+
+        // warm up with a tenth of the events
+        for (int i = 0; i < events / 10; i++) {
+            server.getPluginManager().callEvent(generator.apply(i));
+        }
+
+        timer.reset();
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < events; i++) {
+            Event event = generator.apply(i);
+
+            long eventStart = System.nanoTime();
+            server.getPluginManager().callEvent(event);
+            timer.stop(eventStart);
+
+            if (i % EVENTS_PER_TICK == EVENTS_PER_TICK - 1) {
+                server.getScheduler().performOneTick();
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        Timer.Snapshot snapshot = timer.snapshot();
+
+        System.out.println(String.format(Locale.ROOT, "%-14s %10d %12.0f %10s %10s %10s %14d",
+                name, events, events / (elapsed / 1e9),
+                Statistics.formatMillis(snapshot.getPercentile(0.5)),
+                Statistics.formatMillis(snapshot.getPercentile(0.99)),
+                Statistics.formatMillis(snapshot.getMax()),
+                events == 0 ? 0 : allocated / events));
+    }
+
+    /**
+     * Print the time each handler used per tick and the bytes it allocated per call
+     */
+    private void printBudget() {
+        TickBudget budget = lwc.getTickBudget();
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-50s %12s %14s %12s %12s", "handler", "calls", "ms/tick (1m)",
+                "peak", "bytes/call"));
+
+        for (TickBudget.Section section : budget.getSections()) {
+            if (section.getCalls() == 0) {
+                continue;
+            }
+
+            System.out.println(String.format(Locale.ROOT, "%-50s %12d %14s %12s %12s", section.getName(),
+                    section.getCalls(), Statistics.formatMillis(section.getAveragePerTick(60)),
+                    Statistics.formatMillis(section.getPeakTick()),
+                    budget.isTrackingAllocations() ? Long.toString(section.getAllocatedBytesPerCall()) : "-"));
+        }
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, or 0 if the JVM does not track it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return 0;
+    }
+
+}
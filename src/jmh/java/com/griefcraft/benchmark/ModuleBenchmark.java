@@ -0,0 +1,112 @@
+package com.griefcraft.benchmark;
+
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.lwc.SimpleMessageParser;
+import com.griefcraft.scripting.JavaModule;
+import com.griefcraft.scripting.event.LWCReloadEvent;
+import org.bukkit.Material;
+import org.bukkit.block.BlockState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PropertyResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-interaction overhead outside of the database: dispatching events to modules, resolving the
+ * protection configuration of a block and parsing locale messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModuleBenchmark {
+
+    /**
+     * The amount of modules listening to the dispatched event
+     */
+    @Param({"1", "10"})
+    public int modules;
+
+    private LWC lwc;
+    private SimpleMessageParser parser;
+    private LWCReloadEvent reloadEvent;
+
+    /**
+     * Block states of every block material
+     */
+    private BlockState[] states;
+
+    private int index = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        lwc = BenchmarkEnvironment.start();
+        reloadEvent = new LWCReloadEvent();
+
+        for (int i = 0; i < modules; i++) {
+            lwc.getModuleLoader().registerModule(lwc.getPlugin(), new JavaModule() {
+                @Override
+                public void onReload(LWCReloadEvent event) {
+                }
+            });
+        }
+
+        List<BlockState> blockStates = new ArrayList<>();
+
+        for (Material material : Material.values()) {
+            if (material.isBlock() && !material.isLegacy()) {
+                blockStates.add(BenchmarkEnvironment.stub(BlockState.class, "getType", material));
+            }
+        }
+
+        states = blockStates.toArray(new BlockState[0]);
+
+        try (Reader reader = new InputStreamReader(getClass().getResourceAsStream("/lang/lwc_en.properties"), StandardCharsets.UTF_8)) {
+            parser = new SimpleMessageParser(new PropertyResourceBundle(reader));
+        }
+    }
+
+    @Benchmark
+    public void dispatchEvent() {
+        lwc.getModuleLoader().dispatchEvent(reloadEvent);
+    }
+
+    @Benchmark
+    public String resolveProtectionConfiguration() {
+        BlockState state = states[index];
+        index = (index + 1) % states.length;
+        return lwc.resolveProtectionConfiguration(state, "autoRegister");
+    }
+
+    @Benchmark
+    public String parseMessage() {
+        return parser.parseMessage("protection.general.locked.private", "block", "Chest");
+    }
+
+    @Benchmark
+    public String parseMessageUncached() {
+        // more distinct binds than the bind cache holds, so most lookups miss it
+        int owner = index;
+        index = (index + 1) % (parser.bindMessageCacheSize * 10);
+        return parser.parseMessage("protection.general.notice.protected", "type", "Private", "block", "Chest",
+                "owner", owner);
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.griefcraft.io;
+
+import com.griefcraft.benchmark.BenchmarkEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading backups of protections. Lives in com.griefcraft.io because the backup
+ * read and write methods are protected.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackupBenchmark {
+
+    @Param({"10000"})
+    public int protections;
+
+    @Param({"true", "false"})
+    public boolean compression;
+
+    private EnumSet<BackupManager.Flag> flags;
+    private RestorableProtection[] restorables;
+    private File writeFile;
+    private File readFile;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkEnvironment.start();
+
+        flags = EnumSet.of(BackupManager.Flag.BACKUP_PROTECTIONS);
+
+        if (compression) {
+            flags.add(BackupManager.Flag.COMPRESSION);
+        }
+
+        restorables = new RestorableProtection[protections];
+
+        for (int i = 0; i < protections; i++) {
+            RestorableProtection restorable = new RestorableProtection();
+            restorable.setId(i + 1);
+            restorable.setProtectionType(2);
+            restorable.setBlockId(54);
+            restorable.setOwner(BenchmarkEnvironment.OWNER);
+            restorable.setWorld(BenchmarkEnvironment.WORLD);
+            restorable.setX(i);
+            restorable.setY(64);
+            restorable.setZ(0);
+            restorable.setCreated(1577836800L);
+            restorable.setUpdated(1577836800L);
+            restorables[i] = restorable;
+        }
+
+        writeFile = File.createTempFile("lwc-benchmark-write", ".lwc");
+        readFile = File.createTempFile("lwc-benchmark-read", ".lwc");
+        write(readFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        writeFile.delete();
+        readFile.delete();
+    }
+
+    /**
+     * Throughput is in full backups per second; multiply by {@link #protections} for protections per second
+     */
+    @Benchmark
+    public void write() throws IOException {
+        write(writeFile);
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) throws IOException {
+        Backup backup = new Backup(readFile, Backup.OperationMode.READ, flags);
+        backup.readHeader();
+
+        Restorable restorable;
+        while ((restorable = backup.readRestorable()) != null) {
+            blackhole.consume(restorable);
+        }
+
+        backup.close();
+    }
+
+    private void write(File file) throws IOException {
+        Backup backup = new Backup(file, Backup.OperationMode.WRITE, flags);
+        backup.writeHeader();
+
+        for (RestorableProtection restorable : restorables) {
+            backup.writeRestorable(restorable);
+        }
+
+        backup.close();
+    }
+
+}
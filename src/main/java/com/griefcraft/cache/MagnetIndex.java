@@ -0,0 +1,311 @@
+package com.griefcraft.cache;
+
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.model.Flag;
+import com.griefcraft.model.Protection;
+import com.griefcraft.sql.PhysDB;
+import org.bukkit.Bukkit;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes the protections with the MAGNET flag by world and chunk, so magnet sweeps only have to look at the
+ * chunks around magnets. The index is loaded in the background when the magnet module is enabled and is kept
+ * up to date as the flag is added or removed. Protections removed directly in the database stay in the index
+ * until a sweep finds they are gone.
+ */
+public class MagnetIndex {
+
+    /**
+     * The database the magnets are loaded from
+     */
+    private final PhysDB database;
+
+    /**
+     * The magnets of each world by chunk
+     */
+    private final Map<String, Map<Long, List<Magnet>>> worlds = new HashMap<>();
+
+    /**
+     * The magnets by protection id
+     */
+    private final Map<Integer, Magnet> magnets = new HashMap<>();
+
+    /**
+     * The amount of loads that are running
+     */
+    private int loading = 0;
+
+    /**
+     * The magnets added (or null if removed) by protection id while a load is running, applied again over the
+     * loaded magnets
+     */
+    private final Map<Integer, Magnet> changesDuringLoad = new HashMap<>();
+
+    /**
+     * If the index is in use; changes are ignored otherwise
+     */
+    private volatile boolean enabled = false;
+
+    public MagnetIndex(PhysDB database) {
+        this.database = database;
+    }
+
+    /**
+     * Load the magnets from the database off the main thread, replacing the indexed ones
+     */
+    public void load() {
+        enabled = true;
+
+        synchronized (this) {
+            loading++;
+        }
+
+        LWC lwc = LWC.getInstance();
+
+        Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), () -> {
+            List<Magnet> loaded = new ArrayList<>();
+            boolean[] failed = {false};
+
+            // the statements are shared with the database thread, which also saves pending flag changes first
+            lwc.getDatabaseThread().flushAndRun(() -> {
+                // flags are stored as JSON in the data column, so this only narrows the protections down
+                try {
+                    PreparedStatement statement = database.prepare("SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
+                            + database.getPrefix() + "protections WHERE data LIKE ?");
+                    statement.setString(1, "%\"id\":" + Flag.Type.MAGNET.ordinal() + "%");
+
+                    try (ResultSet set = statement.executeQuery()) {
+                        while (set.next()) {
+                            Protection protection = database.resolveProtection(set);
+
+                            if (protection != null && protection.hasFlag(Flag.Type.MAGNET)) {
+                                loaded.add(new Magnet(protection));
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    database.log("Could not load the magnets: " + e.getMessage());
+                    failed[0] = true;
+                }
+            });
+
+            synchronized (this) {
+                if (!failed[0]) {
+                    worlds.clear();
+                    magnets.clear();
+
+                    for (Magnet magnet : loaded) {
+                        put(magnet);
+                    }
+
+                    // a magnet added or removed during the load may have been read before the change
+                    for (Map.Entry<Integer, Magnet> change : changesDuringLoad.entrySet()) {
+                        delete(change.getKey());
+
+                        if (change.getValue() != null) {
+                            put(change.getValue());
+                        }
+                    }
+                }
+
+                if (--loading == 0) {
+                    changesDuringLoad.clear();
+                }
+            }
+
+            if (!failed[0]) {
+                lwc.log("Indexed " + loaded.size() + " magnets");
+            }
+        });
+    }
+
+    /**
+     * Reload the magnets if the index is in use. Used after protections are changed directly in the database.
+     */
+    public void reload() {
+        if (enabled) {
+            load();
+        }
+    }
+
+    /**
+     * Called when the MAGNET flag was added to a protection
+     *
+     * @param protection
+     */
+    public synchronized void add(Protection protection) {
+        if (enabled) {
+            Magnet magnet = new Magnet(protection);
+
+            delete(magnet.id);
+            put(magnet);
+
+            if (loading > 0) {
+                changesDuringLoad.put(magnet.id, magnet);
+            }
+        }
+    }
+
+    /**
+     * Called when the MAGNET flag was removed from a protection or the protection was removed
+     *
+     * @param protectionId
+     */
+    public synchronized void remove(int protectionId) {
+        delete(protectionId);
+
+        if (loading > 0) {
+            changesDuringLoad.put(protectionId, null);
+        }
+    }
+
+    /**
+     * Drop a magnet from the index
+     *
+     * @param protectionId
+     */
+    private void delete(int protectionId) {
+        Magnet magnet = magnets.remove(protectionId);
+
+        if (magnet == null) {
+            return;
+        }
+
+        Map<Long, List<Magnet>> chunks = worlds.get(magnet.world);
+        long key = chunkKey(magnet.x >> 4, magnet.z >> 4);
+        List<Magnet> chunk = chunks.get(key);
+        chunk.remove(magnet);
+
+        if (chunk.isEmpty()) {
+            chunks.remove(key);
+
+            if (chunks.isEmpty()) {
+                worlds.remove(magnet.world);
+            }
+        }
+    }
+
+    /**
+     * Forget all of the magnets
+     */
+    public synchronized void clear() {
+        worlds.clear();
+        magnets.clear();
+        changesDuringLoad.clear();
+    }
+
+    /**
+     * Get the chunks magnets can pull items from
+     *
+     * @param radius the radius around a magnet items are pulled from
+     * @return the magnets that reach each chunk, by world and chunk
+     */
+    public synchronized Map<String, Map<Long, List<Magnet>>> getReach(int radius) {
+        Map<String, Map<Long, List<Magnet>>> reach = new HashMap<>();
+
+        for (Map.Entry<String, Map<Long, List<Magnet>>> world : worlds.entrySet()) {
+            Map<Long, List<Magnet>> chunks = new HashMap<>();
+
+            for (List<Magnet> chunk : world.getValue().values()) {
+                for (Magnet magnet : chunk) {
+                    for (int chunkX = (magnet.x - radius) >> 4; chunkX <= (magnet.x + radius) >> 4; chunkX++) {
+                        for (int chunkZ = (magnet.z - radius) >> 4; chunkZ <= (magnet.z + radius) >> 4; chunkZ++) {
+                            chunks.computeIfAbsent(chunkKey(chunkX, chunkZ), k -> new ArrayList<>()).add(magnet);
+                        }
+                    }
+                }
+            }
+
+            reach.put(world.getKey(), chunks);
+        }
+
+        return reach;
+    }
+
+    /**
+     * @return the amount of indexed magnets
+     */
+    public synchronized int size() {
+        return magnets.size();
+    }
+
+    private void put(Magnet magnet) {
+        magnets.put(magnet.id, magnet);
+        worlds.computeIfAbsent(magnet.world, k -> new HashMap<>())
+                .computeIfAbsent(chunkKey(magnet.x >> 4, magnet.z >> 4), k -> new ArrayList<>()).add(magnet);
+    }
+
+    /**
+     * Pack chunk coordinates into one key
+     *
+     * @param chunkX
+     * @param chunkZ
+     * @return
+     */
+    public static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param key
+     * @return the x coordinate of a chunk key
+     */
+    public static int chunkX(long key) {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * @param key
+     * @return the z coordinate of a chunk key
+     */
+    public static int chunkZ(long key) {
+        return (int) key;
+    }
+
+    /**
+     * The location of a magnet protection
+     */
+    public static class Magnet {
+        private final int id;
+        private final String world;
+        private final int x;
+        private final int y;
+        private final int z;
+
+        private Magnet(Protection protection) {
+            this.id = protection.getId();
+            this.world = protection.getWorld();
+            this.x = protection.getX();
+            this.y = protection.getY();
+            this.z = protection.getZ();
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getWorld() {
+            return world;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getZ() {
+            return z;
+        }
+    }
+
+}
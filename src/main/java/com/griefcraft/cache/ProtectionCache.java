@@ -30,12 +30,29 @@ package com.griefcraft.cache;
 
 import com.griefcraft.lwc.LWC;
 import com.griefcraft.model.Protection;
+import com.griefcraft.util.Statistics;
+import com.griefcraft.util.statistics.Counter;
+import com.griefcraft.util.statistics.MetricRegistry;
 import org.bukkit.Location;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 public class ProtectionCache {
 
+    /**
+     * The name of the counter family cache operations are counted in
+     */
+    public final static String OPERATIONS_COUNTER = "lwc_cache_operations";
+
+    /**
+     * The name of the counter family cache hits and misses are counted in
+     */
+    public final static String LOOKUPS_COUNTER = "lwc_cache_lookups";
+
     /**
      * The amount the cache is increased by each time a high-intensity area
      * requests it if needed
@@ -90,15 +107,42 @@ public class ProtectionCache {
     private int adaptiveCapacity = 0;
 
     /**
-     * The method counter
+     * Operation counters, looked up once so recording is a single LongAdder increment
+     */
+    private final Counter addProtectionCounter;
+    private final Counter removeProtectionCounter;
+    private final Counter addKnownNullCounter;
+    private final Counter isKnownNullCounter;
+    private final Counter getProtectionCounter;
+    private final Counter isKnownBlockCounter;
+    private final Counter getProtectionByIdCounter;
+
+    /**
+     * Lookups that were answered by the cache (including known nulls)
+     */
+    private final Counter hits;
+
+    /**
+     * Lookups that were not answered by the cache
      */
-    private final MethodCounter counter = new MethodCounter();
+    private final Counter misses;
 
     /**
      * Used for byKnownNulls
      */
     private final static Object FAKE_VALUE = new Object();
 
+    /**
+     * The offsets of the blocks next to a block, whose cached lookups may include a protection of that block
+     */
+    private final static int[][] NEIGHBOURS = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+
+    /**
+     * The ids of protections removed while the cache is warmed up in the background, so a batch loaded
+     * before they were removed does not add them back. NULL when no warmup is running
+     */
+    private Set<Integer> removedDuringWarmup = null;
+
     public ProtectionCache(LWC lwc) {
         this.lwc = lwc;
         this.capacity = lwc.getConfiguration().getInt("core.cacheSize", 10000);
@@ -109,6 +153,21 @@ public class ProtectionCache {
         this.byKnownBlock = new WeakLRUCache<>(capacity);
         this.byKnownNulls = new LRUCache<>(Math.min(10000,
                 capacity)); // enforce a min size so we have a known buffer
+
+        MetricRegistry registry = Statistics.getRegistry();
+        this.addProtectionCounter = operationCounter(registry, "addProtection");
+        this.removeProtectionCounter = operationCounter(registry, "removeProtection");
+        this.addKnownNullCounter = operationCounter(registry, "addKnownNull");
+        this.isKnownNullCounter = operationCounter(registry, "isKnownNull");
+        this.getProtectionCounter = operationCounter(registry, "getProtection");
+        this.isKnownBlockCounter = operationCounter(registry, "isKnownBlock");
+        this.getProtectionByIdCounter = operationCounter(registry, "getProtectionById");
+        this.hits = registry.counter(LOOKUPS_COUNTER, "Protection cache lookups", "result", "hit");
+        this.misses = registry.counter(LOOKUPS_COUNTER, "Protection cache lookups", "result", "miss");
+    }
+
+    private static Counter operationCounter(MetricRegistry registry, String operation) {
+        return registry.counter(OPERATIONS_COUNTER, "Protection cache method calls", "operation", operation);
     }
 
     /**
@@ -133,12 +192,21 @@ public class ProtectionCache {
     }
 
     /**
-     * Get the method counter for this class
+     * Get the counter of lookups that were answered by the cache
      *
      * @return
      */
-    public MethodCounter getMethodCounter() {
-        return counter;
+    public Counter getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the counter of lookups that were not answered by the cache
+     *
+     * @return
+     */
+    public Counter getMisses() {
+        return misses;
     }
 
     /**
@@ -210,7 +278,7 @@ public class ProtectionCache {
             return;
         }
 
-        counter.increment("addProtection");
+        addProtectionCounter.increment();
 
         // Add the hard reference
         references.put(protection, null);
@@ -239,11 +307,15 @@ public class ProtectionCache {
      * @param protection
      */
     public void removeProtection(Protection protection) {
-        counter.increment("removeProtection");
+        removeProtectionCounter.increment();
 
         references.remove(protection);
         byId.remove(protection.getId());
 
+        if (removedDuringWarmup != null) {
+            removedDuringWarmup.add(protection.getId());
+        }
+
         if (protection.getProtectionFinder() != null) {
             for (BlockState state : protection.getProtectionFinder()
                     .getBlocks()) {
@@ -252,6 +324,108 @@ public class ProtectionCache {
         }
     }
 
+    /**
+     * Remove many protections from the cache at once, e.g every protection in a region. Blocks that were
+     * known to belong to any of them are dropped in a single pass over the known blocks.
+     *
+     * @param protections
+     */
+    public void removeProtections(Collection<Protection> protections) {
+        Set<Protection> removed = new HashSet<>(protections);
+
+        for (Protection protection : removed) {
+            removeProtectionCounter.increment();
+
+            references.remove(protection);
+            byId.remove(protection.getId());
+            byCacheKey.remove(protection.getCacheKey());
+
+            if (removedDuringWarmup != null) {
+                removedDuringWarmup.add(protection.getId());
+            }
+        }
+
+        byKnownBlock.removeValues(removed);
+    }
+
+    /**
+     * Forget a protection whose row was replaced or deleted directly in the database, e.g by restoring a
+     * backup, so it is loaded again when it is next needed. A pending save of the cached instance is dropped
+     * so it cannot overwrite the new row. Must be called on the main thread.
+     *
+     * @param id
+     * @param world the world of the new row, or null if the protection was deleted
+     * @param x
+     * @param y
+     * @param z
+     */
+    public void evict(int id, String world, int x, int y, int z) {
+        Protection cached = byId.get(id);
+
+        if (cached != null) {
+            lwc.getDatabaseThread().removeProtection(cached);
+            removeProtection(cached);
+            remove(cached.getCacheKey());
+
+            for (int[] offset : NEIGHBOURS) {
+                remove(cacheKey(cached.getWorld(), cached.getX() + offset[0], cached.getY() + offset[1],
+                        cached.getZ() + offset[2]));
+            }
+        } else if (removedDuringWarmup != null) {
+            removedDuringWarmup.add(id);
+        }
+
+        // the block and the other half of a double chest or door may be cached as not protected
+        if (world != null) {
+            remove(cacheKey(world, x, y, z));
+
+            for (int[] offset : NEIGHBOURS) {
+                remove(cacheKey(world, x + offset[0], y + offset[1], z + offset[2]));
+            }
+        }
+    }
+
+    /**
+     * Start warming up the cache in the background. Until {@link #endWarmup()} is called, removed protections
+     * are remembered so {@link #addWarmupProtections(Collection)} skips them.
+     */
+    public void beginWarmup() {
+        removedDuringWarmup = new HashSet<>();
+    }
+
+    /**
+     * Stop remembering removed protections once the warmup is done
+     */
+    public void endWarmup() {
+        removedDuringWarmup = null;
+    }
+
+    /**
+     * @return true if the cache is being warmed up in the background
+     */
+    public boolean isWarmingUp() {
+        return removedDuringWarmup != null;
+    }
+
+    /**
+     * Cache protections loaded by a warmup, skipping any that were removed or loaded again since
+     *
+     * @param protections
+     */
+    public void addWarmupProtections(Collection<Protection> protections) {
+        for (Protection protection : protections) {
+            if (removedDuringWarmup != null && removedDuringWarmup.contains(protection.getId())) {
+                continue;
+            }
+
+            if (byId.get(protection.getId()) != null || byCacheKey.get(protection.getCacheKey()) != null) {
+                continue;
+            }
+
+            addProtection(protection);
+        }
+    }
+
     public Protection getProtection(BlockState block) {
         return getProtection(cacheKey(block.getWorld().getName(), block.getX(),
                 block.getY(), block.getZ()));
@@ -274,7 +448,7 @@ public class ProtectionCache {
      * @param cacheKey
      */
     public void addKnownNull(String cacheKey) {
-        counter.increment("addKnownNull");
+        addKnownNullCounter.increment();
         byKnownNulls.put(cacheKey, FAKE_VALUE);
     }
 
@@ -285,8 +459,14 @@ public class ProtectionCache {
      * @return
      */
     public boolean isKnownNull(String cacheKey) {
-        counter.increment("isKnownNull");
-        return byKnownNulls.containsKey(cacheKey);
+        isKnownNullCounter.increment();
+
+        if (byKnownNulls.containsKey(cacheKey)) {
+            hits.increment();
+            return true;
+        }
+
+        return false;
     }
 
     /**
@@ -296,17 +476,18 @@ public class ProtectionCache {
      * @return
      */
     public Protection getProtection(String cacheKey) {
-        counter.increment("getProtection");
+        getProtectionCounter.increment();
 
         Protection protection;
 
-        // Check the direct cache first
-        if ((protection = byCacheKey.get(cacheKey)) != null) {
+        // Check the direct cache first, then use the 'others' cache
+        if ((protection = byCacheKey.get(cacheKey)) != null || (protection = byKnownBlock.get(cacheKey)) != null) {
+            hits.increment();
             return protection;
         }
 
-        // now use the 'others' cache
-        return byKnownBlock.get(cacheKey);
+        misses.increment();
+        return null;
     }
 
     /**
@@ -327,7 +508,7 @@ public class ProtectionCache {
      * @return
      */
     public boolean isKnownBlock(Block block) {
-        counter.increment("isKnownBlock");
+        isKnownBlockCounter.increment();
         return byKnownBlock.containsKey(cacheKey(block.getWorld().getName(),
                 block.getX(), block.getY(), block.getZ()));
     }
@@ -339,8 +520,17 @@ public class ProtectionCache {
      * @return
      */
     public Protection getProtectionById(int id) {
-        counter.increment("getProtectionById");
-        return byId.get(id);
+        getProtectionByIdCounter.increment();
+
+        Protection protection = byId.get(id);
+
+        if (protection != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+
+        return protection;
     }
 
     /**
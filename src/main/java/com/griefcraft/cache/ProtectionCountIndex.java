@@ -0,0 +1,244 @@
+package com.griefcraft.cache;
+
+import com.griefcraft.sql.PhysDB;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Counts the protections of each owner per block id so protection limits can be checked without
+ * querying the database. An owner's counts are loaded with one query the first time they are needed
+ * and are kept up to date as protections are registered, removed or change owner.
+ * <p/>
+ * Owners are keyed by the value stored in the owner column, which is normally the owner's UUID.
+ */
+public class ProtectionCountIndex {
+
+    /**
+     * The database the counts are loaded from
+     */
+    private final PhysDB database;
+
+    /**
+     * The counts of each owner that has been loaded
+     */
+    private final ConcurrentMap<String, OwnerCounts> owners = new ConcurrentHashMap<>();
+
+    public ProtectionCountIndex(PhysDB database) {
+        this.database = database;
+    }
+
+    /**
+     * Get the amount of protections an owner has
+     *
+     * @param owner
+     * @return
+     */
+    public int getCount(String owner) {
+        if (owner == null) {
+            return 0;
+        }
+
+        return counts(owner).getTotal();
+    }
+
+    /**
+     * Get the amount of protections an owner has of a block id
+     *
+     * @param owner
+     * @param blockId
+     * @return
+     */
+    public int getCount(String owner, int blockId) {
+        if (owner == null) {
+            return 0;
+        }
+
+        return counts(owner).get(blockId);
+    }
+
+    /**
+     * Get the amount of protections an owner has of any of the block ids
+     *
+     * @param owner
+     * @param blockIds
+     * @return
+     */
+    public int getCount(String owner, int[] blockIds) {
+        if (owner == null) {
+            return 0;
+        }
+
+        OwnerCounts counts = counts(owner);
+        int count = 0;
+
+        for (int blockId : blockIds) {
+            count += counts.get(blockId);
+        }
+
+        return count;
+    }
+
+    /**
+     * Called when a protection was registered
+     *
+     * @param owner
+     * @param blockId
+     */
+    public void increment(String owner, int blockId) {
+        add(owner, blockId, 1);
+    }
+
+    /**
+     * Called when a protection was removed
+     *
+     * @param owner
+     * @param blockId
+     */
+    public void decrement(String owner, int blockId) {
+        add(owner, blockId, -1);
+    }
+
+    /**
+     * Called when the owner or block id of a protection changed
+     *
+     * @param oldOwner
+     * @param oldBlockId
+     * @param newOwner
+     * @param newBlockId
+     */
+    public void move(String oldOwner, int oldBlockId, String newOwner, int newBlockId) {
+        add(oldOwner, oldBlockId, -1);
+        add(newOwner, newBlockId, 1);
+    }
+
+    /**
+     * Forget the counts of an owner so they are loaded again when next needed
+     *
+     * @param owner
+     */
+    public void invalidate(String owner) {
+        if (owner != null) {
+            owners.remove(owner);
+        }
+    }
+
+    /**
+     * Forget all of the counts. Used after protections are changed directly in the database and to
+     * periodically reconcile the index with the database.
+     */
+    public void clear() {
+        owners.clear();
+    }
+
+    /**
+     * @return the amount of owners whose counts are loaded
+     */
+    public int size() {
+        return owners.size();
+    }
+
+    /**
+     * Apply a change to an owner's counts. Owners that are not loaded are skipped, their counts will be
+     * correct when they are loaded. If a count would drop below zero the counts are out of step with the
+     * database and the owner is loaded again when next needed.
+     *
+     * @param owner
+     * @param blockId
+     * @param delta
+     */
+    private void add(String owner, int blockId, int delta) {
+        if (owner == null) {
+            return;
+        }
+
+        OwnerCounts counts = owners.get(owner);
+
+        if (counts != null && !counts.add(blockId, delta)) {
+            owners.remove(owner, counts);
+        }
+    }
+
+    /**
+     * Get the counts of an owner, loading them if needed
+     *
+     * @param owner
+     * @return
+     */
+    private OwnerCounts counts(String owner) {
+        OwnerCounts counts = owners.get(owner);
+
+        if (counts != null) {
+            return counts;
+        }
+
+        counts = load(owner);
+        OwnerCounts existing = owners.putIfAbsent(owner, counts);
+        return existing != null ? existing : counts;
+    }
+
+    /**
+     * Load the counts of an owner from the database
+     *
+     * @param owner
+     * @return
+     */
+    private OwnerCounts load(String owner) {
+        OwnerCounts counts = new OwnerCounts();
+
+        for (Map.Entry<Integer, Integer> entry : database.loadProtectionCounts(owner).entrySet()) {
+            counts.add(entry.getKey(), entry.getValue());
+        }
+
+        return counts;
+    }
+
+    /**
+     * The protection counts of one owner
+     */
+    private static class OwnerCounts {
+
+        /**
+         * The amount of protections by block id
+         */
+        private final Map<Integer, Integer> byBlockId = new HashMap<>();
+
+        /**
+         * The total amount of protections
+         */
+        private int total = 0;
+
+        public synchronized int getTotal() {
+            return total;
+        }
+
+        public synchronized int get(int blockId) {
+            Integer count = byBlockId.get(blockId);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * @return false if the block id or total count would drop below zero; nothing is changed then
+         */
+        public synchronized boolean add(int blockId, int delta) {
+            int count = get(blockId) + delta;
+
+            if (count < 0 || total + delta < 0) {
+                return false;
+            }
+
+            if (count == 0) {
+                byBlockId.remove(blockId);
+            } else {
+                byBlockId.put(blockId, count);
+            }
+
+            total += delta;
+            return true;
+        }
+
+    }
+
+}
@@ -176,6 +176,19 @@ public class WeakLRUCache<K, V> implements Map<K, V> {
         return old != null ? old.get() : null;
     }
 
+    /**
+     * Remove every entry whose value is in the given collection, or whose value was collected
+     *
+     * @param values
+     */
+    public void removeValues(Collection<?> values) {
+        processQueue();
+        weakCache.values().removeIf(weakValue -> {
+            V value = weakValue.get();
+            return value == null || values.contains(value);
+        });
+    }
+
     public void putAll(Map<? extends K, ? extends V> m) {
         throw new UnsupportedOperationException("putAll() is not supported by WeakLRUCache");
     }
@@ -103,4 +103,13 @@ public interface ICurrency {
      */
     public double removeMoney(Player player, double money);
 
+    /**
+     * Remove money from a player's bank account if they can afford it, without looking up the balance after
+     *
+     * @param player
+     * @param money
+     * @return true if the money was removed
+     */
+    public boolean tryRemoveMoney(Player player, double money);
+
 }
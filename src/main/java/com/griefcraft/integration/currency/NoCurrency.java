@@ -69,4 +69,8 @@ public class NoCurrency implements ICurrency {
         return 0;
     }
 
+    public boolean tryRemoveMoney(Player player, double money) {
+        return false;
+    }
+
 }
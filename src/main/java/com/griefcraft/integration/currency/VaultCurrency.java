@@ -101,4 +101,8 @@ public class VaultCurrency implements ICurrency {
         economy.withdrawPlayer(player.getName(), money);
         return getBalance(player);
     }
+
+    public boolean tryRemoveMoney(Player player, double money) {
+        return economy.has(player.getName(), money) && economy.withdrawPlayer(player.getName(), money).transactionSuccess();
+    }
 }
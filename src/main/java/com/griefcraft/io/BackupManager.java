@@ -29,26 +29,27 @@
 package com.griefcraft.io;
 
 import com.griefcraft.lwc.LWC;
+import com.griefcraft.model.History;
 import com.griefcraft.model.Protection;
-import com.griefcraft.sql.Database;
 import com.griefcraft.sql.PhysDB;
 import org.bukkit.Bukkit;
-import org.bukkit.Server;
-import org.bukkit.block.Block;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitScheduler;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.sql.ResultSet;
-import java.sql.Statement;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
 
 public class BackupManager {
 
@@ -80,9 +81,32 @@ public class BackupManager {
     private static String FILE_EXTENSION_UNCOMPRESSED = ".lwc";
 
     /**
-     * The amount of protection block gets to batch at once
+     * The file extension of v2 backups
      */
-    private static int BATCH_SIZE = 250;
+    private static String FILE_EXTENSION_FRAMED = ".lwc2";
+
+    /**
+     * The amount of protections read from the database at once
+     */
+    private static int PAGE_SIZE = 1000;
+
+    /**
+     * The amount of changed protections loaded at once for an incremental backup
+     */
+    private static int ID_BATCH_SIZE = 500;
+
+    /**
+     * The properties of a v2 backup: the last change log entry it holds, and for an incremental backup the
+     * backup it builds on and that backup's checksum
+     */
+    private static final String PROPERTY_SEQUENCE = "sequence";
+    private static final String PROPERTY_PARENT = "parent";
+    private static final String PROPERTY_PARENT_CHECKSUM = "parentChecksum";
+
+    /**
+     * The amount of frames compressed or decompressed at the same time
+     */
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
 
     /**
      * The folder backups are stored in
@@ -105,9 +129,14 @@ public class BackupManager {
         BACKUP_BLOCKS,
 
         /**
-         * Compress the backup using GZip
+         * Compress the backup using GZip. v2 backups are always compressed.
          */
-        COMPRESSION
+        COMPRESSION,
+
+        /**
+         * Backup the history of each protection along with it
+         */
+        BACKUP_HISTORY
 
     }
 
@@ -125,6 +154,30 @@ public class BackupManager {
      * @return OK if successful, otherwise FAILURE
      */
     public Result restoreBackup(String name) {
+        return restoreBackup(name, null, null);
+    }
+
+    /**
+     * Begin restoring a backup, optionally only a world or an area of it. This should be ran in a separate thread.
+     * Only v2 backups can be restored partially; they are indexed by region so the rest of the file is skipped.
+     *
+     * @param name
+     * @param world  the world to restore, or null for every world
+     * @param bounds {minX, minZ, maxX, maxZ} in blocks, or null for everything
+     * @return OK if successful, otherwise FAILURE
+     */
+    public Result restoreBackup(String name, String world, int[] bounds) {
+        File framed = new File(BACKUP_FOLDER, name + FILE_EXTENSION_FRAMED);
+
+        if (framed.exists()) {
+            return restoreFramedBackup(framed, world, bounds);
+        }
+
+        if (world != null || bounds != null) {
+            System.out.println("[BackupManager] Only v2 backups can be restored partially");
+            return Result.FAILURE;
+        }
+
         try {
             Backup backup = loadBackup(name);
 
@@ -139,6 +192,212 @@ public class BackupManager {
         }
     }
 
+    /**
+     * Restore a v2 backup and, if it is incremental, the backups it builds on. Frames are decompressed in
+     * parallel and restored in the order they were written. The newest backup is restored first; a protection
+     * it holds or removes is skipped in the backups before it.
+     *
+     * @param file
+     * @param world
+     * @param bounds
+     * @return OK if successful, otherwise FAILURE
+     */
+    private Result restoreFramedBackup(File file, String world, int[] bounds) {
+        List<File> chain;
+
+        try {
+            chain = resolveChain(file);
+        } catch (IOException e) {
+            System.out.println("[BackupManager] " + e.getMessage());
+            return Result.FAILURE;
+        }
+
+        // the state of the protections in the increments: true once restored, false if removed since
+        Map<Integer, Boolean> protections = new HashMap<>();
+        Set<String> blocks = new HashSet<>();
+        int[] counts = new int[3];
+        BlockRestoreQueue queue = new BlockRestoreQueue(LWC.getInstance());
+
+        for (int index = 0; index < chain.size(); index++) {
+            boolean base = index == chain.size() - 1;
+
+            // a block is only restored together with the protection that follows it
+            RestorableBlock[] pendingBlock = new RestorableBlock[1];
+
+            try (FramedBackupReader reader = new FramedBackupReader(chain.get(index))) {
+                reader.read(world, bounds, THREADS, restorable -> {
+                    if (restorable instanceof RemovedProtection) {
+                        protections.putIfAbsent(((RemovedProtection) restorable).getId(), false);
+                        return;
+                    }
+
+                    if (restorable instanceof RestorableBlock) {
+                        restoreBlock(queue, pendingBlock, blocks, base, counts);
+                        pendingBlock[0] = (RestorableBlock) restorable;
+                        return;
+                    }
+
+                    RestorableProtection rprotection = (RestorableProtection) restorable;
+                    Boolean state = protections.get(rprotection.getId());
+
+                    if (state == null) {
+                        restoreBlock(queue, pendingBlock, blocks, base, counts);
+                        rprotection.restore();
+                        counts[0]++;
+
+                        if (counts[0] % 2000 == 0) {
+                            System.out.println("[Backup] Restored restorables: " + (counts[0] + counts[1]));
+                        }
+
+                        if (!base) {
+                            protections.put(rprotection.getId(), true);
+                        }
+                    } else {
+                        // a newer backup has it already; if it was removed since, it is removed now too
+                        pendingBlock[0] = null;
+
+                        if (!state) {
+                            new RemovedProtection(rprotection.getId()).restore();
+                            protections.put(rprotection.getId(), true);
+                            counts[2]++;
+                        }
+                    }
+                });
+
+                restoreBlock(queue, pendingBlock, blocks, base, counts);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                queue.cancel();
+                return Result.FAILURE;
+            }
+        }
+
+        try {
+            queue.finish();
+        } catch (Exception e) {
+            e.printStackTrace();
+            queue.cancel();
+            return Result.FAILURE;
+        }
+
+        System.out.println(String.format("[BackupManager] Restored %d backups. %d protections, %d blocks, %d removed.",
+                chain.size(), counts[0], counts[1], counts[2]));
+        return Result.OK;
+    }
+
+    /**
+     * Queue the block waiting for its protection to be restored unless a newer backup restored it already
+     */
+    private void restoreBlock(BlockRestoreQueue queue, RestorableBlock[] pendingBlock, Set<String> blocks, boolean base,
+                              int[] counts) {
+        RestorableBlock rblock = pendingBlock[0];
+        pendingBlock[0] = null;
+
+        if (rblock == null) {
+            return;
+        }
+
+        String key = rblock.getWorld() + ":" + rblock.getX() + ":" + rblock.getY() + ":" + rblock.getZ();
+
+        if (!blocks.contains(key)) {
+            try {
+                queue.add(rblock);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            counts[1]++;
+
+            if (!base) {
+                blocks.add(key);
+            }
+        }
+    }
+
+    /**
+     * Get a v2 backup and the backups it builds on, verifying that none of them changed since the backup
+     * after it was made
+     *
+     * @param file
+     * @return the backups, newest first
+     */
+    private List<File> resolveChain(File file) throws IOException {
+        List<File> chain = new ArrayList<>();
+        File current = file;
+
+        while (current != null) {
+            chain.add(current);
+
+            String parent;
+            String parentChecksum;
+
+            try (FramedBackupReader reader = new FramedBackupReader(current)) {
+                parent = reader.getProperty(PROPERTY_PARENT);
+                parentChecksum = reader.getProperty(PROPERTY_PARENT_CHECKSUM);
+            }
+
+            if (parent == null) {
+                break;
+            }
+
+            File parentFile = new File(backupFolder, parent + FILE_EXTENSION_FRAMED);
+
+            if (!parentFile.exists()) {
+                throw new IOException(current.getName() + " builds on " + parentFile.getName() + ", which is missing");
+            }
+
+            if (!checksum(parentFile).equals(parentChecksum)) {
+                throw new IOException(parentFile.getName() + " changed after " + current.getName() + " was made on it");
+            }
+
+            if (chain.contains(parentFile)) {
+                throw new IOException(current.getName() + " builds on itself");
+            }
+
+            current = parentFile;
+        }
+
+        return chain;
+    }
+
+    /**
+     * Get the CRC32 of a file
+     *
+     * @param file
+     * @return the checksum as hex
+     */
+    private static String checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+
+        try (FileInputStream in = new FileInputStream(file)) {
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Get a backup name no other backup uses, so a backup another one builds on is never overwritten
+     *
+     * @param name
+     * @return
+     */
+    private String uniqueName(String name) {
+        String unique = name;
+
+        for (int i = 2; new File(backupFolder, unique + FILE_EXTENSION_FRAMED).exists(); i++) {
+            unique = name + "-" + i;
+        }
+
+        return unique;
+    }
+
     /**
      * Begin restoring a backup. This should be ran in a separate thread.
      * Any world calls are offloaded to the world thread using the scheduler. No world reads are done, only writes.
@@ -147,6 +406,8 @@ public class BackupManager {
      * @return OK if successful, otherwise FAILURE
      */
     public Result restoreBackup(Backup backup) {
+        BlockRestoreQueue queue = null;
+
         try {
             // Read in the backup's header
             backup.readHeader();
@@ -156,8 +417,14 @@ public class BackupManager {
             int count = 0;
             int protectionCount = 0;
             int blockCount = 0;
+            queue = new BlockRestoreQueue(LWC.getInstance());
+
             while ((restorable = backup.readRestorable()) != null) {
-                restorable.restore();
+                if (restorable instanceof RestorableBlock) {
+                    queue.add((RestorableBlock) restorable);
+                } else {
+                    restorable.restore();
+                }
 
                 if (count % 2000 == 0) {
                     System.out.println("[Backup] Restored restorables: " + count);
@@ -172,10 +439,17 @@ public class BackupManager {
                 }
             }
 
+            queue.finish();
+
             System.out.println(String.format("[BackupManager] Restored %d restorables. %d were protections, %d blocks.", count, protectionCount, blockCount));
             return Result.OK;
-        } catch (IOException e) {
+        } catch (Exception e) {
             e.printStackTrace();
+
+            if (queue != null) {
+                queue.cancel();
+            }
+
             return Result.FAILURE;
         }
     }
@@ -209,139 +483,220 @@ public class BackupManager {
     }
 
     /**
-     * Create a backup of the given objects.
+     * Create a full backup of the given objects in the v2 format.
      * When this returns, it is not guaranteed that the backup is fully written to the disk.
      *
      * @param name
      * @param flags
-     * @return
+     * @return the file the backup is written to
+     */
+    public File createBackup(String name, EnumSet<Flag> flags) {
+        return createBackup(name, flags, false);
+    }
+
+    /**
+     * Create a backup of the given objects in the v2 format. An incremental backup only holds the protections
+     * created, changed or removed since the last backup and builds on it; if there is no backup to build on a
+     * full backup is made instead.
+     * When this returns, it is not guaranteed that the backup is fully written to the disk.
+     *
+     * @param name
+     * @param flags
+     * @param incremental
+     * @return the file the backup is written to
      */
-    @SuppressWarnings("deprecation")
-    public Backup createBackup(String name, final EnumSet<Flag> flags) {
+    public File createBackup(String name, final EnumSet<Flag> flags, final boolean incremental) {
         final LWC lwc = LWC.getInstance();
         final Plugin plugin = lwc.getPlugin();
-        Server server = Bukkit.getServer();
-        final BukkitScheduler scheduler = server.getScheduler();
-        String extension = flags.contains(Flag.COMPRESSION) ? FILE_EXTENSION_COMPRESSED : FILE_EXTENSION_UNCOMPRESSED;
-        File backupFile = new File(backupFolder, name + extension);
+        final BukkitScheduler scheduler = Bukkit.getServer().getScheduler();
+        final String backupName = uniqueName(name);
+        final File backupFile = new File(backupFolder, backupName + FILE_EXTENSION_FRAMED);
+
+        scheduler.runTaskAsynchronously(plugin, new Runnable() {
+            public void run() {
+                FramedBackupWriter writer = null;
+                PhysDB database = null;
+
+                try {
+                    lwc.log("Processing backup request now in a separate thread");
+                    PhysDB physicalDatabase = lwc.getPhysicalDatabase();
+
+                    // start logging changes before anything is read, so no change can be missed by the next increment
+                    String[][] chain = new String[1][];
+                    int[] sequence = new int[1];
+
+                    lwc.getDatabaseThread().flushAndRun(() -> {
+                        chain[0] = incremental ? physicalDatabase.getBackupChain() : null;
+                        sequence[0] = physicalDatabase.beginBackup();
+                    });
+
+                    File parent = chain[0] != null ? new File(backupFolder, chain[0][0] + FILE_EXTENSION_FRAMED) : null;
+                    int parentSequence = -1;
+
+                    if (parent != null && parent.exists()) {
+                        try {
+                            parentSequence = Integer.parseInt(chain[0][1]);
+                        } catch (NumberFormatException e) {
+                        }
+                    }
 
-        // Our backup file
-        try {
-            final Backup backup = new Backup(backupFile, Backup.OperationMode.WRITE, flags);
+                    if (incremental && parentSequence < 0) {
+                        lwc.log("There is no backup to build an incremental backup on, making a full backup instead");
+                    }
 
-            scheduler.scheduleAsyncDelayedTask(plugin, new Runnable() {
-                public void run() {
-                    try {
-                        lwc.log("Processing backup request now in a separate thread");
+                    Map<String, String> properties = new LinkedHashMap<>();
+                    properties.put(PROPERTY_SEQUENCE, Integer.toString(sequence[0]));
 
-                        // the list of protections work off of. We batch updates to the world
-                        // so we can more than 20 results/second.
-                        final List<Protection> protections = new ArrayList<>(BATCH_SIZE);
+                    if (parentSequence >= 0) {
+                        properties.put(PROPERTY_PARENT, chain[0][0]);
+                        properties.put(PROPERTY_PARENT_CHECKSUM, checksum(parent));
+                    }
 
-                        // amount of protections
-                        int totalProtections = lwc.getPhysicalDatabase().getProtectionCount();
+                    writer = new FramedBackupWriter(backupFile, flags, properties, THREADS);
 
-                        // Write the header
-                        backup.writeHeader();
+                    // Create a new database connection, we are just reading
+                    database = new PhysDB();
+                    database.connect();
+                    database.load();
 
-                        // TODO separate stream logic to somewhere else :)
-                        // Create a new database connection, we are just reading
-                        PhysDB database = new PhysDB();
-                        database.connect();
-                        database.load();
+                    int count;
 
-                        // TODO separate stream logic to somewhere else :)
-                        Statement resultStatement = database.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    if (parentSequence >= 0) {
+                        count = writeIncrement(lwc, database, writer, flags, parentSequence, sequence[0]);
+                    } else {
+                        count = writeFull(lwc, database, writer, flags);
+                    }
 
-                        if (lwc.getPhysicalDatabase().getType() == Database.Type.MySQL) {
-                            resultStatement.setFetchSize(Integer.MIN_VALUE);
+                    writer.close();
+                    writer = null;
+
+                    // the next incremental backup builds on this one
+                    lwc.getDatabaseThread().flushAndRun(() -> physicalDatabase.completeBackup(backupName, sequence[0]));
+
+                    lwc.log("Backup completed! " + backupFile.getName() + " holds " + count + " protections"
+                            + (parentSequence >= 0 ? " changed since " + chain[0][0] : "") + " and is "
+                            + (backupFile.length() / 1024) + " KiB");
+                } catch (Exception e) { // database.connect() throws Exception
+                    lwc.log("Backup exception caught: " + e.getMessage());
+                } finally {
+                    if (writer != null) {
+                        try {
+                            writer.close();
+                        } catch (IOException e) {
                         }
+                    }
 
-                        String prefix = lwc.getPhysicalDatabase().getPrefix();
-                        ResultSet result = resultStatement.executeQuery("SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM " + prefix + "protections");
-                        int count = 0;
-
-                        while (result.next()) {
-                            final Protection tprotection = database.resolveProtection(result);
-
-                            if (count % 2000 == 0) {
-                                lwc.log("[Backup] Parsed protections: " + count + "/" + totalProtections);
-                            }
-                            count++;
-
-                            if (protections.size() != BATCH_SIZE) {
-                                // Wait until we have BATCH_SIZE protections
-                                protections.add(tprotection);
-
-                                if (protections.size() != totalProtections) {
-                                    continue;
-                                }
-                            }
-
-                            // Get all of the blocks in the world
-                            Future<Void> getBlocks = scheduler.callSyncMethod(plugin, new Callable<Void>() {
-                                public Void call() throws Exception {
-                                    for (Protection protection : protections) {
-                                        protection.getBlock(); // this will cache it also :D
-                                    }
-
-                                    return null;
-                                }
-                            });
-
-                            // Get all of the blocks
-                            getBlocks.get();
-
-                            for (Protection protection : protections) {
-                                try {
-                                    // if we are writing the block to the backup, do that before we write the protection
-                                    if (flags.contains(Flag.BACKUP_BLOCKS)) {
-                                        // now we can get the block from the world
-                                        Block block = protection.getBlock();
-
-                                        // Wrap the block object in a RestorableBlock object
-                                        RestorableBlock rblock = RestorableBlock.wrapBlock(block);
-
-                                        // Write it
-                                        backup.writeRestorable(rblock);
-                                    }
-
-                                    // Now write the protection after the block if we are writing protections
-                                    if (flags.contains(Flag.BACKUP_PROTECTIONS)) {
-                                        RestorableProtection rprotection = RestorableProtection.wrapProtection(protection);
-
-                                        // Write it
-                                        backup.writeRestorable(rprotection);
-                                    }
-                                } catch (Exception e) {
-                                    lwc.log("Caught: " + e.getMessage() + ". Carrying on...");
-                                }
-                            }
-
-                            // Clear the protection set, we are done with them
-                            protections.clear();
-                        }
+                    if (database != null) {
+                        database.dispose();
+                    }
+                }
+            }
+        });
+
+        return backupFile;
+    }
+
+    /**
+     * Write every protection to a backup
+     *
+     * @return the amount of protections written
+     */
+    private int writeFull(LWC lwc, PhysDB database, FramedBackupWriter writer, EnumSet<Flag> flags) throws Exception {
+        int totalProtections = lwc.getPhysicalDatabase().getProtectionCount();
+        int count = 0;
+        int lastId = 0;
+        List<Protection> protections;
 
-                        // close the sql statements
-                        result.close();
-                        resultStatement.close();
+        // page through the protections by id, with the history of each page in one query
+        while (!(protections = database.loadProtectionsAfter(lastId, PAGE_SIZE)).isEmpty()) {
+            int firstId = protections.get(0).getId();
+            lastId = protections.get(protections.size() - 1).getId();
 
-                        // close the backup file
-                        backup.close();
+            List<History> history = flags.contains(Flag.BACKUP_HISTORY)
+                    ? database.loadHistoryForProtections(firstId, lastId) : null;
 
-                        lwc.log("Backup completed!");
-                    } catch (Exception e) { // database.connect() throws Exception
-                        lwc.log("Backup exception caught: " + e.getMessage());
-                    }
+            writeProtections(lwc, writer, flags, protections, history);
+
+            count += protections.size();
+            lwc.log("[Backup] Parsed protections: " + count + "/" + totalProtections);
+        }
+
+        return count;
+    }
+
+    /**
+     * Write the protections changed between two change log entries to a backup. Protections that no longer
+     * exist are written as removals.
+     *
+     * @return the amount of protections written
+     */
+    private int writeIncrement(LWC lwc, PhysDB database, FramedBackupWriter writer, EnumSet<Flag> flags, int after,
+                               int upTo) throws Exception {
+        List<Integer> changed = database.loadChangedProtectionIds(after, upTo);
+
+        for (int offset = 0; offset < changed.size(); offset += ID_BATCH_SIZE) {
+            List<Integer> ids = changed.subList(offset, Math.min(changed.size(), offset + ID_BATCH_SIZE));
+            List<Protection> protections = database.loadProtections(ids);
+            List<History> history = flags.contains(Flag.BACKUP_HISTORY) ? database.loadHistoryForProtections(ids) : null;
+            Set<Integer> existing = new HashSet<>();
+
+            for (Protection protection : protections) {
+                existing.add(protection.getId());
+            }
+
+            for (int id : ids) {
+                if (!existing.contains(id)) {
+                    writer.writeRemoval(id);
                 }
-            });
+            }
 
-            return backup;
-        } catch (IOException e) {
-            e.printStackTrace();
+            writeProtections(lwc, writer, flags, protections, history);
         }
 
-        return null;
+        lwc.log("[Backup] " + changed.size() + " protections changed since the last backup");
+        return changed.size();
+    }
+
+    /**
+     * Write protections to a backup, each preceded by its block
+     *
+     * @param lwc
+     * @param writer
+     * @param flags
+     * @param protections
+     * @param history     the history of the protections, or null
+     */
+    private void writeProtections(LWC lwc, FramedBackupWriter writer, EnumSet<Flag> flags, List<Protection> protections,
+                                  List<History> history) throws Exception {
+        Map<Integer, List<History>> historyByProtection = new HashMap<>();
+
+        if (history != null) {
+            for (History entry : history) {
+                historyByProtection.computeIfAbsent(entry.getProtectionId(), k -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        // the blocks are captured a chunk at a time on the main thread, then serialized here
+        Map<Integer, RestorableBlock> blocks = flags.contains(Flag.BACKUP_BLOCKS)
+                ? BlockCapture.capture(lwc, protections).get() : null;
+
+        for (Protection protection : protections) {
+            RestorableBlock rblock = blocks != null ? blocks.get(protection.getId()) : null;
+
+            // if we are writing the block to the backup, do that before we write the protection
+            if (rblock != null) {
+                writer.write(rblock);
+            }
+
+            if (flags.contains(Flag.BACKUP_PROTECTIONS)) {
+                RestorableProtection rprotection = RestorableProtection.wrapProtection(protection);
+
+                if (rprotection != null) {
+                    rprotection.setHistory(historyByProtection.get(protection.getId()));
+                    writer.write(rprotection);
+                }
+            }
+        }
     }
 
     /**
@@ -351,7 +706,7 @@ public class BackupManager {
      * @param flags
      * @return
      */
-    public Backup createBackup(EnumSet<Flag> flags) {
+    public File createBackup(EnumSet<Flag> flags) {
         return createBackup(new SimpleDateFormat(DATE_FORMAT).format(new Date()), flags);
     }
 
@@ -361,8 +716,19 @@ public class BackupManager {
      *
      * @return
      */
-    public Backup createBackup() {
-        return createBackup(EnumSet.of(Flag.COMPRESSION, Flag.BACKUP_BLOCKS, Flag.BACKUP_PROTECTIONS));
+    public File createBackup() {
+        return createBackup(EnumSet.of(Flag.COMPRESSION, Flag.BACKUP_BLOCKS, Flag.BACKUP_PROTECTIONS, Flag.BACKUP_HISTORY));
+    }
+
+    /**
+     * Create a backup of the protections, blocks and contents changed since the last backup
+     * When this returns, it is not guaranteed that the backup is fully written to the disk.
+     *
+     * @return
+     */
+    public File createIncrementalBackup() {
+        return createBackup(new SimpleDateFormat(DATE_FORMAT).format(new Date()),
+                EnumSet.of(Flag.COMPRESSION, Flag.BACKUP_BLOCKS, Flag.BACKUP_PROTECTIONS, Flag.BACKUP_HISTORY), true);
     }
 
 }
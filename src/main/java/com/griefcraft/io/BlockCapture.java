@@ -0,0 +1,120 @@
+package com.griefcraft.io;
+
+import com.griefcraft.bukkit.EntityBlock;
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.model.Protection;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Captures the blocks of protections for a backup. The protections are grouped by chunk and each chunk is
+ * captured in one go on the main thread, as many chunks per tick as fit in core.tickBudget.backup. Inventories
+ * are copied, so the snapshots can be serialized and compressed off the main thread.
+ */
+public class BlockCapture {
+
+    private final LWC lwc;
+
+    /**
+     * The protections of each chunk that still has to be captured
+     */
+    private final Deque<List<Protection>> chunks = new ArrayDeque<>();
+
+    /**
+     * The captured blocks by protection id
+     */
+    private final Map<Integer, RestorableBlock> blocks = new HashMap<>();
+
+    private final CompletableFuture<Map<Integer, RestorableBlock>> future = new CompletableFuture<>();
+    private final long budget;
+    private BukkitTask task;
+
+    private BlockCapture(LWC lwc, List<Protection> protections) {
+        this.lwc = lwc;
+        this.budget = TimeUnit.MILLISECONDS.toNanos(Math.max(1, lwc.getConfiguration().getInt("core.tickBudget.backup", 5)));
+
+        Map<String, List<Protection>> byChunk = new LinkedHashMap<>();
+
+        for (Protection protection : protections) {
+            if (protection.getBlockId() == EntityBlock.ENTITY_BLOCK_ID) {
+                continue;
+            }
+
+            byChunk.computeIfAbsent(protection.getWorld() + ":" + (protection.getX() >> 4) + ":" + (protection.getZ() >> 4),
+                    k -> new ArrayList<>()).add(protection);
+        }
+
+        chunks.addAll(byChunk.values());
+    }
+
+    /**
+     * Capture the blocks of protections. Can be called from any thread.
+     *
+     * @param lwc
+     * @param protections
+     * @return completes on the main thread with the captured block of each protection by id; protections in
+     * worlds that are not loaded and entity protections have none
+     */
+    public static CompletableFuture<Map<Integer, RestorableBlock>> capture(LWC lwc, List<Protection> protections) {
+        BlockCapture capture = new BlockCapture(lwc, protections);
+
+        if (capture.chunks.isEmpty()) {
+            capture.future.complete(capture.blocks);
+        } else {
+            Bukkit.getScheduler().runTask(lwc.getPlugin(), capture::start);
+        }
+
+        return capture.future;
+    }
+
+    private void start() {
+        task = Bukkit.getScheduler().runTaskTimer(lwc.getPlugin(), lwc.getTickBudget().wrap("BlockCapture#tick", this::tick), 0, 1);
+    }
+
+    /**
+     * Capture whole chunks until this tick's budget is used up
+     */
+    private void tick() {
+        long start = System.nanoTime();
+
+        try {
+            while (!chunks.isEmpty() && System.nanoTime() - start < budget) {
+                List<Protection> chunk = chunks.poll();
+                World world = Bukkit.getWorld(chunk.get(0).getWorld());
+
+                if (world == null) {
+                    continue;
+                }
+
+                for (Protection protection : chunk) {
+                    RestorableBlock rblock = RestorableBlock.wrapBlock(world.getBlockAt(protection.getX(), protection.getY(), protection.getZ()));
+
+                    if (rblock != null) {
+                        blocks.put(protection.getId(), rblock);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            task.cancel();
+            future.completeExceptionally(e);
+            return;
+        }
+
+        if (chunks.isEmpty()) {
+            task.cancel();
+            future.complete(blocks);
+        }
+    }
+
+}
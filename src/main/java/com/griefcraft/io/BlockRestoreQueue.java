@@ -0,0 +1,146 @@
+package com.griefcraft.io;
+
+import com.griefcraft.lwc.LWC;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restores blocks from a backup on the main thread. Blocks are queued from the restoring thread and grouped by
+ * chunk; each tick restores whole chunks until core.tickBudget.backup is used up. The restoring thread waits
+ * when too many blocks are queued, so a large backup is never held in memory at once.
+ * <p/>
+ * A queue is created on the restoring thread, so its tick task is started from the main thread. A restore that
+ * fails must {@link #cancel()} its queue, otherwise the tick task keeps running.
+ */
+public class BlockRestoreQueue {
+
+    /**
+     * The amount of queued blocks the restoring thread waits at
+     */
+    private static final int MAX_QUEUED = 5000;
+
+    private final LWC lwc;
+    private final long budget;
+
+    /**
+     * The queued blocks of each chunk, in the order they were first queued
+     */
+    private final Map<String, List<RestorableBlock>> chunks = new LinkedHashMap<>();
+
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private BukkitTask task;
+    private int queued = 0;
+    private boolean finished = false;
+    private boolean cancelled = false;
+
+    public BlockRestoreQueue(LWC lwc) {
+        this.lwc = lwc;
+        this.budget = TimeUnit.MILLISECONDS.toNanos(Math.max(1, lwc.getConfiguration().getInt("core.tickBudget.backup", 5)));
+        Bukkit.getScheduler().runTask(lwc.getPlugin(), this::start);
+    }
+
+    /**
+     * Start the tick task. Called on the main thread.
+     */
+    private synchronized void start() {
+        if (!cancelled) {
+            task = Bukkit.getScheduler().runTaskTimer(lwc.getPlugin(), lwc.getTickBudget().wrap("BlockRestoreQueue#tick", this::tick), 1, 1);
+        }
+    }
+
+    /**
+     * Queue a block to be restored. Called from the restoring thread.
+     *
+     * @param rblock
+     */
+    public synchronized void add(RestorableBlock rblock) throws InterruptedException {
+        while (queued >= MAX_QUEUED) {
+            wait();
+        }
+
+        chunks.computeIfAbsent(rblock.getWorld() + ":" + (rblock.getX() >> 4) + ":" + (rblock.getZ() >> 4),
+                k -> new ArrayList<>()).add(rblock);
+        queued++;
+    }
+
+    /**
+     * Wait until every queued block is restored. Called from the restoring thread once nothing more is queued.
+     */
+    public void finish() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            finished = true;
+        }
+
+        done.get();
+    }
+
+    /**
+     * Drop the queued blocks and stop the tick task. Does nothing once every block is restored.
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (done.isDone()) {
+                return;
+            }
+
+            cancelled = true;
+            chunks.clear();
+            queued = 0;
+            notifyAll();
+
+            if (task != null) {
+                task.cancel();
+            }
+        }
+
+        done.complete(null);
+    }
+
+    /**
+     * Restore whole chunks until this tick's budget is used up
+     */
+    private void tick() {
+        long start = System.nanoTime();
+
+        while (System.nanoTime() - start < budget) {
+            List<RestorableBlock> chunk;
+
+            synchronized (this) {
+                Iterator<List<RestorableBlock>> iterator = chunks.values().iterator();
+
+                if (!iterator.hasNext()) {
+                    if (finished) {
+                        task.cancel();
+                        done.complete(null);
+                    }
+
+                    return;
+                }
+
+                chunk = iterator.next();
+                iterator.remove();
+                queued -= chunk.size();
+                notifyAll();
+            }
+
+            for (RestorableBlock rblock : chunk) {
+                try {
+                    rblock.apply();
+                } catch (RuntimeException e) {
+                    lwc.log("Could not restore the block at [" + rblock.getX() + ", " + rblock.getY() + ", "
+                            + rblock.getZ() + "]: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+}
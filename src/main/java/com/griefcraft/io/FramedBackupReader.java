@@ -0,0 +1,315 @@
+package com.griefcraft.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a v2 backup written by {@link FramedBackupWriter}. The index is read up front so a restore can skip
+ * every frame outside of the world or area it wants; the frames it does want are decompressed in parallel
+ * and handed out in the order they were written.
+ */
+public class FramedBackupReader implements AutoCloseable {
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+
+    /**
+     * The revision of the format the backup was written in
+     */
+    private final int revision;
+
+    /**
+     * The time the backup was created at
+     */
+    private final long created;
+
+    /**
+     * The flags the backup was created with, as a bit per flag
+     */
+    private final int flags;
+
+    /**
+     * The properties the backup was created with
+     */
+    private final Map<String, String> properties = new HashMap<>();
+
+    /**
+     * The frames in the backup
+     */
+    private final List<FramedBackupWriter.FrameIndex> index = new ArrayList<>();
+
+    public FramedBackupReader(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+
+        try {
+            if (this.file.readInt() != FramedBackupWriter.MAGIC) {
+                throw new IOException("Not a v2 backup: " + file.getName());
+            }
+
+            revision = this.file.readShort();
+
+            if (revision < FramedBackupWriter.MIN_REVISION || revision > FramedBackupWriter.REVISION) {
+                throw new IOException("Unsupported backup revision " + revision);
+            }
+
+            created = this.file.readLong();
+            flags = this.file.readInt();
+
+            int propertyCount = this.file.readShort();
+
+            for (int i = 0; i < propertyCount; i++) {
+                properties.put(this.file.readUTF(), this.file.readUTF());
+            }
+
+            // the footer points at the index
+            this.file.seek(this.file.length() - 12);
+            long indexOffset = this.file.readLong();
+
+            if (this.file.readInt() != FramedBackupWriter.MAGIC) {
+                throw new IOException("The backup was not finished: " + file.getName());
+            }
+
+            this.file.seek(indexOffset);
+            int frames = this.file.readInt();
+
+            for (int i = 0; i < frames; i++) {
+                String frameWorld = this.file.readUTF();
+                int regionX = this.file.readInt();
+                int regionZ = this.file.readInt();
+                long offset = this.file.readLong();
+                int length = this.file.readInt();
+
+                FramedBackupWriter.FrameIndex frame = new FramedBackupWriter.FrameIndex(frameWorld, regionX, regionZ,
+                        this.file.readInt());
+                frame.offset = offset;
+                frame.length = length;
+                index.add(frame);
+            }
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the records in the backup, optionally only those of a world and within an area
+     *
+     * @param world    the world to read, or null for every world
+     * @param bounds   {minX, minZ, maxX, maxZ} in blocks, or null for everything
+     * @param threads  the amount of frames to decompress at the same time
+     * @param consumer receives the records in the order they were written
+     * @return the amount of records read
+     */
+    public int read(String world, int[] bounds, int threads, Consumer<Restorable> consumer) throws IOException {
+        List<FramedBackupWriter.FrameIndex> frames = getFrames(world, bounds);
+        ExecutorService decompressors = Executors.newFixedThreadPool(Math.max(1, threads));
+        Deque<Future<List<Restorable>>> pending = new ArrayDeque<>();
+        int count = 0;
+
+        try {
+            for (FramedBackupWriter.FrameIndex frame : frames) {
+                pending.add(decompressors.submit(() -> decode(frame, bounds)));
+
+                // keep the amount of decoded frames in memory bounded
+                while (pending.size() > threads * 2) {
+                    count += apply(pending.poll(), consumer);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                count += apply(pending.poll(), consumer);
+            }
+        } finally {
+            decompressors.shutdownNow();
+        }
+
+        return count;
+    }
+
+    /**
+     * Get the frames of a world that overlap an area
+     *
+     * @param world  the world, or null for every world
+     * @param bounds {minX, minZ, maxX, maxZ} in blocks, or null for everything
+     * @return
+     */
+    public List<FramedBackupWriter.FrameIndex> getFrames(String world, int[] bounds) {
+        List<FramedBackupWriter.FrameIndex> frames = new ArrayList<>();
+
+        for (FramedBackupWriter.FrameIndex frame : index) {
+            if (FramedBackupWriter.REMOVALS_WORLD.equals(frame.world)) {
+                frames.add(frame);
+                continue;
+            }
+
+            if (world != null && !world.equals(frame.world)) {
+                continue;
+            }
+
+            if (bounds != null && (frame.regionX < bounds[0] >> FramedBackupWriter.REGION_SHIFT
+                    || frame.regionZ < bounds[1] >> FramedBackupWriter.REGION_SHIFT
+                    || frame.regionX > bounds[2] >> FramedBackupWriter.REGION_SHIFT
+                    || frame.regionZ > bounds[3] >> FramedBackupWriter.REGION_SHIFT)) {
+                continue;
+            }
+
+            frames.add(frame);
+        }
+
+        return frames;
+    }
+
+    private int apply(Future<List<Restorable>> decoded, Consumer<Restorable> consumer) throws IOException {
+        List<Restorable> restorables;
+
+        try {
+            restorables = decoded.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        for (Restorable restorable : restorables) {
+            consumer.accept(restorable);
+        }
+
+        return restorables.size();
+    }
+
+    /**
+     * Read, decompress and parse a frame. Called from the decompressor threads.
+     *
+     * @param frame
+     * @param bounds
+     * @return the records in the frame within the area
+     */
+    private List<Restorable> decode(FramedBackupWriter.FrameIndex frame, int[] bounds) throws IOException, DataFormatException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        readFully(header, frame.offset);
+        header.flip();
+
+        int rawLength = header.getInt();
+        ByteBuffer compressed = ByteBuffer.allocate(header.getInt());
+        readFully(compressed, frame.offset + 8);
+
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(compressed.array());
+            int length = 0;
+
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, rawLength - length);
+
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupt frame at " + frame.offset);
+                }
+
+                length += inflated;
+            }
+        } finally {
+            inflater.end();
+        }
+
+        List<Restorable> restorables = new ArrayList<>(frame.records);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+
+        for (int i = 0; i < frame.records; i++) {
+            int type = in.readByte();
+            Restorable restorable;
+            int x, z;
+
+            if (type == FramedBackupWriter.RECORD_PROTECTION) {
+                RestorableProtection rprotection = RestorableProtection.read(in, revision);
+                restorable = rprotection;
+                x = rprotection.getX();
+                z = rprotection.getZ();
+            } else if (type == FramedBackupWriter.RECORD_BLOCK) {
+                RestorableBlock rblock = RestorableBlock.read(in);
+                restorable = rblock;
+                x = rblock.getX();
+                z = rblock.getZ();
+            } else if (type == FramedBackupWriter.RECORD_REMOVAL) {
+                // removals have no location, the restore decides if they apply
+                restorables.add(new RemovedProtection(in.readInt()));
+                continue;
+            } else {
+                throw new IOException("Read unknown type: " + type);
+            }
+
+            if (bounds == null || (x >= bounds[0] && z >= bounds[1] && x <= bounds[2] && z <= bounds[3])) {
+                restorables.add(restorable);
+            }
+        }
+
+        return restorables;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of backup");
+            }
+        }
+    }
+
+    /**
+     * @return the time the backup was created at
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @param flag
+     * @return true if the backup was created with the flag
+     */
+    public boolean hasFlag(BackupManager.Flag flag) {
+        return (flags & (1 << flag.ordinal())) != 0;
+    }
+
+    /**
+     * Get a property the backup was created with
+     *
+     * @param key
+     * @return the value, otherwise NULL
+     */
+    public String getProperty(String key) {
+        return properties.get(key);
+    }
+
+    /**
+     * @return the amount of frames in the backup
+     */
+    public int getFrameCount() {
+        return index.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+}
@@ -0,0 +1,384 @@
+package com.griefcraft.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a v2 backup. Records are grouped by world and region into frames that are compressed on their own
+ * by a pool of threads and written in the order they were completed, followed by an index of the frames:
+ * <p/>
+ * header: magic, revision, created, flags, properties such as the backup an incremental backup builds on<br/>
+ * frames: uncompressed length, compressed length, deflated records<br/>
+ * index: frame count, then world, region x, region z, offset, compressed length, record count per frame<br/>
+ * footer: index offset, magic
+ */
+public class FramedBackupWriter {
+
+    /**
+     * Starts and ends every v2 backup ("LWC2")
+     */
+    public static final int MAGIC = 0x4C574332;
+
+    /**
+     * The revision of the v2 format. Revision 3 added the ids of history entries.
+     */
+    public static final int REVISION = 3;
+
+    /**
+     * The oldest revision that can still be read
+     */
+    public static final int MIN_REVISION = 2;
+
+    /**
+     * The amount of bits a block coordinate is shifted by to get its region
+     */
+    public static final int REGION_SHIFT = 9;
+
+    /**
+     * The record types
+     */
+    public static final int RECORD_PROTECTION = 0;
+    public static final int RECORD_BLOCK = 1;
+    public static final int RECORD_REMOVAL = 2;
+
+    /**
+     * The world removals are filed under; they have no location and are read by every restore
+     */
+    public static final String REMOVALS_WORLD = "";
+
+    /**
+     * The size a region's records can grow to before they are compressed into a frame
+     */
+    private static final int FRAME_SIZE = 256 * 1024;
+
+    /**
+     * The amount of uncompressed records kept in memory before every region is written out
+     */
+    private static final int MAX_BUFFERED = 16 * 1024 * 1024;
+
+    private final DataOutputStream out;
+    private final ExecutorService compressors;
+
+    /**
+     * The amount of frames that can be compressed at the same time
+     */
+    private final int threads;
+
+    /**
+     * The records of each region that have not been put in a frame yet
+     */
+    private final Map<String, Region> regions = new HashMap<>();
+
+    /**
+     * The frames being compressed, in the order they will be written
+     */
+    private final Deque<PendingFrame> pending = new ArrayDeque<>();
+
+    /**
+     * The index of the written frames
+     */
+    private final List<FrameIndex> index = new ArrayList<>();
+
+    /**
+     * The amount of bytes written to the file
+     */
+    private long offset = 0;
+
+    /**
+     * The amount of uncompressed bytes buffered over all regions
+     */
+    private int buffered = 0;
+
+    public FramedBackupWriter(File file, EnumSet<BackupManager.Flag> flags, Map<String, String> properties, int threads) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        this.threads = Math.max(1, threads);
+        this.compressors = Executors.newFixedThreadPool(this.threads);
+
+        int flagMask = 0;
+
+        for (BackupManager.Flag flag : flags) {
+            flagMask |= 1 << flag.ordinal();
+        }
+
+        out.writeInt(MAGIC);
+        out.writeShort(REVISION);
+        out.writeLong(System.currentTimeMillis() / 1000);
+        out.writeInt(flagMask);
+        out.writeShort(properties.size());
+
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            out.writeUTF(property.getKey());
+            out.writeUTF(property.getValue());
+        }
+
+        offset = out.size();
+    }
+
+    /**
+     * Add a protection to the backup
+     *
+     * @param rprotection
+     */
+    public void write(RestorableProtection rprotection) throws IOException {
+        Region region = region(rprotection.getWorld(), rprotection.getX(), rprotection.getZ());
+        int before = region.bytes.size();
+
+        region.data.writeByte(RECORD_PROTECTION);
+        rprotection.write(region.data);
+        added(region, before, true);
+    }
+
+    /**
+     * Add a block to the backup
+     *
+     * @param rblock
+     */
+    public void write(RestorableBlock rblock) throws IOException {
+        Region region = region(rblock.getWorld(), rblock.getX(), rblock.getZ());
+        int before = region.bytes.size();
+
+        region.data.writeByte(RECORD_BLOCK);
+        rblock.write(region.data);
+
+        // a block is followed by its protection, which has to end up in the same frame
+        added(region, before, false);
+    }
+
+    /**
+     * Add the removal of a protection to an incremental backup
+     *
+     * @param protectionId
+     */
+    public void writeRemoval(int protectionId) throws IOException {
+        Region region = region(REMOVALS_WORLD, 0, 0);
+        int before = region.bytes.size();
+
+        region.data.writeByte(RECORD_REMOVAL);
+        region.data.writeInt(protectionId);
+        added(region, before, true);
+    }
+
+    /**
+     * Write out the remaining frames and the index and close the file
+     */
+    public void close() throws IOException {
+        try {
+            for (Region region : regions.values()) {
+                submit(region);
+            }
+
+            regions.clear();
+
+            while (!pending.isEmpty()) {
+                writeFrame(pending.poll());
+            }
+
+            long indexOffset = offset;
+            out.writeInt(index.size());
+
+            for (FrameIndex frame : index) {
+                out.writeUTF(frame.world);
+                out.writeInt(frame.regionX);
+                out.writeInt(frame.regionZ);
+                out.writeLong(frame.offset);
+                out.writeInt(frame.length);
+                out.writeInt(frame.records);
+            }
+
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+        } finally {
+            compressors.shutdownNow();
+            out.close();
+        }
+    }
+
+    /**
+     * @return the amount of frames written so far
+     */
+    public int getFrameCount() {
+        return index.size();
+    }
+
+    private Region region(String world, int x, int z) {
+        int regionX = x >> REGION_SHIFT;
+        int regionZ = z >> REGION_SHIFT;
+
+        return regions.computeIfAbsent(world + ":" + regionX + ":" + regionZ, k -> new Region(world, regionX, regionZ));
+    }
+
+    /**
+     * Account for a record added to a region and start a frame if needed
+     *
+     * @param region
+     * @param before    the size of the region before the record
+     * @param mayFlush  if a frame may end after the record
+     */
+    private void added(Region region, int before, boolean mayFlush) throws IOException {
+        region.records++;
+        buffered += region.bytes.size() - before;
+
+        if (!mayFlush) {
+            return;
+        }
+
+        if (region.bytes.size() >= FRAME_SIZE) {
+            submit(region);
+        }
+
+        if (buffered >= MAX_BUFFERED) {
+            for (Region other : regions.values()) {
+                submit(other);
+            }
+        }
+    }
+
+    /**
+     * Hand the buffered records of a region to the compressors
+     *
+     * @param region
+     */
+    private void submit(Region region) throws IOException {
+        if (region.records == 0) {
+            return;
+        }
+
+        byte[] raw = region.bytes.toByteArray();
+        FrameIndex frame = new FrameIndex(region.world, region.regionX, region.regionZ, region.records);
+
+        buffered -= raw.length;
+        region.bytes.reset();
+        region.records = 0;
+
+        pending.add(new PendingFrame(frame, raw.length, compressors.submit(() -> compress(raw))));
+
+        // keep the amount of frames in memory bounded
+        while (pending.size() > threads * 2) {
+            writeFrame(pending.poll());
+        }
+    }
+
+    private void writeFrame(PendingFrame frame) throws IOException {
+        byte[] compressed;
+
+        try {
+            compressed = frame.compressed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        frame.index.offset = offset;
+        frame.index.length = compressed.length;
+        index.add(frame.index);
+
+        out.writeInt(frame.rawLength);
+        out.writeInt(compressed.length);
+        out.write(compressed);
+        offset += 8 + compressed.length;
+    }
+
+    private static byte[] compress(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[16 * 1024];
+
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                compressed.write(buffer, 0, length);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return compressed.toByteArray();
+    }
+
+    /**
+     * The records of a region that are not in a frame yet
+     */
+    private static class Region {
+        private final String world;
+        private final int regionX;
+        private final int regionZ;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(bytes);
+        private int records;
+
+        private Region(String world, int regionX, int regionZ) {
+            this.world = world;
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+        }
+    }
+
+    private static class PendingFrame {
+        private final FrameIndex index;
+        private final int rawLength;
+        private final Future<byte[]> compressed;
+
+        private PendingFrame(FrameIndex index, int rawLength, Future<byte[]> compressed) {
+            this.index = index;
+            this.rawLength = rawLength;
+            this.compressed = compressed;
+        }
+    }
+
+    /**
+     * Where a frame is in the file and what it holds
+     */
+    public static class FrameIndex {
+        final String world;
+        final int regionX;
+        final int regionZ;
+        final int records;
+        long offset;
+        int length;
+
+        FrameIndex(String world, int regionX, int regionZ, int records) {
+            this.world = world;
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+            this.records = records;
+        }
+
+        public String getWorld() {
+            return world;
+        }
+
+        public int getRegionX() {
+            return regionX;
+        }
+
+        public int getRegionZ() {
+            return regionZ;
+        }
+
+        public int getRecords() {
+            return records;
+        }
+    }
+
+}
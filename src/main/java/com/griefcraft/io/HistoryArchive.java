@@ -0,0 +1,289 @@
+package com.griefcraft.io;
+
+import com.griefcraft.model.History;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An append-only archive of history removed from the database. Each month gets its own file, and every
+ * append is written as a separate gzip member so nothing already written is ever rewritten. The files are
+ * plain gzip, one tab separated row per line, and can be searched offline with e.g zgrep:
+ * <p/>
+ * id, protectionId, player, x, y, z, type, status, timestamp, metadata
+ * <p/>
+ * A member is first written to a temporary file with {@link #stage(List)}. Once its rows are deleted it is
+ * renamed to a pending file named after the length of the month's file and appended with
+ * {@link #commit(Member)}. An append that fails or is interrupted is redone by {@link #recover()}, which cuts
+ * the month's file back to that length first, so a month's file never keeps a truncated member.
+ */
+public class HistoryArchive {
+
+    /**
+     * The suffixes of members that are staged and of members waiting to be appended
+     */
+    private static final String STAGED = ".tmp";
+    private static final String PENDING = ".pending";
+
+    /**
+     * The folder the archive files are written to
+     */
+    private final File folder;
+
+    public HistoryArchive(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Write history as a gzip member to a temporary file. It only becomes part of the archive through
+     * {@link #commit(Member)}; until then it can be dropped with {@link #discard(Member)}.
+     *
+     * @param history
+     * @return the staged member
+     */
+    public synchronized Member stage(List<History> history) throws IOException {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+
+        File target = new File(folder, "history-" + new SimpleDateFormat("yyyy-MM").format(new Date()) + ".gz");
+        File staged = new File(folder, target.getName() + "." + System.nanoTime() + STAGED);
+
+        try (FileOutputStream out = new FileOutputStream(staged)) {
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            Writer writer = new OutputStreamWriter(gzip, StandardCharsets.UTF_8);
+
+            for (History row : history) {
+                writer.write(format(row));
+                writer.write('\n');
+            }
+
+            writer.flush();
+            gzip.finish();
+            out.getFD().sync();
+        } catch (IOException e) {
+            staged.delete();
+            throw e;
+        }
+
+        return new Member(target, staged);
+    }
+
+    /**
+     * Drop a staged member whose rows were not deleted
+     *
+     * @param member
+     */
+    public synchronized void discard(Member member) {
+        member.staged.delete();
+    }
+
+    /**
+     * Add a staged member to the archive. Called once its rows are deleted; if appending fails the member
+     * stays pending and is appended by the next {@link #recover()}.
+     *
+     * @param member
+     * @return the amount of bytes the archive grew by
+     */
+    public synchronized long commit(Member member) throws IOException {
+        File pending = new File(folder, member.target.getName() + "." + member.target.length() + PENDING);
+        Files.move(member.staged.toPath(), pending.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        return append(pending);
+    }
+
+    /**
+     * Finish appending the members that are pending and remove staged members whose rows were never
+     * deleted. Must be called before staging new members.
+     */
+    public synchronized void recover() throws IOException {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(STAGED) || name.endsWith(PENDING));
+
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files);
+
+        for (File file : files) {
+            if (file.getName().endsWith(STAGED)) {
+                file.delete();
+            } else {
+                append(file);
+            }
+        }
+    }
+
+    /**
+     * Append a pending member to the month's file it belongs to and remove it
+     *
+     * @param pending named {@code <month file>.<length before the append>.pending}
+     * @return the amount of bytes appended
+     */
+    private long append(File pending) throws IOException {
+        String name = pending.getName().substring(0, pending.getName().length() - PENDING.length());
+        int separator = name.lastIndexOf('.');
+        File target = new File(folder, name.substring(0, separator));
+        long length = Long.parseLong(name.substring(separator + 1));
+
+        // an append that was interrupted is redone from the start
+        if (target.length() > length) {
+            try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+                file.setLength(length);
+            }
+        }
+
+        try (FileOutputStream out = new FileOutputStream(target, true)) {
+            Files.copy(pending.toPath(), out);
+            out.getFD().sync();
+        } catch (IOException e) {
+            try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+                file.setLength(length);
+            } catch (IOException ex) {
+                // recover() cuts it back
+            }
+
+            throw e;
+        }
+
+        long bytes = pending.length();
+        pending.delete();
+        return bytes;
+    }
+
+    /**
+     * Read every archived history row from an archive file
+     *
+     * @param file
+     * @param consumer
+     */
+    public static void read(File file, Consumer<History> consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    consumer.accept(parse(line));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the archive files, oldest first
+     */
+    public File[] getFiles() {
+        File[] files = folder.listFiles((dir, name) -> name.startsWith("history-") && name.endsWith(".gz"));
+
+        if (files == null) {
+            return new File[0];
+        }
+
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Format a history row as one archive line
+     *
+     * @param history
+     * @return
+     */
+    private static String format(History history) {
+        return history.getId() + "\t" + history.getProtectionId() + "\t" + escape(history.getPlayer()) + "\t"
+                + history.getX() + "\t" + history.getY() + "\t" + history.getZ() + "\t"
+                + history.getType().name() + "\t" + history.getStatus().name() + "\t"
+                + history.getTimestamp() + "\t" + escape(history.getSafeMetaData());
+    }
+
+    /**
+     * Parse an archive line back into a history object. The object is not linked to the database.
+     *
+     * @param line
+     * @return
+     */
+    private static History parse(String line) {
+        String[] fields = line.split("\t", 10);
+        History history = new History();
+
+        history.setId(Integer.parseInt(fields[0]));
+        history.setProtectionId(Integer.parseInt(fields[1]));
+        history.setPlayer(unescape(fields[2]));
+        history.setX(Integer.parseInt(fields[3]));
+        history.setY(Integer.parseInt(fields[4]));
+        history.setZ(Integer.parseInt(fields[5]));
+        history.setType(History.Type.valueOf(fields[6]));
+        history.setStatus(History.Status.valueOf(fields[7]));
+        history.setTimestamp(Long.parseLong(fields[8]));
+
+        String metadata = fields.length > 9 ? unescape(fields[9]) : "";
+        history.setMetaData(metadata.isEmpty() ? new String[0] : metadata.split(","));
+
+        return history;
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                builder.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+            } else {
+                builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * A member written by {@link #stage(List)}
+     */
+    public static class Member {
+
+        /**
+         * The month's file the member is appended to
+         */
+        private final File target;
+
+        /**
+         * The temporary file the member is written to
+         */
+        private final File staged;
+
+        private Member(File target, File staged) {
+            this.target = target;
+            this.staged = staged;
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.griefcraft.io;
+
+import com.griefcraft.lwc.LWC;
+import org.bukkit.Bukkit;
+
+/**
+ * A protection that was removed since the backup an incremental backup builds on
+ */
+public class RemovedProtection implements Restorable {
+
+    /**
+     * The id of the removed protection
+     */
+    private final int id;
+
+    public RemovedProtection(int id) {
+        this.id = id;
+    }
+
+    public int getType() {
+        return 2;
+    }
+
+    public void restore() {
+        LWC lwc = LWC.getInstance();
+
+        // restores run off the main thread, so the row is deleted directly and the cached instance, if any,
+        // is evicted on the main thread
+        lwc.getDatabaseThread().flushAndRun(() -> lwc.getPhysicalDatabase().restoreRemoval(id));
+        lwc.getPhysicalDatabase().getMagnetIndex().remove(id);
+        Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> lwc.getProtectionCache().evict(id, null, 0, 0, 0));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+}
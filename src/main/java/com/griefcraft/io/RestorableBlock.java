@@ -31,6 +31,7 @@ package com.griefcraft.io;
 import com.griefcraft.cache.BlockCache;
 import com.griefcraft.lwc.LWC;
 import org.bukkit.Bukkit;
+import org.bukkit.Material;
 import org.bukkit.Server;
 import org.bukkit.World;
 import org.bukkit.block.Block;
@@ -38,7 +39,14 @@ import org.bukkit.block.BlockState;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
-
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -83,46 +91,55 @@ public class RestorableBlock implements Restorable {
 
         lwc.getPlugin().getServer().getScheduler().scheduleSyncDelayedTask(lwc.getPlugin(), new Runnable() {
             public void run() {
-                Server server = Bukkit.getServer();
+                apply();
+            }
+        });
+    }
 
-                // Get the world
-                World bworld = server.getWorld(world);
+    /**
+     * Write the block and its inventory to the world. Must be called from the main thread.
+     */
+    public void apply() {
+        LWC lwc = LWC.getInstance();
+        Server server = Bukkit.getServer();
 
-                // Not found :-(
-                if (world == null) {
-                    return;
-                }
+        // Get the world
+        World bworld = server.getWorld(world);
 
-                // Get the block we want
-                Block block = bworld.getBlockAt(x, y, z);
+        // Not found :-(
+        if (bworld == null) {
+            return;
+        }
 
-                // Begin screwing with shit :p
-                BlockCache blockCache = BlockCache.getInstance();
-                block.setType(blockCache.getBlockType(id));
+        // Get the block we want
+        Block block = bworld.getBlockAt(x, y, z);
 
-                if (items.size() > 0) {
-                    if (!(block.getState() instanceof InventoryHolder)) {
-                        lwc.log(String.format("The block at [%d, %d, %d] has backed up items but no longer supports them. Why? %s", x, y, z, block.toString()));
-                    }
+        // Begin screwing with shit :p
+        BlockCache blockCache = BlockCache.getInstance();
+        block.setType(blockCache.getBlockType(id));
 
-                    // Get the block's inventory
-                    Inventory inventory = ((InventoryHolder) block.getState()).getInventory();
+        if (items.size() > 0) {
+            if (!(block.getState() instanceof InventoryHolder)) {
+                lwc.log(String.format("The block at [%d, %d, %d] has backed up items but no longer supports them. Why? %s", x, y, z, block.toString()));
+                return;
+            }
 
-                    // Set all of the items to it
-                    for (Map.Entry<Integer, ItemStack> entry : items.entrySet()) {
-                        int slot = entry.getKey();
-                        ItemStack stack = entry.getValue();
+            // Get the block's inventory
+            Inventory inventory = ((InventoryHolder) block.getState()).getInventory();
 
-                        if (stack == null) {
-                            continue;
-                        }
+            // Set all of the items to it
+            for (Map.Entry<Integer, ItemStack> entry : items.entrySet()) {
+                int slot = entry.getKey();
+                ItemStack stack = entry.getValue();
 
-                        // Add it to the inventory
-                        inventory.setItem(slot, stack);
-                    }
+                if (stack == null) {
+                    continue;
                 }
+
+                // Add it to the inventory
+                inventory.setItem(slot, stack);
             }
-        });
+        }
     }
 
     /**
@@ -158,7 +175,81 @@ public class RestorableBlock implements Restorable {
                     continue; // don't waste space!
                 }
 
-                rblock.setSlot(slot, stack);
+                // a copy, the inventory may change while the backup is written
+                rblock.setSlot(slot, stack.clone());
+            }
+        }
+
+        return rblock;
+    }
+
+    /**
+     * Write the block to a v2 backup. The material is stored by name and the items with all of their meta.
+     *
+     * @param out
+     */
+    public void write(DataOutputStream out) throws IOException {
+        BlockCache blockCache = BlockCache.getInstance();
+        Material material = blockCache.getBlockType(id);
+
+        out.writeUTF(material != null ? material.name() : "");
+        out.writeUTF(world);
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(z);
+
+        if (items.isEmpty()) {
+            out.writeInt(0);
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (BukkitObjectOutputStream objects = new BukkitObjectOutputStream(bytes)) {
+            objects.writeInt(items.size());
+
+            for (Map.Entry<Integer, ItemStack> entry : items.entrySet()) {
+                objects.writeInt(entry.getKey());
+                objects.writeObject(entry.getValue());
+            }
+        }
+
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * Read a block from a v2 backup
+     *
+     * @param in
+     * @return
+     */
+    public static RestorableBlock read(DataInputStream in) throws IOException {
+        BlockCache blockCache = BlockCache.getInstance();
+        RestorableBlock rblock = new RestorableBlock();
+        Material material = Material.matchMaterial(in.readUTF());
+
+        rblock.id = material != null ? blockCache.getBlockId(material) : -1;
+        rblock.world = in.readUTF();
+        rblock.x = in.readInt();
+        rblock.y = in.readInt();
+        rblock.z = in.readInt();
+
+        int length = in.readInt();
+
+        if (length > 0) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+
+            try (BukkitObjectInputStream objects = new BukkitObjectInputStream(new ByteArrayInputStream(bytes))) {
+                int itemCount = objects.readInt();
+
+                for (int i = 0; i < itemCount; i++) {
+                    int slot = objects.readInt();
+                    rblock.setSlot(slot, (ItemStack) objects.readObject());
+                }
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
             }
         }
 
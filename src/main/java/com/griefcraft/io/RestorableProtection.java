@@ -29,10 +29,23 @@
 package com.griefcraft.io;
 
 import com.griefcraft.lwc.LWC;
+import com.griefcraft.model.Flag;
+import com.griefcraft.model.History;
 import com.griefcraft.model.Protection;
-
+import com.griefcraft.sql.PhysDB;
+import org.bukkit.Bukkit;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 
 public class RestorableProtection implements Restorable {
 
@@ -91,6 +104,14 @@ public class RestorableProtection implements Restorable {
      */
     private long updated;
 
+    /**
+     * The password, creation date and history of the protection; only kept by v2 backups, which restore the
+     * protection exactly as it was
+     */
+    private String password;
+    private String creation;
+    private List<History> history;
+
     public int getType() {
         return 0; // TODO ENUM ENUM ENUM ENUM ENUM ENUM
     }
@@ -98,9 +119,191 @@ public class RestorableProtection implements Restorable {
     @SuppressWarnings("unused")
     public void restore() {
         LWC lwc = LWC.getInstance();
-        Protection protection = lwc.getPhysicalDatabase().registerProtection(blockId, Protection.Type.values()[protectionType],
-                world, owner, data, x, y, z);
-        // TODO fix the ID?
+
+        if (creation == null) {
+            lwc.getDatabaseThread().flushAndRun(() -> lwc.getPhysicalDatabase().registerProtection(blockId,
+                    Protection.Type.values()[protectionType], world, owner, data, x, y, z));
+            // TODO fix the ID?
+            Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> lwc.getProtectionCache().evict(-1, world, x, y, z));
+            return;
+        }
+
+        // a full payload is restored under its original id
+        Protection protection = new Protection();
+        protection.setId(id);
+        protection.setType(Protection.Type.values()[protectionType]);
+        protection.setBlockId(blockId);
+        protection.setOwner(owner);
+        protection.setWorld(world);
+        protection.setX(x);
+        protection.setY(y);
+        protection.setZ(z);
+        protection.setPassword(password);
+        protection.setCreation(creation);
+        protection.setLastAccessed(updated);
+
+        JSONArray flags = null;
+
+        try {
+            Object root = new JSONParser().parse(data);
+
+            if (root instanceof JSONObject) {
+                protection.getData().putAll((JSONObject) root);
+
+                if (((JSONObject) root).get("flags") instanceof JSONArray) {
+                    flags = (JSONArray) ((JSONObject) root).get("flags");
+                }
+            }
+        } catch (Exception e) {
+        }
+
+        PhysDB database = lwc.getPhysicalDatabase();
+
+        // the statements are shared with the database thread
+        lwc.getDatabaseThread().flushAndRun(() -> {
+            database.restoreProtection(protection);
+
+            if (history != null) {
+                for (History entry : history) {
+                    entry.setProtectionId(id);
+
+                    // history from backups older than revision 3 has no id and is written as new history
+                    if (entry.doesExist()) {
+                        database.restoreHistory(entry);
+                    } else {
+                        entry.saveNow();
+                    }
+                }
+            }
+        });
+
+        // the restored flags decide if the protection is a magnet now
+        database.getMagnetIndex().remove(id);
+
+        if (flags != null) {
+            for (Object node : flags) {
+                if (node instanceof JSONObject) {
+                    protection.addFlag(Flag.decodeJSON((JSONObject) node));
+                }
+            }
+        }
+
+        // a cached instance is out of date and must not be saved over the restored row
+        Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> lwc.getProtectionCache().evict(id, world, x, y, z));
+    }
+
+    /**
+     * Write the full protection to a v2 backup
+     *
+     * @param out
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(id);
+        out.writeByte(protectionType);
+        out.writeInt(blockId);
+        out.writeUTF(owner);
+        out.writeUTF(world);
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(z);
+        out.writeLong(created);
+        out.writeLong(updated);
+        writeString(out, data);
+        writeString(out, password);
+        writeString(out, creation);
+
+        List<History> history = this.history != null ? this.history : new ArrayList<History>();
+        out.writeInt(history.size());
+
+        for (History entry : history) {
+            out.writeInt(entry.getId());
+            out.writeByte(entry.getType().ordinal());
+            out.writeByte(entry.getStatus().ordinal());
+            writeString(out, entry.getPlayer());
+            out.writeInt(entry.getX());
+            out.writeInt(entry.getY());
+            out.writeInt(entry.getZ());
+            writeString(out, entry.getSafeMetaData());
+            out.writeLong(entry.getTimestamp());
+        }
+    }
+
+    /**
+     * Read a full protection from a v2 backup
+     *
+     * @param in
+     * @param revision the revision of the format the backup was written in
+     * @return
+     */
+    public static RestorableProtection read(DataInputStream in, int revision) throws IOException {
+        RestorableProtection rprotection = new RestorableProtection();
+        rprotection.id = in.readInt();
+        rprotection.protectionType = in.readByte();
+        rprotection.blockId = in.readInt();
+        rprotection.owner = in.readUTF();
+        rprotection.world = in.readUTF();
+        rprotection.x = in.readInt();
+        rprotection.y = in.readInt();
+        rprotection.z = in.readInt();
+        rprotection.created = in.readLong();
+        rprotection.updated = in.readLong();
+        rprotection.data = readString(in);
+        rprotection.password = readString(in);
+        rprotection.creation = readString(in);
+
+        int historyCount = in.readInt();
+        rprotection.history = new ArrayList<History>(historyCount);
+
+        for (int i = 0; i < historyCount; i++) {
+            History entry = new History();
+
+            if (revision >= 3) {
+                entry.setId(in.readInt());
+            }
+
+            entry.setType(History.Type.values()[in.readByte()]);
+            entry.setStatus(History.Status.values()[in.readByte()]);
+            entry.setPlayer(readString(in));
+            entry.setX(in.readInt());
+            entry.setY(in.readInt());
+            entry.setZ(in.readInt());
+
+            String metadata = readString(in);
+            entry.setMetaData(metadata == null || metadata.isEmpty() ? new String[0] : metadata.split(","));
+            entry.setTimestamp(in.readLong());
+            rprotection.history.add(entry);
+        }
+
+        return rprotection;
+    }
+
+    /**
+     * Write a string that may be longer than writeUTF allows, or null
+     *
+     * @param out
+     * @param value
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     /**
@@ -127,6 +330,8 @@ public class RestorableProtection implements Restorable {
             rprotection.data = protection.getData().toJSONString();
             rprotection.created = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(protection.getCreation()).getTime() / 1000;
             rprotection.updated = protection.getLastAccessed();
+            rprotection.password = protection.getPassword();
+            rprotection.creation = protection.getCreation();
 
             return rprotection;
         } catch (ParseException e) {
@@ -222,4 +427,12 @@ public class RestorableProtection implements Restorable {
     public void setUpdated(long updated) {
         this.updated = updated;
     }
+
+    public List<History> getHistory() {
+        return history;
+    }
+
+    public void setHistory(List<History> history) {
+        this.history = history;
+    }
 }
@@ -196,6 +196,7 @@ public class LWCBlockListener implements Listener {
         LWC lwc = plugin.getLWC();
         Player player = event.getPlayer();
         Block block = event.getBlock();
+        lwc.getDepositService().invalidate(block);
 
         boolean ignoreBlockDestruction = Boolean
                 .parseBoolean(lwc.resolveProtectionConfiguration(block, "ignoreBlockDestruction"));
@@ -431,6 +432,7 @@ public class LWCBlockListener implements Listener {
         LWC lwc = plugin.getLWC();
         Player player = event.getPlayer();
         Block block = event.getBlockPlaced();
+        lwc.getDepositService().invalidate(block);
 
         // Update the cache if a protection is matched here
         Protection current = lwc.findProtection(block.getLocation());
@@ -438,6 +438,11 @@ public class LWCPlayerListener implements Listener {
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
         UUIDRegistry.updateCache(player.getUniqueId(), player.getName());
+
+        if (LWC.ENABLED) {
+            // start the player's session
+            LWCPlayer.getPlayer(player);
+        }
     }
 
     @EventHandler(ignoreCancelled = true)
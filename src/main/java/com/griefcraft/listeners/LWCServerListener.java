@@ -33,6 +33,7 @@ import com.griefcraft.lwc.LWCPlugin;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
 import org.bukkit.plugin.Plugin;
 
 public class LWCServerListener implements Listener {
@@ -55,4 +56,14 @@ public class LWCServerListener implements Listener {
         plugin.getLWC().getModuleLoader().removeModules(disabled);
     }
 
+    @EventHandler
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        if (!LWC.ENABLED) {
+            return;
+        }
+
+        // inventories in the chunk are no longer live
+        plugin.getLWC().getDepositService().invalidate(event.getChunk());
+    }
+
 }
@@ -0,0 +1,104 @@
+package com.griefcraft.listeners;
+
+import com.griefcraft.util.statistics.TickBudget;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Calls an {@link EventHandler} method and records the time it spends in the tick budget.
+ * Registration mirrors what Bukkit does for {@link PluginManager#registerEvents(Listener, Plugin)}.
+ */
+public class TimedEventExecutor implements EventExecutor {
+
+    /**
+     * The event the handler accepts
+     */
+    private final Class<? extends Event> eventClass;
+
+    /**
+     * The handler method
+     */
+    private final Method method;
+
+    /**
+     * The section the handler's time is recorded in
+     */
+    private final TickBudget.Section section;
+
+    private TimedEventExecutor(Class<? extends Event> eventClass, Method method, TickBudget.Section section) {
+        this.eventClass = eventClass;
+        this.method = method;
+        this.section = section;
+    }
+
+    /**
+     * Register all of the event handlers in a listener, timing each of them
+     *
+     * @param pluginManager
+     * @param listener
+     * @param plugin
+     * @param budget
+     */
+    public static void registerEvents(PluginManager pluginManager, Listener listener, Plugin plugin, TickBudget budget) {
+        Set<Method> methods = new LinkedHashSet<>();
+
+        for (Method method : listener.getClass().getMethods()) {
+            methods.add(method);
+        }
+
+        for (Method method : listener.getClass().getDeclaredMethods()) {
+            methods.add(method);
+        }
+
+        for (Method method : methods) {
+            EventHandler handler = method.getAnnotation(EventHandler.class);
+
+            if (handler == null || method.isBridge() || method.isSynthetic()) {
+                continue;
+            }
+
+            Class<?>[] parameters = method.getParameterTypes();
+
+            if (parameters.length != 1 || !Event.class.isAssignableFrom(parameters[0])) {
+                plugin.getLogger().severe("Invalid event handler " + method.toGenericString() + " in " + listener.getClass());
+                continue;
+            }
+
+            Class<? extends Event> eventClass = parameters[0].asSubclass(Event.class);
+            TickBudget.Section section = budget.section(listener.getClass().getSimpleName() + "#" + method.getName());
+
+            method.setAccessible(true);
+            pluginManager.registerEvent(eventClass, listener, handler.priority(),
+                    new TimedEventExecutor(eventClass, method, section), plugin, handler.ignoreCancelled());
+        }
+    }
+
+    public void execute(Listener listener, Event event) throws EventException {
+        if (!eventClass.isAssignableFrom(event.getClass())) {
+            return;
+        }
+
+        long start = section.start();
+
+        try {
+            method.invoke(listener, event);
+        } catch (InvocationTargetException e) {
+            throw new EventException(e.getCause());
+        } catch (Throwable t) {
+            throw new EventException(t);
+        } finally {
+            section.stop(start);
+        }
+    }
+
+}
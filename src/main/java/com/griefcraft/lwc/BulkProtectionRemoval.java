@@ -0,0 +1,504 @@
+package com.griefcraft.lwc;
+
+import com.griefcraft.model.Flag;
+import com.griefcraft.model.History;
+import com.griefcraft.model.Protection;
+import com.griefcraft.sql.Database;
+import com.griefcraft.sql.PhysDB;
+import com.griefcraft.util.Colors;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.scheduler.BukkitTask;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Removes every protection matching a condition, e.g for /lwc admin purge and expire.
+ * <p/>
+ * Exempt block ids are filtered in SQL and only protections whose data may hold the exemption flag are
+ * decoded. The ids are kept in primitive arrays and deleted with parameterized batches.
+ * Blocks are then removed from the world one chunk at a time within a per-tick budget. In a dry run only the
+ * counts are reported.
+ */
+public class BulkProtectionRemoval {
+
+    /**
+     * The amount of ids bound per DELETE; keeps a statement under SQLite's limit of 999 parameters
+     */
+    private static final int DELETE_BATCH = 500;
+
+    private final LWC lwc;
+    private final CommandSender sender;
+
+    /**
+     * The SQL condition protections are matched with and its parameters
+     */
+    private final String where;
+    private final Object[] parameters;
+
+    private final boolean removeBlocks;
+    private final boolean dryRun;
+
+    /**
+     * The ids of the matched protections
+     */
+    private int[] ids = new int[1024];
+
+    /**
+     * The world and coordinates of each matched protection, by index into {@link #ids}
+     */
+    private int[] worlds = new int[1024];
+    private int[] xs = new int[1024];
+    private int[] ys = new int[1024];
+    private int[] zs = new int[1024];
+    private final List<String> worldNames = new ArrayList<>();
+
+    private int count = 0;
+    private int exempted = 0;
+    private int removed = 0;
+    private int blocksRemoved = 0;
+
+    public BulkProtectionRemoval(LWC lwc, CommandSender sender, String where, Object[] parameters,
+                                 boolean removeBlocks, boolean dryRun) {
+        this.lwc = lwc;
+        this.sender = sender;
+        this.where = where;
+        this.parameters = parameters;
+        this.removeBlocks = removeBlocks;
+        this.dryRun = dryRun;
+    }
+
+    /**
+     * Find and delete the protections on an async task, then remove their blocks on the main thread
+     *
+     * @param onComplete called on the main thread with this removal once it is done
+     */
+    public void start(Consumer<BulkProtectionRemoval> onComplete) {
+        Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), () -> {
+            lwc.getDatabaseThread().flushAndRun(() -> {
+                find();
+
+                if (!dryRun) {
+                    delete();
+                }
+            });
+
+            Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> {
+                // nothing was deleted, so the blocks are left alone
+                if (dryRun || removed == 0) {
+                    onComplete.accept(this);
+                    return;
+                }
+
+                uncache();
+
+                if (removeBlocks) {
+                    new BlockRemover(onComplete).start();
+                } else {
+                    onComplete.accept(this);
+                }
+            });
+        });
+    }
+
+    /**
+     * Find and delete the protections on the calling thread. Blocks are still removed over the next ticks.
+     *
+     * @return the amount of protections deleted
+     */
+    public int runNow() {
+        lwc.getDatabaseThread().flushAndRun(() -> {
+            find();
+
+            if (!dryRun) {
+                delete();
+            }
+        });
+
+        if (!dryRun && removed > 0) {
+            uncache();
+
+            if (removeBlocks) {
+                new BlockRemover(removal -> {
+                }).start();
+            }
+        }
+
+        return dryRun ? count : removed;
+    }
+
+    /**
+     * Stream the matching protections, skipping exempt ones
+     */
+    private void find() {
+        PhysDB database = lwc.getPhysicalDatabase();
+        List<Integer> exemptBlocks = lwc.getConfiguration().getIntList("optional.exemptBlocks", new ArrayList<Integer>());
+        int exemption = Flag.Type.EXEMPTION.ordinal();
+
+        StringBuilder sql = new StringBuilder("SELECT id, blockId, world, x, y, z, CASE WHEN data LIKE ? OR data LIKE ? THEN data END AS flagData FROM ")
+                .append(database.getPrefix()).append("protections");
+        sql.append(where == null || where.trim().isEmpty() ? " WHERE 1 = 1" : " WHERE (" + where + ")");
+
+        if (!exemptBlocks.isEmpty()) {
+            sql.append(" AND blockId NOT IN (");
+
+            for (int i = 0; i < exemptBlocks.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+
+            sql.append(")");
+        }
+
+        JSONParser parser = new JSONParser();
+        Map<String, Integer> worldIndexes = new HashMap<>();
+
+        try (PreparedStatement statement = database.getConnection().prepareStatement(sql.toString(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            if (database.getType() == Database.Type.MySQL) {
+                statement.setFetchSize(Integer.MIN_VALUE);
+            }
+
+            int parameter = 1;
+
+            // only data holding the exemption flag id needs to be decoded
+            statement.setString(parameter++, "%\"id\":" + exemption + "}%");
+            statement.setString(parameter++, "%\"id\":" + exemption + ",%");
+
+            for (Object value : parameters) {
+                statement.setObject(parameter++, value);
+            }
+
+            for (int blockId : exemptBlocks) {
+                statement.setInt(parameter++, blockId);
+            }
+
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    String flagData = set.getString("flagData");
+
+                    if (flagData != null && hasExemption(parser, flagData, exemption)) {
+                        exempted++;
+                        continue;
+                    }
+
+                    String world = set.getString("world");
+
+                    // protections in worlds that are not loaded are kept
+                    if (Bukkit.getWorld(world) == null) {
+                        continue;
+                    }
+
+                    Integer worldIndex = worldIndexes.get(world);
+
+                    if (worldIndex == null) {
+                        worldIndex = worldNames.size();
+                        worldNames.add(world);
+                        worldIndexes.put(world, worldIndex);
+                    }
+
+                    add(set.getInt("id"), worldIndex, set.getInt("x"), set.getInt("y"), set.getInt("z"));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        message(Colors.Dark_Green + (dryRun ? "Would remove " : "Found ") + count + " protections"
+                + Colors.White + " (" + exempted + " exempted)");
+    }
+
+    /**
+     * Delete the found protections and deactivate their history, one batch at a time. Each statement commits
+     * on its own: the connection is shared, so a transaction here would also take in, and on a rollback undo,
+     * the writes other threads make meanwhile. If a batch fails the removal stops there, and only the
+     * protections that were deleted before it and were still in the database are kept, so only their blocks
+     * are removed.
+     */
+    private void delete() {
+        if (count == 0) {
+            return;
+        }
+
+        PhysDB database = lwc.getPhysicalDatabase();
+        String prefix = database.getPrefix();
+
+        // the indexes of the protections that were still there when they were deleted
+        BitSet deleted = new BitSet(count);
+
+        try {
+            for (int offset = 0; offset < count; offset += DELETE_BATCH) {
+                int size = Math.min(DELETE_BATCH, count - offset);
+                String ids = placeholders(size);
+                PreparedStatement existing = database.prepare("SELECT id FROM " + prefix + "protections WHERE id IN (" + ids + ")");
+                Map<Integer, Integer> indexes = new HashMap<>();
+                BitSet batch = new BitSet(count);
+
+                for (int i = 0; i < size; i++) {
+                    existing.setInt(i + 1, this.ids[offset + i]);
+                    indexes.put(this.ids[offset + i], offset + i);
+                }
+
+                try (ResultSet set = existing.executeQuery()) {
+                    while (set.next()) {
+                        Integer index = indexes.get(set.getInt("id"));
+
+                        if (index != null) {
+                            batch.set(index);
+                        }
+                    }
+                }
+
+                // full batches reuse one cached statement
+                PreparedStatement deleteProtections = database.prepare("DELETE FROM " + prefix + "protections WHERE id IN (" + ids + ")");
+                PreparedStatement deactivateHistory = database.prepare("UPDATE " + prefix + "history SET status = "
+                        + History.Status.INACTIVE.ordinal() + " WHERE protectionId IN (" + ids + ")");
+
+                Object[] changed = new Object[size];
+
+                for (int i = 0; i < size; i++) {
+                    deleteProtections.setInt(i + 1, this.ids[offset + i]);
+                    deactivateHistory.setInt(i + 1, this.ids[offset + i]);
+                    changed[i] = this.ids[offset + i];
+                }
+
+                database.logChanges("id IN (" + ids + ")", changed);
+
+                removed += deleteProtections.executeUpdate();
+                deleted.or(batch);
+                deactivateHistory.executeUpdate();
+            }
+        } catch (SQLException e) {
+            database.log("Bulk removal stopped after " + removed + " protections: " + e.getMessage());
+        }
+
+        retain(deleted);
+
+        for (int i = 0; i < removed; i++) {
+            database.decrementProtectionCount();
+        }
+
+        database.getCountIndex().clear();
+        message(Colors.Dark_Green + "Removed " + removed + " protections");
+    }
+
+    /**
+     * Keep only the protections at the given indexes
+     *
+     * @param indexes
+     */
+    private void retain(BitSet indexes) {
+        int kept = 0;
+
+        for (int i = indexes.nextSetBit(0); i >= 0; i = indexes.nextSetBit(i + 1)) {
+            ids[kept] = ids[i];
+            worlds[kept] = worlds[i];
+            xs[kept] = xs[i];
+            ys[kept] = ys[i];
+            zs[kept] = zs[i];
+            kept++;
+        }
+
+        count = kept;
+    }
+
+    /**
+     * Drop the removed protections from the cache in one pass
+     */
+    private void uncache() {
+        List<Protection> cached = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            Protection protection = lwc.getProtectionCache().getProtectionById(ids[i]);
+
+            if (protection != null) {
+                cached.add(protection);
+            }
+        }
+
+        lwc.getProtectionCache().removeProtections(cached);
+    }
+
+    /**
+     * Removes the blocks of the removed protections one chunk at a time
+     */
+    private class BlockRemover {
+
+        private final Consumer<BulkProtectionRemoval> onComplete;
+
+        /**
+         * The indexes of the protections in each chunk, by world and chunk
+         */
+        private final Iterator<int[]> chunks;
+
+        private final long budget;
+        private BukkitTask task;
+
+        BlockRemover(Consumer<BulkProtectionRemoval> onComplete) {
+            this.onComplete = onComplete;
+            this.budget = TimeUnit.MILLISECONDS.toNanos(Math.max(1,
+                    lwc.getConfiguration().getInt("core.tickBudget.bulkRemoval", 5)));
+
+            Map<Long, int[]> byChunk = new HashMap<>();
+            Map<Long, Integer> sizes = new HashMap<>();
+
+            for (int i = 0; i < count; i++) {
+                long key = ((long) worlds[i] << 48) ^ ((long) (xs[i] >> 4) << 24) ^ ((zs[i] >> 4) & 0xFFFFFFL);
+                int[] indexes = byChunk.get(key);
+                int size = sizes.getOrDefault(key, 0);
+
+                if (indexes == null || size == indexes.length) {
+                    indexes = indexes == null ? new int[8] : Arrays.copyOf(indexes, size * 2);
+                    byChunk.put(key, indexes);
+                }
+
+                indexes[size] = i;
+                sizes.put(key, size + 1);
+            }
+
+            List<int[]> chunks = new ArrayList<>(byChunk.size());
+
+            for (Map.Entry<Long, int[]> entry : byChunk.entrySet()) {
+                chunks.add(Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey())));
+            }
+
+            this.chunks = chunks.iterator();
+        }
+
+        void start() {
+            task = Bukkit.getScheduler().runTaskTimer(lwc.getPlugin(),
+                    lwc.getTickBudget().wrap("BulkProtectionRemoval#removeBlocks", this::tick), 1, 1);
+        }
+
+        private void tick() {
+            long start = System.nanoTime();
+
+            while (chunks.hasNext() && System.nanoTime() - start < budget) {
+                for (int index : chunks.next()) {
+                    World world = Bukkit.getWorld(worldNames.get(worlds[index]));
+
+                    if (world != null && lwc.removeProtectedBlock(world.getBlockAt(xs[index], ys[index], zs[index]))) {
+                        blocksRemoved++;
+                    }
+                }
+            }
+
+            if (!chunks.hasNext()) {
+                task.cancel();
+                sender.sendMessage("Removed " + blocksRemoved + " blocks from the world");
+                onComplete.accept(BulkProtectionRemoval.this);
+            }
+        }
+
+    }
+
+    private void add(int id, int world, int x, int y, int z) {
+        if (count == ids.length) {
+            int capacity = count * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            worlds = Arrays.copyOf(worlds, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            zs = Arrays.copyOf(zs, capacity);
+        }
+
+        ids[count] = id;
+        worlds[count] = world;
+        xs[count] = x;
+        ys[count] = y;
+        zs[count] = z;
+        count++;
+    }
+
+    /**
+     * Check if protection data holds the exemption flag
+     *
+     * @param parser
+     * @param data
+     * @param exemption
+     * @return
+     */
+    private static boolean hasExemption(JSONParser parser, String data, int exemption) {
+        try {
+            Object flags = ((JSONObject) parser.parse(data)).get("flags");
+
+            if (flags instanceof JSONArray) {
+                for (Object flag : (JSONArray) flags) {
+                    if (flag instanceof JSONObject && String.valueOf(exemption).equals(String.valueOf(((JSONObject) flag).get("id")))) {
+                        return true;
+                    }
+                }
+            }
+        } catch (ParseException | ClassCastException e) {
+        }
+
+        return false;
+    }
+
+    private static String placeholders(int amount) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < amount; i++) {
+            builder.append(i == 0 ? "?" : ", ?");
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Send a message to the sender on the main thread
+     *
+     * @param message
+     */
+    private void message(String message) {
+        if (Bukkit.isPrimaryThread()) {
+            sender.sendMessage(message);
+        } else {
+            Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> sender.sendMessage(message));
+        }
+    }
+
+    /**
+     * @return the amount of protections matched, not counting exempt ones
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return the amount of protections skipped because they are exempt
+     */
+    public int getExempted() {
+        return exempted;
+    }
+
+    /**
+     * @return the amount of protections deleted
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return true if nothing is removed and only the counts are reported
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+}
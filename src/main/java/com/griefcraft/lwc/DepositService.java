@@ -0,0 +1,355 @@
+package com.griefcraft.lwc;
+
+import com.griefcraft.util.matchers.DoubleChestMatcher;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Deposits items into containers. The inventory of a container, and that of the other half of a double chest,
+ * is resolved once and kept until the block or one next to it changes or its chunk unloads, so a deposit does
+ * not have to snapshot the block. Deposits can also be queued and are then inserted per container with one
+ * call, similar stacks merged, when the queue is flushed.
+ */
+public class DepositService {
+
+    private final LWC lwc;
+
+    /**
+     * The resolved containers by location
+     */
+    private final Map<String, Target> targets = new HashMap<>();
+
+    /**
+     * The queued deposits by container, in the order they were queued
+     */
+    private final Map<Target, List<Deposit>> queued = new LinkedHashMap<>();
+
+    public DepositService(LWC lwc) {
+        this.lwc = lwc;
+    }
+
+    /**
+     * Deposit items into a container right away
+     *
+     * @param block
+     * @param itemStack
+     * @return remaining items (if any), or null if the container does not accept the items
+     */
+    public Map<Integer, ItemStack> deposit(Block block, ItemStack itemStack) {
+        Target target = resolve(block);
+
+        if (target == null || itemStack.getAmount() <= 0) {
+            return new HashMap<Integer, ItemStack>();
+        }
+
+        if (!target.accepts(itemStack, itemStack.getAmount())) {
+            return null;
+        }
+
+        Map<Integer, ItemStack> remaining = target.inventory.addItem(itemStack);
+
+        // is it a double chest ?????
+        if (remaining.size() > 0 && target.partnerInventory != null) {
+            remaining = target.partnerInventory.addItem(remaining.values().iterator().next());
+        }
+
+        return remaining;
+    }
+
+    /**
+     * Queue items to be deposited into a container when the queue is next flushed
+     *
+     * @param block
+     * @param itemStack
+     * @param leftover  receives the amount of the items that was not deposited once the queue is flushed
+     * @return false if the block is not a container
+     */
+    public boolean queue(Block block, ItemStack itemStack, IntConsumer leftover) {
+        Target target = resolve(block);
+
+        if (target == null) {
+            return false;
+        }
+
+        queued.computeIfAbsent(target, k -> new ArrayList<>()).add(new Deposit(itemStack.clone(), leftover));
+        return true;
+    }
+
+    /**
+     * Deposit the queued items, one insertion per container
+     */
+    public void flush() {
+        if (queued.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<Target, List<Deposit>>> pending = new ArrayList<>(queued.entrySet());
+        queued.clear();
+
+        for (Map.Entry<Target, List<Deposit>> entry : pending) {
+            Target target = entry.getKey();
+
+            // merge similar stacks so each is inserted once
+            List<List<Deposit>> groups = new ArrayList<>();
+
+            for (Deposit deposit : entry.getValue()) {
+                List<Deposit> group = null;
+
+                for (List<Deposit> other : groups) {
+                    if (other.get(0).itemStack.isSimilar(deposit.itemStack)) {
+                        group = other;
+                        break;
+                    }
+                }
+
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.add(group);
+                }
+
+                group.add(deposit);
+            }
+
+            List<ItemStack> stacks = new ArrayList<>();
+            List<List<Deposit>> inserted = new ArrayList<>();
+
+            for (List<Deposit> group : groups) {
+                ItemStack merged = group.get(0).itemStack.clone();
+                int amount = 0;
+
+                for (Deposit deposit : group) {
+                    amount += deposit.itemStack.getAmount();
+                }
+
+                merged.setAmount(amount);
+
+                if (!target.isValid() || !target.accepts(merged, amount)) {
+                    distribute(group, amount);
+                    continue;
+                }
+
+                stacks.add(merged);
+                inserted.add(group);
+            }
+
+            if (stacks.isEmpty()) {
+                continue;
+            }
+
+            Map<Integer, ItemStack> remaining = target.inventory.addItem(stacks.toArray(new ItemStack[0]));
+
+            if (remaining.size() > 0 && target.partnerInventory != null) {
+                Map<Integer, ItemStack> overflow = new HashMap<>();
+
+                for (Map.Entry<Integer, ItemStack> stack : remaining.entrySet()) {
+                    ItemStack left = target.partnerInventory.addItem(stack.getValue()).get(0);
+
+                    if (left != null) {
+                        overflow.put(stack.getKey(), left);
+                    }
+                }
+
+                remaining = overflow;
+            }
+
+            for (int i = 0; i < inserted.size(); i++) {
+                ItemStack left = remaining.get(i);
+                distribute(inserted.get(i), left == null ? 0 : left.getAmount());
+            }
+        }
+    }
+
+    /**
+     * Check if a block is a container items can be deposited into
+     *
+     * @param block
+     * @return
+     */
+    public boolean isContainer(Block block) {
+        return resolve(block) != null;
+    }
+
+    /**
+     * Forget the container at a block and those next to it. Called when a block is placed or broken.
+     *
+     * @param block
+     */
+    public void invalidate(Block block) {
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        for (int x = -1; x <= 1; x++) {
+            for (int z = -1; z <= 1; z++) {
+                if (x == 0 || z == 0) {
+                    targets.remove(key(block.getWorld().getName(), block.getX() + x, block.getY(), block.getZ() + z));
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the containers in a chunk. Called when the chunk unloads, as its inventories are no longer live.
+     *
+     * @param chunk
+     */
+    public void invalidate(Chunk chunk) {
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        String world = chunk.getWorld().getName();
+        Iterator<Target> iterator = targets.values().iterator();
+
+        while (iterator.hasNext()) {
+            Block block = iterator.next().block;
+
+            if (block.getX() >> 4 == chunk.getX() && block.getZ() >> 4 == chunk.getZ()
+                    && block.getWorld().getName().equals(world)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget every container
+     */
+    public void clear() {
+        targets.clear();
+    }
+
+    /**
+     * Get the container at a block, resolving it if needed
+     *
+     * @param block
+     * @return null if the block is not a container
+     */
+    private Target resolve(Block block) {
+        String key = key(block.getWorld().getName(), block.getX(), block.getY(), block.getZ());
+        Target target = targets.get(key);
+
+        if (target != null && target.isValid()) {
+            return target;
+        }
+
+        targets.remove(key);
+        BlockState state = block.getState();
+
+        if (!(state instanceof InventoryHolder)) {
+            return null;
+        }
+
+        target = new Target(block, ((InventoryHolder) state).getInventory());
+
+        if (DoubleChestMatcher.PROTECTABLES_CHESTS.contains(block.getType())) {
+            Block partner = lwc.findAdjacentDoubleChest(block);
+
+            if (partner != null && !partner.equals(block) && partner.getState() instanceof InventoryHolder) {
+                target.partner = partner;
+                target.partnerType = partner.getType();
+                target.partnerInventory = ((InventoryHolder) partner.getState()).getInventory();
+            }
+        }
+
+        targets.put(key, target);
+        return target;
+    }
+
+    /**
+     * Hand the amount that did not fit back to the deposits of a merged stack, the last queued first
+     *
+     * @param group
+     * @param leftover
+     */
+    private void distribute(List<Deposit> group, int leftover) {
+        int[] amounts = new int[group.size()];
+
+        for (int i = group.size() - 1; i >= 0; i--) {
+            amounts[i] = Math.min(leftover, group.get(i).itemStack.getAmount());
+            leftover -= amounts[i];
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).leftover.accept(amounts[i]);
+        }
+    }
+
+    private static String key(String world, int x, int y, int z) {
+        return world + ":" + x + ":" + y + ":" + z;
+    }
+
+    /**
+     * A container and the live inventories of it
+     */
+    private static class Target {
+        private final Block block;
+        private final Material type;
+        private final Inventory inventory;
+        private Block partner;
+        private Material partnerType;
+        private Inventory partnerInventory;
+
+        private Target(Block block, Inventory inventory) {
+            this.block = block;
+            this.type = block.getType();
+            this.inventory = inventory;
+        }
+
+        /**
+         * @return true if the blocks are still what they were resolved as
+         */
+        private boolean isValid() {
+            return block.getType() == type && (partner == null || partner.getType() == partnerType);
+        }
+
+        /**
+         * Check if the container accepts items; a furnace only takes items that fit its filled slots
+         *
+         * @param itemStack
+         * @param amount
+         * @return
+         */
+        private boolean accepts(ItemStack itemStack, int amount) {
+            if (type != Material.FURNACE) {
+                return true;
+            }
+
+            ItemStack first = inventory.getItem(0);
+            ItemStack second = inventory.getItem(1);
+
+            if (first == null || second == null) {
+                return true;
+            }
+
+            return (first.getType() == itemStack.getType() && first.getMaxStackSize() >= first.getAmount() + amount)
+                    || (second.getType() == itemStack.getType() && second.getMaxStackSize() >= second.getAmount() + amount);
+        }
+    }
+
+    /**
+     * Items waiting to be deposited
+     */
+    private static class Deposit {
+        private final ItemStack itemStack;
+        private final IntConsumer leftover;
+
+        private Deposit(ItemStack itemStack, IntConsumer leftover) {
+            this.itemStack = itemStack;
+            this.leftover = leftover;
+        }
+    }
+
+}
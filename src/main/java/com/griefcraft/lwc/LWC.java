@@ -75,10 +75,13 @@ import com.griefcraft.scripting.event.LWCAccessEvent;
 import com.griefcraft.scripting.event.LWCReloadEvent;
 import com.griefcraft.scripting.event.LWCSendLocaleEvent;
 import com.griefcraft.sql.Database;
+import com.griefcraft.sql.HistoryRetention;
 import com.griefcraft.sql.PhysDB;
 import com.griefcraft.util.*;
 import com.griefcraft.util.config.Configuration;
 import com.griefcraft.util.matchers.DoubleChestMatcher;
+import com.griefcraft.util.statistics.OpenMetricsExporter;
+import com.griefcraft.util.statistics.TickBudget;
 import net.md_5.bungee.api.ChatMessageType;
 import net.md_5.bungee.api.chat.TextComponent;
 import org.apache.commons.lang.ArrayUtils;
@@ -100,10 +103,10 @@ import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class LWC {
 
@@ -172,6 +175,21 @@ public class LWC {
      */
     private boolean alternativeHoppers;
 
+    /**
+     * Tracks how much main thread time LWC uses each tick
+     */
+    private TickBudget tickBudget;
+
+    /**
+     * Removes history that is past its retention
+     */
+    private HistoryRetention historyRetention;
+
+    /**
+     * Deposits items into containers for magnets and drop transfer
+     */
+    private final DepositService depositService;
+
     public LWC(LWCPlugin plugin) {
         this.plugin = plugin;
         LWC.instance = this;
@@ -179,6 +197,7 @@ public class LWC {
         alternativeHoppers = configuration.getBoolean("optional.alternativeHopperProtection", false);
         protectionCache = new ProtectionCache(this);
         backupManager = new BackupManager();
+        depositService = new DepositService(this);
         moduleLoader = new ModuleLoader(this);
     }
 
@@ -393,7 +412,7 @@ public class LWC {
                 break;
 
             case PASSWORD:
-                if (protection.isOwner(player) && wrapPlayer(player).getAccessibleProtections().contains(protection)) {
+                if (protection.isOwner(player) && wrapPlayer(player).hasAccessibleProtection(protection.getId())) {
                     return true;
                 }
 
@@ -441,57 +460,7 @@ public class LWC {
      * @return remaining items (if any)
      */
     public Map<Integer, ItemStack> depositItems(Block block, ItemStack itemStack) {
-        BlockState blockState;
-
-        if ((blockState = block.getState()) != null && (blockState instanceof InventoryHolder)) {
-            Block doubleChestBlock = null;
-            InventoryHolder holder = (InventoryHolder) blockState;
-
-            if (DoubleChestMatcher.PROTECTABLES_CHESTS.contains(block.getType())) {
-                doubleChestBlock = findAdjacentDoubleChest(block);
-            } else if (block.getType() == Material.FURNACE) {
-                Inventory inventory = holder.getInventory();
-
-                if (inventory.getItem(0) != null && inventory.getItem(1) != null) {
-                    if (inventory.getItem(0).getType() == itemStack.getType()
-                            && inventory.getItem(0)
-                            .getMaxStackSize() >= (inventory.getItem(0).getAmount() + itemStack.getAmount())) {
-                        // ItemStack fits on Slot 0
-                    } else if (inventory.getItem(1).getType() == itemStack.getType()
-                            && inventory.getItem(1)
-                            .getMaxStackSize() >= (inventory.getItem(1).getAmount() + itemStack.getAmount())) {
-                        // ItemStack fits on Slot 1
-                    } else {
-                        return null;
-                    }
-                }
-            }
-
-            if (itemStack.getAmount() <= 0) {
-                return new HashMap<Integer, ItemStack>();
-            }
-
-            Map<Integer, ItemStack> remaining = holder.getInventory().addItem(itemStack);
-
-            // we have remainders, deal with it
-            if (remaining.size() > 0) {
-                int key = remaining.keySet().iterator().next();
-                ItemStack remainingItemStack = remaining.get(key);
-
-                // is it a double chest ?????
-                if (doubleChestBlock != null) {
-                    InventoryHolder holder2 = (InventoryHolder) doubleChestBlock.getState();
-                    remaining = holder2.getInventory().addItem(remainingItemStack);
-                }
-
-                // recheck remaining in the event of double chest being used
-                if (remaining.size() > 0) {
-                    return remaining;
-                }
-            }
-        }
-
-        return new HashMap<Integer, ItemStack>();
+        return depositService.deposit(block, itemStack);
     }
 
     /**
@@ -749,7 +718,7 @@ public class LWC {
                 return true;
 
             case PASSWORD:
-                if (wrapPlayer(player).getAccessibleProtections().contains(protection)) {
+                if (wrapPlayer(player).hasAccessibleProtection(protection.getId())) {
                     return true;
                 }
 
@@ -1046,11 +1015,13 @@ public class LWC {
      * @param player
      * @param shouldRemoveBlocks
      * @return
+     * @deprecated runs on the calling thread; use {@link #removeProtections(CommandSender, String, Object[], boolean, boolean, Consumer)}
      */
+    @Deprecated
     public int fastRemoveProtectionsByPlayer(CommandSender sender, String player, boolean shouldRemoveBlocks) {
         UUID uuid = UUIDRegistry.getUUID(player);
-        int ret = fastRemoveProtections(sender,
-                "Lower(owner) = Lower('" + (uuid != null ? uuid.toString() : player) + "')", shouldRemoveBlocks);
+        int ret = new BulkProtectionRemoval(this, sender, "LOWER(owner) = ?",
+                new Object[]{(uuid != null ? uuid.toString() : player).toLowerCase()}, shouldRemoveBlocks, false).runNow();
 
         // invalid any history objects associated with the player
         physicalDatabase.invalidateHistory(player);
@@ -1068,187 +1039,100 @@ public class LWC {
     }
 
     /**
-     * Remove protections very quickly with raw SQL calls
+     * Remove every protection in a cuboid. The protections are found with one range query on the location
+     * index and deleted in batches, and the cache is cleared of them in one pass.
      *
-     * @param sender
-     * @param where
-     * @param shouldRemoveBlocks
-     * @return
+     * @param world
+     * @param x1
+     * @param x2
+     * @param y1
+     * @param y2
+     * @param z1
+     * @param z2
+     * @return the amount of protections removed
      */
-    public int fastRemoveProtections(CommandSender sender, String where, boolean shouldRemoveBlocks) {
-        List<Integer> exemptedBlocks = configuration.getIntList("optional.exemptBlocks", new ArrayList<Integer>());
-        List<Integer> toRemove = new LinkedList<>();
-        List<Block> removeBlocks = null;
-        int totalProtections = physicalDatabase.getProtectionCount();
-        int completed = 0;
-        int count = 0;
-
-        // flush all changes to the database before working on the live database
-        databaseThread.flush();
-
-        if (shouldRemoveBlocks) {
-            removeBlocks = new LinkedList<Block>();
-        }
+    public int removeProtections(String world, int x1, int x2, int y1, int y2, int z1, int z2) {
+        List<Protection> found = physicalDatabase.loadProtections(world, x1, x2, y1, y2, z1, z2);
 
-        if (where != null && !where.trim().isEmpty()) {
-            where = " WHERE " + where.trim();
+        if (found.isEmpty()) {
+            return 0;
         }
 
-        sender.sendMessage("Loading protections via STREAM mode");
-
-        try {
-            Statement resultStatement = physicalDatabase.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY,
-                    ResultSet.CONCUR_READ_ONLY);
-
-            if (physicalDatabase.getType() == Database.Type.MySQL) {
-                resultStatement.setFetchSize(Integer.MIN_VALUE);
-            }
-
-            String prefix = physicalDatabase.getPrefix();
-            ResultSet result = resultStatement.executeQuery(
-                    "SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
-                            + prefix + "protections" + where);
-
-            while (result.next()) {
-                Protection protection = physicalDatabase.resolveProtection(result);
-                World world = protection.getBukkitWorld();
-
-                // check if the protection is exempt from being removed
-                if (protection.hasFlag(Flag.Type.EXEMPTION) || exemptedBlocks.contains(protection.getBlockId())) {
-                    continue;
-                }
-
-                count++;
-
-                if (count % 100000 == 0 || count == totalProtections || count == 1) {
-                    sender.sendMessage(Colors.Dark_Red + count + " / " + totalProtections);
-                }
-
-                if (world == null) {
-                    continue;
-                }
-
-                // remove the protection
-                toRemove.add(protection.getId());
-
-                // remove the block ?
-                if (shouldRemoveBlocks) {
-                    removeBlocks.add(protection.getBlock());
-                }
+        List<Protection> removed = new ArrayList<Protection>(found.size());
 
-                // Remove it from the cache if it's in there
-                Protection cached = protectionCache.getProtection(protection.getCacheKey());
-                if (cached != null) {
-                    cached.removeCache();
-                }
+        for (Protection protection : found) {
+            // use the cached instance so anything holding on to it sees it removed
+            Protection cached = protectionCache.getProtectionById(protection.getId());
 
-                completed++;
+            if (cached != null) {
+                protection = cached;
             }
 
-            // Close the streaming statement
-            result.close();
-            resultStatement.close();
-
-            // flush all of the queries
-            fullRemoveProtections(sender, toRemove);
-
-            if (shouldRemoveBlocks) {
-                removeBlocks(sender, removeBlocks);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            protection.remove(true);
+            removed.add(protection);
         }
 
-        return completed;
+        protectionCache.removeProtections(removed);
+        return physicalDatabase.removeProtections(removed);
     }
 
     /**
-     * Push removal changes to the database
+     * Remove protections very quickly with raw SQL calls
      *
      * @param sender
-     * @param toRemove
+     * @param where
+     * @param shouldRemoveBlocks
+     * @return
+     * @deprecated runs on the calling thread; use {@link #removeProtections(CommandSender, String, Object[], boolean, boolean, Consumer)}
      */
-    private void fullRemoveProtections(CommandSender sender, List<Integer> toRemove) throws SQLException {
-        StringBuilder deleteProtectionsQuery = new StringBuilder();
-        StringBuilder deleteHistoryQuery = new StringBuilder();
-        int total = toRemove.size();
-        int count = 0;
-
-        // iterate over the items to remove
-        Iterator<Integer> iter = toRemove.iterator();
-
-        // the database prefix
-        String prefix = getPhysicalDatabase().getPrefix();
-
-        // create the statement to use
-        Statement statement = getPhysicalDatabase().getConnection().createStatement();
-
-        while (iter.hasNext()) {
-            int protectionId = iter.next();
-
-            if (count % 10000 == 0) {
-                deleteProtectionsQuery.append("DELETE FROM ").append(prefix).append("protections WHERE id IN (")
-                        .append(protectionId);
-                deleteHistoryQuery.append("UPDATE ").append(prefix)
-                        .append("history SET status = " + History.Status.INACTIVE.ordinal() + " WHERE protectionId IN(")
-                        .append(protectionId);
-            } else {
-                deleteProtectionsQuery.append(",").append(protectionId);
-                deleteHistoryQuery.append(",").append(protectionId);
-            }
-
-            if (count % 10000 == 9999 || count == (total - 1)) {
-                deleteProtectionsQuery.append(")");
-                deleteHistoryQuery.append(")");
-                statement.executeUpdate(deleteProtectionsQuery.toString());
-                statement.executeUpdate(deleteHistoryQuery.toString());
-                deleteProtectionsQuery.setLength(0);
-                deleteHistoryQuery.setLength(0);
-
-                sender.sendMessage(Colors.Dark_Green + "REMOVED " + (count + 1) + " / " + total);
-            }
-
-            count++;
-            physicalDatabase.decrementProtectionCount();
-        }
-
-        statement.close();
+    @Deprecated
+    public int fastRemoveProtections(CommandSender sender, String where, boolean shouldRemoveBlocks) {
+        return new BulkProtectionRemoval(this, sender, where, new Object[0], shouldRemoveBlocks, false).runNow();
     }
 
     /**
-     * Remove a list of blocks from the world
+     * Remove every protection matching a condition off the main thread, except exempt ones. The blocks are
+     * removed over the following ticks within core.tickBudget.bulkRemoval.
      *
      * @param sender
-     * @param blocks
+     * @param where the SQL condition, with ? for each parameter
+     * @param parameters
+     * @param shouldRemoveBlocks
+     * @param dryRun only count the protections that would be removed
+     * @param onComplete called on the main thread when done
      */
-    private void removeBlocks(CommandSender sender, List<Block> blocks) {
-        int count = 0;
+    public void removeProtections(CommandSender sender, String where, Object[] parameters, boolean shouldRemoveBlocks,
+                                  boolean dryRun, Consumer<BulkProtectionRemoval> onComplete) {
+        new BulkProtectionRemoval(this, sender, where, parameters, shouldRemoveBlocks, dryRun).start(onComplete);
+    }
 
-        for (Block block : blocks) {
-            if (block == null || !isProtectable(block)) {
-                continue;
-            }
+    /**
+     * Remove a protected block from the world, along with its inventory and the other half of a double chest
+     *
+     * @param block
+     * @return true if the block was removed
+     */
+    public boolean removeProtectedBlock(Block block) {
+        if (block == null || !isProtectable(block)) {
+            return false;
+        }
 
-            // possibility of a double chest
-            if (DoubleChestMatcher.PROTECTABLES_CHESTS.contains(block.getType())) {
-                Block doubleChest = findAdjacentDoubleChest(block);
+        // possibility of a double chest
+        if (DoubleChestMatcher.PROTECTABLES_CHESTS.contains(block.getType())) {
+            Block doubleChest = findAdjacentDoubleChest(block);
 
-                if (doubleChest != null) {
-                    removeInventory(doubleChest);
-                    doubleChest.setType(Material.AIR);
-                }
+            if (doubleChest != null) {
+                removeInventory(doubleChest);
+                doubleChest.setType(Material.AIR);
             }
-
-            // remove the inventory from the block if it has one
-            removeInventory(block);
-
-            // and now remove the block
-            block.setType(Material.AIR);
-
-            count++;
         }
 
-        sender.sendMessage("Removed " + count + " blocks from the world");
+        // remove the inventory from the block if it has one
+        removeInventory(block);
+
+        // and now remove the block
+        block.setType(Material.AIR);
+        return true;
     }
 
     /**
@@ -1667,58 +1551,108 @@ public class LWC {
      * Load sqlite (done only when LWC is loaded so memory isn't used unnecessarily)
      */
     public void load() {
-        configuration = Configuration.load("core.yml");
-        registerCoreModules();
+        StartupTimer timer = new StartupTimer();
 
-        // check for upgrade before everything else
-        new ConfigPost300().run();
-        plugin.loadDatabase();
+        timer.time("config", () -> {
+            configuration = Configuration.load("core.yml");
+            tickBudget = new TickBudget(configuration.getDouble("core.tickBudget.budget", 5),
+                    configuration.getBoolean("core.tickBudget.degrade", false));
+            Bukkit.getScheduler().runTaskTimer(plugin, tickBudget, 1, 1);
+            registerCoreModules();
+
+            // check for upgrade before everything else
+            new ConfigPost300().run();
+            plugin.loadDatabase();
+        });
 
         Statistics.init();
 
         physicalDatabase = new PhysDB();
         databaseThread = new DatabaseThread(this);
 
-        // Permissions init
-        permissions = new SuperPermsPermissions();
+        // the database does not depend on the integrations, so it is connected to while they are set up
+        log("Connecting to " + Database.DefaultType);
+        CompletableFuture<Boolean> database = CompletableFuture.supplyAsync(() -> timer.time("database", () -> {
+            try {
+                if (!physicalDatabase.connect()) {
+                    return false;
+                }
 
-        if (resolvePlugin("Vault") != null) {
-            permissions = new VaultPermissions();
-        }
+                physicalDatabase.load();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
 
-        // Currency init
-        currency = new NoCurrency();
+            return true;
+        }));
 
-        if (resolvePlugin("Vault") != null) {
-            currency = new VaultCurrency();
-        }
+        timer.time("integrations", () -> {
+            // Permissions init
+            permissions = new SuperPermsPermissions();
 
-        plugin.getUpdater().init();
+            if (resolvePlugin("Vault") != null) {
+                permissions = new VaultPermissions();
+            }
 
-        log("Connecting to " + Database.DefaultType);
-        try {
-            if (!physicalDatabase.connect()) {
-                Bukkit.getPluginManager().disablePlugin(plugin);
-                return;
+            // Currency init
+            currency = new NoCurrency();
+
+            if (resolvePlugin("Vault") != null) {
+                currency = new VaultCurrency();
             }
-            physicalDatabase.load();
-        } catch (Exception e) {
-            e.printStackTrace();
+
+            plugin.getUpdater().init();
+        });
+
+        if (!database.join()) {
+            Bukkit.getPluginManager().disablePlugin(plugin);
+            return;
         }
 
         // check any major conversions
-        new MySQLPost200().run();
-
-        // precache protections
-        physicalDatabase.precache();
+        timer.time("conversions", () -> new MySQLPost200().run());
 
         // Initialize the block cache
-        BlockCache.getInstance().loadBlocks();
+        timer.time("blocks", () -> BlockCache.getInstance().loadBlocks());
+
+        // precache protections; until it is done protections not cached yet are loaded from the database
+        physicalDatabase.precacheInBackground();
+
+        // normalize the player of history written by older versions without blocking startup
+        if (!physicalDatabase.isHistoryPlayerKeysMigrated()) {
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, physicalDatabase::migrateHistoryPlayerKeys);
+        }
+
+        // The protection counts used for limits are kept in memory; periodically drop them so they are
+        // reloaded from the database in case anything changed the database behind LWC's back
+        long reconcileInterval = configuration.getInt("optional.protectionLimitsReconcileInterval", 600) * 20L;
+
+        if (reconcileInterval > 0) {
+            Bukkit.getScheduler().runTaskTimer(plugin, () -> physicalDatabase.getCountIndex().clear(),
+                    reconcileInterval, reconcileInterval);
+        }
+
+        // Remove history that is past its retention in the background
+        historyRetention = new HistoryRetention(this);
+
+        if (configuration.getBoolean("core.historyRetention.enabled", false) && historyRetention.hasRules()) {
+            long retentionInterval = Math.max(1, configuration.getInt("core.historyRetention.interval", 60)) * 60L * 20L;
+            Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, historyRetention, retentionInterval, retentionInterval);
+        }
 
         // We are now done loading!
-        moduleLoader.loadAll();
+        timer.time("modules", () -> moduleLoader.loadAll());
+
+        // Export metrics for scraping if wanted
+        if (configuration.getBoolean("core.metrics.export", false)) {
+            File metricsFile = new File(configuration.getString("core.metrics.file", "plugins/LWC/metrics.prom"));
+            long interval = Math.max(1, configuration.getInt("core.metrics.interval", 60)) * 20L;
+
+            Bukkit.getScheduler().runTaskTimerAsynchronously(plugin,
+                    new OpenMetricsExporter(Statistics.getRegistry(), metricsFile, plugin.getLogger()), interval, interval);
+        }
 
-        // Should we try metrics?
+        log(timer.summary());
     }
 
     /**
@@ -1759,6 +1693,8 @@ public class LWC {
         registerModule(new AdminReload());
         registerModule(new AdminRemove());
         registerModule(new AdminReport());
+        registerModule(new AdminBudget());
+        registerModule(new AdminRetention());
         registerModule(new AdminVersion());
         registerModule(new AdminQuery());
         registerModule(new AdminPurgeBanned());
@@ -2106,6 +2042,13 @@ public class LWC {
         return backupManager;
     }
 
+    /**
+     * @return the service that deposits items into containers
+     */
+    public DepositService getDepositService() {
+        return depositService;
+    }
+
     /**
      * @return the module loader
      */
@@ -2148,6 +2091,20 @@ public class LWC {
         return databaseThread;
     }
 
+    /**
+     * @return the tracker of how much main thread time LWC uses each tick
+     */
+    public TickBudget getTickBudget() {
+        return tickBudget;
+    }
+
+    /**
+     * @return the history retention engine
+     */
+    public HistoryRetention getHistoryRetention() {
+        return historyRetention;
+    }
+
     /**
      * @return the plugin version
      */
@@ -34,6 +34,7 @@ import com.griefcraft.listeners.LWCBlockListener;
 import com.griefcraft.listeners.LWCEntityListener;
 import com.griefcraft.listeners.LWCPlayerListener;
 import com.griefcraft.listeners.LWCServerListener;
+import com.griefcraft.listeners.TimedEventExecutor;
 import com.griefcraft.modules.pluginsupport.Towny;
 import com.griefcraft.scripting.event.LWCCommandEvent;
 import com.griefcraft.sql.Database;
@@ -49,11 +50,15 @@ import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.Collections;
@@ -66,7 +71,6 @@ import java.util.MissingResourceException;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
 import java.util.Set;
-import java.util.jar.JarFile;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -87,6 +91,21 @@ public class LWCPlugin extends JavaPlugin {
      */
     private Updater updater;
 
+    public LWCPlugin() {
+    }
+
+    /**
+     * Create the plugin outside of a server, e.g for the benchmarks
+     *
+     * @param loader
+     * @param description
+     * @param dataFolder
+     * @param file
+     */
+    protected LWCPlugin(JavaPluginLoader loader, PluginDescriptionFile description, File dataFolder, File file) {
+        super(loader, description, dataFolder, file);
+    }
+
     @Override
     public boolean onCommand(CommandSender sender, Command command, String commandLabel, String[] args) {
         String commandName = command.getName().toLowerCase();
@@ -431,14 +450,17 @@ public class LWCPlugin extends JavaPlugin {
         // the default :-)
         ResourceBundle optionalBundle = null;
 
-        try (JarFile file = new JarFile(getFile())) {
+        try (InputStream defaultStream = getResource("lang/lwc_en.properties")) {
             ResourceBundle defaultBundle;
 
-            // Open the LWC jar file
+            // The locales are read through the plugin's class loader, so they are found in the LWC jar
+            // or on the classpath when LWC is started outside of a server
+            if (defaultStream == null) {
+                throw new MissingResourceException("lang/lwc_en.properties", getClass().getName(), "lang/lwc_en.properties");
+            }
 
             // Attempt to load the default locale
-            defaultBundle = new PropertyResourceBundle(
-                    new InputStreamReader(file.getInputStream(file.getJarEntry("lang/lwc_en.properties")), "UTF-8"));
+            defaultBundle = new PropertyResourceBundle(new InputStreamReader(defaultStream, "UTF-8"));
             locale = new LWCResourceBundle(defaultBundle);
 
             try {
@@ -453,12 +475,11 @@ public class LWCPlugin extends JavaPlugin {
 
             // and now check if a bundled locale the same as the server's locale
             // exists
-            try {
-                optionalBundle = new PropertyResourceBundle(new InputStreamReader(
-                        file.getInputStream(file.getJarEntry("lang/lwc_" + localization + ".properties")), "UTF-8"));
+            try (InputStream localeStream = getResource("lang/lwc_" + localization + ".properties")) {
+                if (localeStream != null) {
+                    optionalBundle = new PropertyResourceBundle(new InputStreamReader(localeStream, "UTF-8"));
+                }
             } catch (MissingResourceException e) {
-            } catch (NullPointerException e) {
-                // file wasn't found :p - that's ok
             }
 
             // ensure both bundles aren't the same
@@ -502,19 +523,28 @@ public class LWCPlugin extends JavaPlugin {
      * Register all of the events used by LWC
      */
     private void registerEvents() {
-        PluginManager pluginManager = Bukkit.getServer().getPluginManager();
-        pluginManager.registerEvents(new LWCPlayerListener(this), this);
-        pluginManager.registerEvents(new LWCEntityListener(this), this);
-        pluginManager.registerEvents(new LWCBlockListener(this), this);
-        pluginManager.registerEvents(new LWCServerListener(this), this);
+        registerTimedEvents(new LWCPlayerListener(this));
+        registerTimedEvents(new LWCEntityListener(this));
+        registerTimedEvents(new LWCBlockListener(this));
+        registerTimedEvents(new LWCServerListener(this));
         if (VersionUtil.getMinorVersion() > 13) {
-            pluginManager.registerEvents(new LWC114Listener(), this);
+            registerTimedEvents(new LWC114Listener());
         }
         if (Bukkit.getPluginManager().getPlugin("Towny") != null) {
-            pluginManager.registerEvents(new Towny(), this);
+            registerTimedEvents(new Towny());
         }
     }
 
+    /**
+     * Register a listener, recording the time each of its handlers takes in the tick budget
+     *
+     * @param listener
+     */
+    private void registerTimedEvents(Listener listener) {
+        PluginManager pluginManager = Bukkit.getServer().getPluginManager();
+        TimedEventExecutor.registerEvents(pluginManager, listener, this, lwc.getTickBudget());
+    }
+
     /**
      * Unregister all events used by LWC and load again.
      */
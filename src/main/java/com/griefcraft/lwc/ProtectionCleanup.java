@@ -0,0 +1,431 @@
+package com.griefcraft.lwc;
+
+import com.griefcraft.bukkit.EntityBlock;
+import com.griefcraft.model.Protection;
+import com.griefcraft.sql.PhysDB;
+import com.griefcraft.util.Colors;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Entity;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Removes protections whose block or entity no longer exists: /lwc admin cleanup
+ * <p/>
+ * Protections are loaded by id in segments and grouped by world and chunk. Each chunk's snapshot is taken once
+ * on the main thread within a per-tick budget and checked off the main thread, so chunks of different worlds
+ * are checked in parallel. Entity protections are checked against the entities of their world, collected once;
+their rows do not record where the entity is, so one that is not found may only be in an unloaded chunk and is
+kept and reported instead of removed.
+ * After each segment the invalid protections are deleted in batches and the last checked id is saved, so a
+ * cleanup that was stopped continues where it left off.
+ */
+public class ProtectionCleanup {
+
+    /**
+     * The internal key the id of the last checked protection is saved under
+     */
+    public static final String CHECKPOINT_KEY = "cleanupCheckpoint";
+
+    /**
+     * The amount of protections loaded at once
+     */
+    private static final int SEGMENT_SIZE = 10000;
+
+    /**
+     * The maximum amount of chunks being checked at the same time
+     */
+    private static final int MAX_PENDING_SCANS = 8;
+
+    private final LWC lwc;
+    private final CommandSender sender;
+    private final boolean silent;
+
+    /**
+     * How long the cleanup may use the main thread each tick, in nanoseconds
+     */
+    private final long budget;
+
+    /**
+     * The materials that can be protected
+     */
+    private final Set<Material> protectable = EnumSet.noneOf(Material.class);
+
+    /**
+     * The entity position keys of each world, collected when the world is first seen
+     */
+    private final Map<String, Set<Integer>> entityKeys = new HashMap<>();
+
+    /**
+     * The chunks of the current segment that still have to be checked
+     */
+    private final Deque<PendingChunk> pendingChunks = new ArrayDeque<>();
+
+    /**
+     * The invalid protections of the current segment
+     */
+    private final ConcurrentLinkedQueue<Protection> invalid = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pendingScans = new AtomicInteger();
+    private final AtomicInteger checked = new AtomicInteger();
+
+    /**
+     * Entity protections whose entity was not found in the loaded chunks of its world
+     */
+    private final AtomicInteger skippedEntities = new AtomicInteger();
+    private int removed = 0;
+    private int skipped = 0;
+    private int total = 0;
+    private int lastPercent = -1;
+
+    /**
+     * The id of the last protection in the current segment
+     */
+    private int segmentEnd;
+
+    private BukkitTask task;
+    private long started;
+    private volatile boolean cancelled = false;
+    private volatile boolean finished = false;
+
+    public ProtectionCleanup(LWC lwc, CommandSender sender, boolean silent) {
+        this.lwc = lwc;
+        this.sender = sender;
+        this.silent = silent;
+        this.budget = TimeUnit.MILLISECONDS.toNanos(Math.max(1,
+                lwc.getConfiguration().getInt("core.tickBudget.cleanup", 5)));
+    }
+
+    /**
+     * Start the cleanup from the saved checkpoint. Must be called from the main thread.
+     *
+     * @param restart true to ignore the checkpoint and check every protection
+     */
+    public void start(boolean restart) {
+        for (Material material : Material.values()) {
+            if (material.isBlock() && Boolean.parseBoolean(lwc.resolveProtectionConfiguration(material, "enabled"))) {
+                protectable.add(material);
+            }
+        }
+
+        started = System.currentTimeMillis();
+        total = lwc.getPhysicalDatabase().getProtectionCount();
+
+        Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), () -> {
+            int from = 0;
+
+            if (!restart) {
+                try {
+                    from = Integer.parseInt(lwc.getPhysicalDatabase().getInternal(CHECKPOINT_KEY));
+                } catch (NumberFormatException e) {
+                }
+            }
+
+            if (from > 0) {
+                message(Colors.Dark_Red + "Resuming cleanup after protection #" + from);
+            }
+
+            loadSegment(from);
+        });
+    }
+
+    /**
+     * Stop the cleanup after the current segment. It can be resumed later.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Load the next segment of protections after the given id and group it by chunk. Called off the main thread.
+     *
+     * @param after
+     */
+    private void loadSegment(int after) {
+        PhysDB database = lwc.getPhysicalDatabase();
+        List<Protection> protections = new ArrayList<>(SEGMENT_SIZE);
+
+        lwc.getDatabaseThread().flushAndRun(() -> {
+            try {
+                PreparedStatement statement = database.prepare("SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
+                        + database.getPrefix() + "protections WHERE id > ? ORDER BY id LIMIT ?");
+                statement.setInt(1, after);
+                statement.setInt(2, SEGMENT_SIZE);
+
+                try (ResultSet set = statement.executeQuery()) {
+                    while (set.next()) {
+                        protections.add(database.resolveProtection(set));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+
+        if (protections.isEmpty() || cancelled) {
+            Bukkit.getScheduler().runTask(lwc.getPlugin(), this::finish);
+            return;
+        }
+
+        segmentEnd = protections.get(protections.size() - 1).getId();
+
+        // group the protections by world and chunk, keeping entity protections per world
+        Map<String, Map<Long, PendingChunk>> chunks = new HashMap<>();
+
+        for (Protection protection : protections) {
+            Map<Long, PendingChunk> worldChunks = chunks.computeIfAbsent(protection.getWorld(), world -> new HashMap<>());
+
+            if (protection.getBlockId() == EntityBlock.ENTITY_BLOCK_ID) {
+                worldChunks.computeIfAbsent(Long.MIN_VALUE, key -> new PendingChunk(protection.getWorld(), 0, 0, true))
+                        .protections.add(protection);
+            } else {
+                int chunkX = protection.getX() >> 4;
+                int chunkZ = protection.getZ() >> 4;
+
+                worldChunks.computeIfAbsent(((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL),
+                        key -> new PendingChunk(protection.getWorld(), chunkX, chunkZ, false)).protections.add(protection);
+            }
+        }
+
+        // interleave the worlds so their chunks are checked at the same time
+        List<Iterator<PendingChunk>> worlds = new ArrayList<>();
+
+        for (Map<Long, PendingChunk> worldChunks : chunks.values()) {
+            worlds.add(worldChunks.values().iterator());
+        }
+
+        Deque<PendingChunk> ordered = new ArrayDeque<>();
+
+        while (!worlds.isEmpty()) {
+            Iterator<Iterator<PendingChunk>> iter = worlds.iterator();
+
+            while (iter.hasNext()) {
+                Iterator<PendingChunk> world = iter.next();
+
+                if (world.hasNext()) {
+                    ordered.add(world.next());
+                } else {
+                    iter.remove();
+                }
+            }
+        }
+
+        Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> {
+            pendingChunks.addAll(ordered);
+            task = Bukkit.getScheduler().runTaskTimer(lwc.getPlugin(),
+                    lwc.getTickBudget().wrap("ProtectionCleanup#tick", this::tick), 1, 1);
+        });
+    }
+
+    /**
+     * Take snapshots of pending chunks until this tick's budget is used up
+     */
+    private void tick() {
+        long start = System.nanoTime();
+
+        while (!pendingChunks.isEmpty() && pendingScans.get() < MAX_PENDING_SCANS && System.nanoTime() - start < budget) {
+            PendingChunk chunk = pendingChunks.poll();
+            World world = Bukkit.getWorld(chunk.world);
+
+            // protections in worlds that are not loaded are kept
+            if (world == null) {
+                skipped += chunk.protections.size();
+                checked.addAndGet(chunk.protections.size());
+                continue;
+            }
+
+            if (chunk.entities) {
+                Set<Integer> keys = entityKeys.computeIfAbsent(chunk.world, name -> {
+                    Set<Integer> result = new HashSet<>();
+
+                    for (Entity entity : world.getEntities()) {
+                        result.add(EntityBlock.POSITION_OFFSET + entity.getUniqueId().hashCode());
+                    }
+
+                    return result;
+                });
+
+                scanAsync(() -> {
+                    // world.getEntities() only has the entities of loaded chunks
+                    for (Protection protection : chunk.protections) {
+                        if (!keys.contains(protection.getX())) {
+                            skippedEntities.incrementAndGet();
+                        }
+                    }
+                }, chunk);
+                continue;
+            }
+
+            ChunkSnapshot snapshot = world.getChunkAt(chunk.x, chunk.z).getChunkSnapshot(false, false, false);
+            int maxHeight = world.getMaxHeight();
+
+            scanAsync(() -> {
+                for (Protection protection : chunk.protections) {
+                    int y = protection.getY();
+
+                    if (y < 0 || y >= maxHeight || !protectable.contains(snapshot.getBlockType(protection.getX() & 15, y, protection.getZ() & 15))) {
+                        invalid.add(protection);
+                    }
+                }
+            }, chunk);
+        }
+
+        if (pendingChunks.isEmpty() && pendingScans.get() == 0) {
+            task.cancel();
+            Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), this::finishSegment);
+        }
+    }
+
+    private void scanAsync(Runnable scan, PendingChunk chunk) {
+        pendingScans.incrementAndGet();
+        Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), () -> {
+            try {
+                scan.run();
+            } finally {
+                checked.addAndGet(chunk.protections.size());
+                pendingScans.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Delete the invalid protections of the segment and save the checkpoint. Called off the main thread.
+     */
+    private void finishSegment() {
+        List<Protection> toRemove = new ArrayList<>(invalid);
+        invalid.clear();
+
+        lwc.getDatabaseThread().flushAndRun(() -> {
+            lwc.getPhysicalDatabase().removeProtections(toRemove);
+            lwc.getPhysicalDatabase().setInternal(CHECKPOINT_KEY, Integer.toString(segmentEnd));
+        });
+
+        Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> {
+            List<Protection> cached = new ArrayList<>();
+
+            for (Protection protection : toRemove) {
+                Protection instance = lwc.getProtectionCache().getProtectionById(protection.getId());
+
+                if (instance != null) {
+                    cached.add(instance);
+                }
+
+                if (!silent) {
+                    lwc.sendLocale(sender, "protection.admin.cleanup.removednoexist", "protection", protection.toString());
+                }
+            }
+
+            lwc.getProtectionCache().removeProtections(cached);
+            removed += toRemove.size();
+
+            int percent = total == 0 ? 100 : (int) Math.min(100, (checked.get() * 100L) / total);
+
+            if (percent / 5 != lastPercent / 5) {
+                lastPercent = percent;
+                sender.sendMessage(Colors.Dark_Red + "Cleanup @ " + percent + "% [ " + checked.get() + "/"
+                        + total + " protections ] [ removed " + removed + " protections ]");
+            }
+
+            Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), () -> loadSegment(segmentEnd));
+        });
+    }
+
+    /**
+     * Called on the main thread once every protection was checked or the cleanup was cancelled
+     */
+    private void finish() {
+        finished = true;
+
+        if (cancelled) {
+            sender.sendMessage(Colors.Dark_Red + "Cleanup stopped after protection #" + segmentEnd
+                    + ". Run /lwc admin cleanup again to continue");
+            return;
+        }
+
+        Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), () ->
+                lwc.getDatabaseThread().flushAndRun(() -> lwc.getPhysicalDatabase().setInternal(CHECKPOINT_KEY, "complete")));
+
+        if (skipped > 0) {
+            sender.sendMessage(Colors.Yellow + "Skipped " + skipped + " protections in worlds that are not loaded");
+        }
+
+        if (skippedEntities.get() > 0) {
+            sender.sendMessage(Colors.Yellow + "Skipped " + skippedEntities.get()
+                    + " entity protections whose entity is not in a loaded chunk");
+        }
+
+        lwc.sendLocale(sender, "protection.admin.cleanup.complete", "count", removed,
+                "seconds", (System.currentTimeMillis() - started) / 1000L);
+    }
+
+    /**
+     * Send a message to the sender on the main thread
+     *
+     * @param message
+     */
+    private void message(String message) {
+        Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> sender.sendMessage(message));
+    }
+
+    /**
+     * @return true if the cleanup is done or was cancelled
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the amount of protections checked so far
+     */
+    public int getChecked() {
+        return checked.get();
+    }
+
+    /**
+     * @return the amount of protections removed so far
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * The protections of one chunk, or the entity protections of a world
+     */
+    private static class PendingChunk {
+
+        final String world;
+        final int x;
+        final int z;
+        final boolean entities;
+        final List<Protection> protections = new ArrayList<>();
+
+        PendingChunk(String world, int x, int z, boolean entities) {
+            this.world = world;
+            this.x = x;
+            this.z = z;
+            this.entities = entities;
+        }
+
+    }
+
+}
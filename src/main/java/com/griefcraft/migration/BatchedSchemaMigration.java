@@ -0,0 +1,58 @@
+package com.griefcraft.migration;
+
+import com.griefcraft.sql.PhysDB;
+
+import java.sql.SQLException;
+
+/**
+ * A step that migrates data in batches, e.g rows of a table by id. The last migrated key is saved in the internal
+ * table after each batch so a step that was interrupted continues where it left off.
+ */
+public class BatchedSchemaMigration extends SchemaMigration {
+
+    public interface Batch {
+
+        /**
+         * Migrate the next batch
+         *
+         * @param database
+         * @param after the last key that was migrated, 0 at the start
+         * @return the last key migrated by this batch, or -1 if there was nothing left to migrate
+         */
+        public int migrate(PhysDB database, int after) throws SQLException;
+
+    }
+
+    public BatchedSchemaMigration(String name, Batch batch) {
+        super(name, database -> {
+            String progressKey = "migration." + name;
+            int after = 0;
+
+            try {
+                after = Integer.parseInt(database.getInternal(progressKey));
+            } catch (NumberFormatException e) {
+            }
+
+            if (after > 0) {
+                database.log(name + ": resuming after " + after);
+            }
+
+            long lastReport = System.currentTimeMillis();
+            int last;
+
+            while ((last = batch.migrate(database, after)) >= 0) {
+                after = last;
+                database.setInternal(progressKey, Integer.toString(after));
+
+                if (System.currentTimeMillis() - lastReport >= 5000L) {
+                    lastReport = System.currentTimeMillis();
+                    database.log(name + ": migrated up to " + after);
+                }
+            }
+
+            database.setInternal(progressKey, "0");
+            return true;
+        });
+    }
+
+}
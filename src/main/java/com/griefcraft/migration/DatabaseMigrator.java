@@ -28,17 +28,72 @@
 
 package com.griefcraft.migration;
 
-import com.griefcraft.model.BlockID;
-import com.griefcraft.model.History;
-import com.griefcraft.model.Protection;
 import com.griefcraft.sql.PhysDB;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
+/**
+ * Copies the LWC tables from one database to another, e.g from SQLite to MySQL. Each table is read in pages by
+ * id on a reader thread while the calling thread writes the previous pages with multi-row REPLACEs, committing
+ * every {@link #COMMIT_ROWS} rows together with the last copied id. An interrupted copy resumes after that id,
+ * and the ids of every row are kept. Once every table is copied the row counts and checksums of both databases
+ * are compared.
+ */
 public class DatabaseMigrator {
     private static Logger logger = Logger.getLogger("LWCMigrator");
 
+    /**
+     * The tables that are copied and their columns; the first column is the id the tables are paged by
+     */
+    private static final String[][] TABLES = {
+            {"protections", "id", "owner", "type", "x", "y", "z", "data", "blockId", "world", "password", "date", "last_accessed"},
+            {"history", "id", "protectionId", "player", "playerKey", "x", "y", "z", "type", "status", "metadata", "timestamp"},
+            {"blocks", "id", "name"}
+    };
+
+    /**
+     * The amount of rows read per page
+     */
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * The amount of pages the reader may be ahead of the writer
+     */
+    private static final int QUEUED_PAGES = 4;
+
+    /**
+     * The amount of rows written per transaction
+     */
+    private static final int COMMIT_ROWS = 10000;
+
+    /**
+     * The most parameters one statement may bind, SQLite's limit
+     */
+    private static final int MAX_PARAMETERS = 999;
+
+    /**
+     * The internal key of the target database the last copied id of a table is stored under
+     */
+    private static final String PROGRESS_KEY = "migration.copy.";
+
+    private static final String PROGRESS_COMPLETE = "complete";
+
     /**
      * Converts the current database to the given database type
      *
@@ -48,53 +103,290 @@ public class DatabaseMigrator {
      */
     public boolean migrate(PhysDB fromDatabase, PhysDB toDatabase) {
         try {
-            // some prelim data
-            int startProtections = toDatabase.getProtectionCount();
-            int protectionCount = fromDatabase.getProtectionCount();
-            int historyCount = fromDatabase.getHistoryCount();
-            int blockCount = fromDatabase.getBlockCount();
-            int expectedProtections = protectionCount + startProtections;
-
-            if (protectionCount > 0) {
-                List<Protection> tmp = fromDatabase.loadProtections();
-
-                for (Protection protection : tmp) {
-                    // sync it to the live database
-                    protection.saveNow();
+            for (String[] table : TABLES) {
+                copy(fromDatabase, toDatabase, table);
+            }
+
+            boolean verified = true;
+
+            for (String[] table : TABLES) {
+                verified &= verify(fromDatabase, toDatabase, table);
+            }
+
+            if (!verified) {
+                return false;
+            }
+
+            // a later migration into this database starts over
+            for (String[] table : TABLES) {
+                toDatabase.setInternal(PROGRESS_KEY + table[0], PROGRESS_COMPLETE);
+            }
+
+            fromDatabase.getConnection().close();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Copy a table, resuming after the last id a previous copy committed
+     *
+     * @param fromDatabase
+     * @param toDatabase
+     * @param table        the table name followed by its columns
+     */
+    private void copy(PhysDB fromDatabase, PhysDB toDatabase, String[] table) throws Exception {
+        String name = table[0];
+        String[] columns = new String[table.length - 1];
+        System.arraycopy(table, 1, columns, 0, columns.length);
+
+        String progressKey = PROGRESS_KEY + name;
+        String progress = toDatabase.getInternal(progressKey);
+        int resumeAfter = 0;
+
+        if (progress != null && !progress.equals(PROGRESS_COMPLETE)) {
+            try {
+                resumeAfter = Integer.parseInt(progress);
+                logger.info("Resuming the copy of " + name + " after id " + resumeAfter);
+            } catch (NumberFormatException e) {
+            }
+        }
+
+        BlockingQueue<List<Object[]>> pages = new ArrayBlockingQueue<>(QUEUED_PAGES);
+        ExecutorService readerThread = Executors.newSingleThreadExecutor();
+        int start = resumeAfter;
+        int after = start;
+
+        Future<?> reader = readerThread.submit(() -> {
+            String sql = "SELECT " + String.join(", ", columns) + " FROM " + fromDatabase.getPrefix() + name
+                    + " WHERE id > ? ORDER BY id LIMIT ?";
+
+            try (PreparedStatement statement = fromDatabase.getConnection().prepareStatement(sql)) {
+                int last = start;
+
+                while (true) {
+                    List<Object[]> page = readPage(statement, last, columns.length);
+
+                    if (page.isEmpty()) {
+                        break;
+                    }
+
+                    last = ((Number) page.get(page.size() - 1)[0]).intValue();
+                    pages.put(page);
+                }
+            }
+
+            // the end of the table
+            pages.put(Collections.emptyList());
+            return null;
+        });
+
+        Connection connection = toDatabase.getConnection();
+        int rowsPerStatement = MAX_PARAMETERS / columns.length;
+        int copied = 0;
+        int uncommitted = 0;
+        long lastLog = System.currentTimeMillis();
+
+        toDatabase.setAutoCommit(false);
+
+        try {
+            while (true) {
+                List<Object[]> page = pages.poll(1, TimeUnit.SECONDS);
+
+                if (page == null) {
+                    // rethrows what stopped the reader
+                    if (reader.isDone()) {
+                        reader.get();
+                    }
+
+                    continue;
+                }
+
+                if (page.isEmpty()) {
+                    break;
+                }
+
+                for (int offset = 0; offset < page.size(); offset += rowsPerStatement) {
+                    write(toDatabase, name, columns, page.subList(offset, Math.min(page.size(), offset + rowsPerStatement)));
+                }
+
+                after = ((Number) page.get(page.size() - 1)[0]).intValue();
+                copied += page.size();
+                uncommitted += page.size();
+
+                if (uncommitted >= COMMIT_ROWS) {
+                    toDatabase.setInternal(progressKey, Integer.toString(after));
+                    connection.commit();
+                    uncommitted = 0;
                 }
 
-                if (expectedProtections != (protectionCount = fromDatabase.getProtectionCount())) {
-                    logger.info("Weird, only " + protectionCount + " protections are in the database? Continuing...");
+                if (System.currentTimeMillis() - lastLog > 5000) {
+                    logger.info("Copied " + copied + " rows of " + name + " (up to id " + after + ")");
+                    lastLog = System.currentTimeMillis();
                 }
             }
 
-            if (historyCount > 0) {
-                List<History> tmp = fromDatabase.loadHistory();
+            toDatabase.setInternal(progressKey, Integer.toString(after));
+            connection.commit();
+            logger.info("Copied " + copied + " rows of " + name);
+        } catch (Exception e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            toDatabase.setAutoCommit(true);
+            readerThread.shutdownNow();
+        }
+    }
+
+    /**
+     * Read the rows after an id
+     *
+     * @param statement
+     * @param after
+     * @param columns
+     * @return
+     */
+    private List<Object[]> readPage(PreparedStatement statement, int after, int columns) throws SQLException {
+        List<Object[]> page = new ArrayList<>(PAGE_SIZE);
+        statement.setInt(1, after);
+        statement.setInt(2, PAGE_SIZE);
 
-                for (History history : tmp) {
-                    // make sure it's assumed it does not exist in the database
-                    history.setExists(false);
+        try (ResultSet set = statement.executeQuery()) {
+            while (set.next()) {
+                Object[] row = new Object[columns];
 
-                    // sync the history object with the active database (ala MySQL)
-                    history.sync();
+                for (int i = 0; i < columns; i++) {
+                    row[i] = set.getObject(i + 1);
                 }
+
+                page.add(row);
             }
+        }
+
+        return page;
+    }
 
-            if (blockCount > 0) {
-                List<BlockID> blocks = fromDatabase.loadBlocks();
+    /**
+     * Write rows with one multi-row REPLACE, so rows copied before an interruption are overwritten
+     *
+     * @param database
+     * @param table
+     * @param columns
+     * @param rows
+     */
+    private void write(PhysDB database, String table, String[] columns, List<Object[]> rows) throws SQLException {
+        StringBuilder row = new StringBuilder("(");
 
-                for (BlockID block : blocks) {
-                    block.saveNow();
+        for (int i = 0; i < columns.length; i++) {
+            row.append(i == 0 ? "?" : ", ?");
+        }
+
+        row.append(")");
+
+        StringBuilder sql = new StringBuilder("REPLACE INTO ").append(database.getPrefix()).append(table)
+                .append(" (").append(String.join(", ", columns)).append(") VALUES ");
+
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(row);
+        }
+
+        // full batches reuse one cached statement
+        PreparedStatement statement = database.prepare(sql.toString());
+        int parameter = 1;
+
+        for (Object[] values : rows) {
+            for (Object value : values) {
+                statement.setObject(parameter++, value);
+            }
+        }
+
+        statement.executeUpdate();
+    }
+
+    /**
+     * Compare the amount of rows and a checksum of their values between both databases, a page of ids at a time
+     *
+     * @param fromDatabase
+     * @param toDatabase
+     * @param table        the table name followed by its columns
+     * @return true if the rows of the source database are all in the target database
+     */
+    private boolean verify(PhysDB fromDatabase, PhysDB toDatabase, String[] table) throws SQLException {
+        String name = table[0];
+        String columns = String.join(", ", Arrays.copyOfRange(table, 1, table.length));
+        CRC32 source = new CRC32();
+        CRC32 target = new CRC32();
+        long sourceRows = 0;
+        long targetRows = 0;
+        int after = 0;
+
+        try (PreparedStatement sourcePage = fromDatabase.getConnection().prepareStatement("SELECT " + columns + " FROM "
+                + fromDatabase.getPrefix() + name + " WHERE id > ? ORDER BY id LIMIT ?");
+             PreparedStatement targetRange = toDatabase.getConnection().prepareStatement("SELECT " + columns + " FROM "
+                     + toDatabase.getPrefix() + name + " WHERE id > ? AND id <= ? ORDER BY id")) {
+            while (true) {
+                sourcePage.setInt(1, after);
+                sourcePage.setInt(2, PAGE_SIZE);
+
+                int[] page = {0, after};
+
+                try (ResultSet set = sourcePage.executeQuery()) {
+                    checksum(set, source, page);
+                }
+
+                if (page[0] == 0) {
+                    break;
+                }
+
+                // the same id range of the target, so missing and extra rows both show up
+                int[] range = {0, after};
+                targetRange.setInt(1, after);
+                targetRange.setInt(2, page[1]);
+
+                try (ResultSet set = targetRange.executeQuery()) {
+                    checksum(set, target, range);
                 }
+
+                sourceRows += page[0];
+                targetRows += range[0];
+                after = page[1];
             }
+        }
 
-            fromDatabase.getConnection().close();
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (sourceRows != targetRows || source.getValue() != target.getValue()) {
+            logger.severe("Verification of " + name + " failed: " + sourceRows + " rows (checksum "
+                    + Long.toHexString(source.getValue()) + ") were copied to " + targetRows + " rows (checksum "
+                    + Long.toHexString(target.getValue()) + ")");
             return false;
         }
 
+        logger.info("Verified " + sourceRows + " rows of " + name + " (checksum " + Long.toHexString(source.getValue()) + ")");
         return true;
     }
 
+    /**
+     * Add the values of every row to a checksum
+     *
+     * @param set
+     * @param checksum
+     * @param page     receives the amount of rows and the id of the last row
+     */
+    private void checksum(ResultSet set, CRC32 checksum, int[] page) throws SQLException {
+        int columns = set.getMetaData().getColumnCount();
+
+        while (set.next()) {
+            for (int i = 1; i <= columns; i++) {
+                String value = set.getString(i);
+                checksum.update((value == null ? "\0" : value).getBytes(StandardCharsets.UTF_8));
+                checksum.update(0x1F);
+            }
+
+            page[0]++;
+            page[1] = set.getInt(1);
+        }
+    }
+
 }
@@ -0,0 +1,74 @@
+package com.griefcraft.migration;
+
+import com.griefcraft.sql.PhysDB;
+
+import java.sql.SQLException;
+
+/**
+ * One step of the database schema. Steps run in order and are recorded in the internal table once they are done,
+ * so each one only runs again if it reports that it could not be applied yet. A step must be safe to run again
+ * on a database it was already applied to.
+ */
+public class SchemaMigration {
+
+    public interface Step {
+
+        /**
+         * Apply the step
+         *
+         * @param database
+         * @return false if the step could not be applied yet and should be tried again on the next start
+         */
+        public boolean apply(PhysDB database) throws SQLException;
+
+    }
+
+    /**
+     * The name of the step, used in the log
+     */
+    private final String name;
+
+    private final Step step;
+
+    /**
+     * If the step changes the rows of the protections table, which incremental backups do not see
+     */
+    private boolean rewritesProtections = false;
+
+    public SchemaMigration(String name, Step step) {
+        this.name = name;
+        this.step = step;
+    }
+
+    /**
+     * Mark the step as one that changes protection rows
+     *
+     * @return
+     */
+    public SchemaMigration rewritingProtections() {
+        rewritesProtections = true;
+        return this;
+    }
+
+    /**
+     * Apply the step
+     *
+     * @param database
+     * @return false if the step could not be applied yet
+     */
+    public boolean apply(PhysDB database) throws SQLException {
+        return step.apply(database);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if the step changes protection rows
+     */
+    public boolean rewritesProtections() {
+        return rewritesProtections;
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.griefcraft.migration;
+
+import com.griefcraft.sql.PhysDB;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs the schema steps a database has not had yet, in order
+ */
+public class SchemaMigrator {
+
+    private final PhysDB database;
+
+    /**
+     * The steps in the order they are applied. Steps are only ever added to the end.
+     */
+    private final List<SchemaMigration> migrations = new ArrayList<>();
+
+    /**
+     * If a step that rewrites protection rows was applied
+     */
+    private boolean rewroteProtections = false;
+
+    public SchemaMigrator(PhysDB database) {
+        this.database = database;
+    }
+
+    /**
+     * Add a step to the end
+     *
+     * @param migration
+     * @return
+     */
+    public SchemaMigrator add(SchemaMigration migration) {
+        migrations.add(migration);
+        return this;
+    }
+
+    /**
+     * Apply the steps after the given version and retry the deferred ones. A step that could not be applied,
+     * e.g because the server is too old for it, is deferred: the version moves past it and it is retried on
+     * its own on the next start, so it never holds back the steps after it.
+     *
+     * @param version  the amount of steps applied so far
+     * @param deferred the indexes of the steps before the version that were deferred; updated in place
+     * @return the amount of steps applied or deferred
+     */
+    public int migrate(int version, Set<Integer> deferred) {
+        Iterator<Integer> iterator = deferred.iterator();
+
+        while (iterator.hasNext()) {
+            int index = iterator.next();
+
+            if (index >= migrations.size() || apply(migrations.get(index))) {
+                iterator.remove();
+            }
+        }
+
+        for (int index = version; index < migrations.size(); index++) {
+            if (!apply(migrations.get(index))) {
+                deferred.add(index);
+            }
+        }
+
+        return migrations.size();
+    }
+
+    /**
+     * @return true if a step that rewrites protection rows was applied by {@link #migrate(int, Set)}
+     */
+    public boolean hasRewrittenProtections() {
+        return rewroteProtections;
+    }
+
+    private boolean apply(SchemaMigration migration) {
+        boolean done;
+
+        try {
+            done = migration.apply(database);
+        } catch (SQLException e) {
+            database.log("Schema step " + migration.getName() + " failed: " + e.getMessage());
+            done = false;
+        }
+
+        if (done && migration.rewritesProtections()) {
+            rewroteProtections = true;
+        }
+
+        return done;
+    }
+
+    /**
+     * @return the amount of steps
+     */
+    public int size() {
+        return migrations.size();
+    }
+
+}
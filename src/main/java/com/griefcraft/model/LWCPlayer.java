@@ -39,12 +39,15 @@ import org.bukkit.permissions.PermissionAttachmentInfo;
 import org.bukkit.plugin.Plugin;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class LWCPlayer implements CommandSender {
 
@@ -56,12 +59,12 @@ public class LWCPlayer implements CommandSender {
     /**
      * The player instance
      */
-    private Player player;
+    private final Player player;
 
     /**
-     * Cache of LWCPlayer objects
+     * The sessions of the online players by UUID, created on join and removed on quit
      */
-    private final static Map<Player, LWCPlayer> playerCache = new HashMap<>();
+    private final static ConcurrentMap<UUID, LWCPlayer> sessions = new ConcurrentHashMap<>();
 
     /**
      * The map of actions the player has
@@ -74,9 +77,10 @@ public class LWCPlayer implements CommandSender {
     private final Set<Mode> modes = new HashSet<>();
 
     /**
-     * The set of protections the player can access
+     * The sorted ids of the protections the player can access. Replaced rather than changed, so it can be
+     * read from any thread.
      */
-    private final Set<Protection> accessibleProtections = new HashSet<>();
+    private volatile int[] accessibleProtections = new int[0];
 
     public LWCPlayer(LWC lwc, Player player) {
         this.lwc = lwc;
@@ -90,11 +94,37 @@ public class LWCPlayer implements CommandSender {
      * @return
      */
     public static LWCPlayer getPlayer(Player player) {
-        if (!playerCache.containsKey(player)) {
-            playerCache.put(player, new LWCPlayer(LWC.getInstance(), player));
+        LWCPlayer session = sessions.get(player.getUniqueId());
+
+        if (session != null && session.player == player) {
+            return session;
         }
 
-        return playerCache.get(player);
+        // a player that rejoined without their session being removed starts a new one
+        return sessions.compute(player.getUniqueId(),
+                (uuid, existing) -> existing != null && existing.player == player ? existing : new LWCPlayer(LWC.getInstance(), player));
+    }
+
+    /**
+     * Get the session of an online player. Can be called from any thread.
+     *
+     * @param uuid
+     * @return the player's session, or null if they have none
+     */
+    public static LWCPlayer getSession(UUID uuid) {
+        return sessions.get(uuid);
+    }
+
+    /**
+     * Check if a player unlocked a protection, e.g with its password. Can be called from any thread.
+     *
+     * @param uuid
+     * @param protectionId
+     * @return
+     */
+    public static boolean hasAccessibleProtection(UUID uuid, int protectionId) {
+        LWCPlayer session = sessions.get(uuid);
+        return session != null && session.hasAccessibleProtection(protectionId);
     }
 
     /**
@@ -103,10 +133,8 @@ public class LWCPlayer implements CommandSender {
      * @param player
      */
     public static void removePlayer(Player player) {
-        getPlayer(player);
-
         // uncache them
-        playerCache.remove(player);
+        sessions.remove(player.getUniqueId());
     }
 
     /**
@@ -267,9 +295,38 @@ public class LWCPlayer implements CommandSender {
 
     /**
      * @return the set of protections the player can temporarily access
+     * @deprecated loads every protection; use {@link #hasAccessibleProtection(int)} or {@link #getAccessibleProtectionIds()}
      */
+    @Deprecated
     public Set<Protection> getAccessibleProtections() {
-        return new HashSet<Protection>(accessibleProtections);
+        Set<Protection> protections = new HashSet<Protection>();
+
+        for (int protectionId : accessibleProtections) {
+            Protection protection = lwc.getPhysicalDatabase().loadProtection(protectionId);
+
+            if (protection != null) {
+                protections.add(protection);
+            }
+        }
+
+        return protections;
+    }
+
+    /**
+     * @return the ids of the protections the player can temporarily access
+     */
+    public int[] getAccessibleProtectionIds() {
+        return accessibleProtections.clone();
+    }
+
+    /**
+     * Check if the player can temporarily access a protection. Can be called from any thread.
+     *
+     * @param protectionId
+     * @return
+     */
+    public boolean hasAccessibleProtection(int protectionId) {
+        return Arrays.binarySearch(accessibleProtections, protectionId) >= 0;
     }
 
     /**
@@ -278,8 +335,21 @@ public class LWCPlayer implements CommandSender {
      * @param protection
      * @return
      */
-    public boolean addAccessibleProtection(Protection protection) {
-        return accessibleProtections.add(protection);
+    public synchronized boolean addAccessibleProtection(Protection protection) {
+        int[] ids = accessibleProtections;
+        int index = Arrays.binarySearch(ids, protection.getId());
+
+        if (index >= 0) {
+            return false;
+        }
+
+        index = -index - 1;
+        int[] added = new int[ids.length + 1];
+        System.arraycopy(ids, 0, added, 0, index);
+        added[index] = protection.getId();
+        System.arraycopy(ids, index, added, index + 1, ids.length - index);
+        accessibleProtections = added;
+        return true;
     }
 
     /**
@@ -288,15 +358,26 @@ public class LWCPlayer implements CommandSender {
      * @param protection
      * @return
      */
-    public boolean removeAccessibleProtection(Protection protection) {
-        return accessibleProtections.remove(protection);
+    public synchronized boolean removeAccessibleProtection(Protection protection) {
+        int[] ids = accessibleProtections;
+        int index = Arrays.binarySearch(ids, protection.getId());
+
+        if (index < 0) {
+            return false;
+        }
+
+        int[] removed = new int[ids.length - 1];
+        System.arraycopy(ids, 0, removed, 0, index);
+        System.arraycopy(ids, index + 1, removed, index, ids.length - index - 1);
+        accessibleProtections = removed;
+        return true;
     }
 
     /**
      * Remove all accessible protections
      */
     public void removeAllAccessibleProtections() {
-        accessibleProtections.clear();
+        accessibleProtections = new int[0];
     }
 
     /**
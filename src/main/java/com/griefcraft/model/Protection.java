@@ -504,6 +504,11 @@ public class Protection {
         if (!flags.containsKey(flag.getType())) {
             flags.put(flag.getType(), flag);
             modified = true;
+
+            if (flag.getType() == Flag.Type.MAGNET) {
+                LWC.getInstance().getPhysicalDatabase().getMagnetIndex().add(this);
+            }
+
             return true;
         }
 
@@ -522,6 +527,10 @@ public class Protection {
 
         flags.remove(flag.getType());
         this.modified = true;
+
+        if (flag.getType() == Flag.Type.MAGNET) {
+            LWC.getInstance().getPhysicalDatabase().getMagnetIndex().remove(id);
+        }
     }
 
     /**
@@ -687,6 +696,10 @@ public class Protection {
             return;
         }
 
+        if (blockId != this.blockId) {
+            updateCountIndex(owner, blockId);
+        }
+
         this.blockId = blockId;
         this.modified = true;
     }
@@ -723,10 +736,29 @@ public class Protection {
             return;
         }
 
+        if (owner != null && !owner.equals(this.owner)) {
+            updateCountIndex(owner, blockId);
+        }
+
         this.owner = owner;
         this.modified = true;
     }
 
+    /**
+     * Move this protection in the protection count index when its owner or block id changes. Protections
+     * that are still being loaded (no owner yet) are not counted.
+     *
+     * @param newOwner
+     * @param newBlockId
+     */
+    private void updateCountIndex(String newOwner, int newBlockId) {
+        if (id <= 0 || this.owner == null) {
+            return;
+        }
+
+        LWC.getInstance().getPhysicalDatabase().getCountIndex().move(this.owner, this.blockId, newOwner, newBlockId);
+    }
+
     public void setType(Type type) {
         if (removed) {
             return;
@@ -803,6 +835,16 @@ public class Protection {
      * Remove the protection from the database
      */
     public void remove() {
+        remove(false);
+    }
+
+    /**
+     * Remove the protection
+     *
+     * @param bulk true if the caller deletes the database rows and cache entries of this protection together
+     *             with those of other protections, e.g when removing every protection in a region
+     */
+    public void remove(boolean bulk) {
         if (removed) {
             return;
         }
@@ -820,13 +862,16 @@ public class Protection {
         lwc.getModuleLoader().dispatchEvent(
                 new LWCProtectionRemovePostEvent(this));
 
-        // mark related transactions as inactive
-        for (History history : getRelatedHistory(History.Type.TRANSACTION)) {
-            if (history.getStatus() != History.Status.ACTIVE) {
-                continue;
+        // mark related transactions as inactive with one statement, and in any history
+        // objects that are already loaded
+        for (History history : historyCache) {
+            if (history.getType() == History.Type.TRANSACTION && history.getStatus() == History.Status.ACTIVE) {
+                history.setStatus(History.Status.INACTIVE);
             }
+        }
 
-            history.setStatus(History.Status.INACTIVE);
+        if (lwc.isHistoryEnabled() && !bulk) {
+            lwc.getPhysicalDatabase().deactivateHistory(id, History.Type.TRANSACTION);
         }
 
         // ensure all history objects for this protection are saved
@@ -837,8 +882,13 @@ public class Protection {
 
         // and now finally remove it from the database
         lwc.getDatabaseThread().removeProtection(this);
-        lwc.getPhysicalDatabase().removeProtection(id);
-        removeCache();
+        lwc.getPhysicalDatabase().getMagnetIndex().remove(id);
+
+        if (!bulk) {
+            lwc.getPhysicalDatabase().removeProtection(id);
+            lwc.getPhysicalDatabase().getCountIndex().decrement(owner, blockId);
+            removeCache();
+        }
     }
 
     /**
@@ -917,7 +967,8 @@ public class Protection {
             return;
         }
 
-        for (History history : getRelatedHistory()) {
+        // only loaded history objects can have been modified
+        for (History history : historyCache) {
             // if the history object was modified we need to save it
             if (history.wasModified()) {
                 history.saveNow();
@@ -32,12 +32,10 @@ import com.griefcraft.io.BackupManager;
 import com.griefcraft.lwc.LWC;
 import com.griefcraft.scripting.JavaModule;
 import com.griefcraft.scripting.event.LWCCommandEvent;
-import com.griefcraft.util.StringUtil;
 import org.bukkit.command.CommandSender;
 
 public class AdminBackup extends JavaModule {
 
-    @SuppressWarnings("deprecation")
     @Override
     public void onCommand(LWCCommandEvent event) {
         if (event.isCancelled()) {
@@ -68,20 +66,41 @@ public class AdminBackup extends JavaModule {
         String action = args[1].toLowerCase();
 
         if (action.equals("create")) {
+            if (args.length > 2 && args[2].equalsIgnoreCase("incremental")) {
+                lwc.getBackupManager().createIncrementalBackup();
+                sender.sendMessage("Incremental backup is being created now.");
+                return;
+            }
+
             lwc.getBackupManager().createBackup();
             sender.sendMessage("Backup is being created now.");
         } else if (action.equals("restore")) {
-            if (args.length < 3) {
-                lwc.sendSimpleUsage(sender, "/lwc admin backup restore <BackupName>");
+            if (args.length < 3 || (args.length > 4 && args.length != 8)) {
+                lwc.sendSimpleUsage(sender, "/lwc admin backup restore <BackupName> [world] [x1 z1 x2 z2]");
                 return;
             }
 
-            final String backupName = StringUtil.join(args, 2);
-            sender.sendMessage("Restoring backup " + backupName);
+            final String backupName = args[2];
+            final String world = args.length > 3 ? args[3] : null;
+            int[] area = null;
+
+            if (args.length == 8) {
+                try {
+                    int x1 = Integer.parseInt(args[4]), z1 = Integer.parseInt(args[5]);
+                    int x2 = Integer.parseInt(args[6]), z2 = Integer.parseInt(args[7]);
+                    area = new int[]{Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2)};
+                } catch (NumberFormatException e) {
+                    lwc.sendSimpleUsage(sender, "/lwc admin backup restore <BackupName> [world] [x1 z1 x2 z2]");
+                    return;
+                }
+            }
+
+            final int[] bounds = area;
+            sender.sendMessage("Restoring backup " + backupName + (world != null ? " in " + world : ""));
 
-            lwc.getPlugin().getServer().getScheduler().scheduleAsyncDelayedTask(lwc.getPlugin(), new Runnable() {
+            lwc.getPlugin().getServer().getScheduler().runTaskAsynchronously(lwc.getPlugin(), new Runnable() {
                 public void run() {
-                    BackupManager.Result result = lwc.getBackupManager().restoreBackup(backupName);
+                    BackupManager.Result result = lwc.getBackupManager().restoreBackup(backupName, world, bounds);
                     sender.sendMessage("Result: " + result);
                 }
             });
@@ -0,0 +1,75 @@
+package com.griefcraft.modules.admin;
+
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.scripting.JavaModule;
+import com.griefcraft.scripting.event.LWCCommandEvent;
+import com.griefcraft.util.Colors;
+import com.griefcraft.util.Statistics;
+import com.griefcraft.util.statistics.TickBudget;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+public class AdminBudget extends JavaModule {
+
+    /**
+     * The maximum amount of sections to show
+     */
+    private static final int MAX_SECTIONS = 15;
+
+    @Override
+    public void onCommand(LWCCommandEvent event) {
+        if (event.isCancelled()) {
+            return;
+        }
+
+        if (!event.hasFlag("a", "admin")) {
+            return;
+        }
+
+        LWC lwc = event.getLWC();
+        CommandSender sender = event.getSender();
+        String[] args = event.getArgs();
+
+        if (!args[0].equals("budget")) {
+            return;
+        }
+
+        // we have the right command
+        event.setCancelled(true);
+
+        TickBudget budget = lwc.getTickBudget();
+
+        sender.sendMessage(" ");
+        sender.sendMessage(Colors.Dark_Red + "LWC Tick Budget" + Colors.White + " (per tick: 1s / 1m / 15m, peak)");
+        sender.sendMessage("  Budget: " + Colors.Dark_Green + Statistics.formatMillis(budget.getBudget())
+                + Colors.White + " | Degrade: " + Colors.Dark_Green + budget.isDegradeEnabled()
+                + Colors.White + " | Over budget: " + (budget.isOverBudget() ? Colors.Red + "yes" : Colors.Dark_Green + "no"));
+        sendSection(sender, budget, budget.getTotal());
+        sender.sendMessage(" ");
+
+        List<TickBudget.Section> sections = budget.getSections();
+
+        for (int i = 0; i < sections.size() && i < MAX_SECTIONS; i++) {
+            sendSection(sender, budget, sections.get(i));
+        }
+    }
+
+    /**
+     * Send the timings of a section
+     *
+     * @param sender
+     * @param budget
+     * @param section
+     */
+    private void sendSection(CommandSender sender, TickBudget budget, TickBudget.Section section) {
+        long perTick = section.getAveragePerTick(1);
+        String colour = perTick >= budget.getBudget() ? Colors.Red : Colors.Dark_Green;
+
+        sender.sendMessage("  " + section.getName() + ": " + colour + Statistics.formatMillis(perTick)
+                + Colors.White + " / " + Statistics.formatMillis(section.getAveragePerTick(60))
+                + " / " + Statistics.formatMillis(section.getAveragePerTick(15 * 60))
+                + Colors.Yellow + " peak " + Statistics.formatMillis(section.getPeakTick()));
+    }
+
+}
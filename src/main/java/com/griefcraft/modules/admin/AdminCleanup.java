@@ -28,36 +28,19 @@
 
 package com.griefcraft.modules.admin;
 
-import com.griefcraft.bukkit.EntityBlock;
 import com.griefcraft.lwc.LWC;
-import com.griefcraft.model.Protection;
+import com.griefcraft.lwc.ProtectionCleanup;
 import com.griefcraft.scripting.JavaModule;
 import com.griefcraft.scripting.event.LWCCommandEvent;
-import com.griefcraft.sql.Database;
-import com.griefcraft.sql.PhysDB;
 import com.griefcraft.util.Colors;
-import org.bukkit.Bukkit;
-import org.bukkit.block.Block;
 import org.bukkit.command.CommandSender;
-import org.bukkit.entity.Entity;
-import org.bukkit.scheduler.BukkitScheduler;
-
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
 
 public class AdminCleanup extends JavaModule {
 
     /**
-     * The amount of protection block gets to batch at once
+     * The cleanup that is running, if any
      */
-    private static int BATCH_SIZE = 250;
+    private ProtectionCleanup cleanup = null;
 
     @Override
     public void onCommand(LWCCommandEvent event) {
@@ -82,219 +65,44 @@ public class AdminCleanup extends JavaModule {
 
         // if we shouldn't output
         boolean silent = false;
-
-        if (args.length > 1 && args[1].equalsIgnoreCase("silent")) {
-            silent = true;
-        }
-
-        lwc.sendLocale(sender, "protection.admin.cleanup.start", "count",
-                lwc.getPhysicalDatabase().getProtectionCount());
-
-        // do the work in a separate thread so we don't fully lock the server
-        new Thread(new Admin_Cleanup_Thread(lwc, sender, silent)).start();
-    }
-
-    /**
-     * Class that handles cleaning up the LWC database usage: /lwc admin cleanup
-     */
-    private static class Admin_Cleanup_Thread implements Runnable {
-
-        private LWC lwc;
-        private CommandSender sender;
-        private boolean silent;
-
-        public Admin_Cleanup_Thread(LWC lwc, CommandSender sender, boolean silent) {
-            this.lwc = lwc;
-            this.sender = sender;
-            this.silent = silent;
+        boolean restart = false;
+        boolean cancel = false;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("silent")) {
+                silent = true;
+            } else if (args[i].equalsIgnoreCase("restart")) {
+                restart = true;
+            } else if (args[i].equalsIgnoreCase("cancel")) {
+                cancel = true;
+            }
         }
 
-        /**
-         * Push removal changes to the database
-         *
-         * @param toRemove
-         */
-        public void push(List<Protection> toRemove) throws SQLException {
-            final StringBuilder builder = new StringBuilder();
-            final int total = toRemove.size();
-            int count = 0;
+        boolean running = cleanup != null && !cleanup.isFinished();
 
-            // iterate over the items to remove
-            Iterator<Protection> iter = toRemove.iterator();
-
-            // the database prefix
-            String prefix = lwc.getPhysicalDatabase().getPrefix();
-
-            // create the statement to use
-            Statement statement = lwc.getPhysicalDatabase().getConnection().createStatement();
-
-            while (iter.hasNext()) {
-                Protection protection = iter.next();
-                int protectionId = protection.getId();
-
-                lwc.getDatabaseThread().removeProtection(protection);
-                lwc.getPlugin().getServer().getScheduler().runTask(lwc.getPlugin(), protection::removeCache);
-
-                if (count % 100000 == 0) {
-                    builder.append("DELETE FROM ").append(prefix).append("protections WHERE id IN (")
-                            .append(protectionId);
-                } else {
-                    builder.append(",").append(protectionId);
-                }
-
-                if (count % 100000 == 99999 || count == (total - 1)) {
-                    builder.append(")");
-                    statement.executeUpdate(builder.toString());
-                    builder.setLength(0);
-
-                    sender.sendMessage(Colors.Dark_Green + "REMOVED " + (count + 1) + " / " + total);
-                }
-
-                count++;
+        if (cancel) {
+            if (running) {
+                cleanup.cancel();
+                sender.sendMessage(Colors.Dark_Green + "Stopping the cleanup after the protections being checked");
+            } else {
+                sender.sendMessage(Colors.Red + "No cleanup is running");
             }
 
-            statement.close();
+            return;
         }
 
-        public void run() {
-            List<Protection> toRemove = new LinkedList<>();
-            int removed = 0;
-            int percentChecked = 0;
-
-            // the bukkit scheduler
-            BukkitScheduler scheduler = Bukkit.getScheduler();
-
-            try {
-                sender.sendMessage(Colors.Dark_Red + "Processing cleanup request now in a separate thread");
-
-                // the list of protections work off of. We batch updates to the world
-                // so we can more than 20 results/second.
-                final List<Protection> protections = new ArrayList<>(BATCH_SIZE);
-
-                // amount of protections
-                int totalProtections = lwc.getPhysicalDatabase().getProtectionCount();
-
-                // TODO separate stream logic to somewhere else :)
-                // Create a new database connection, we are just reading
-                PhysDB database = new PhysDB();
-                database.connect();
-                database.load();
-
-                Statement resultStatement = database.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY,
-                        ResultSet.CONCUR_READ_ONLY);
-
-                if (lwc.getPhysicalDatabase().getType() == Database.Type.MySQL) {
-                    resultStatement.setFetchSize(Integer.MIN_VALUE);
-                }
-
-                String prefix = lwc.getPhysicalDatabase().getPrefix();
-                ResultSet result = resultStatement.executeQuery(
-                        "SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
-                                + prefix + "protections");
-                int checked = 0;
-
-                while (result.next()) {
-                    final Protection tprotection = database.resolveProtection(result);
-
-                    if (protections.size() != BATCH_SIZE) {
-                        // Wait until we have BATCH_SIZE protections
-                        protections.add(tprotection);
-
-                        if (protections.size() != totalProtections) {
-                            continue;
-                        }
-                    }
-
-                    // Get all of the blocks in the world
-                    Future<Void> getBlocks = scheduler.callSyncMethod(lwc.getPlugin(), new Callable<Void>() {
-                        public Void call() throws Exception {
-                            for (Protection protection : protections) {
-                                protection.getBlock(); // this will cache it also :D
-                            }
-
-                            return null;
-                        }
-                    });
-
-                    // Get all of the blocks
-                    getBlocks.get();
-
-                    for (final Protection protection : protections) {
-                        if (protection.getBlockId() == EntityBlock.ENTITY_BLOCK_ID) {
-                            final int fakeId = EntityBlock.ENTITY_BLOCK_ID;
-                            // checks if the entity exists
-                            Future<Boolean> entityExists = scheduler.callSyncMethod(lwc.getPlugin(), new Callable<Boolean>() {
-                                public Boolean call() throws Exception {
-                                    if (protection.getBukkitWorld() == null) return false;
-                                    for (Entity entity : protection.getBukkitWorld().getEntities()) {
-                                        if (entity.getUniqueId().hashCode() == fakeId) {
-                                            return true;
-                                        }
-                                    }
-                                    return false;
-                                }
-                            });
-
-                            try {
-                                boolean exists = entityExists.get();
-
-                                if (!exists) {
-                                    toRemove.add(protection);
-                                    removed++;
-
-                                    if (!silent) {
-                                        lwc.sendLocale(sender, "protection.admin.cleanup.removednoexist", "protection", protection.toString());
-                                    }
-                                }
-                            } catch (InterruptedException e) {
-                                lwc.log("Exception caught during cleanup: " + e.getMessage());
-
-                            }
-                        } else {
-                            Block block = protection.getBlock();
-
-                            // remove protections not found in the world
-                            if (block == null || !lwc.isProtectable(block)) {
-                                toRemove.add(protection);
-                                removed++;
-
-                                if (!silent) {
-                                    lwc.sendLocale(sender, "protection.admin.cleanup.removednoexist", "protection", protection.toString());
-                                }
-                            }
-                        }
-
-                        checked++;
-                    }
-
-                    // percentage dump
-                    int percent = (int) ((((double) checked) / totalProtections) * 100);
-
-                    if (percent % 5 == 0 && percentChecked != percent) {
-                        percentChecked = percent;
-                        sender.sendMessage(Colors.Dark_Red + "Cleanup @ " + percent + "% [ " + checked + "/"
-                                + totalProtections + " protections ] [ removed " + removed + " protections ]");
-                    }
-
-                    // Clear the protection set, we are done with them
-                    protections.clear();
-                }
-
-                // close the sql statements
-                result.close();
-                resultStatement.close();
-
-                // flush all of the queries
-                push(toRemove);
-
-                sender.sendMessage("Cleanup completed. Removed " + removed + " protections out of " + checked
-                        + " checked protections.");
-            } catch (Exception e) { // database.connect() throws Exception
-                lwc.log("Exception caught during cleanup: " + e.getMessage());
-                e.printStackTrace();
-            }
+        if (running) {
+            sender.sendMessage(Colors.Red + "A cleanup is already running: " + cleanup.getChecked()
+                    + " protections checked, " + cleanup.getRemoved() + " removed");
+            return;
         }
 
+        lwc.sendLocale(sender, "protection.admin.cleanup.start", "count",
+                lwc.getPhysicalDatabase().getProtectionCount());
+
+        // the chunks are loaded on the main thread in small steps and checked in the background
+        cleanup = new ProtectionCleanup(lwc, sender, silent);
+        cleanup.start(restart);
     }
 
 }
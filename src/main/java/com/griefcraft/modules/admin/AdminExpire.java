@@ -59,12 +59,25 @@ public class AdminExpire extends JavaModule {
         event.setCancelled(true);
 
         if (args.length < 2) {
-            lwc.sendSimpleUsage(sender, "/lwc admin expire <time>");
+            lwc.sendSimpleUsage(sender, "/lwc admin expire [remove] [dryrun] <time>");
             return;
         }
 
-        boolean shouldRemoveBlocks = args[1].endsWith("remove");
-        String toParse = StringUtil.join(args, shouldRemoveBlocks ? 2 : 1);
+        boolean shouldRemoveBlocks = false;
+        boolean dryRun = false;
+        int start = 1;
+
+        for (; start < args.length; start++) {
+            if (args[start].endsWith("remove")) {
+                shouldRemoveBlocks = true;
+            } else if (args[start].equalsIgnoreCase("dryrun")) {
+                dryRun = true;
+            } else {
+                break;
+            }
+        }
+
+        String toParse = StringUtil.join(args, start);
         long time = TimeUtil.parseTime(toParse);
 
         if (time == 0L) {
@@ -74,16 +87,21 @@ public class AdminExpire extends JavaModule {
 
         int threshold = (int) ((System.currentTimeMillis() / 1000L) - time);
 
-        // remove the protections
-        int completed = lwc.fastRemoveProtections(sender, "last_accessed <= " + threshold + " AND last_accessed >= 0", shouldRemoveBlocks);
-
-        // reset the cache
-        if (completed > 0) {
-            LWC.getInstance().getPhysicalDatabase().precache();
-        }
-
-        lwc.sendLocale(sender, "protection.admin.expire.removed", "count", completed);
-
+        // remove the protections in the background
+        lwc.removeProtections(sender, "last_accessed <= ? AND last_accessed >= 0", new Object[]{threshold},
+                shouldRemoveBlocks, dryRun, removal -> {
+                    if (removal.isDryRun()) {
+                        lwc.sendLocale(sender, "protection.admin.expire.dryrun", "count", removal.getCount());
+                        return;
+                    }
+
+                    // reset the cache
+                    if (removal.getRemoved() > 0) {
+                        lwc.getPhysicalDatabase().precache();
+                    }
+
+                    lwc.sendLocale(sender, "protection.admin.expire.removed", "count", removal.getRemoved());
+                });
     }
 
 }
\ No newline at end of file
@@ -29,19 +29,22 @@
 package com.griefcraft.modules.admin;
 
 import com.griefcraft.lwc.LWC;
-import com.griefcraft.model.LWCPlayer;
 import com.griefcraft.model.Protection;
 import com.griefcraft.scripting.JavaModule;
 import com.griefcraft.scripting.event.LWCCommandEvent;
 import com.griefcraft.util.UUIDRegistry;
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
-import org.bukkit.entity.Player;
 
-import java.util.List;
 import java.util.UUID;
 
 public class AdminOwnerAll extends JavaModule {
 
+    /**
+     * How often progress is reported while transferring, in milliseconds
+     */
+    private static final long PROGRESS_INTERVAL = 5000L;
+
     @Override
     public void onCommand(LWCCommandEvent event) {
         if (event.isCancelled()) {
@@ -60,46 +63,60 @@ public class AdminOwnerAll extends JavaModule {
             return;
         }
 
-        if (args.length < 2) {
+        // we have the right command
+        event.setCancelled(true);
+
+        if (args.length < 3) {
             lwc.sendSimpleUsage(sender,
                     "/lwc admin forceownerall <OldPlayer> <NewPlayer>");
             return;
         }
 
-        UUID oldOwner = UUIDRegistry.getUUID(args[2]);
+        String oldOwner = resolveOwner(args[1]);
+        String newOwner = resolveOwner(args[2]);
+        String from = args[1];
+        String to = args[2];
 
-        if (!(sender instanceof Player)) {
-            lwc.sendLocale(sender, "protection.admin.noconsole");
-            return;
+        // give loaded protections their new owner first so a pending save cannot write the old owner back
+        for (Protection protection : lwc.getProtectionCache().getReferences().keySet()) {
+            if (oldOwner.equals(protection.getOwner())) {
+                protection.setOwner(newOwner);
+            }
         }
 
-        String owner;
+        lwc.removeModes(sender);
 
-        if (oldOwner != null) {
-            owner = oldOwner.toString();
-        } else {
-            owner = UUIDRegistry.getName(oldOwner);
-        }
+        lwc.sendLocale(sender, "protection.admin.forceownerall.started", "from", from, "to", to);
 
-        UUID uuid = UUIDRegistry.getUUID(args[1]);
-        List<Protection> protection;
-        if (uuid != null) {
-            protection = lwc.getPhysicalDatabase().loadProtectionsByPlayer(
-                    uuid.toString());
-        } else {
-            protection = lwc.getPhysicalDatabase().loadProtectionsByPlayer(
-                    args[1]);
-        }
+        Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), () -> {
+            long[] lastProgress = {System.currentTimeMillis()};
 
-        LWCPlayer player = lwc.wrapPlayer(sender);
-        for (Protection prot : protection) {
-            prot.setOwner(owner);
-            lwc.getPhysicalDatabase().saveProtection(prot);
-            lwc.removeModes(player);
-            lwc.log(prot.getOwner() + " Changed");
-            lwc.sendLocale(player, "protection.interact.forceowner.finalize",
-                    "player", prot.getFormattedOwnerPlayerName());
-        }
+            int count = lwc.getPhysicalDatabase().transferProtections(oldOwner, newOwner, transferred -> {
+                long now = System.currentTimeMillis();
+
+                if (now - lastProgress[0] >= PROGRESS_INTERVAL) {
+                    lastProgress[0] = now;
+                    Bukkit.getScheduler().runTask(lwc.getPlugin(),
+                            () -> lwc.sendLocale(sender, "protection.admin.forceownerall.progress", "count", transferred));
+                }
+            });
+
+            Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> {
+                lwc.log("Transferred " + count + " protections from " + from + " to " + to);
+                lwc.sendLocale(sender, "protection.admin.forceownerall.finalize", "count", count, "from", from, "to", to);
+            });
+        });
+    }
+
+    /**
+     * Resolve a player to the value stored as the owner of their protections
+     *
+     * @param player
+     * @return
+     */
+    private String resolveOwner(String player) {
+        UUID uuid = UUIDRegistry.getUUID(player);
+        return uuid != null ? uuid.toString() : player;
     }
 
-}
\ No newline at end of file
+}
@@ -32,8 +32,14 @@ import com.griefcraft.lwc.LWC;
 import com.griefcraft.scripting.JavaModule;
 import com.griefcraft.scripting.event.LWCCommandEvent;
 import com.griefcraft.util.StringUtil;
+import com.griefcraft.util.UUIDRegistry;
 import org.bukkit.command.CommandSender;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
 public class AdminPurge extends JavaModule {
 
     @Override
@@ -58,23 +64,117 @@ public class AdminPurge extends JavaModule {
         event.setCancelled(true);
 
         if (args.length < 2) {
-            lwc.sendSimpleUsage(sender, "/lwc admin purge <Players>");
+            lwc.sendSimpleUsage(sender, "/lwc admin purge [remove] [dryrun] <Players>");
+            return;
+        }
+
+        boolean shouldRemoveBlocks = false;
+        boolean dryRun = false;
+        int start = 1;
+
+        for (; start < args.length; start++) {
+            if (args[start].endsWith("remove")) {
+                shouldRemoveBlocks = true;
+            } else if (args[start].equalsIgnoreCase("dryrun")) {
+                dryRun = true;
+            } else {
+                break;
+            }
+        }
+
+        if (start >= args.length) {
+            lwc.sendSimpleUsage(sender, "/lwc admin purge [remove] [dryrun] <Players>");
+            return;
+        }
+
+        purge(lwc, sender, Arrays.asList(StringUtil.join(args, start).split(" ")), shouldRemoveBlocks, dryRun);
+    }
+
+    /**
+     * The amount of owners matched per pass; keeps a statement under SQLite's limit of 999 parameters
+     */
+    private static final int OWNER_BATCH = 500;
+
+    /**
+     * Remove the protections of all of the given players, up to {@link #OWNER_BATCH} players per pass
+     *
+     * @param lwc
+     * @param sender
+     * @param players
+     * @param shouldRemoveBlocks
+     * @param dryRun
+     */
+    static void purge(LWC lwc, CommandSender sender, List<String> players, boolean shouldRemoveBlocks, boolean dryRun) {
+        List<Object> owners = new ArrayList<>();
+
+        for (String player : players) {
+            if (player.isEmpty()) {
+                continue;
+            }
+
+            UUID uuid = UUIDRegistry.getUUID(player);
+            owners.add((uuid != null ? uuid.toString() : player).toLowerCase());
+        }
+
+        if (owners.isEmpty()) {
             return;
         }
 
-        boolean shouldRemoveBlocks = args[1].endsWith("remove");
-        String players = StringUtil.join(args, shouldRemoveBlocks ? 2 : 1);
+        purge(lwc, sender, players, owners, 0, new int[2], shouldRemoveBlocks, dryRun);
+    }
 
-        for (String toRemove : players.split(" ")) {
-            if (toRemove.contains("'")) continue; // bad me
+    /**
+     * Remove the protections of the next pass of owners, then start the pass after it
+     *
+     * @param lwc
+     * @param sender
+     * @param players
+     * @param owners
+     * @param offset             the index of the first owner of this pass
+     * @param totals             the protections found and removed by the passes so far
+     * @param shouldRemoveBlocks
+     * @param dryRun
+     */
+    private static void purge(LWC lwc, CommandSender sender, List<String> players, List<Object> owners, int offset,
+                              int[] totals, boolean shouldRemoveBlocks, boolean dryRun) {
+        List<Object> pass = owners.subList(offset, Math.min(owners.size(), offset + OWNER_BATCH));
+        StringBuilder where = new StringBuilder("LOWER(owner) IN (");
 
-            // Remove all of them
-            lwc.fastRemoveProtectionsByPlayer(sender, toRemove, shouldRemoveBlocks);
-            lwc.sendLocale(sender, "protection.admin.purge.finalize", "player", toRemove);
+        for (int i = 0; i < pass.size(); i++) {
+            where.append(i == 0 ? "?" : ", ?");
         }
 
-        // reload the cache!
-        LWC.getInstance().getPhysicalDatabase().precache();
+        where.append(")");
+
+        lwc.removeProtections(sender, where.toString(), pass.toArray(), shouldRemoveBlocks, dryRun, removal -> {
+            totals[0] += removal.getCount();
+            totals[1] += removal.getRemoved();
+
+            if (offset + OWNER_BATCH < owners.size()) {
+                purge(lwc, sender, players, owners, offset + OWNER_BATCH, totals, shouldRemoveBlocks, dryRun);
+                return;
+            }
+
+            if (removal.isDryRun()) {
+                lwc.sendLocale(sender, "protection.admin.purge.dryrun", "count", totals[0]);
+                return;
+            }
+
+            for (String player : players) {
+                if (player.isEmpty()) {
+                    continue;
+                }
+
+                // invalidate any history objects associated with the player
+                lwc.getPhysicalDatabase().invalidateHistory(player);
+                lwc.sendLocale(sender, "protection.admin.purge.finalize", "player", player);
+            }
+
+            // reload the cache!
+            if (totals[1] > 0) {
+                lwc.getPhysicalDatabase().precache();
+            }
+        });
     }
 
-}
\ No newline at end of file
+}
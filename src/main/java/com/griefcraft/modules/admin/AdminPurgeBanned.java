@@ -65,12 +65,21 @@ public class AdminPurgeBanned extends JavaModule {
         // we have the right command
         event.setCancelled(true);
 
-        boolean shouldRemoveBlocks = args.length > 1 && args[1].endsWith("remove");
+        boolean shouldRemoveBlocks = false;
+        boolean dryRun = false;
+
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].endsWith("remove")) {
+                shouldRemoveBlocks = true;
+            } else if (args[i].equalsIgnoreCase("dryrun")) {
+                dryRun = true;
+            }
+        }
+
         List<String> players = loadBannedPlayers();
 
-        for (String toRemove : players) {
-            lwc.fastRemoveProtectionsByPlayer(sender, toRemove, shouldRemoveBlocks);
-            lwc.sendLocale(sender, "protection.admin.purge.finalize", "player", toRemove);
+        if (!players.isEmpty()) {
+            AdminPurge.purge(lwc, sender, players, shouldRemoveBlocks, dryRun);
         }
     }
 
@@ -96,11 +96,18 @@ public class AdminQuery extends JavaModule {
 
                 // choose the statement
                 if (args[0].startsWith("update")) {
+                    // the rows it changes are not known, so the next backup cannot be incremental
+                    database.invalidateChangeLog();
+
                     int affected = statement.executeUpdate("UPDATE " + database.getPrefix() + "protections " + where);
                     sender.sendMessage(Colors.Dark_Green + "Affected rows: " + affected);
+                    database.getCountIndex().clear();
+                    database.getMagnetIndex().reload();
                 } else if (args[0].startsWith("delete")) {
+                    database.logChanges(where);
                     int affected = statement.executeUpdate("DELETE FROM " + database.getPrefix() + "protections WHERE " + where);
                     sender.sendMessage(Colors.Dark_Green + "Affected rows: " + affected);
+                    database.getCountIndex().clear();
                     database.precache();
                 } else if (args[0].startsWith("select")) {
                     ResultSet set = statement.executeQuery("SELECT * FROM " + database.getPrefix() + "protections WHERE " + where);
@@ -0,0 +1,78 @@
+package com.griefcraft.modules.admin;
+
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.scripting.JavaModule;
+import com.griefcraft.scripting.event.LWCCommandEvent;
+import com.griefcraft.sql.HistoryRetention;
+import com.griefcraft.util.Colors;
+import com.griefcraft.util.TimeUtil;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+
+public class AdminRetention extends JavaModule {
+
+    @Override
+    public void onCommand(LWCCommandEvent event) {
+        if (event.isCancelled()) {
+            return;
+        }
+
+        if (!event.hasFlag("a", "admin")) {
+            return;
+        }
+
+        LWC lwc = event.getLWC();
+        CommandSender sender = event.getSender();
+        String[] args = event.getArgs();
+
+        if (!args[0].equals("retention")) {
+            return;
+        }
+
+        // we have the right command
+        event.setCancelled(true);
+
+        HistoryRetention retention = lwc.getHistoryRetention();
+
+        if (args.length > 1 && args[1].equalsIgnoreCase("run")) {
+            if (!lwc.getConfiguration().getBoolean("core.historyRetention.enabled", false) || !retention.hasRules()) {
+                sender.sendMessage(Colors.Red + "History retention is disabled or has no rules (see core.yml)");
+                return;
+            }
+
+            if (retention.isRunning()) {
+                sender.sendMessage(Colors.Red + "History retention is already running");
+                return;
+            }
+
+            Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), retention);
+            sender.sendMessage(Colors.Dark_Green + "Started history retention. See /lwc admin retention for the result");
+            return;
+        }
+
+        sender.sendMessage(" ");
+        sender.sendMessage(Colors.Dark_Red + "LWC History Retention");
+        sender.sendMessage("  Enabled: " + Colors.Dark_Green + lwc.getConfiguration().getBoolean("core.historyRetention.enabled", false)
+                + Colors.White + " | Running: " + Colors.Dark_Green + retention.isRunning());
+
+        for (HistoryRetention.Rule rule : retention.getRules()) {
+            sender.sendMessage("  " + rule.getType().name().toLowerCase() + " " + rule.getStatus().name().toLowerCase()
+                    + ": " + Colors.Dark_Green + rule.getDays() + " days");
+        }
+
+        HistoryRetention.Report report = retention.getLastReport();
+
+        if (report == null) {
+            sender.sendMessage("  Last run: " + Colors.Yellow + "never");
+            return;
+        }
+
+        sender.sendMessage("  Last run: " + Colors.Dark_Green
+                + TimeUtil.timeToString(System.currentTimeMillis() / 1000L - report.getStarted() / 1000L) + " ago"
+                + Colors.White + " taking " + Colors.Dark_Green + (report.getDuration() / 1000D) + "s");
+        sender.sendMessage("  Removed: " + Colors.Dark_Green + report.getRemoved() + Colors.White
+                + " | Archived: " + Colors.Dark_Green + report.getArchived()
+                + Colors.White + " (" + (report.getArchivedBytes() / 1024) + " KiB)");
+    }
+
+}
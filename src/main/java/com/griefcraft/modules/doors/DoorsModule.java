@@ -41,6 +41,10 @@ import org.bukkit.block.Block;
 import org.bukkit.block.data.Openable;
 import org.bukkit.entity.Player;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class DoorsModule extends JavaModule {
 
     /**
@@ -80,10 +84,34 @@ public class DoorsModule extends JavaModule {
      */
     private Action action = Action.TOGGLE;
 
+    /**
+     * The doors waiting to be closed by position, in the order they are due. Every close waits the same
+     * interval, so a door that is opened again is simply moved to the end.
+     */
+    private final Map<String, PendingClose> pendingCloses = new LinkedHashMap<>();
+
+    /**
+     * The amount of ticks the close task has run for
+     */
+    private long tick = 0;
+
+    /**
+     * A door that will be closed
+     */
+    private static class PendingClose {
+        Block block;
+        Block doubleDoorBlock;
+        long dueTick;
+    }
+
     @Override
     public void load(LWC lwc) {
         this.lwc = lwc;
         loadAction();
+
+        // one task closes every door that is due
+        lwc.getPlugin().getServer().getScheduler().scheduleSyncRepeatingTask(lwc.getPlugin(),
+                lwc.getTickBudget().wrap("DoorsModule#autoClose", this::closeDueDoors), 1, 1);
     }
 
     @Override
@@ -136,30 +164,53 @@ public class DoorsModule extends JavaModule {
         changeDoorStates(true, (opensWhenClicked ? null : block), doubleDoorBlock);
 
         if (action == Action.OPEN_AND_CLOSE || protection.hasFlag(Flag.Type.AUTOCLOSE)) {
-            // Abuse the fact that we still use final variables inside the task
-            // The double door block object is initially only assigned if we
-            // need
-            // it, so we just create a second variable ^^
-            final Block finalBlock = block;
-            final Block finalDoubleDoorBlock = doubleDoorBlock;
-
             // Calculate the wait time
             // This is basically Interval * TICKS_PER_SECOND
             int wait = getAutoCloseInterval() * TICKS_PER_SECOND;
 
-            // Create the task
-            // If we are set to close the door after a set period, let's create
-            // a sync task for it
-            lwc.getPlugin().getServer().getScheduler().scheduleSyncDelayedTask(lwc.getPlugin(), () -> {
+            PendingClose close = new PendingClose();
+            close.block = block;
+            close.doubleDoorBlock = doubleDoorBlock;
+            close.dueTick = tick + wait;
 
-                // Essentially all we need to do is reset the door
-                // states
-                // But DO NOT open the door if it's closed !
-                changeDoorStates(false, finalBlock, finalDoubleDoorBlock);
+            // opening the door again replaces the close that is pending for it
+            String key = block.getWorld().getName() + ":" + block.getX() + ":" + block.getY() + ":" + block.getZ();
+            pendingCloses.remove(key);
+            pendingCloses.put(key, close);
+        }
 
-            }, wait);
+    }
+
+    /**
+     * Close the doors that are due
+     */
+    private void closeDueDoors() {
+        tick++;
+
+        Iterator<PendingClose> iterator = pendingCloses.values().iterator();
+
+        while (iterator.hasNext()) {
+            PendingClose close = iterator.next();
+
+            // the rest is due later; only a reload of the interval can put a later close first
+            if (close.dueTick > tick) {
+                break;
+            }
+
+            iterator.remove();
+
+            // Essentially all we need to do is reset the door
+            // states
+            // But DO NOT open the door if it's closed !
+            changeDoorStates(false, close.block, close.doubleDoorBlock);
         }
+    }
 
+    /**
+     * @return the amount of doors waiting to be closed
+     */
+    public int getPendingCloses() {
+        return pendingCloses.size();
     }
 
     /**
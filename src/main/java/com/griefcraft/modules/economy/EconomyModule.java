@@ -28,6 +28,8 @@
 
 package com.griefcraft.modules.economy;
 
+import com.griefcraft.cache.BlockCache;
+import com.griefcraft.cache.LRUCache;
 import com.griefcraft.integration.ICurrency;
 import com.griefcraft.lwc.LWC;
 import com.griefcraft.model.History;
@@ -39,23 +41,26 @@ import com.griefcraft.util.Colors;
 import com.griefcraft.util.config.Configuration;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.event.block.Action;
 import org.bukkit.inventory.InventoryHolder;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
 public class EconomyModule extends JavaModule {
 
     /**
-     * Our cache
+     * Resolved values, by player override or group set and node. Cleared on reload
      */
-    private final Map<String, String> cache = new HashMap<>();
+    private final Map<String, Double> cache = new LRUCache<>(1000);
     private Logger logger = Logger.getLogger("LWC");
 
     /**
@@ -65,32 +70,62 @@ public class EconomyModule extends JavaModule {
 
     /**
      * A cache of prices. When a value is inputted, it stays in memory for milliseconds at best.
-     * The best way to do this? ha, probably not
+     * Bounded in case a registration never completes
      */
-    private Map<Location, String> priceCache = Collections.synchronizedMap(new HashMap<>());
+    private Map<Location, String> priceCache = Collections.synchronizedMap(new LRUCache<>(500));
+
+    /**
+     * If a block type's state holds an inventory, found from the first block of the type that is opened
+     */
+    private final Map<Material, Boolean> containers = new EnumMap<>(Material.class);
+
+    /**
+     * The players that have overrides in the players section
+     */
+    private Set<String> playerOverrides = new HashSet<>();
+
+    /**
+     * Economy.enabled
+     */
+    private boolean enabled;
+
+    public EconomyModule() {
+        loadSettings();
+    }
+
+    @Override
+    public void onReload(LWCReloadEvent event) {
+        loadSettings();
+    }
+
+    /**
+     * Read the settings that are checked on every event and drop everything resolved from the old configuration
+     */
+    private void loadSettings() {
+        enabled = configuration.getBoolean("Economy.enabled", true);
+        List<String> players = configuration.getKeys("players");
+        playerOverrides = players == null ? new HashSet<>() : new HashSet<>(players);
+        cache.clear();
+    }
 
     @Override
     public void onProtectionInteract(LWCProtectionInteractEvent event) {
         if (event.getResult() != Result.DEFAULT || !event.canAccess())
             return;
 
-        if (!configuration.getBoolean("Economy.enabled", true))
+        if (!enabled)
+            return;
+
+        // Are they right clicking the chest (aka open) ?
+        if (event.getEvent().getAction() != Action.RIGHT_CLICK_BLOCK)
             return;
 
         LWC lwc = event.getLWC();
         Protection protection = event.getProtection();
         Player player = event.getPlayer();
 
-        // first, do we still have a currency processor?
-        if (!lwc.getCurrency().isActive())
-            return;
-
         // is it actually a container? :p
-        if (!(protection.getBlock().getState() instanceof InventoryHolder))
-            return;
-
-        // Are they right clicking the chest (aka open) ?
-        if (event.getEvent().getAction() != Action.RIGHT_CLICK_BLOCK)
+        if (!isContainer(protection))
             return;
 
         // Usage fee
@@ -100,16 +135,18 @@ public class EconomyModule extends JavaModule {
         if (usageFee <= 0)
             return;
 
-        // Can they afford it?
-        if (!lwc.getCurrency().canAfford(player, usageFee)) {
+        // first, do we still have a currency processor?
+        if (!lwc.getCurrency().isActive())
+            return;
+
+        // Charge them if they can afford it
+        if (!lwc.getCurrency().tryRemoveMoney(player, usageFee)) {
             // Nope!
             lwc.sendLocale(player, "lwc.economy.insufficientfund.open", "usageFee", lwc.getCurrency().format(usageFee).toString());
             event.setResult(Result.CANCEL);
             return;
         }
 
-        // Charge them!
-        lwc.getCurrency().removeMoney(player, usageFee);
         lwc.sendLocale(player, "lwc.economy.charged.open", "usageFee", lwc.getCurrency().format(usageFee).toString());
     }
 
@@ -118,7 +155,7 @@ public class EconomyModule extends JavaModule {
         if (event.isCancelled())
             return;
 
-        if (!configuration.getBoolean("Economy.enabled", true))
+        if (!enabled)
             return;
 
         // is refunding enabled?
@@ -165,7 +202,7 @@ public class EconomyModule extends JavaModule {
 
     @Override
     public void onPostRegistration(LWCProtectionRegistrationPostEvent event) {
-        if (!configuration.getBoolean("Economy.enabled", true))
+        if (!enabled)
             return;
 
         if (!LWC.getInstance().isHistoryEnabled())
@@ -221,7 +258,7 @@ public class EconomyModule extends JavaModule {
 
     @Override
     public void onPostRemoval(LWCProtectionRemovePostEvent event) {
-        if (!configuration.getBoolean("Economy.enabled", true))
+        if (!enabled)
             return;
 
         // is refunding enabled?
@@ -272,7 +309,7 @@ public class EconomyModule extends JavaModule {
         if (event.isCancelled())
             return;
 
-        if (!configuration.getBoolean("Economy.enabled", true))
+        if (!enabled)
             return;
 
         LWC lwc = event.getLWC();
@@ -355,7 +392,8 @@ public class EconomyModule extends JavaModule {
         if (charge == 0) {
             lwc.sendLocale(player, "lwc.economy.charged.onthehouse");
         } else {
-            if (!currency.canAfford(player, charge)) {
+            // remove the money from their account if they can afford it
+            if (!currency.tryRemoveMoney(player, charge)) {
                 lwc.sendLocale(player, "lwc.economy.insufficientfund.purchase", "currencyName", currency.getMoneyName().toString());
                 lwc.sendLocale(player, "lwc.economy.insufficientfund.remark", "charge", currency.format(charge).toString());
 
@@ -365,8 +403,6 @@ public class EconomyModule extends JavaModule {
                 return;
             }
 
-            // remove the money from their account
-            currency.removeMoney(player, charge);
             if(usedDiscount)
                 lwc.sendLocale(player, "lwc.economy.charged.discountedprice", "charge", currency.format(charge).toString());
             else
@@ -409,9 +445,14 @@ public class EconomyModule extends JavaModule {
         LWC lwc = LWC.getInstance();
         double value = -1;
 
-        String cacheKey = "resolve-" + player.getName() + node;
-        if (cache.containsKey(cacheKey))
-            return Double.parseDouble(cache.get(cacheKey));
+        // players with the same groups and no override of their own resolve the same value
+        List<String> groups = lwc.getPermissions().getGroups(player);
+        String cacheKey = (playerOverrides.contains(player.getName()) ? "player:" + player.getName() : "groups:" + groups)
+                + ":" + node + ":" + sortHighest;
+        Double cached = cache.get(cacheKey);
+
+        if (cached != null)
+            return cached;
 
         // try the player
         try {
@@ -423,7 +464,7 @@ public class EconomyModule extends JavaModule {
 
         // try their groups
         if (value == -1) {
-            for (String groupName : lwc.getPermissions().getGroups(player)) {
+            for (String groupName : groups) {
                 if (groupName != null && !groupName.isEmpty()) {
                     try {
                         double v = Double.parseDouble(map("groups." + groupName + "." + node, "-1"));
@@ -450,10 +491,37 @@ public class EconomyModule extends JavaModule {
             }
         }
 
-        cache.put(cacheKey, Double.toString(value));
+        cache.put(cacheKey, value);
         return value;
     }
 
+    /**
+     * Check if a protection's block holds an inventory. The block state is only looked at once per block type
+     *
+     * @param protection
+     * @return
+     */
+    private boolean isContainer(Protection protection) {
+        Material material = BlockCache.getInstance().getBlockType(protection.getBlockId());
+
+        if (material == null)
+            return false;
+
+        Boolean container = containers.get(material);
+
+        if (container == null) {
+            Block block = protection.getBlock();
+
+            if (block == null || block.getType() != material)
+                return false;
+
+            container = block.getState() instanceof InventoryHolder;
+            containers.put(material, container);
+        }
+
+        return container;
+    }
+
     /**
      * Resolve a configuration node for a player. Tries nodes in this order:
      * 1. players.PLAYERNAME.node
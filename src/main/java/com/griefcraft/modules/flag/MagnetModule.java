@@ -28,6 +28,7 @@
 
 package com.griefcraft.modules.flag;
 
+import com.griefcraft.cache.MagnetIndex;
 import com.griefcraft.lwc.LWC;
 import com.griefcraft.model.Flag;
 import com.griefcraft.model.Protection;
@@ -37,24 +38,28 @@ import com.griefcraft.util.config.Configuration;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.Server;
 import org.bukkit.World;
-import org.bukkit.block.Block;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Item;
-import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
 public class MagnetModule extends JavaModule {
 
+    /**
+     * The amount of ticks between the start of two sweeps
+     */
+    private static final int SWEEP_INTERVAL = 50;
+
     private Configuration configuration = Configuration.load("magnet.yml");
 
     /**
@@ -82,6 +87,16 @@ public class MagnetModule extends JavaModule {
      */
     private int maxPickupDelay;
 
+    /**
+     * How many nanoseconds a tick may spend sweeping
+     */
+    private long budget;
+
+    /**
+     * The chunks the current sweep still has to look for items in
+     */
+    private final Queue<MagnetChunk> chunks = new LinkedList<>();
+
     /**
      * The current entity queue
      */
@@ -92,144 +107,251 @@ public class MagnetModule extends JavaModule {
         Protection protection;
     }
 
+    /**
+     * A loaded chunk and the magnets that reach into it
+     */
+    private class MagnetChunk {
+        String world;
+        int chunkX;
+        int chunkZ;
+        List<MagnetIndex.Magnet> magnets;
+    }
+
     // does all of the work
-    // searches the worlds for items and magnet chests nearby
+    // looks for items in the chunks around magnet chests, spread over as many ticks as needed
     private class MagnetTask implements Runnable {
+
+        /**
+         * The ticks until the next sweep starts
+         */
+        private int untilSweep = SWEEP_INTERVAL;
+
+        /**
+         * The amount of items pulled in the current sweep
+         */
+        private int pulled = 0;
+
+        /**
+         * The magnets checked in the current sweep; null if a magnet can not pull items
+         */
+        private final Map<Integer, Protection> checked = new HashMap<>();
+
         public void run() {
-            Server server = Bukkit.getServer();
             LWC lwc = LWC.getInstance();
 
-            // Do we need to requeue?
-            if (items.size() == 0) {
-                for (World world : server.getWorlds()) {
-                    for (Entity entity : world.getEntities()) {
-                        if (isDisplay(entity)) {
-                            continue;
-                        }
-
-                        if (!(entity instanceof Item)) {
-                            continue;
-                        }
-
-                        Item item = (Item) entity;
-                        ItemStack stack = item.getItemStack();
-
-                        // check if the pickup delay is ok
-                        if (item.getPickupDelay() > maxPickupDelay) {
-                            continue;
-                        }
-
-                        // check if it is in the blacklist
-                        if (itemBlacklist.contains(stack.getType())) {
-                            continue;
-                        }
-
-                        // check if the item is valid
-                        if (stack.getAmount() <= 0) {
-                            continue;
-                        }
-
-                        if (item.isDead()) {
-                            continue;
-                        }
-
-                        LWCMagnetPullEvent event = new LWCMagnetPullEvent(item);
-                        lwc.getModuleLoader().dispatchEvent(event);
-
-                        // has the event been cancelled?
-                        if (event.isCancelled()) {
-                            continue;
-                        }
-
-                        Location location = item.getLocation();
-                        int x = location.getBlockX();
-                        int y = location.getBlockY();
-                        int z = location.getBlockZ();
-
-                        List<Protection> protections = lwc.getPhysicalDatabase().loadProtections(world.getName(), x, y,
-                                z, radius);
-                        for (Protection protection : protections) {
-                            if (protection.hasFlag(Flag.Type.MAGNET)) {
-
-                                if (protection.getBukkitWorld().getName() != item.getWorld().getName())
-                                    continue;
-
-                                // we only want inventory blocks
-                                if (!(protection.getBlock().getState() instanceof InventoryHolder)) {
-                                    continue;
-                                }
-
-                                // never allow a shulker box to enter another shulker box
-                                if (item.getItemStack().getType().toString().contains("SHULKER_BOX") && protection.getBlock().getType().toString().contains("SHULKER_BOX")) {
-                                    continue;
-                                }
-
-                                MagnetNode node = new MagnetNode();
-                                node.item = item;
-                                node.protection = protection;
-                                items.offer(node);
-                                break;
-                            }
-                        }
-                    }
-                }
+            // Magnets are not critical, skip a tick if LWC is over its tick budget
+            if (lwc.getTickBudget().isOverBudget()) {
+                return;
+            }
+
+            if (--untilSweep <= 0 && chunks.isEmpty() && items.isEmpty()) {
+                untilSweep = SWEEP_INTERVAL;
+                startSweep(lwc);
+            }
+
+            long start = System.nanoTime();
+
+            while (!chunks.isEmpty() && System.nanoTime() - start < budget) {
+                findItems(lwc, chunks.poll());
             }
 
             // Throttle amount of items polled
-            int count = 0;
             MagnetNode node;
 
-            while ((node = items.poll()) != null) {
-                Item item = node.item;
-                Protection protection = node.protection;
+            while (System.nanoTime() - start < budget && pulled <= perSweep && (node = items.poll()) != null) {
+                if (pull(lwc, node)) {
+                    pulled++;
+                }
+            }
 
-                World world = item.getWorld();
-                ItemStack itemStack = item.getItemStack();
-                Location location = item.getLocation();
-                Block block = protection.getBlock();
+            // Remove the items and suck them up :3 - one insertion per chest
+            lwc.getDepositService().flush();
 
-                if (item.isDead()) {
+            // anything left over is found again by the next sweep
+            if (pulled > perSweep) {
+                items.clear();
+            }
+        }
+
+        /**
+         * Queue the loaded chunks magnets reach into
+         *
+         * @param lwc
+         */
+        private void startSweep(LWC lwc) {
+            pulled = 0;
+            checked.clear();
+
+            for (Map.Entry<String, Map<Long, List<MagnetIndex.Magnet>>> world : lwc.getPhysicalDatabase().getMagnetIndex().getReach(radius).entrySet()) {
+                World bworld = Bukkit.getWorld(world.getKey());
+
+                if (bworld == null) {
                     continue;
                 }
 
-                // Remove the items and suck them up :3
-                Map<Integer, ItemStack> remaining;
-                try {
-                    remaining = lwc.depositItems(block, itemStack);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return;
+                for (Map.Entry<Long, List<MagnetIndex.Magnet>> reach : world.getValue().entrySet()) {
+                    int chunkX = MagnetIndex.chunkX(reach.getKey());
+                    int chunkZ = MagnetIndex.chunkZ(reach.getKey());
+
+                    // items in unloaded chunks can not be picked up, so never load them
+                    if (!bworld.isChunkLoaded(chunkX, chunkZ)) {
+                        continue;
+                    }
+
+                    MagnetChunk chunk = new MagnetChunk();
+                    chunk.world = world.getKey();
+                    chunk.chunkX = chunkX;
+                    chunk.chunkZ = chunkZ;
+                    chunk.magnets = reach.getValue();
+                    chunks.offer(chunk);
                 }
+            }
+        }
+
+        /**
+         * Queue the items in a chunk that are in reach of a magnet
+         *
+         * @param lwc
+         * @param chunk
+         */
+        private void findItems(LWC lwc, MagnetChunk chunk) {
+            World world = Bukkit.getWorld(chunk.world);
+
+            if (world == null || !world.isChunkLoaded(chunk.chunkX, chunk.chunkZ)) {
+                return;
+            }
 
-                // we cancelled the item drop for some reason
-                if (remaining == null) {
+            for (Entity entity : world.getChunkAt(chunk.chunkX, chunk.chunkZ).getEntities()) {
+                if (!(entity instanceof Item)) {
                     continue;
                 }
 
-                if (remaining.size() == 1) {
-                    ItemStack other = remaining.values().iterator().next();
+                if (isDisplay(entity)) {
+                    continue;
+                }
+
+                Item item = (Item) entity;
+                ItemStack stack = item.getItemStack();
 
-                    if (itemStack.getType() == other.getType() && itemStack.getAmount() == other.getAmount()) {
+                // check if the pickup delay is ok
+                if (item.getPickupDelay() > maxPickupDelay) {
+                    continue;
+                }
+
+                // check if it is in the blacklist
+                if (itemBlacklist.contains(stack.getType())) {
+                    continue;
+                }
+
+                // check if the item is valid
+                if (stack.getAmount() <= 0) {
+                    continue;
+                }
+
+                if (item.isDead()) {
+                    continue;
+                }
+
+                Location location = item.getLocation();
+                int x = location.getBlockX();
+                int y = location.getBlockY();
+                int z = location.getBlockZ();
+
+                for (MagnetIndex.Magnet magnet : chunk.magnets) {
+                    if (Math.abs(magnet.getX() - x) > radius || Math.abs(magnet.getY() - y) > radius
+                            || Math.abs(magnet.getZ() - z) > radius) {
                         continue;
                     }
-                }
-                // remove the item on the ground
-                item.remove();
 
-                // if we have a remainder, we need to drop them
-                if (remaining.size() > 0) {
-                    for (ItemStack stack : remaining.values()) {
-                        world.dropItemNaturally(location, stack);
+                    Protection protection = check(lwc, magnet);
+
+                    if (protection == null) {
+                        continue;
+                    }
+
+                    // never allow a shulker box to enter another shulker box
+                    if (stack.getType().toString().contains("SHULKER_BOX") && protection.getBlock().getType().toString().contains("SHULKER_BOX")) {
+                        continue;
                     }
-                }
 
-                if (count > perSweep) {
+                    LWCMagnetPullEvent event = new LWCMagnetPullEvent(item);
+                    lwc.getModuleLoader().dispatchEvent(event);
+
+                    // has the event been cancelled?
+                    if (event.isCancelled()) {
+                        break;
+                    }
+
+                    MagnetNode node = new MagnetNode();
+                    node.item = item;
+                    node.protection = protection;
+                    items.offer(node);
                     break;
                 }
+            }
+        }
+
+        /**
+         * Check if a magnet can pull items, once per sweep
+         *
+         * @param lwc
+         * @param magnet
+         * @return the magnet's protection, or null if it can not pull items
+         */
+        private Protection check(LWC lwc, MagnetIndex.Magnet magnet) {
+            if (checked.containsKey(magnet.getId())) {
+                return checked.get(magnet.getId());
+            }
+
+            Protection protection = lwc.getPhysicalDatabase().loadProtection(magnet.getId());
+
+            if (protection == null || !protection.hasFlag(Flag.Type.MAGNET)) {
+                // removed or changed without the index hearing of it
+                lwc.getPhysicalDatabase().getMagnetIndex().remove(magnet.getId());
+                protection = null;
+            } else if (!lwc.getDepositService().isContainer(protection.getBlock())) {
+                // we only want inventory blocks
+                protection = null;
+            }
+
+            checked.put(magnet.getId(), protection);
+            return protection;
+        }
 
-                count++;
+        /**
+         * Queue an item to be pulled into its magnet
+         *
+         * @param lwc
+         * @param node
+         * @return true if the item was queued
+         */
+        private boolean pull(LWC lwc, MagnetNode node) {
+            Item item = node.item;
+
+            if (item.isDead()) {
+                return false;
             }
 
+            ItemStack itemStack = item.getItemStack();
+
+            return lwc.getDepositService().queue(node.protection.getBlock(), itemStack, leftover -> {
+                // nothing fit
+                if (leftover >= itemStack.getAmount()) {
+                    return;
+                }
+
+                Location location = item.getLocation();
+
+                // remove the item on the ground
+                item.remove();
+
+                // if we have a remainder, we need to drop them
+                if (leftover > 0) {
+                    ItemStack remainder = itemStack.clone();
+                    remainder.setAmount(leftover);
+                    item.getWorld().dropItemNaturally(location, remainder);
+                }
+            });
         }
     }
 
@@ -268,6 +390,7 @@ public class MagnetModule extends JavaModule {
         radius = configuration.getInt("magnet.radius", 3);
         perSweep = configuration.getInt("magnet.perSweep", 20);
         maxPickupDelay = configuration.getInt("magnet.maxPickupDelay", 40);
+        budget = TimeUnit.MILLISECONDS.toNanos(Math.max(1, lwc.getConfiguration().getInt("core.tickBudget.magnet", 2)));
 
         if (!enabled) {
             return;
@@ -284,9 +407,11 @@ public class MagnetModule extends JavaModule {
             }
         }
 
-        // register our search thread schedule
+        // index the magnets, then register our search thread schedule
+        lwc.getPhysicalDatabase().getMagnetIndex().load();
         MagnetTask searchThread = new MagnetTask();
-        lwc.getPlugin().getServer().getScheduler().scheduleSyncRepeatingTask(lwc.getPlugin(), searchThread, 50, 50);
+        lwc.getPlugin().getServer().getScheduler().scheduleSyncRepeatingTask(lwc.getPlugin(),
+                lwc.getTickBudget().wrap("MagnetModule#sweep", searchThread), 1, 1);
     }
 
 }
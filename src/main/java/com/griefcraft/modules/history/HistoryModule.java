@@ -28,6 +28,7 @@
 
 package com.griefcraft.modules.history;
 
+import com.griefcraft.cache.LRUCache;
 import com.griefcraft.lwc.LWC;
 import com.griefcraft.model.Action;
 import com.griefcraft.model.History;
@@ -53,6 +54,12 @@ public class HistoryModule extends JavaModule {
      */
     public static final int ITEMS_PER_PAGE = 15;
 
+    /**
+     * The last page of history each sender looked at, so the next page can continue from its last id
+     * instead of skipping over every earlier page
+     */
+    private final LRUCache<String, PageCursor> cursors = new LRUCache<>(100);
+
     /**
      * History tool
      */
@@ -390,14 +397,31 @@ public class HistoryModule extends JavaModule {
         // Get the first page
         List<History> relatedHistory;
 
+        String filter = isWildcard ? "*" : playerName.toLowerCase();
+        PageCursor cursor = cursors.get(sender.getName());
+        int beforeId = -1;
+
+        // the first page and the page after the last one shown are found by id
+        if (page == 1) {
+            beforeId = 0;
+        } else if (cursor != null && cursor.filter.equals(filter) && cursor.page == page - 1) {
+            beforeId = cursor.lastId;
+        }
+
         if (isWildcard) {
-            relatedHistory = lwc.getPhysicalDatabase().loadHistory((page - 1) * ITEMS_PER_PAGE, ITEMS_PER_PAGE);
+            relatedHistory = beforeId >= 0 ? lwc.getPhysicalDatabase().loadHistoryBefore(beforeId, ITEMS_PER_PAGE)
+                    : lwc.getPhysicalDatabase().loadHistory((page - 1) * ITEMS_PER_PAGE, ITEMS_PER_PAGE);
             historyCount = lwc.getPhysicalDatabase().getHistoryCount();
         } else {
-            relatedHistory = lwc.getPhysicalDatabase().loadHistory(playerName, (page - 1) * ITEMS_PER_PAGE, ITEMS_PER_PAGE);
+            relatedHistory = beforeId >= 0 ? lwc.getPhysicalDatabase().loadHistoryBefore(playerName, beforeId, ITEMS_PER_PAGE)
+                    : lwc.getPhysicalDatabase().loadHistory(playerName, (page - 1) * ITEMS_PER_PAGE, ITEMS_PER_PAGE);
             historyCount = lwc.getPhysicalDatabase().getHistoryCount(playerName);
         }
 
+        if (relatedHistory.size() > 0) {
+            cursors.put(sender.getName(), new PageCursor(filter, page, relatedHistory.get(relatedHistory.size() - 1).getId()));
+        }
+
         // Calculate page count
         if (historyCount > 0) {
             pageCount = (int) Math.floor(historyCount / (page * ITEMS_PER_PAGE));
@@ -437,4 +461,29 @@ public class HistoryModule extends JavaModule {
         }
     }
 
+    /**
+     * The position of the last history page a sender looked at
+     */
+    private static class PageCursor {
+
+        /**
+         * The player the history was for, or * for everyone's history
+         */
+        private final String filter;
+
+        private final int page;
+
+        /**
+         * The id of the last history object on the page
+         */
+        private final int lastId;
+
+        PageCursor(String filter, int page, int lastId) {
+            this.filter = filter;
+            this.page = page;
+            this.lastId = lastId;
+        }
+
+    }
+
 }
@@ -242,11 +242,12 @@ public class LimitsV2 extends JavaModule {
         public int getProtectionCount(Player player, Material material) {
             LWC lwc = LWC.getInstance();
             BlockCache blockCache = BlockCache.getInstance();
-            int signCount = 0;
+            int[] blockIds = new int[SIGNS.size()];
+            int index = 0;
             for (Material sign : SIGNS) {
-                signCount += lwc.getPhysicalDatabase().getProtectionCount(player.getName(), blockCache.getBlockId(sign));
+                blockIds[index++] = blockCache.getBlockId(sign);
             }
-            return signCount;
+            return lwc.getPhysicalDatabase().getProtectionCount(player.getName(), blockIds);
         }
 
     }
@@ -261,11 +262,12 @@ public class LimitsV2 extends JavaModule {
         public int getProtectionCount(Player player, Material material) {
             LWC lwc = LWC.getInstance();
             BlockCache blockCache = BlockCache.getInstance();
-            int boxCount = 0;
+            int[] blockIds = new int[SHULKER_BOXES.size()];
+            int index = 0;
             for (Material box : SHULKER_BOXES) {
-                boxCount += lwc.getPhysicalDatabase().getProtectionCount(player.getName(), blockCache.getBlockId(box));
+                blockIds[index++] = blockCache.getBlockId(box);
             }
-            return boxCount;
+            return lwc.getPhysicalDatabase().getProtectionCount(player.getName(), blockIds);
         }
 
     }
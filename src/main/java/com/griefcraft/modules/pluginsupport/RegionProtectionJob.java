@@ -0,0 +1,318 @@
+package com.griefcraft.modules.pluginsupport;
+
+import com.griefcraft.cache.BlockCache;
+import com.griefcraft.cache.ProtectionCache;
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.model.Protection;
+import com.griefcraft.util.matchers.DoubleChestMatcher;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.Bisected;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.Chest;
+import org.bukkit.block.data.type.Door;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Protects every protectable block in a cuboid. Chunk snapshots are taken on the main thread within a
+ * per-tick budget and scanned off the main thread; each chunk then needs one range query to find the
+ * protections that already exist and multi-row INSERTs for the new ones. The database work of the scans is
+ * serialized through {@link com.griefcraft.util.DatabaseThread#flushAndRun(Runnable)}.
+ */
+public class RegionProtectionJob {
+
+    /**
+     * The maximum amount of chunks being scanned at the same time
+     */
+    private static final int MAX_PENDING_SCANS = 4;
+
+    /**
+     * The offsets of the blocks next to a block, whose cached lookups may include the new protection
+     */
+    private static final int[][] NEIGHBOURS = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+
+    private final LWC lwc;
+    private final World world;
+    private final String owner;
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+
+    /**
+     * How long the job may use the main thread each tick, in nanoseconds
+     */
+    private final long budget;
+
+    /**
+     * Called on the main thread when the job is done or cancelled
+     */
+    private final Consumer<RegionProtectionJob> onFinish;
+
+    /**
+     * The chunks that still have to be scanned, as {x, z}
+     */
+    private final Deque<int[]> pendingChunks = new ArrayDeque<>();
+
+    /**
+     * The block id of each protectable material
+     */
+    private final Map<Material, Integer> protectable = new EnumMap<>(Material.class);
+
+    /**
+     * The blocks protected by this job, so the other half of a double chest or door in a neighbouring
+     * chunk is not protected a second time
+     */
+    private final Set<Long> claimed = new HashSet<>();
+
+    private final AtomicInteger pendingScans = new AtomicInteger();
+    private final AtomicInteger scannedChunks = new AtomicInteger();
+    private final AtomicInteger registered = new AtomicInteger();
+
+    private int totalChunks;
+    private BukkitTask task;
+    private volatile boolean cancelled = false;
+    private volatile boolean finished = false;
+
+    public RegionProtectionJob(LWC lwc, World world, String owner, int minX, int minY, int minZ, int maxX, int maxY,
+                               int maxZ, long budgetMillis, Consumer<RegionProtectionJob> onFinish) {
+        this.lwc = lwc;
+        this.world = world;
+        this.owner = owner;
+        this.minX = minX;
+        this.minY = Math.max(0, minY);
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = Math.min(world.getMaxHeight() - 1, maxY);
+        this.maxZ = maxZ;
+        this.budget = TimeUnit.MILLISECONDS.toNanos(Math.max(1, budgetMillis));
+        this.onFinish = onFinish;
+    }
+
+    /**
+     * Start the job. Must be called from the main thread.
+     */
+    public void start() {
+        BlockCache blockCache = BlockCache.getInstance();
+
+        for (Material material : Material.values()) {
+            if (material.isBlock() && Boolean.parseBoolean(lwc.resolveProtectionConfiguration(material, "enabled"))) {
+                int blockId = blockCache.getBlockId(material);
+
+                if (blockId >= 0) {
+                    protectable.put(material, blockId);
+                }
+            }
+        }
+
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                pendingChunks.add(new int[]{chunkX, chunkZ});
+            }
+        }
+
+        totalChunks = pendingChunks.size();
+        task = Bukkit.getScheduler().runTaskTimer(lwc.getPlugin(),
+                lwc.getTickBudget().wrap("RegionProtectionJob#tick", this::tick), 1, 1);
+    }
+
+    /**
+     * Stop the job after the chunks that are being scanned
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Take snapshots of pending chunks until this tick's budget is used up
+     */
+    private void tick() {
+        long start = System.nanoTime();
+
+        while (!cancelled && !pendingChunks.isEmpty() && pendingScans.get() < MAX_PENDING_SCANS
+                && System.nanoTime() - start < budget) {
+            int[] chunk = pendingChunks.poll();
+            ChunkSnapshot snapshot = world.getChunkAt(chunk[0], chunk[1]).getChunkSnapshot(false, false, false);
+
+            pendingScans.incrementAndGet();
+            Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), () -> {
+                try {
+                    scan(snapshot);
+                } finally {
+                    scannedChunks.incrementAndGet();
+                    pendingScans.decrementAndGet();
+                }
+            });
+        }
+
+        if ((cancelled || pendingChunks.isEmpty()) && pendingScans.get() == 0) {
+            task.cancel();
+            finished = true;
+            onFinish.accept(this);
+        }
+    }
+
+    /**
+     * Protect the protectable blocks of a chunk that are not protected yet. Called off the main thread.
+     *
+     * @param snapshot
+     */
+    private void scan(ChunkSnapshot snapshot) {
+        int baseX = snapshot.getX() << 4;
+        int baseZ = snapshot.getZ() << 4;
+        int fromX = Math.max(minX, baseX), toX = Math.min(maxX, baseX + 15);
+        int fromZ = Math.max(minZ, baseZ), toZ = Math.min(maxZ, baseZ + 15);
+
+        // the protections in the chunk and next to it in one query. The statements are shared, so the queries
+        // of the scans run one at a time on the database thread's lock; only the scanning itself is parallel
+        Map<Long, Integer> existing = new HashMap<>();
+
+        lwc.getDatabaseThread().flushAndRun(() -> {
+            for (Protection protection : lwc.getPhysicalDatabase().loadProtections(world.getName(), fromX - 1,
+                    toX + 1, minY - 1, maxY + 1, fromZ - 1, toZ + 1)) {
+                existing.put(key(protection.getX(), protection.getY(), protection.getZ()), protection.getBlockId());
+            }
+        });
+
+        List<Protection> protections = new ArrayList<>();
+
+        for (int x = fromX; x <= toX && !cancelled; x++) {
+            for (int z = fromZ; z <= toZ; z++) {
+                for (int y = minY; y <= maxY; y++) {
+                    Integer blockId = protectable.get(snapshot.getBlockType(x & 15, y, z & 15));
+
+                    if (blockId == null || existing.containsKey(key(x, y, z))
+                            || !claim(existing, x, y, z, snapshot.getBlockData(x & 15, y, z & 15))) {
+                        continue;
+                    }
+
+                    Protection protection = new Protection();
+                    protection.setBlockId(blockId);
+                    protection.setType(Protection.Type.PRIVATE);
+                    protection.setWorld(world.getName());
+                    protection.setOwner(owner);
+                    protection.setPassword("");
+                    protection.setX(x);
+                    protection.setY(y);
+                    protection.setZ(z);
+                    protections.add(protection);
+                }
+            }
+        }
+
+        if (protections.isEmpty()) {
+            return;
+        }
+
+        lwc.getDatabaseThread().flushAndRun(() ->
+                registered.addAndGet(lwc.getPhysicalDatabase().registerProtections(protections)));
+
+        // the blocks may be cached as not protected
+        Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> {
+            ProtectionCache cache = lwc.getProtectionCache();
+
+            for (Protection protection : protections) {
+                cache.remove(cache.cacheKey(world.getName(), protection.getX(), protection.getY(), protection.getZ()));
+
+                for (int[] offset : NEIGHBOURS) {
+                    cache.remove(cache.cacheKey(world.getName(), protection.getX() + offset[0],
+                            protection.getY() + offset[1], protection.getZ() + offset[2]));
+                }
+            }
+        });
+    }
+
+    /**
+     * Claim a block for this job unless it is one half of a double chest or door whose other half is
+     * already protected
+     *
+     * @param existing
+     * @param x
+     * @param y
+     * @param z
+     * @param data
+     * @return true if the block should be protected
+     */
+    private boolean claim(Map<Long, Integer> existing, int x, int y, int z, BlockData data) {
+        Long otherHalf = null;
+
+        if (data instanceof Chest) {
+            BlockFace face = DoubleChestMatcher.getNeighboringChestBlockFace((Chest) data);
+
+            if (face != null) {
+                otherHalf = key(x + face.getModX(), y, z + face.getModZ());
+            }
+        } else if (data instanceof Door) {
+            otherHalf = key(x, ((Door) data).getHalf() == Bisected.Half.TOP ? y - 1 : y + 1, z);
+        }
+
+        synchronized (claimed) {
+            if (otherHalf != null && (existing.containsKey(otherHalf) || claimed.contains(otherHalf))) {
+                return false;
+            }
+
+            claimed.add(key(x, y, z));
+            return true;
+        }
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long) (x & 0x3FFFFFF) << 38) | ((long) (z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+    }
+
+    /**
+     * @return true if the job is done or was cancelled
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return true if the job was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the amount of chunks scanned
+     */
+    public int getScannedChunks() {
+        return scannedChunks.get();
+    }
+
+    /**
+     * @return the amount of chunks in the region
+     */
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    /**
+     * @return the amount of protections registered so far
+     */
+    public int getRegistered() {
+        return registered.get();
+    }
+
+    /**
+     * @return the owner the protections are registered to
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+}
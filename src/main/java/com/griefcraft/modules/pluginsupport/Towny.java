@@ -47,14 +47,19 @@ import com.palmergames.bukkit.towny.object.TownyPermission;
 import com.palmergames.bukkit.towny.object.WorldCoord;
 import com.palmergames.bukkit.towny.utils.PlayerCacheUtil;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
 
+import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 
 public class Towny extends JavaModule implements Listener {
 
@@ -73,6 +78,16 @@ public class Towny extends JavaModule implements Listener {
      */
     private boolean townyBorders = false;
 
+    /**
+     * Town blocks waiting for their protections to be removed
+     */
+    private final Deque<WorldCoord> pendingCleanup = new ArrayDeque<WorldCoord>();
+
+    /**
+     * The task removing the protections of pending town blocks, or null when nothing is pending
+     */
+    private BukkitTask cleanupTask;
+
     /**
      * Load the module
      */
@@ -228,8 +243,9 @@ public class Towny extends JavaModule implements Listener {
     }
 
     /**
-     * Parses over the blocks in a Towny WorldCoord (Essentially a TownBlock,)
-     * and removes any LWC protections present.
+     * Queues a Towny WorldCoord (Essentially a TownBlock,) to have any LWC protections
+     * present removed. Town blocks are cleared over the next ticks, as many per tick as
+     * fit in the cleanup budget.
      * 
      * @param worldCoord WorldCoord from which to remove any protections.
      */
@@ -237,24 +253,49 @@ public class Towny extends JavaModule implements Listener {
         if (worldCoord == null) {
             return;
         }
+
+        pendingCleanup.add(worldCoord);
+
+        if (cleanupTask == null) {
+            LWC lwc = LWC.getInstance();
+            cleanupTask = Bukkit.getScheduler().runTaskTimer(lwc.getPlugin(),
+                    lwc.getTickBudget().wrap("Towny#cleanup", this::processCleanup), 1, 1);
+        }
+    }
+
+    /**
+     * Removes the protections of pending town blocks until this tick's cleanup budget is used up.
+     * At least one town block is cleared each tick.
+     */
+    private void processCleanup() {
         LWC lwc = LWC.getInstance();
-        World world = worldCoord.getBukkitWorld();
-        int townBlockHeight = world.getMaxHeight() - 1;
+        long budget = TimeUnit.MILLISECONDS.toNanos(configuration.getInt("towny.cleanup.budget", 2));
+        long start = System.nanoTime();
         int townBlockSize = TownySettings.getTownBlockSize();
-        for (int x = 0; x < townBlockSize; ++x) {
-            for (int z = 0; z < townBlockSize; ++z) {
-                for (int y = townBlockHeight; y > 0; --y) {
-                    int blockX = worldCoord.getX() * townBlockSize + x;
-                    int blockZ = worldCoord.getZ() * townBlockSize + z;
-                    if (!lwc.isProtectable(world.getBlockAt(blockX, y, blockZ))) {
-                        continue;
-                    }
-                    Protection protection = lwc.getPhysicalDatabase().loadProtection(world.getName(), blockX, y, blockZ);
-                    if (protection != null) {
-                        protection.remove();
-                    }
-                }
+
+        do {
+            WorldCoord worldCoord = pendingCleanup.poll();
+
+            if (worldCoord == null) {
+                break;
+            }
+
+            World world = worldCoord.getBukkitWorld();
+
+            if (world == null) {
+                continue;
             }
+
+            // the whole height of the town block in one range query
+            int blockX = worldCoord.getX() * townBlockSize;
+            int blockZ = worldCoord.getZ() * townBlockSize;
+            lwc.removeProtections(world.getName(), blockX, blockX + townBlockSize - 1,
+                    Integer.MIN_VALUE, Integer.MAX_VALUE, blockZ, blockZ + townBlockSize - 1);
+        } while (System.nanoTime() - start < budget);
+
+        if (pendingCleanup.isEmpty()) {
+            cleanupTask.cancel();
+            cleanupTask = null;
         }
     }
 
@@ -28,7 +28,6 @@ package com.griefcraft.modules.pluginsupport;
  */
 
 
-import com.griefcraft.cache.BlockCache;
 import com.griefcraft.lwc.LWC;
 import com.griefcraft.model.Permission;
 import com.griefcraft.model.Protection;
@@ -67,6 +66,11 @@ public class WorldGuard extends JavaModule {
      */
     private WorldGuardPlugin worldGuardPlugin = null;
 
+    /**
+     * The running protectregion job, if any
+     */
+    private RegionProtectionJob protectionJob = null;
+
     @Override
     public void load(LWC lwc) {
         Plugin plugin = lwc.getPlugin().getServer().getPluginManager()
@@ -116,6 +120,21 @@ public class WorldGuard extends JavaModule {
             return;
         }
 
+        if (commandName.equals("protectregion") && (args[1].equals("status") || args[1].equals("cancel"))) {
+            if (protectionJob == null) {
+                sender.sendMessage(Colors.Dark_Red + "No region is being protected.");
+            } else if (args[1].equals("cancel")) {
+                protectionJob.cancel();
+                sender.sendMessage(Colors.Dark_Green + "Cancelling, " + protectionJob.getRegistered()
+                        + " protections were registered so far.");
+            } else {
+                sender.sendMessage(Colors.Dark_Green + "Scanned " + protectionJob.getScannedChunks() + " / "
+                        + protectionJob.getTotalChunks() + " chunks, registered " + protectionJob.getRegistered()
+                        + " protections.");
+            }
+            return;
+        }
+
         if (!(sender instanceof Player) && args.length < 3) {
             sender.sendMessage(Colors.Dark_Red
                     + "You must specify the world name the region is in since you are not logged in as a player.");
@@ -183,48 +202,30 @@ public class WorldGuard extends JavaModule {
             sender.sendMessage(Colors.Dark_Green + "Removed " + protections.size()
                     + " protections from the region " + regionName);
         } else if (args[0].equals("protectregion")) {
+            if (protectionJob != null) {
+                sender.sendMessage(Colors.Dark_Red
+                        + "A region is already being protected. See /lwc admin protectregion status or cancel");
+                return;
+            }
+
             // The owner to assign to the protections
             String ownerName = "LWCWorldGuard";
 
-            // the number of blocks that were registered
-            int registered = 0;
-
-            for (int x = minBlockX; x <= maxBlockX; x++) {
-                for (int y = minBlockY; y <= maxBlockY; y++) {
-                    for (int z = minBlockZ; z <= maxBlockZ; z++) {
-                        // Get the block at that location
-                        Block block = world.getBlockAt(x, y, z);
-
-                        // Ensure it's protectable
-                        if (!lwc.isProtectable(block)) {
-                            continue;
-                        }
-
-                        // Check if it's already protected
-                        if (lwc.findProtection(block.getLocation()) != null) {
-                            continue;
-                        }
-
-                        // Protect it!
-                        BlockCache blockCache = BlockCache.getInstance();
-                        int blockId = blockCache.getBlockId(block);
-                        if (blockId < 0) {
-                            continue;
-                        }
-                        lwc.getPhysicalDatabase().registerProtection(
-                                blockId, Protection.Type.PRIVATE,
-                                world.getName(), ownerName, "", x, y, z);
-                        registered++;
-                    }
-                }
-            }
-
-            sender.sendMessage("Registered " + registered
-                    + " blocks in the region " + regionName);
-            sender.sendMessage("Currently, the owner of these protections is \""
-                    + ownerName + "\". To change this to someone else, run:");
-            sender.sendMessage("/lwc admin updateprotections set owner = 'NewOwner' where owner = '"
-                    + ownerName + "'");
+            protectionJob = new RegionProtectionJob(lwc, world, ownerName, minBlockX, minBlockY, minBlockZ,
+                    maxBlockX, maxBlockY, maxBlockZ, configuration.getInt("worldguard.protectRegionBudget", 5), job -> {
+                protectionJob = null;
+
+                sender.sendMessage((job.isCancelled() ? "Cancelled after registering " : "Registered ")
+                        + job.getRegistered() + " blocks in the region " + regionName);
+                sender.sendMessage("Currently, the owner of these protections is \""
+                        + ownerName + "\". To change this to someone else, run:");
+                sender.sendMessage("/lwc admin updateprotections set owner = 'NewOwner' where owner = '"
+                        + ownerName + "'");
+            });
+            protectionJob.start();
+
+            sender.sendMessage(Colors.Dark_Green + "Protecting the region " + regionName + " ("
+                    + protectionJob.getTotalChunks() + " chunks) in the background. See /lwc admin protectregion status");
         }
     }
 
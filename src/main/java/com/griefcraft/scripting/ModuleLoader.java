@@ -47,11 +47,14 @@ import com.griefcraft.scripting.event.LWCProtectionRemovePostEvent;
 import com.griefcraft.scripting.event.LWCRedstoneEvent;
 import com.griefcraft.scripting.event.LWCReloadEvent;
 import com.griefcraft.scripting.event.LWCSendLocaleEvent;
+import com.griefcraft.util.Statistics;
+import com.griefcraft.util.statistics.Timer;
 import org.bukkit.plugin.Plugin;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -192,6 +195,11 @@ public class ModuleLoader {
      */
     private final Map<Event, List<Module>> fastModuleCache = new HashMap<>();
 
+    /**
+     * Time spent dispatching each event type to the modules
+     */
+    private final Map<Event, Timer> dispatchTimers = new EnumMap<>(Event.class);
+
     /**
      * Toasty caches for doesObjectOverrideMethod
      */
@@ -208,6 +216,8 @@ public class ModuleLoader {
     private void populateFastModuleCache() {
         for (Event event : Event.values()) {
             fastModuleCache.put(event, new ArrayList<Module>(10));
+            dispatchTimers.put(event, Statistics.getRegistry().timer("lwc_module_dispatch_seconds",
+                    "Time spent dispatching events to modules", "event", event.name()));
         }
     }
 
@@ -349,8 +359,12 @@ public class ModuleLoader {
         if (event == null) {
             return;
         }
+        List<Module> modules = fastModuleCache.get(event.getEventType());
+        if (modules.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
         try {
-            List<Module> modules = fastModuleCache.get(event.getEventType());
             Event type = event.getEventType();
             for (Module module : modules) {
                 if (type == Event.INTERACT_PROTECTION) {
@@ -391,6 +405,8 @@ public class ModuleLoader {
             throw new ModuleException(
                     "LWC Module threw an uncaught exception! LWC version: "
                             + LWCInfo.FULL_VERSION, throwable);
+        } finally {
+            dispatchTimers.get(event.getEventType()).stop(start);
         }
     }
 
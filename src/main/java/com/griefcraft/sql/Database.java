@@ -79,6 +79,11 @@ public abstract class Database {
 
     }
 
+    /**
+     * The name of the timer family statement executions are recorded in
+     */
+    public static final String QUERY_TIMER = "lwc_database_query_seconds";
+
     /**
      * The database engine being used for this connection
      */
@@ -123,13 +128,27 @@ public abstract class Database {
      */
     private boolean useStatementCache = true;
 
+    /**
+     * If statement executions should be timed
+     */
+    private boolean profileQueries;
+
+    /**
+     * Statement executions slower than this (in milliseconds) are logged along with their parameters
+     */
+    private long slowQueryThreshold;
+
     public Database() {
         currentType = DefaultType;
 
-        prefix = LWC.getInstance().getConfiguration().getString("database.prefix", "");
+        Configuration configuration = LWC.getInstance().getConfiguration();
+        prefix = configuration.getString("database.prefix", "");
         if (prefix == null) {
             prefix = "";
         }
+
+        profileQueries = configuration.getBoolean("database.profileQueries", true);
+        slowQueryThreshold = configuration.getInt("database.slowQueryThreshold", 100);
     }
 
     public Database(Type currentType) {
@@ -365,6 +384,10 @@ public abstract class Database {
             preparedStatement = connection.prepareStatement(sql);
         }
 
+        if (profileQueries) {
+            preparedStatement = ProfiledStatement.wrap(preparedStatement, sql, slowQueryThreshold);
+        }
+
         if (useStatementCache) {
             statementCache.put(sql, preparedStatement);
         }
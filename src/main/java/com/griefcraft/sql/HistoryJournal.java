@@ -0,0 +1,614 @@
+package com.griefcraft.sql;
+
+import com.griefcraft.model.History;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Predicate;
+
+/**
+ * An append-only journal of history writes. Writes are queued by the caller and flushed by the database
+ * thread in order: consecutive inserts become multi-row INSERTs and consecutive updates one batch, so
+ * creating or removing a protection never waits on history I/O.
+ * <p/>
+ * New history rows get their id up front from a block of ids reserved in the internal table, so callers
+ * can use the id before the row is written.
+ * <p/>
+ * Reads never flush the journal; they overlay the writes that are not in the database yet on what they
+ * loaded, see {@link #merge(List, Predicate, Comparator)}.
+ */
+class HistoryJournal {
+
+    /**
+     * The internal key the end of the reserved id block is stored under
+     */
+    private static final String RESERVED_ID_KEY = "historyReservedId";
+
+    /**
+     * The amount of ids reserved at a time
+     */
+    private static final int ID_BLOCK_SIZE = 1000;
+
+    /**
+     * The maximum amount of rows in one INSERT. Each row binds 11 parameters, which keeps a full
+     * insert under SQLite's limit of 999 parameters.
+     */
+    private static final int MAX_INSERT_ROWS = 90;
+
+    /**
+     * The amount of times writing an entry on its own may fail before it is dropped
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The columns written for each history row
+     */
+    private static final String COLUMNS = "(id, protectionId, player, playerKey, x, y, z, type, status, metadata, timestamp)";
+
+    /**
+     * The database the journal is written to
+     */
+    private final PhysDB database;
+
+    /**
+     * The writes waiting to be flushed, in order. A flush that fails puts the writes it could not make back
+     * at the front.
+     */
+    private final Deque<Entry> entries = new ConcurrentLinkedDeque<>();
+
+    /**
+     * History objects with an insert waiting to be flushed. Saving them again does not need another write,
+     * the insert writes their latest values.
+     */
+    private final Set<History> pendingInserts = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * The entries taken from the queue by the flush in progress. Entries are only moved from the queue to
+     * here while holding this lock, so a read always sees each unwritten entry in one of the two.
+     */
+    private final Object pendingLock = new Object();
+    private List<Entry> inFlight = Collections.emptyList();
+
+    /**
+     * The next id to hand out
+     */
+    private int nextId = -1;
+
+    /**
+     * The first id that is no longer reserved
+     */
+    private int reservedUntil = -1;
+
+    HistoryJournal(PhysDB database) {
+        this.database = database;
+    }
+
+    /**
+     * Queue a history object to be inserted or updated
+     *
+     * @param history
+     */
+    void save(History history) {
+        if (!history.doesExist()) {
+            // history restored from a backup keeps the time it was written at
+            if (history.getTimestamp() == 0) {
+                history.setTimestamp(System.currentTimeMillis() / 1000L);
+            }
+
+            history.setId(nextId());
+            pendingInserts.add(history);
+            entries.offer(new Entry(Entry.INSERT, history, null, null));
+        } else if (!pendingInserts.contains(history)) {
+            entries.offer(new Entry(Entry.UPDATE, history, null, null));
+        }
+    }
+
+    /**
+     * Queue a statement to be executed in order with the history writes, e.g a set-based status update
+     *
+     * @param sql
+     * @param parameters
+     */
+    void execute(String sql, Object... parameters) {
+        entries.offer(new Entry(Entry.STATEMENT, null, sql, parameters));
+    }
+
+    /**
+     * @return the amount of writes waiting to be flushed
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write every queued entry to the database in one transaction. If writing fails the transaction is
+     * rolled back and the entries are written one at a time, so one bad entry does not hold back the rest;
+     * see {@link #writeAlone(List)}. Must only be called by the database thread or inside
+     * {@link com.griefcraft.util.DatabaseThread#flushAndRun(Runnable)}.
+     */
+    synchronized void flush() {
+        reserveAhead();
+
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        List<Entry> batch = new ArrayList<>();
+        Entry entry;
+
+        synchronized (pendingLock) {
+            while ((entry = entries.poll()) != null) {
+                batch.add(entry);
+
+                // a save from now on needs its own update, the insert may already be bound
+                if (entry.type == Entry.INSERT) {
+                    pendingInserts.remove(entry.history);
+                }
+            }
+
+            inFlight = batch;
+        }
+
+        boolean autoCommit = isAutoCommit();
+        Savepoint savepoint = null;
+
+        try {
+            if (autoCommit) {
+                database.setAutoCommit(false);
+            } else {
+                // only undo the journal's writes, not the rest of the caller's transaction
+                savepoint = database.getConnection().setSavepoint();
+            }
+
+            write(batch);
+
+            if (savepoint != null) {
+                database.getConnection().releaseSavepoint(savepoint);
+            }
+        } catch (SQLException e) {
+            database.log("Could not write " + batch.size() + " history entries at once, writing them one at a time: "
+                    + e.getMessage());
+            rollback(savepoint);
+
+            List<Entry> retry = writeAlone(batch);
+
+            synchronized (pendingLock) {
+                requeue(retry);
+            }
+        } finally {
+            synchronized (pendingLock) {
+                inFlight = Collections.emptyList();
+            }
+
+            if (autoCommit) {
+                database.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Overlay the history that is not in the database yet on history loaded from it, so a read sees every
+     * save without waiting for a flush. Loaded history with an unwritten update is replaced by the saved
+     * object, and unwritten history matching the query is added. Queued statements such as set-based status
+     * updates are not applied; they show once they are flushed.
+     *
+     * @param loaded the history loaded from the database
+     * @param filter the condition of the query
+     * @param order  the order of the query, or null if it has none
+     * @return
+     */
+    List<History> merge(List<History> loaded, Predicate<History> filter, Comparator<History> order) {
+        return merge(loaded, filter, order, true);
+    }
+
+    /**
+     * Replace loaded history with an unwritten update by the saved object, dropping it if it no longer
+     * matches the query. Unlike {@link #merge(List, Predicate, Comparator)} nothing is added, for pages of
+     * history.
+     *
+     * @param loaded
+     * @param filter
+     * @return
+     */
+    List<History> overlay(List<History> loaded, Predicate<History> filter) {
+        return merge(loaded, filter, null, false);
+    }
+
+    /**
+     * Get the history waiting to be inserted that matches a query
+     *
+     * @param filter
+     * @return the history, newest first
+     */
+    List<History> pendingInserts(Predicate<History> filter) {
+        List<History> result = new ArrayList<>();
+
+        for (Entry entry : pendingWrites()) {
+            if (entry.type == Entry.INSERT && filter.test(entry.history)) {
+                result.add(entry.history);
+            }
+        }
+
+        result.sort(Comparator.comparingInt(History::getId).reversed());
+        return result;
+    }
+
+    private List<History> merge(List<History> loaded, Predicate<History> filter, Comparator<History> order,
+                                boolean addPending) {
+        Map<Integer, History> pending = new LinkedHashMap<>();
+
+        for (Entry entry : pendingWrites()) {
+            pending.put(entry.history.getId(), entry.history);
+        }
+
+        if (pending.isEmpty()) {
+            return loaded;
+        }
+
+        List<History> result = new ArrayList<>(loaded.size());
+
+        for (History history : loaded) {
+            History latest = pending.remove(history.getId());
+
+            if (latest == null) {
+                result.add(history);
+            } else if (filter.test(latest)) {
+                result.add(latest);
+            }
+        }
+
+        if (addPending) {
+            for (History history : pending.values()) {
+                if (filter.test(history)) {
+                    result.add(history);
+                }
+            }
+        }
+
+        if (order != null) {
+            result.sort(order);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the inserts and updates not written yet, oldest first
+     */
+    private List<Entry> pendingWrites() {
+        List<Entry> pending = new ArrayList<>();
+
+        synchronized (pendingLock) {
+            for (Entry entry : inFlight) {
+                if (entry.history != null) {
+                    pending.add(entry);
+                }
+            }
+
+            for (Entry entry : entries) {
+                if (entry.history != null) {
+                    pending.add(entry);
+                }
+            }
+        }
+
+        return pending;
+    }
+
+    /**
+     * Write entries in order: consecutive inserts as multi-row INSERTs and consecutive updates as one batch
+     *
+     * @param batch
+     */
+    private void write(List<Entry> batch) throws SQLException {
+        int index = 0;
+
+        while (index < batch.size()) {
+            int type = batch.get(index).type;
+            int end = index;
+
+            while (end < batch.size() && batch.get(end).type == type && type != Entry.STATEMENT) {
+                end++;
+            }
+
+            if (type == Entry.INSERT) {
+                insert(batch.subList(index, end));
+            } else if (type == Entry.UPDATE) {
+                update(batch.subList(index, end));
+            } else {
+                execute(batch.get(index));
+                end = index + 1;
+            }
+
+            index = end;
+        }
+    }
+
+    /**
+     * Write the entries of a failed batch one at a time, each under its own savepoint. An entry that fails
+     * on its own {@link #MAX_ATTEMPTS} times is dropped. If the connection itself fails, nothing is counted
+     * against the entries and the rest of them are retried by the next flush.
+     *
+     * @param batch
+     * @return the entries to retry with the next flush, in order
+     */
+    private List<Entry> writeAlone(List<Entry> batch) {
+        List<Entry> retry = new ArrayList<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            Entry entry = batch.get(i);
+            Savepoint savepoint = null;
+
+            try {
+                savepoint = database.getConnection().setSavepoint();
+                write(Collections.singletonList(entry));
+                database.getConnection().releaseSavepoint(savepoint);
+            } catch (SQLException e) {
+                if (savepoint == null || isConnectionError(e)) {
+                    retry.addAll(batch.subList(i, batch.size()));
+                    break;
+                }
+
+                rollback(savepoint);
+
+                if (++entry.attempts < MAX_ATTEMPTS) {
+                    retry.add(entry);
+                } else {
+                    database.log("Dropped a history write after " + entry.attempts + " failed attempts ("
+                            + entry.describe() + "): " + e.getMessage());
+                }
+            }
+        }
+
+        return retry;
+    }
+
+    /**
+     * @param e
+     * @return true if the error is caused by the connection rather than by the statement
+     */
+    private static boolean isConnectionError(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    /**
+     * Undo the writes of a failed flush
+     *
+     * @param savepoint the savepoint set before the flush, or null if the flush has its own transaction
+     */
+    private void rollback(Savepoint savepoint) {
+        try {
+            if (savepoint != null) {
+                database.getConnection().rollback(savepoint);
+            } else {
+                database.getConnection().rollback();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Put the entries of a failed flush back at the front of the queue, in their original order
+     *
+     * @param batch
+     */
+    private void requeue(List<Entry> batch) {
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            Entry entry = batch.get(i);
+
+            if (entry.type == Entry.INSERT) {
+                pendingInserts.add(entry.history);
+            }
+
+            entries.offerFirst(entry);
+        }
+    }
+
+    /**
+     * Write consecutive inserts as multi-row INSERTs
+     *
+     * @param inserts
+     */
+    private void insert(List<Entry> inserts) throws SQLException {
+        for (int offset = 0; offset < inserts.size(); offset += MAX_INSERT_ROWS) {
+            int rows = Math.min(MAX_INSERT_ROWS, inserts.size() - offset);
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(database.getPrefix()).append("history ")
+                    .append(COLUMNS).append(" VALUES ");
+
+            for (int i = 0; i < rows; i++) {
+                sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            }
+
+            PreparedStatement statement = database.prepare(sql.toString());
+            int parameter = 1;
+
+            for (int i = 0; i < rows; i++) {
+                History history = inserts.get(offset + i).history;
+
+                statement.setInt(parameter++, history.getId());
+                statement.setInt(parameter++, history.getProtectionId());
+                statement.setString(parameter++, history.getPlayer());
+                statement.setString(parameter++, PhysDB.toPlayerKey(history.getPlayer()));
+                statement.setInt(parameter++, history.getX());
+                statement.setInt(parameter++, history.getY());
+                statement.setInt(parameter++, history.getZ());
+                statement.setInt(parameter++, history.getType().ordinal());
+                statement.setInt(parameter++, history.getStatus().ordinal());
+                statement.setString(parameter++, history.getSafeMetaData());
+                statement.setLong(parameter++, history.getTimestamp());
+            }
+
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Write consecutive updates as one batch
+     *
+     * @param updates
+     */
+    private void update(List<Entry> updates) throws SQLException {
+        PreparedStatement statement = database.prepare("UPDATE " + database.getPrefix()
+                + "history SET protectionId = ?, player = ?, playerKey = ?, x = ?, y = ?, z = ?, type = ?, status = ?, metadata = ?, timestamp = ? WHERE id = ?");
+
+        for (Entry entry : updates) {
+            History history = entry.history;
+
+            statement.setInt(1, history.getProtectionId());
+            statement.setString(2, history.getPlayer());
+            statement.setString(3, PhysDB.toPlayerKey(history.getPlayer()));
+            statement.setInt(4, history.getX());
+            statement.setInt(5, history.getY());
+            statement.setInt(6, history.getZ());
+            statement.setInt(7, history.getType().ordinal());
+            statement.setInt(8, history.getStatus().ordinal());
+            statement.setString(9, history.getSafeMetaData());
+            statement.setLong(10, history.getTimestamp());
+            statement.setInt(11, history.getId());
+            statement.addBatch();
+        }
+
+        statement.executeBatch();
+    }
+
+    private void execute(Entry entry) throws SQLException {
+        PreparedStatement statement = database.prepare(entry.sql);
+
+        for (int i = 0; i < entry.parameters.length; i++) {
+            statement.setObject(i + 1, entry.parameters[i]);
+        }
+
+        statement.executeUpdate();
+    }
+
+    /**
+     * Get the next history id, reserving a new block of ids if the current one is used up
+     *
+     * @return
+     */
+    private synchronized int nextId() {
+        if (nextId < 0) {
+            nextId = Math.max(loadMaxId() + 1, loadReservedUntil());
+            reservedUntil = nextId;
+        }
+
+        if (nextId >= reservedUntil) {
+            reserve();
+        }
+
+        return nextId++;
+    }
+
+    /**
+     * Make sure an id written without the journal, e.g by a restore, is never handed out. Before the first
+     * id is handed out nothing has to be done, the next id is then loaded from the highest id in the table.
+     *
+     * @param id
+     */
+    synchronized void reserveBeyond(int id) {
+        if (nextId < 0 || id < nextId) {
+            return;
+        }
+
+        nextId = id + 1;
+
+        while (nextId >= reservedUntil) {
+            reserve();
+        }
+    }
+
+    /**
+     * Extend the reserved block before it runs out, so ids are normally handed out without a query.
+     * Called from the database thread.
+     */
+    private synchronized void reserveAhead() {
+        if (nextId >= 0 && reservedUntil - nextId < ID_BLOCK_SIZE / 2) {
+            reserve();
+        }
+    }
+
+    private void reserve() {
+        reservedUntil += ID_BLOCK_SIZE;
+        database.setInternal(RESERVED_ID_KEY, Integer.toString(reservedUntil));
+    }
+
+    private int loadMaxId() {
+        try {
+            PreparedStatement statement = database.prepare("SELECT MAX(id) AS id FROM " + database.getPrefix() + "history");
+
+            try (ResultSet set = statement.executeQuery()) {
+                return set.next() ? set.getInt("id") : 0;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    private int loadReservedUntil() {
+        String value = database.getInternal(RESERVED_ID_KEY);
+
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private boolean isAutoCommit() {
+        try {
+            return database.getConnection().getAutoCommit();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    /**
+     * A queued write
+     */
+    private static class Entry {
+
+        static final int INSERT = 0;
+        static final int UPDATE = 1;
+        static final int STATEMENT = 2;
+
+        private final int type;
+        private final History history;
+        private final String sql;
+        private final Object[] parameters;
+
+        /**
+         * How many times writing the entry on its own failed
+         */
+        private int attempts = 0;
+
+        Entry(int type, History history, String sql, Object[] parameters) {
+            this.type = type;
+            this.history = history;
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+
+        /**
+         * @return a short description of the write for the log
+         */
+        String describe() {
+            return history != null ? (type == INSERT ? "insert" : "update") + " of history " + history.getId() : sql;
+        }
+
+    }
+
+}
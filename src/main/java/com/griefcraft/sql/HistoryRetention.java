@@ -0,0 +1,380 @@
+package com.griefcraft.sql;
+
+import com.griefcraft.io.HistoryArchive;
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.model.History;
+import com.griefcraft.util.Statistics;
+import com.griefcraft.util.config.Configuration;
+import com.griefcraft.util.statistics.Counter;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Removes history that is older than the configured retention of its type and status, optionally archiving
+ * it first. Runs on an async task and works in small batches; the batch size and the pause between batches
+ * follow how long the database takes, so the database thread and other queries keep getting their turn.
+ */
+public class HistoryRetention implements Runnable {
+
+    /**
+     * The smallest amount of rows removed in one batch
+     */
+    private static final int MIN_BATCH_SIZE = 50;
+
+    private final LWC lwc;
+
+    /**
+     * The retention rules, in the order they are applied
+     */
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * The largest amount of rows removed in one batch
+     */
+    private final int maxBatchSize;
+
+    /**
+     * How long one batch should take at most, in milliseconds
+     */
+    private final long targetLatency;
+
+    /**
+     * Where removed history is archived, or null to only delete it
+     */
+    private final HistoryArchive archive;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final Counter deletedCounter = Statistics.getRegistry().counter("lwc_history_retention_rows_total",
+            "History rows removed by the retention rules");
+    private final Counter archivedBytesCounter = Statistics.getRegistry().counter("lwc_history_retention_archived_bytes_total",
+            "Bytes written to the history archive");
+
+    /**
+     * The report of the last finished run
+     */
+    private volatile Report lastReport;
+
+    public HistoryRetention(LWC lwc) {
+        this.lwc = lwc;
+
+        Configuration configuration = lwc.getConfiguration();
+        String path = "core.historyRetention";
+
+        maxBatchSize = Math.max(MIN_BATCH_SIZE, configuration.getInt(path + ".batchSize", 500));
+        targetLatency = Math.max(1, configuration.getInt(path + ".targetLatency", 50));
+        archive = configuration.getBoolean(path + ".archive", true)
+                ? new HistoryArchive(new File(configuration.getString(path + ".archiveFolder", "plugins/LWC/history")))
+                : null;
+
+        List<String> types = configuration.getKeys(path + ".rules");
+
+        if (types != null) {
+            for (String typeName : types) {
+                History.Type type = parse(History.Type.class, typeName);
+                List<String> statuses = configuration.getKeys(path + ".rules." + typeName);
+
+                if (type == null || statuses == null) {
+                    continue;
+                }
+
+                for (String statusName : statuses) {
+                    History.Status status = parse(History.Status.class, statusName);
+                    int days = configuration.getInt(path + ".rules." + typeName + "." + statusName, -1);
+
+                    if (status != null && days >= 0) {
+                        rules.add(new Rule(type, status, days));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if there are any rules to apply
+     */
+    public boolean hasRules() {
+        return !rules.isEmpty();
+    }
+
+    /**
+     * @return the rules that are applied
+     */
+    public List<Rule> getRules() {
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * @return true if a run is in progress
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return the report of the last finished run, or null if it has not run yet
+     */
+    public Report getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Apply every rule. Does nothing if a run is already in progress.
+     */
+    @Override
+    public void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            PhysDB database = lwc.getPhysicalDatabase();
+            Report report = new Report();
+
+            // make sure queued history is in the database before deciding what is expired
+            lwc.getDatabaseThread().flushNow();
+
+            for (Rule rule : rules) {
+                apply(database, rule, report);
+            }
+
+            report.finish();
+            lastReport = report;
+
+            if (report.getRemoved() > 0) {
+                lwc.log(String.format(Locale.ROOT, "History retention removed %d rows (%d archived, %d KiB) in %.1fs",
+                        report.getRemoved(), report.getArchived(), report.getArchivedBytes() / 1024,
+                        report.getDuration() / 1000D));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Remove the history matching a rule in batches
+     *
+     * @param database
+     * @param rule
+     * @param report
+     */
+    private void apply(PhysDB database, Rule rule, Report report) throws InterruptedException {
+        long before = System.currentTimeMillis() / 1000L - TimeUnit.DAYS.toSeconds(rule.getDays());
+        int batchSize = maxBatchSize;
+
+        while (lwc.getPlugin().isEnabled()) {
+            long start = System.nanoTime();
+            List<History> expired = database.loadHistoryOlderThan(rule.getType(), rule.getStatus(), before, batchSize);
+
+            if (expired.isEmpty()) {
+                break;
+            }
+
+            if (!deleteAndArchive(database, expired, report)) {
+                break;
+            }
+
+            if (expired.size() < batchSize) {
+                break;
+            }
+
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // back off while the database is slow and speed up again when it keeps up
+            if (elapsed > targetLatency) {
+                batchSize = Math.max(MIN_BATCH_SIZE, batchSize / 2);
+            } else if (elapsed < targetLatency / 2) {
+                batchSize = Math.min(maxBatchSize, batchSize * 2);
+            }
+
+            // leave the database idle for at least as long as the batch took
+            Thread.sleep(Math.max(elapsed, 10));
+        }
+    }
+
+    /**
+     * Delete a batch of history and archive it. Each chunk of at most {@link PhysDB#REMOVE_BATCH} rows is
+     * staged in the archive, deleted by a single statement that commits on its own, and only then added to
+     * the archive. No transaction is opened on the shared connection, so writes made by other threads in the
+     * meantime are never part of it. A chunk that fails to delete is dropped from the archive, so rows are
+     * never archived twice.
+     *
+     * @param database
+     * @param expired
+     * @param report
+     * @return true if rows were deleted and nothing failed
+     */
+    private boolean deleteAndArchive(PhysDB database, List<History> expired, Report report) {
+        int deleted = 0;
+
+        try {
+            if (archive != null) {
+                archive.recover();
+            }
+
+            for (int offset = 0; offset < expired.size(); offset += PhysDB.REMOVE_BATCH) {
+                List<History> chunk = expired.subList(offset, Math.min(expired.size(), offset + PhysDB.REMOVE_BATCH));
+                HistoryArchive.Member member = archive != null ? archive.stage(chunk) : null;
+                int rows;
+
+                try {
+                    rows = delete(database, chunk);
+                } catch (SQLException e) {
+                    // never archive history that was not deleted
+                    if (member != null) {
+                        archive.discard(member);
+                    }
+
+                    throw e;
+                }
+
+                deleted += rows;
+                report.removed += rows;
+                deletedCounter.add(rows);
+
+                if (member != null) {
+                    if (rows > 0) {
+                        long bytes = archive.commit(member);
+                        report.archived += chunk.size();
+                        report.archivedBytes += bytes;
+                        archivedBytesCounter.add(bytes);
+                    } else {
+                        archive.discard(member);
+                    }
+                }
+            }
+        } catch (SQLException | IOException e) {
+            // a member that could not be appended is appended by the next run before anything else is deleted
+            lwc.log("Failed to remove history, stopping history retention: " + e.getMessage());
+            return false;
+        }
+
+        return deleted > 0;
+    }
+
+    /**
+     * Delete a chunk of history with one statement, in turn with the database thread
+     *
+     * @param database
+     * @param chunk
+     * @return the amount of rows deleted
+     */
+    private int delete(PhysDB database, List<History> chunk) throws SQLException {
+        int[] deleted = {0};
+        SQLException[] error = {null};
+
+        lwc.getDatabaseThread().flushAndRun(() -> {
+            try {
+                deleted[0] = database.deleteHistory(chunk);
+            } catch (SQLException e) {
+                error[0] = e;
+            }
+        });
+
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        return deleted[0];
+    }
+
+    private static <T extends Enum<T>> T parse(Class<T> type, String name) {
+        try {
+            return Enum.valueOf(type, name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Keep history of a type and status for an amount of days
+     */
+    public static class Rule {
+
+        private final History.Type type;
+        private final History.Status status;
+        private final int days;
+
+        public Rule(History.Type type, History.Status status, int days) {
+            this.type = type;
+            this.status = status;
+            this.days = days;
+        }
+
+        public History.Type getType() {
+            return type;
+        }
+
+        public History.Status getStatus() {
+            return status;
+        }
+
+        public int getDays() {
+            return days;
+        }
+
+    }
+
+    /**
+     * What one run removed
+     */
+    public static class Report {
+
+        private final long started = System.currentTimeMillis();
+        private long duration;
+        private int removed;
+        private int archived;
+        private long archivedBytes;
+
+        private void finish() {
+            duration = System.currentTimeMillis() - started;
+        }
+
+        /**
+         * @return when the run started
+         */
+        public long getStarted() {
+            return started;
+        }
+
+        /**
+         * @return how long the run took in milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return the amount of history rows deleted
+         */
+        public int getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return the amount of history rows written to the archive
+         */
+        public int getArchived() {
+            return archived;
+        }
+
+        /**
+         * @return the amount of bytes written to the archive
+         */
+        public long getArchivedBytes() {
+            return archivedBytes;
+        }
+
+    }
+
+}
@@ -30,9 +30,13 @@ package com.griefcraft.sql;
 
 import com.griefcraft.bukkit.EntityBlock;
 import com.griefcraft.cache.BlockCache;
-import com.griefcraft.cache.LRUCache;
 import com.griefcraft.cache.ProtectionCache;
+import com.griefcraft.cache.MagnetIndex;
+import com.griefcraft.cache.ProtectionCountIndex;
 import com.griefcraft.lwc.LWC;
+import com.griefcraft.migration.BatchedSchemaMigration;
+import com.griefcraft.migration.SchemaMigration;
+import com.griefcraft.migration.SchemaMigrator;
 import com.griefcraft.model.BlockID;
 import com.griefcraft.model.Flag;
 import com.griefcraft.model.History;
@@ -41,8 +45,12 @@ import com.griefcraft.model.Protection;
 import com.griefcraft.modules.limits.LimitsModule;
 import com.griefcraft.scripting.Module;
 import com.griefcraft.util.MaterialUtil;
+import com.griefcraft.util.Statistics;
+import com.griefcraft.util.StringUtil;
 import com.griefcraft.util.UUIDRegistry;
 import com.griefcraft.util.config.Configuration;
+import com.griefcraft.util.statistics.TickBudget;
+import com.griefcraft.util.statistics.Timer;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.entity.EntityType;
@@ -57,15 +65,44 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class PhysDB extends Database {
 
+    /**
+     * The name of the timer family protection loads from the database (cache misses) are recorded in
+     */
+    public static final String LOAD_TIMER = "lwc_protection_load_seconds";
+
+    /**
+     * Time taken to load a protection by its id after missing the cache
+     */
+    private static final Timer loadByIdTimer = Statistics.getRegistry().timer(LOAD_TIMER,
+            "Time spent loading protections from the database after a cache miss", "lookup", "id");
+
+    /**
+     * Time taken to load a protection by its location after missing the cache
+     */
+    private static final Timer loadByLocationTimer = Statistics.getRegistry().timer(LOAD_TIMER,
+            "Time spent loading protections from the database after a cache miss", "lookup", "location");
+
     /**
      * The JSON Parser object
      */
@@ -81,6 +118,92 @@ public class PhysDB extends Database {
      */
     private int protectionCount = 0;
 
+    /**
+     * The amount of protections each owner has, used for protection limits
+     */
+    private final ProtectionCountIndex countIndex = new ProtectionCountIndex(this);
+
+    /**
+     * The protections with the MAGNET flag by world and chunk
+     */
+    private final MagnetIndex magnetIndex = new MagnetIndex(this);
+
+    /**
+     * History writes waiting to be flushed by the database thread
+     */
+    private final HistoryJournal historyJournal = new HistoryJournal(this);
+
+    /**
+     * The internal key the progress of filling history.playerKey is stored under: the last migrated id,
+     * or {@link #HISTORY_MIGRATION_COMPLETE} once every row has been migrated
+     */
+    private static final String HISTORY_MIGRATION_KEY = "historyPlayerKeyMigration";
+
+    private static final String HISTORY_MIGRATION_COMPLETE = "complete";
+
+    /**
+     * The amount of history ids migrated per statement
+     */
+    private static final int HISTORY_MIGRATION_BATCH = 5000;
+
+    /**
+     * The size of the id ranges protections are transferred to another owner in
+     */
+    private static final int TRANSFER_RANGE = 5000;
+
+    /**
+     * The amount of protections deleted per statement when removing many at once; keeps the bound ids under
+     * SQLite's limit of 999 parameters
+     */
+    static final int REMOVE_BATCH = 500;
+
+    /**
+     * The orders history is loaded in
+     */
+    private static final Comparator<History> NEWEST_FIRST = Comparator.comparingInt(History::getId).reversed();
+    private static final Comparator<History> OLDEST_FIRST = Comparator.comparingInt(History::getId);
+
+    /**
+     * The amount of protections inserted per statement when registering many at once. Each row binds 10
+     * parameters, which keeps a full insert under SQLite's limit of 999 parameters.
+     */
+    private static final int INSERT_BATCH = 90;
+
+    /**
+     * The internal key the amount of applied schema steps and the fingerprint of the tables are stored under,
+     * as "version:fingerprint", followed by ":index,index" when steps were deferred
+     */
+    private static final String SCHEMA_KEY = "schema";
+
+    /**
+     * The amount of rows migrated per batch by the data migrations of the schema steps
+     */
+    private static final int SCHEMA_MIGRATION_BATCH = 1000;
+
+    /**
+     * The amount of protections read per round trip while precaching, and handed to the cache at once
+     */
+    private static final int PRECACHE_BATCH = 1000;
+
+    /**
+     * The internal key the last v2 backup is stored under, as "name:sequence", where sequence is the last
+     * change log entry the backup holds. An empty value means changes are logged but the next backup has to
+     * be a full backup.
+     */
+    private static final String BACKUP_CHAIN_KEY = "backupChain";
+
+    /**
+     * If every history row has its normalized player key. Until then player lookups fall back to
+     * comparing LOWER(player), which cannot use an index.
+     */
+    private volatile boolean historyPlayerKeysMigrated = false;
+
+    /**
+     * If changed protections are recorded in the change log. Nothing is recorded until the first v2 backup,
+     * since an incremental backup needs a backup to build on.
+     */
+    private volatile boolean changeLogEnabled = false;
+
     public PhysDB() {
         super();
     }
@@ -165,7 +288,8 @@ public class PhysDB extends Database {
      * @return the number of history items stored
      */
     public int getHistoryCount() {
-        return Integer.decode(fetch("SELECT COUNT(*) AS count FROM " + prefix + "history", "count").toString());
+        return Integer.decode(fetch("SELECT COUNT(*) AS count FROM " + prefix + "history", "count").toString())
+                + historyJournal.pendingInserts(history -> true).size();
     }
 
     /**
@@ -182,24 +306,7 @@ public class PhysDB extends Database {
      * @return the amount of protections they have
      */
     public int getProtectionCount(String player) {
-        int count = 0;
-
-        try {
-            PreparedStatement statement = prepare(
-                    "SELECT COUNT(*) as count FROM " + prefix + "protections WHERE owner = ?");
-            UUID uuid = UUIDRegistry.getUUID(player);
-            statement.setString(1, uuid != null ? uuid.toString() : player);
-
-            ResultSet set = statement.executeQuery();
-
-            if (set.next()) {
-                count = set.getInt("count");
-            }
-        } catch (SQLException e) {
-            printException(e);
-        }
-
-        return count;
+        return countIndex.getCount(resolveOwner(player));
     }
 
     /**
@@ -209,17 +316,17 @@ public class PhysDB extends Database {
      * @return the amount of protections they have
      */
     public int getHistoryCount(String player) {
-        int count = 0;
+        String playerKey = resolveHistoryPlayer(player);
+        int count = historyJournal.pendingInserts(historyOf(playerKey)).size();
 
         try {
             PreparedStatement statement = prepare(
-                    "SELECT COUNT(*) AS count FROM " + prefix + "history WHERE LOWER(player) = LOWER(?)");
-            UUID uuid = UUIDRegistry.getUUID(player);
-            statement.setString(1, uuid != null ? uuid.toString() : player);
+                    "SELECT COUNT(*) AS count FROM " + prefix + "history WHERE " + historyPlayerFilter());
+            statement.setString(1, playerKey);
             ResultSet set = statement.executeQuery();
 
             if (set.next()) {
-                count = set.getInt("count");
+                count += set.getInt("count");
             }
 
         } catch (SQLException e) {
@@ -236,26 +343,69 @@ public class PhysDB extends Database {
      * @return the amount of protections they have of blockId
      */
     public int getProtectionCount(String player, int blockId) {
-        int count = 0;
+        return countIndex.getCount(resolveOwner(player), blockId);
+    }
 
-        try {
-            PreparedStatement statement = prepare(
-                    "SELECT COUNT(*) AS count FROM " + prefix + "protections WHERE owner = ? AND blockId = ?");
-            UUID uuid = UUIDRegistry.getUUID(player);
-            statement.setString(1, uuid != null ? uuid.toString() : player);
-            statement.setInt(2, blockId);
+    /**
+     * Get the amount of chests a player has of any of the given block ids
+     *
+     * @param player
+     * @param blockIds
+     * @return the amount of protections they have of the block ids
+     */
+    public int getProtectionCount(String player, int[] blockIds) {
+        return countIndex.getCount(resolveOwner(player), blockIds);
+    }
 
-            ResultSet set = statement.executeQuery();
+    /**
+     * Count the protections of an owner per block id
+     *
+     * @param owner the value stored in the owner column
+     * @return the amount of protections by block id
+     */
+    public Map<Integer, Integer> loadProtectionCounts(String owner) {
+        Map<Integer, Integer> counts = new HashMap<>();
 
-            if (set.next()) {
-                count = set.getInt("count");
-            }
+        try {
+            PreparedStatement statement = prepare("SELECT blockId, COUNT(*) AS count FROM " + prefix
+                    + "protections WHERE owner = ? GROUP BY blockId");
+            statement.setString(1, owner);
 
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    counts.put(set.getInt("blockId"), set.getInt("count"));
+                }
+            }
         } catch (SQLException e) {
             printException(e);
         }
 
-        return count;
+        return counts;
+    }
+
+    /**
+     * Get the value stored in the owner column for a player
+     *
+     * @param player
+     * @return the player's UUID if it is known, otherwise the given name
+     */
+    private String resolveOwner(String player) {
+        UUID uuid = UUIDRegistry.getUUID(player);
+        return uuid != null ? uuid.toString() : player;
+    }
+
+    /**
+     * @return the index of protection counts per owner and block id
+     */
+    public ProtectionCountIndex getCountIndex() {
+        return countIndex;
+    }
+
+    /**
+     * @return the index of magnet protections per world and chunk
+     */
+    public MagnetIndex getMagnetIndex() {
+        return magnetIndex;
     }
 
     /**
@@ -351,6 +501,10 @@ public class PhysDB extends Database {
             column.setType("VARCHAR(36)");
             history.add(column);
 
+            column = new Column("playerKey");
+            column.setType("VARCHAR(36)");
+            history.add(column);
+
             column = new Column("x");
             column.setType("INTEGER");
             history.add(column);
@@ -406,31 +560,78 @@ public class PhysDB extends Database {
             blocks.add(column);
         }
 
-        protections.execute();
-        history.execute();
-        internal.execute();
-        blocks.execute();
+        // the protections changed since the last backup, for incremental backups
+        Table changes = new Table(this, "changes");
+        {
+            column = new Column("seq");
+            column.setType("INTEGER");
+            column.setPrimary(true);
+            changes.add(column);
+
+            column = new Column("protectionId");
+            column.setType("INTEGER");
+            changes.add(column);
+        }
+
+        // one read tells if the tables changed and which schema steps are still pending
+        SchemaMigrator migrator = createMigrator();
+        String fingerprint = StringUtil.encrypt(getType() + ":" + prefix + ":" + protections.getDefinition()
+                + history.getDefinition() + internal.getDefinition() + blocks.getDefinition()
+                + changes.getDefinition()).substring(0, 16);
+        String[] schema = loadSchemaState();
+        boolean tablesCurrent = schema != null && fingerprint.equals(schema[1]);
+        int schemaVersion = 0;
+        Set<Integer> deferred = new TreeSet<>();
 
-        /**
-         * Updates that alter or rename a table go here
-         */
-        doUpdate301();
-        doUpdate302();
-        doUpdate330();
-        doUpdate400_1();
-        doUpdate400_4();
-        doUpdate400_4();
-        doUpdate400_5();
-        doUpdate400_6();
-        doUpdateLWCX();
-        doUpdateAquatic();
-        doUpdateVillageAndPillage();
-
-        // Load the database version
-        loadDatabaseVersion();
-
-        // perform database upgrades
-        performDatabaseUpdates();
+        if (schema != null) {
+            try {
+                schemaVersion = Integer.parseInt(schema[0]);
+
+                if (schema.length > 2) {
+                    for (String index : schema[2].split(",")) {
+                        deferred.add(Integer.parseInt(index));
+                    }
+                }
+            } catch (NumberFormatException e) {
+            }
+        }
+
+        String deferredBefore = deferred.stream().map(String::valueOf).collect(Collectors.joining(","));
+
+        if (!tablesCurrent) {
+            protections.execute();
+            history.execute();
+            internal.execute();
+            blocks.execute();
+            changes.execute();
+        }
+
+        if (schemaVersion < migrator.size() || !deferred.isEmpty()) {
+            // the version of the indexes and defaults, kept for older LWC versions
+            loadDatabaseVersion();
+
+            if (schemaVersion < migrator.size()) {
+                log("Applying " + (migrator.size() - schemaVersion) + " schema steps");
+            }
+
+            schemaVersion = migrator.migrate(schemaVersion, deferred);
+
+            // those steps rewrite rows without logging them, so the next backup cannot be incremental
+            if (migrator.hasRewrittenProtections() && getInternal(BACKUP_CHAIN_KEY) != null) {
+                setInternal(BACKUP_CHAIN_KEY, "");
+            }
+        }
+
+        String deferredAfter = deferred.stream().map(String::valueOf).collect(Collectors.joining(","));
+
+        if (!tablesCurrent || schema == null || !Integer.toString(schemaVersion).equals(schema[0])
+                || !deferredAfter.equals(deferredBefore)) {
+            setInternal(SCHEMA_KEY, schemaVersion + ":" + fingerprint + (deferred.isEmpty() ? "" : ":" + deferredAfter));
+        }
+
+        // player lookups use the normalized player column once every row has it
+        historyPlayerKeysMigrated = HISTORY_MIGRATION_COMPLETE.equals(getInternal(HISTORY_MIGRATION_KEY));
+        changeLogEnabled = getInternal(BACKUP_CHAIN_KEY) != null;
 
         // get the amount of protections
         protectionCount = getProtectionCount();
@@ -439,13 +640,56 @@ public class PhysDB extends Database {
     }
 
     /**
-     * Perform any database updates
+     * Load the amount of schema steps applied and the fingerprint of the tables, without logging an error if
+     * the internal table does not exist yet
+     *
+     * @return {version, fingerprint} or {version, fingerprint, deferred steps}, otherwise NULL
+     */
+    private String[] loadSchemaState() {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM " + prefix + "internal WHERE name = ?")) {
+            statement.setString(1, SCHEMA_KEY);
+
+            try (ResultSet set = statement.executeQuery()) {
+                if (!set.next() || set.getString("value") == null) {
+                    return null;
+                }
+
+                String[] state = set.getString("value").split(":", 3);
+                return state.length >= 2 ? state : null;
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Create the schema steps in the order they are applied. New steps are only ever added to the end.
+     *
+     * @return
      */
-    public void performDatabaseUpdates() {
+    private SchemaMigrator createMigrator() {
         LWC lwc = LWC.getInstance();
+        SchemaMigrator migrator = new SchemaMigrator(this);
+
+        /**
+         * Updates that alter or rename a table
+         */
+        migrator.add(step("3.01", this::doUpdate301))
+                .add(step("3.02", this::doUpdate302))
+                .add(step("3.30", this::doUpdate330))
+                .add(step("4.0.0-1", this::doUpdate400_1))
+                .add(step("4.0.0-4", this::doUpdate400_4))
+                .add(new BatchedSchemaMigration("4.0.0-5", (database, after) -> migrateFlagsBatch(after)).rewritingProtections())
+                .add(step("4.0.0-6", this::doUpdate400_6))
+                .add(step("lwcx", this::doUpdateLWCX).rewritingProtections())
+                .add(step("aquatic", this::doUpdateAquatic).rewritingProtections())
+                .add(new SchemaMigration("village-and-pillage", database -> doUpdateVillageAndPillage()))
+                .add(step("history-player-key", this::doUpdateHistoryPlayerKey));
 
-        // Indexes
-        if (databaseVersion == 0) {
+        /**
+         * Indexes and defaults, numbered by the database version of older LWC versions
+         */
+        migrator.add(versioned(0, () -> {
             // Drop old, old indexes
             log("Dropping old indexes (One time, may take a while!)");
             dropIndex("protections", "in1");
@@ -465,28 +709,21 @@ public class PhysDB extends Database {
             createIndex("history", "history_main", "protectionId");
             createIndex("history", "history_utility", "player");
             createIndex("history", "history_utility2", "x, y, z");
+        }));
 
-            // increment the database version
-            incrementDatabaseVersion();
-        }
-
-        if (databaseVersion == 1) {
+        migrator.add(versioned(1, () -> {
             log("Creating index on internal");
             createIndex("internal", "internal_main", "name");
-            incrementDatabaseVersion();
-        }
+        }));
 
-        if (databaseVersion == 2) {
-            doUpdate400_2();
-            incrementDatabaseVersion();
-        }
+        // the LWC3 rights table is migrated in batches of protections
+        migrator.add(new BatchedSchemaMigration("4.0.0-2", (database, after) -> migrateRightsBatch(after)).rewritingProtections());
+        migrator.add(versioned(2, () -> {
+        }));
 
-        if (databaseVersion == 3) {
-            createIndex("protections", "protections_type", "type");
-            incrementDatabaseVersion();
-        }
+        migrator.add(versioned(3, () -> createIndex("protections", "protections_type", "type")));
 
-        if (databaseVersion == 4) {
+        migrator.add(versioned(4, () -> {
             List<String> blacklistedBlocks = lwc.getConfiguration().getStringList("optional.blacklistedBlocks",
                     new ArrayList<String>());
 
@@ -502,11 +739,9 @@ public class PhysDB extends Database {
                         + "' from blacklistedBlocks :-)");
                 lwc.log("Also consider enabling optional.alternativeHopperProtection for more efficient hopper protection, or if you plan on protecting hoppers themselves.");
             }
+        }));
 
-            incrementDatabaseVersion();
-        }
-
-        if (databaseVersion == 5) {
+        migrator.add(versioned(5, () -> {
             boolean foundTrappedChest = false;
 
             for (String key : lwc.getConfiguration().getNode("protections.blocks").getKeys(null)) {
@@ -526,9 +761,50 @@ public class PhysDB extends Database {
                 lwc.log("Trapped chests are nearly the same as reg chests but can light up! They can also be double chests.");
                 lwc.log("If you DO NOT want this as protected, simply remove it from core.yml! (search/look for trapped_chests under protections -> blocks");
             }
+        }));
 
-            incrementDatabaseVersion();
-        }
+        migrator.add(versioned(6, () -> {
+            // player lookups use the normalized player key; protection history is read newest first
+            createIndex("history", "history_player_key", "playerKey, id");
+            createIndex("history", "history_protection", "protectionId, id DESC");
+            dropIndex("history", "history_main");
+            dropIndex("history", "history_utility");
+        }));
+
+        return migrator;
+    }
+
+    /**
+     * A schema step that probes the database itself and is always applied
+     *
+     * @param name
+     * @param update
+     * @return
+     */
+    private SchemaMigration step(String name, Runnable update) {
+        return new SchemaMigration(name, database -> {
+            update.run();
+            return true;
+        });
+    }
+
+    /**
+     * A schema step that older LWC versions applied when the database version was the given version. It is
+     * skipped on databases that are past it already.
+     *
+     * @param version
+     * @param update
+     * @return
+     */
+    private SchemaMigration versioned(int version, Runnable update) {
+        return new SchemaMigration("version-" + (version + 1), database -> {
+            if (databaseVersion == version) {
+                update.run();
+                incrementDatabaseVersion();
+            }
+
+            return true;
+        });
     }
 
     /**
@@ -669,6 +945,8 @@ public class PhysDB extends Database {
             return cached;
         }
 
+        long start = System.nanoTime();
+
         try {
             PreparedStatement statement = prepare(
                     "SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
@@ -683,6 +961,8 @@ public class PhysDB extends Database {
             }
         } catch (SQLException e) {
             printException(e);
+        } finally {
+            loadByIdTimer.stop(start);
         }
 
         return null;
@@ -897,17 +1177,12 @@ public class PhysDB extends Database {
         // clear the cache incase we're working on a dirty cache
         cache.clear();
 
-        int precacheSize = lwc.getConfiguration().getInt("core.precache", -1);
-
-        if (precacheSize == -1) {
-            precacheSize = lwc.getConfiguration().getInt("core.cacheSize", 10000);
-        }
         try {
             statement = prepare(
                     "SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
                             + prefix + "protections ORDER BY id DESC LIMIT ?");
-            statement.setInt(1, precacheSize);
-            statement.setFetchSize(10);
+            statement.setInt(1, getPrecacheSize());
+            statement.setFetchSize(PRECACHE_BATCH);
 
             // scrape the protections from the result set now
             List<Protection> protections = resolveProtections(statement);
@@ -922,6 +1197,110 @@ public class PhysDB extends Database {
         }
     }
 
+    /**
+     * Precache protections off the main thread. The cache can be used right away; protections that are not
+     * in it yet are loaded from the database as usual.
+     */
+    public void precacheInBackground() {
+        LWC lwc = LWC.getInstance();
+        ProtectionCache cache = lwc.getProtectionCache();
+        int precacheSize = getPrecacheSize();
+
+        // resolved here so the background thread never touches the tick budget itself
+        TickBudget.Section section = lwc.getTickBudget().section("PhysDB#precache");
+
+        cache.clear();
+        cache.beginWarmup();
+
+        Bukkit.getScheduler().runTaskAsynchronously(lwc.getPlugin(), () -> {
+            long start = System.currentTimeMillis();
+            int loaded = 0;
+            int[] lastId = {Integer.MAX_VALUE};
+            boolean more = true;
+
+            // read in pages by id rather than with one streaming query: the statements and connection are
+            // shared, so each page is read in turn with the database thread's writes, and not every driver
+            // streams a large result set (MySQL only does with useCursorFetch)
+            while (more && loaded < precacheSize) {
+                List<Protection> batch = new ArrayList<>(PRECACHE_BATCH);
+                int limit = Math.min(PRECACHE_BATCH, precacheSize - loaded);
+                int[] read = {0};
+
+                lwc.getDatabaseThread().flushAndRun(() -> {
+                    try {
+                        PreparedStatement statement = prepare("SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
+                                + prefix + "protections WHERE id < ? ORDER BY id DESC LIMIT ?");
+                        statement.setInt(1, lastId[0]);
+                        statement.setInt(2, limit);
+
+                        try (ResultSet set = statement.executeQuery()) {
+                            while (set.next()) {
+                                read[0]++;
+                                lastId[0] = set.getInt("id");
+
+                                Protection protection = resolveProtection(set);
+
+                                if (protection != null) {
+                                    batch.add(protection);
+                                }
+                            }
+                        }
+                    } catch (SQLException e) {
+                        log("Precaching failed: " + e.getMessage());
+                        read[0] = 0;
+                    }
+                });
+
+                addToCache(cache, section, batch);
+                loaded += read[0];
+                more = read[0] == limit;
+            }
+
+            int total = loaded;
+            long duration = System.currentTimeMillis() - start;
+
+            Bukkit.getScheduler().runTask(lwc.getPlugin(), () -> {
+                cache.endWarmup();
+                log("Precached " + total + " protections in " + duration + "ms");
+            });
+        });
+    }
+
+    /**
+     * Hand a batch of precached protections to the cache on the main thread
+     *
+     * @param cache
+     * @param section the tick budget section the work is recorded in
+     * @param batch
+     */
+    private void addToCache(ProtectionCache cache, TickBudget.Section section, List<Protection> batch) {
+        if (!batch.isEmpty()) {
+            Bukkit.getScheduler().runTask(LWC.getInstance().getPlugin(), () -> {
+                long start = section.start();
+
+                try {
+                    cache.addWarmupProtections(batch);
+                } finally {
+                    section.stop(start);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the amount of protections to precache
+     */
+    private int getPrecacheSize() {
+        LWC lwc = LWC.getInstance();
+        int precacheSize = lwc.getConfiguration().getInt("core.precache", -1);
+
+        if (precacheSize == -1) {
+            precacheSize = lwc.getConfiguration().getInt("core.cacheSize", 10000);
+        }
+
+        return precacheSize;
+    }
+
     /**
      * Load a protection at the given coordinates
      *
@@ -960,6 +1339,9 @@ public class PhysDB extends Database {
         if (!ignoreProtectionCount && hasAllProtectionsCached()) {
             return null; // nothing was in the cache, nothing assumed to be in the database
         }
+
+        long start = System.nanoTime();
+
         try {
             statement = prepare(
                     "SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
@@ -978,6 +1360,8 @@ public class PhysDB extends Database {
             return protection;
         } catch (SQLException e) {
             printException(e);
+        } finally {
+            loadByLocationTimer.stop(start);
         }
 
         return null;
@@ -1002,25 +1386,82 @@ public class PhysDB extends Database {
     }
 
     /**
-     * Load the first protection within a block's radius
+     * Load a page of protections ordered by id
      *
-     * @param world
-     * @param baseX
-     * @param baseY
-     * @param baseZ
-     * @param radius
-     * @return list of Protection objects found
+     * @param after the id the page starts after
+     * @param count
+     * @return
      */
-    public List<Protection> loadProtections(String world, int baseX, int baseY, int baseZ, int radius) {
-        if (hasAllProtectionsCached()) {
-            ProtectionCache cache = LWC.getInstance().getProtectionCache();
-            List<Protection> protections = new ArrayList<Protection>();
+    public List<Protection> loadProtectionsAfter(int after, int count) {
+        try {
+            PreparedStatement statement = prepare(
+                    "SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
+                            + prefix + "protections WHERE id > ? ORDER BY id LIMIT ?");
+            statement.setInt(1, after);
+            statement.setInt(2, count);
+            return resolveProtections(statement);
+        } catch (Exception e) {
+            printException(e);
+        }
 
-            if (cache.size() < 1000) {
-                for (Protection protection : cache.getReferences().keySet()) {
-                    int x = protection.getX();
-                    int y = protection.getY();
-                    int z = protection.getZ();
+        return new ArrayList<Protection>();
+    }
+
+    /**
+     * Load the protections with the given ids, at most {@link #REMOVE_BATCH} at once
+     *
+     * @param ids
+     * @return
+     */
+    public List<Protection> loadProtections(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<Protection>();
+        }
+
+        StringBuilder placeholders = new StringBuilder();
+
+        for (int i = 0; i < ids.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+
+        // not cached, the amount of ids differs between calls
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT id, owner, type, x, y, z, data, blockId, world, password, date, last_accessed FROM "
+                        + prefix + "protections WHERE id IN (" + placeholders + ")")) {
+            for (int i = 0; i < ids.size(); i++) {
+                statement.setInt(i + 1, ids.get(i));
+            }
+
+            try (ResultSet set = statement.executeQuery()) {
+                return resolveProtections(set);
+            }
+        } catch (Exception e) {
+            printException(e);
+        }
+
+        return new ArrayList<Protection>();
+    }
+
+    /**
+     * Load the first protection within a block's radius
+     *
+     * @param world
+     * @param baseX
+     * @param baseY
+     * @param baseZ
+     * @param radius
+     * @return list of Protection objects found
+     */
+    public List<Protection> loadProtections(String world, int baseX, int baseY, int baseZ, int radius) {
+        if (hasAllProtectionsCached()) {
+            ProtectionCache cache = LWC.getInstance().getProtectionCache();
+            List<Protection> protections = new ArrayList<Protection>();
+
+            if (cache.size() < 1000) {
+                for (Protection protection : cache.getReferences().keySet()) {
+                    int x = protection.getX();
+                    int y = protection.getY();
+                    int z = protection.getZ();
 
                     if (x >= baseX - radius && x <= baseX + radius && y >= baseY - radius && y <= baseY + radius
                             && z >= baseZ - radius && z <= baseZ + radius) {
@@ -1228,6 +1669,7 @@ public class PhysDB extends Database {
             }
 
             protection.removeCache();
+            logChange(protection.getId());
 
             // if history logging is enabled, create it
             if (LWC.getInstance().isHistoryEnabled()) {
@@ -1240,12 +1682,13 @@ public class PhysDB extends Database {
                 // store the player that created the protection
                 transaction.addMetaData("creator=" + player);
 
-                // now sync the history object to the database
+                // now queue the history object in the journal; it is written by the database thread
                 transaction.saveNow();
             }
 
             // Cache it
             cache.addProtection(protection);
+            countIndex.increment(protection.getOwner(), protection.getBlockId());
             protectionCount++;
 
             // return the newly created protection
@@ -1257,53 +1700,277 @@ public class PhysDB extends Database {
     }
 
     /**
-     * Sync a History object to the database or save a newly created one
+     * Register many new protections with multi-row INSERTs. Unlike {@link #registerProtection} the protections
+     * are not loaded back or cached and no transaction history is created for them.
      *
-     * @param history
+     * @param protections protections that do not exist yet
+     * @return the amount of protections registered
      */
-    public void saveHistory(History history) {
+    public int registerProtections(List<Protection> protections) {
+        int registered = 0;
+        String created = new Timestamp(new Date().getTime()).toString();
+        long now = System.currentTimeMillis() / 1000L;
+
+        // the new ids are not known, so every id after the current highest one is logged
+        int highestId = changeLogEnabled ? getHighestProtectionId() : 0;
+
+        for (int offset = 0; offset < protections.size(); offset += INSERT_BATCH) {
+            List<Protection> batch = protections.subList(offset, Math.min(protections.size(), offset + INSERT_BATCH));
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(prefix)
+                    .append("protections (blockId, type, world, owner, password, x, y, z, date, last_accessed) VALUES ");
+
+            for (int i = 0; i < batch.size(); i++) {
+                sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            }
+
+            try {
+                PreparedStatement statement = prepare(sql.toString());
+                int parameter = 1;
+
+                for (Protection protection : batch) {
+                    statement.setInt(parameter++, protection.getBlockId());
+                    statement.setInt(parameter++, protection.getType().ordinal());
+                    statement.setString(parameter++, protection.getWorld());
+                    statement.setString(parameter++, protection.getOwner());
+                    statement.setString(parameter++, protection.getPassword() == null ? "" : protection.getPassword());
+                    statement.setInt(parameter++, protection.getX());
+                    statement.setInt(parameter++, protection.getY());
+                    statement.setInt(parameter++, protection.getZ());
+                    statement.setString(parameter++, created);
+                    statement.setLong(parameter++, now);
+                }
+
+                registered += statement.executeUpdate();
+            } catch (SQLException e) {
+                printException(e);
+            }
+
+            for (Protection protection : batch) {
+                countIndex.invalidate(protection.getOwner());
+            }
+        }
+
+        protectionCount += registered;
+
+        if (registered > 0) {
+            logChanges("id > ?", highestId);
+        }
+
+        return registered;
+    }
+
+    /**
+     * @return the highest protection id in use
+     */
+    private int getHighestProtectionId() {
         try {
-            if (history.doesExist()) {
-                statement = prepare("UPDATE " + prefix
-                        + "history SET protectionId = ?, player = ?, x = ?, y = ?, z = ?, type = ?, status = ?, metadata = ?, timestamp = ? WHERE id = ?");
-            } else {
-                statement = prepare("INSERT INTO " + prefix
-                                + "history (protectionId, player, x, y, z, type, status, metadata, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
-                        true);
-                history.setTimestamp(System.currentTimeMillis() / 1000L);
-            }
-            statement.setInt(1, history.getProtectionId());
-            statement.setString(2, history.getPlayer());
-            statement.setInt(3, history.getX());
-            statement.setInt(4, history.getY());
-            statement.setInt(5, history.getZ());
-            statement.setInt(6, history.getType().ordinal());
-            statement.setInt(7, history.getStatus().ordinal());
-            statement.setString(8, history.getSafeMetaData());
-            statement.setLong(9, history.getTimestamp());
-
-            if (history.doesExist()) {
-                statement.setInt(10, history.getId());
-            }
-
-            int affectedRows = statement.executeUpdate();
-
-            // set the history id if inserting
-            if (!history.doesExist()) {
-                if (affectedRows > 0) {
-                    ResultSet generatedKeys = statement.getGeneratedKeys();
-
-                    // get the key inserted
-                    if (generatedKeys.next()) {
-                        history.setId(generatedKeys.getInt(1));
-                    }
+            PreparedStatement statement = prepare("SELECT MAX(id) AS id FROM " + prefix + "protections");
+
+            try (ResultSet set = statement.executeQuery()) {
+                return set.next() ? set.getInt("id") : 0;
+            }
+        } catch (SQLException e) {
+            printException(e);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Record in the change log that a protection was created, changed or removed
+     *
+     * @param protectionId
+     */
+    private void logChange(int protectionId) {
+        if (!changeLogEnabled) {
+            return;
+        }
+
+        try {
+            PreparedStatement statement = prepare("INSERT INTO " + prefix + "changes (protectionId) VALUES (?)");
+            statement.setInt(1, protectionId);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            printException(e);
+        }
+    }
+
+    /**
+     * Record in the change log that the protections matching a condition are about to be changed or removed
+     *
+     * @param where
+     * @param parameters
+     */
+    public void logChanges(String where, Object... parameters) {
+        if (!changeLogEnabled) {
+            return;
+        }
+
+        // not cached, the condition differs between calls
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO " + prefix
+                + "changes (protectionId) SELECT id FROM " + prefix + "protections WHERE " + where)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            printException(e);
+        }
+    }
+
+    /**
+     * Make the next backup a full backup, e.g after protections were changed in a way the change log cannot
+     * follow
+     */
+    public void invalidateChangeLog() {
+        if (changeLogEnabled) {
+            setInternal(BACKUP_CHAIN_KEY, "");
+        }
+    }
+
+    /**
+     * Start logging changes for a backup that is about to be made
+     *
+     * @return the last change log entry the backup will hold
+     */
+    public int beginBackup() {
+        if (!changeLogEnabled) {
+            setInternal(BACKUP_CHAIN_KEY, "");
+            changeLogEnabled = true;
+        }
+
+        try {
+            PreparedStatement statement = prepare("SELECT MAX(seq) AS seq FROM " + prefix + "changes");
+
+            try (ResultSet set = statement.executeQuery()) {
+                return set.next() ? set.getInt("seq") : 0;
+            }
+        } catch (SQLException e) {
+            printException(e);
+        }
+
+        return 0;
+    }
 
-                    generatedKeys.close();
+    /**
+     * Make a finished backup the one the next incremental backup builds on and drop the change log entries
+     * it holds
+     *
+     * @param name
+     * @param sequence the value {@link #beginBackup()} returned for the backup
+     */
+    public void completeBackup(String name, int sequence) {
+        setInternal(BACKUP_CHAIN_KEY, name + ":" + sequence);
+
+        try {
+            PreparedStatement statement = prepare("DELETE FROM " + prefix + "changes WHERE seq <= ?");
+            statement.setInt(1, sequence);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            printException(e);
+        }
+    }
+
+    /**
+     * Get the backup the next incremental backup builds on
+     *
+     * @return {name, sequence}, otherwise NULL if the next backup has to be a full backup
+     */
+    public String[] getBackupChain() {
+        String chain = getInternal(BACKUP_CHAIN_KEY);
+
+        if (chain == null || chain.isEmpty()) {
+            return null;
+        }
+
+        int separator = chain.lastIndexOf(':');
+        return separator > 0 ? new String[]{chain.substring(0, separator), chain.substring(separator + 1)} : null;
+    }
+
+    /**
+     * Load the ids of the protections changed between two change log entries
+     *
+     * @param after
+     * @param upTo
+     * @return the ids in ascending order
+     */
+    public List<Integer> loadChangedProtectionIds(int after, int upTo) {
+        List<Integer> ids = new ArrayList<Integer>();
+
+        try {
+            PreparedStatement statement = prepare("SELECT DISTINCT protectionId FROM " + prefix
+                    + "changes WHERE seq > ? AND seq <= ? ORDER BY protectionId");
+            statement.setInt(1, after);
+            statement.setInt(2, upTo);
+
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    ids.add(set.getInt("protectionId"));
                 }
             }
         } catch (SQLException e) {
             printException(e);
         }
+
+        return ids;
+    }
+
+    /**
+     * Sync a History object to the database or save a newly created one. The write is queued in the
+     * history journal and flushed by the database thread; new history objects get their id immediately.
+     *
+     * @param history
+     */
+    public void saveHistory(History history) {
+        historyJournal.save(history);
+    }
+
+    /**
+     * Restore a history object from a backup under its original id, replacing the history with that id if
+     * there is one. Must be called inside {@link com.griefcraft.util.DatabaseThread#flushAndRun(Runnable)}.
+     *
+     * @param history
+     */
+    public void restoreHistory(History history) {
+        try {
+            PreparedStatement statement = prepare("REPLACE INTO " + prefix
+                    + "history (id, protectionId, player, playerKey, x, y, z, type, status, metadata, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+            statement.setInt(1, history.getId());
+            statement.setInt(2, history.getProtectionId());
+            statement.setString(3, history.getPlayer());
+            statement.setString(4, toPlayerKey(history.getPlayer()));
+            statement.setInt(5, history.getX());
+            statement.setInt(6, history.getY());
+            statement.setInt(7, history.getZ());
+            statement.setInt(8, history.getType().ordinal());
+            statement.setInt(9, history.getStatus().ordinal());
+            statement.setString(10, history.getSafeMetaData());
+            statement.setLong(11, history.getTimestamp());
+
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            printException(e);
+            return;
+        }
+
+        historyJournal.reserveBeyond(history.getId());
+    }
+
+    /**
+     * Write any queued history changes to the database. Must only be called by the database thread or
+     * inside {@link com.griefcraft.util.DatabaseThread#flushAndRun(Runnable)}; reads do not need it.
+     */
+    public void flushHistory() {
+        historyJournal.flush();
+    }
+
+    /**
+     * @return the amount of history writes waiting to be flushed
+     */
+    public int getPendingHistoryWrites() {
+        return historyJournal.size();
     }
 
     /**
@@ -1312,14 +1979,119 @@ public class PhysDB extends Database {
      * @param player
      */
     public void invalidateHistory(String player) {
+        historyJournal.execute("UPDATE " + prefix + "history SET status = ? WHERE " + historyPlayerFilter(),
+                History.Status.INACTIVE.ordinal(), resolveHistoryPlayer(player));
+    }
+
+    /**
+     * Mark all active history of a type for a protection as inactive
+     *
+     * @param protectionId
+     * @param type
+     */
+    public void deactivateHistory(int protectionId, History.Type type) {
+        historyJournal.execute("UPDATE " + prefix + "history SET status = ? WHERE protectionId = ? AND type = ? AND status = ?",
+                History.Status.INACTIVE.ordinal(), protectionId, type.ordinal(), History.Status.ACTIVE.ordinal());
+    }
+
+    /**
+     * Get the normalized form of a player as stored in history.playerKey
+     *
+     * @param player the player as stored in history.player
+     * @return
+     */
+    static String toPlayerKey(String player) {
+        return player == null ? null : player.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Resolve a player name or UUID to the player key their history is stored under
+     *
+     * @param player
+     * @return
+     */
+    private String resolveHistoryPlayer(String player) {
         UUID uuid = UUIDRegistry.getUUID(player);
+        return toPlayerKey(uuid != null ? uuid.toString() : player);
+    }
+
+    /**
+     * @param playerKey
+     * @return the condition matching history to a player key, for history that is not written yet
+     */
+    private Predicate<History> historyOf(String playerKey) {
+        return history -> Objects.equals(playerKey, toPlayerKey(history.getPlayer()));
+    }
+
+    /**
+     * @return the condition matching a history row to a player key, binding one parameter
+     */
+    private String historyPlayerFilter() {
+        return historyPlayerKeysMigrated ? "playerKey = ?" : "LOWER(player) = ?";
+    }
+
+    /**
+     * @return true if every history row has its normalized player key
+     */
+    public boolean isHistoryPlayerKeysMigrated() {
+        return historyPlayerKeysMigrated;
+    }
+
+    /**
+     * Fill history.playerKey for rows written before the column existed. Runs in small id ranges so it can
+     * run in the background on a live server, and resumes where it stopped after a restart. Rows written
+     * since the column exists already have their key.
+     */
+    public void migrateHistoryPlayerKeys() {
+        if (historyPlayerKeysMigrated) {
+            return;
+        }
+
+        String progress = getInternal(HISTORY_MIGRATION_KEY);
+        int lastId = 0;
+
         try {
-            PreparedStatement statement = prepare(
-                    "UPDATE " + prefix + "history SET status = ? WHERE Lower(player) = Lower(?)");
-            statement.setInt(1, History.Status.INACTIVE.ordinal());
-            statement.setObject(2, uuid);
+            lastId = progress == null ? 0 : Integer.parseInt(progress);
+        } catch (NumberFormatException e) {
+        }
 
-            statement.executeUpdate();
+        try {
+            int maxId = 0;
+            PreparedStatement maxStatement = prepare("SELECT MAX(id) AS id FROM " + prefix + "history WHERE playerKey IS NULL");
+
+            try (ResultSet set = maxStatement.executeQuery()) {
+                if (set.next()) {
+                    maxId = set.getInt("id");
+                }
+            }
+
+            if (maxId > lastId) {
+                log("Normalizing the player of " + (maxId - lastId) + " history ids in the background");
+            }
+
+            PreparedStatement statement = prepare("UPDATE " + prefix
+                    + "history SET playerKey = LOWER(player) WHERE id > ? AND id <= ? AND playerKey IS NULL");
+
+            while (lastId < maxId) {
+                int end = Math.min(maxId, lastId + HISTORY_MIGRATION_BATCH);
+
+                // the journal shares the internal table statements, so take turns with it
+                synchronized (historyJournal) {
+                    statement.setInt(1, lastId);
+                    statement.setInt(2, end);
+                    statement.executeUpdate();
+
+                    setInternal(HISTORY_MIGRATION_KEY, Integer.toString(end));
+                }
+
+                lastId = end;
+            }
+
+            synchronized (historyJournal) {
+                setInternal(HISTORY_MIGRATION_KEY, HISTORY_MIGRATION_COMPLETE);
+            }
+
+            historyPlayerKeysMigrated = true;
         } catch (SQLException e) {
             printException(e);
         }
@@ -1397,7 +2169,82 @@ public class PhysDB extends Database {
             printException(e);
         }
 
-        return temp;
+        return historyJournal.merge(temp, history -> history.getProtectionId() == protection.getId(), NEWEST_FIRST);
+    }
+
+    /**
+     * Load the history of the protections in an id range
+     *
+     * @param firstId
+     * @param lastId
+     * @return
+     */
+    public List<History> loadHistoryForProtections(int firstId, int lastId) {
+        List<History> temp = new ArrayList<History>();
+
+        try {
+            PreparedStatement statement = prepare("SELECT * FROM " + prefix
+                    + "history WHERE protectionId >= ? AND protectionId <= ? ORDER BY id");
+            statement.setInt(1, firstId);
+            statement.setInt(2, lastId);
+
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    History history = resolveHistory(new History(), set);
+
+                    if (history != null) {
+                        temp.add(history);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            printException(e);
+        }
+
+        return historyJournal.merge(temp, history -> history.getProtectionId() >= firstId && history.getProtectionId() <= lastId, OLDEST_FIRST);
+    }
+
+    /**
+     * Load the history of the protections with the given ids, at most {@link #REMOVE_BATCH} at once
+     *
+     * @param protectionIds
+     * @return
+     */
+    public List<History> loadHistoryForProtections(List<Integer> protectionIds) {
+        List<History> temp = new ArrayList<History>();
+
+        if (protectionIds.isEmpty()) {
+            return temp;
+        }
+
+        StringBuilder placeholders = new StringBuilder();
+
+        for (int i = 0; i < protectionIds.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+
+        // not cached, the amount of ids differs between calls
+        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM " + prefix
+                + "history WHERE protectionId IN (" + placeholders + ") ORDER BY id")) {
+            for (int i = 0; i < protectionIds.size(); i++) {
+                statement.setInt(i + 1, protectionIds.get(i));
+            }
+
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    History history = resolveHistory(new History(), set);
+
+                    if (history != null) {
+                        temp.add(history);
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            printException(e);
+        }
+
+        Set<Integer> ids = new HashSet<>(protectionIds);
+        return historyJournal.merge(temp, history -> ids.contains(history.getProtectionId()), OLDEST_FIRST);
     }
 
     /**
@@ -1422,17 +2269,12 @@ public class PhysDB extends Database {
         if (!LWC.getInstance().isHistoryEnabled()) {
             return temp;
         }
-        UUID uuid = UUIDRegistry.getUUID(player);
-        if (uuid == null) {
-            uuid = UUID.fromString(player);
-        }
 
-        if (uuid != null) {
-            player = uuid.toString();
-        }
+        String playerKey = resolveHistoryPlayer(player);
+
         try {
-            statement = prepare("SELECT * FROM " + prefix + "history WHERE LOWER(player) = LOWER(?) ORDER BY id DESC");
-            statement.setString(1, player);
+            statement = prepare("SELECT * FROM " + prefix + "history WHERE " + historyPlayerFilter() + " ORDER BY id DESC");
+            statement.setString(1, playerKey);
 
             ResultSet set = statement.executeQuery();
 
@@ -1450,7 +2292,7 @@ public class PhysDB extends Database {
             printException(e);
         }
 
-        return temp;
+        return historyJournal.merge(temp, historyOf(playerKey), NEWEST_FIRST);
     }
 
     /**
@@ -1464,6 +2306,8 @@ public class PhysDB extends Database {
             return null;
         }
 
+        List<History> temp = new ArrayList<History>();
+
         try {
             statement = prepare("SELECT * FROM " + prefix + "history WHERE id = ?");
             statement.setInt(1, historyId);
@@ -1473,8 +2317,9 @@ public class PhysDB extends Database {
             if (set.next()) {
                 History history = resolveHistory(new History(), set);
 
-                set.close();
-                return history;
+                if (history != null) {
+                    temp.add(history);
+                }
             }
 
             set.close();
@@ -1482,7 +2327,8 @@ public class PhysDB extends Database {
             printException(e);
         }
 
-        return null;
+        temp = historyJournal.merge(temp, history -> history.getId() == historyId, null);
+        return temp.isEmpty() ? null : temp.get(0);
     }
 
     /**
@@ -1508,39 +2354,37 @@ public class PhysDB extends Database {
      * @return
      */
     public List<History> loadHistory(String player, int start, int count) {
-        List<History> temp = new ArrayList<History>();
-
         if (!LWC.getInstance().isHistoryEnabled()) {
-            return temp;
+            return new ArrayList<History>();
         }
-        UUID uuid = UUIDRegistry.getUUID(player);
-        if (uuid != null) {
-            player = uuid.toString();
-        }
-        try {
-            PreparedStatement statement = prepare(
-                    "SELECT * FROM " + prefix + "history WHERE LOWER(player) = LOWER(?) ORDER BY id DESC LIMIT ?,?");
-            statement.setString(1, player);
-            statement.setInt(2, start);
-            statement.setInt(3, count);
-
-            ResultSet set = statement.executeQuery();
 
-            while (set.next()) {
-                History history = resolveHistory(new History(), set);
+        String playerKey = resolveHistoryPlayer(player);
 
-                if (history != null) {
-                    // seems ok
-                    temp.add(history);
-                }
-            }
+        return loadHistoryPage(historyOf(playerKey), start, count, (skip, limit) -> queryHistory(
+                "SELECT * FROM " + prefix + "history WHERE " + historyPlayerFilter() + " ORDER BY id DESC LIMIT ?,?",
+                playerKey, skip, limit));
+    }
 
-            set.close();
-        } catch (SQLException e) {
-            printException(e);
+    /**
+     * Load the protection history that the given player created, newest first, starting after the given
+     * history id. Seeks on the player key index instead of skipping rows like an offset does.
+     *
+     * @param player
+     * @param beforeId only history with a lower id is loaded; 0 or less to start at the newest history
+     * @param count
+     * @return
+     */
+    public List<History> loadHistoryBefore(String player, int beforeId, int count) {
+        if (!LWC.getInstance().isHistoryEnabled()) {
+            return new ArrayList<History>();
         }
 
-        return temp;
+        String playerKey = resolveHistoryPlayer(player);
+        int before = beforeId > 0 ? beforeId : Integer.MAX_VALUE;
+
+        return loadHistoryPage(historyOf(playerKey).and(history -> history.getId() < before), 0, count,
+                (skip, limit) -> queryHistory("SELECT * FROM " + prefix + "history WHERE " + historyPlayerFilter()
+                        + " AND id < ? ORDER BY id DESC LIMIT ?", playerKey, before, limit));
     }
 
     /**
@@ -1573,7 +2417,7 @@ public class PhysDB extends Database {
             printException(e);
         }
 
-        return temp;
+        return historyJournal.merge(temp, history -> true, NEWEST_FIRST);
     }
 
     /**
@@ -1608,7 +2452,7 @@ public class PhysDB extends Database {
             printException(e);
         }
 
-        return temp;
+        return historyJournal.merge(temp, history -> history.getStatus() == status, NEWEST_FIRST);
     }
 
     /**
@@ -1649,7 +2493,7 @@ public class PhysDB extends Database {
             printException(e);
         }
 
-        return temp;
+        return historyJournal.merge(temp, history -> history.getX() == x && history.getY() == y && history.getZ() == z, null);
     }
 
     /**
@@ -1667,15 +2511,13 @@ public class PhysDB extends Database {
         if (!LWC.getInstance().isHistoryEnabled()) {
             return temp;
         }
-        UUID uuid = UUIDRegistry.getUUID(player);
-        if (uuid != null) {
-            player = uuid.toString();
-        }
+
+        String playerKey = resolveHistoryPlayer(player);
 
         try {
             PreparedStatement statement = prepare(
-                    "SELECT * FROM " + prefix + "history WHERE LOWER(player) = LOWER(?) AND x = ? AND y = ? AND z = ?");
-            statement.setString(1, player);
+                    "SELECT * FROM " + prefix + "history WHERE " + historyPlayerFilter() + " AND x = ? AND y = ? AND z = ?");
+            statement.setString(1, playerKey);
             statement.setInt(2, x);
             statement.setInt(3, y);
             statement.setInt(4, z);
@@ -1696,7 +2538,26 @@ public class PhysDB extends Database {
             printException(e);
         }
 
-        return temp;
+        return historyJournal.merge(temp, historyOf(playerKey).and(history -> history.getX() == x
+                && history.getY() == y && history.getZ() == z), null);
+    }
+
+    /**
+     * Load protection history, newest first, starting after the given history id
+     *
+     * @param beforeId only history with a lower id is loaded; 0 or less to start at the newest history
+     * @param count
+     * @return
+     */
+    public List<History> loadHistoryBefore(int beforeId, int count) {
+        if (!LWC.getInstance().isHistoryEnabled()) {
+            return new ArrayList<History>();
+        }
+
+        int before = beforeId > 0 ? beforeId : Integer.MAX_VALUE;
+
+        return loadHistoryPage(history -> history.getId() < before, 0, count, (skip, limit) -> queryHistory(
+                "SELECT * FROM " + prefix + "history WHERE id < ? ORDER BY id DESC LIMIT ?", before, limit));
     }
 
     /**
@@ -1705,29 +2566,74 @@ public class PhysDB extends Database {
      * @return
      */
     public List<History> loadHistory(int start, int count) {
-        List<History> temp = new ArrayList<History>();
-
         if (!LWC.getInstance().isHistoryEnabled()) {
-            return temp;
+            return new ArrayList<History>();
         }
 
-        try {
-            PreparedStatement statement = prepare("SELECT * FROM " + prefix + "history ORDER BY id DESC LIMIT ?,?");
-            statement.setInt(1, start);
-            statement.setInt(2, count);
+        return loadHistoryPage(history -> true, start, count, (skip, limit) -> queryHistory(
+                "SELECT * FROM " + prefix + "history ORDER BY id DESC LIMIT ?,?", skip, limit));
+    }
 
-            ResultSet set = statement.executeQuery();
+    /**
+     * Load a page of history, newest first. History that is not written yet is newer than every row in the
+     * database, so it comes first, the same as once it is written.
+     *
+     * @param filter the condition of the query
+     * @param start  the amount of history to skip
+     * @param count  the amount of history to load
+     * @param query  loads a page of rows from the database, given the rows to skip and the rows to load
+     * @return
+     */
+    private List<History> loadHistoryPage(Predicate<History> filter, int start, int count,
+                                          BiFunction<Integer, Integer, List<History>> query) {
+        List<History> pending = historyJournal.pendingInserts(filter);
+        List<History> page = new ArrayList<History>();
 
-            while (set.next()) {
-                History history = resolveHistory(new History(), set);
+        for (int i = start; i < pending.size() && page.size() < count; i++) {
+            page.add(pending.get(i));
+        }
 
-                if (history != null) {
-                    // seems ok
-                    temp.add(history);
+        if (page.size() < count) {
+            Set<Integer> pendingIds = pending.stream().map(History::getId).collect(Collectors.toSet());
+            List<History> loaded = query.apply(Math.max(0, start - pending.size()), count - page.size());
+
+            for (History history : historyJournal.overlay(loaded, filter)) {
+                // an insert being flushed right now can already be in the database
+                if (!pendingIds.contains(history.getId())) {
+                    page.add(history);
                 }
             }
+        }
 
-            set.close();
+        return page;
+    }
+
+    /**
+     * Load history with a query
+     *
+     * @param sql
+     * @param parameters
+     * @return
+     */
+    private List<History> queryHistory(String sql, Object... parameters) {
+        List<History> temp = new ArrayList<History>();
+
+        try {
+            PreparedStatement statement = prepare(sql);
+
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    History history = resolveHistory(new History(), set);
+
+                    if (history != null) {
+                        temp.add(history);
+                    }
+                }
+            }
         } catch (SQLException e) {
             printException(e);
         }
@@ -1821,9 +2727,81 @@ public class PhysDB extends Database {
             statement.setLong(12, protection.getLastAccessed());
 
             statement.executeUpdate();
+            logChange(protection.getId());
+        } catch (SQLException e) {
+            printException(e);
+        }
+    }
+
+    /**
+     * Restore a protection from a backup under its original id, replacing the protection with that id if there
+     * is one. The protection counts are adjusted for the protection it replaces, so restoring the same backup
+     * twice leaves them unchanged. The cache is not touched; must be called inside
+     * {@link com.griefcraft.util.DatabaseThread#flushAndRun(Runnable)}.
+     *
+     * @param protection
+     */
+    public void restoreProtection(Protection protection) {
+        boolean existed = false;
+        String previousOwner = null;
+
+        try {
+            PreparedStatement statement = prepare("SELECT owner FROM " + prefix + "protections WHERE id = ?");
+            statement.setInt(1, protection.getId());
+
+            try (ResultSet set = statement.executeQuery()) {
+                if (set.next()) {
+                    existed = true;
+                    previousOwner = set.getString("owner");
+                }
+            }
+        } catch (SQLException e) {
+            printException(e);
+            return;
+        }
+
+        saveProtection(protection);
+
+        if (!existed) {
+            protectionCount++;
+        }
+
+        countIndex.invalidate(previousOwner);
+        countIndex.invalidate(protection.getOwner());
+    }
+
+    /**
+     * Remove a protection that a backup records as removed. Unlike {@link Protection#remove()} no events are
+     * fired and the cache is not touched, so it can be called off the main thread; must be called inside
+     * {@link com.griefcraft.util.DatabaseThread#flushAndRun(Runnable)}.
+     *
+     * @param protectionId
+     */
+    public void restoreRemoval(int protectionId) {
+        String owner;
+
+        try {
+            PreparedStatement statement = prepare("SELECT owner FROM " + prefix + "protections WHERE id = ?");
+            statement.setInt(1, protectionId);
+
+            try (ResultSet set = statement.executeQuery()) {
+                if (!set.next()) {
+                    return;
+                }
+
+                owner = set.getString("owner");
+            }
         } catch (SQLException e) {
             printException(e);
+            return;
+        }
+
+        if (LWC.getInstance().isHistoryEnabled()) {
+            deactivateHistory(protectionId, History.Type.TRANSACTION);
         }
+
+        removeProtection(protectionId);
+        countIndex.invalidate(owner);
     }
 
     /**
@@ -1840,6 +2818,7 @@ public class PhysDB extends Database {
 
             if (affected >= 1) {
                 protectionCount -= affected;
+                logChange(protectionId);
             }
         } catch (SQLException e) {
             printException(e);
@@ -1848,26 +2827,185 @@ public class PhysDB extends Database {
         // removeProtectionHistory(protectionId);
     }
 
+    /**
+     * Delete many protections with batched deletes, e.g every protection in a region. Their transactions are
+     * marked as inactive the same as when a protection is removed on its own.
+     *
+     * @param protections
+     * @return the amount of protections deleted
+     */
+    public int removeProtections(List<Protection> protections) {
+        int removed = 0;
+
+        for (int offset = 0; offset < protections.size(); offset += REMOVE_BATCH) {
+            List<Protection> batch = protections.subList(offset, Math.min(protections.size(), offset + REMOVE_BATCH));
+            StringBuilder ids = new StringBuilder();
+            Object[] parameters = new Object[batch.size() + 2];
+
+            for (int i = 0; i < batch.size(); i++) {
+                ids.append(i == 0 ? "?" : ", ?");
+                parameters[i + 2] = batch.get(i).getId();
+            }
+
+            logChanges("id IN (" + ids + ")", Arrays.copyOfRange(parameters, 2, parameters.length));
+
+            // not cached, the amount of ids differs between calls
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM " + prefix
+                    + "protections WHERE id IN (" + ids + ")")) {
+                for (int i = 0; i < batch.size(); i++) {
+                    statement.setInt(i + 1, batch.get(i).getId());
+                }
+
+                int affected = statement.executeUpdate();
+                removed += affected;
+                protectionCount -= affected;
+            } catch (SQLException e) {
+                printException(e);
+                continue;
+            }
+
+            for (Protection protection : batch) {
+                countIndex.decrement(protection.getOwner(), protection.getBlockId());
+            }
+
+            if (LWC.getInstance().isHistoryEnabled()) {
+                parameters[0] = History.Status.INACTIVE.ordinal();
+                parameters[1] = History.Type.TRANSACTION.ordinal();
+                historyJournal.execute("UPDATE " + prefix + "history SET status = ? WHERE type = ? AND protectionId IN ("
+                        + ids + ")", parameters);
+            }
+        }
+
+        return removed;
+    }
+
     public void removeProtectionHistory(int protectionId) {
+        historyJournal.execute("DELETE FROM " + prefix + "history WHERE protectionId = ?", protectionId);
+    }
+
+    public void removeHistory(int historyId) {
+        historyJournal.execute("DELETE FROM " + prefix + "history WHERE id = ?", historyId);
+    }
+
+    /**
+     * Load the oldest history of a type and status that was last written before the given time
+     *
+     * @param type
+     * @param status
+     * @param before unix timestamp in seconds
+     * @param count
+     * @return
+     */
+    public List<History> loadHistoryOlderThan(History.Type type, History.Status status, long before, int count) {
+        List<History> temp = new ArrayList<History>();
+
         try {
-            PreparedStatement statement = prepare("DELETE FROM " + prefix + "history WHERE protectionId = ?");
-            statement.setInt(1, protectionId);
+            PreparedStatement statement = prepare("SELECT * FROM " + prefix
+                    + "history WHERE type = ? AND status = ? AND timestamp < ? ORDER BY id LIMIT ?");
+            statement.setInt(1, type.ordinal());
+            statement.setInt(2, status.ordinal());
+            statement.setLong(3, before);
+            statement.setInt(4, count);
 
-            statement.executeUpdate();
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    History history = resolveHistory(new History(), set);
+
+                    if (history != null) {
+                        temp.add(history);
+                    }
+                }
+            }
         } catch (SQLException e) {
             printException(e);
         }
+
+        return temp;
     }
 
-    public void removeHistory(int historyId) {
+    /**
+     * Delete history rows right away instead of through the journal, at most {@link #REMOVE_BATCH} per statement.
+     * Errors are thrown so the caller knows the rows are still there.
+     *
+     * @param history
+     * @return the amount of rows deleted
+     */
+    public int deleteHistory(List<History> history) throws SQLException {
+        int deleted = 0;
+
+        for (int offset = 0; offset < history.size(); offset += REMOVE_BATCH) {
+            int size = Math.min(REMOVE_BATCH, history.size() - offset);
+            StringBuilder sql = new StringBuilder("DELETE FROM ").append(prefix).append("history WHERE id IN (");
+
+            for (int i = 0; i < size; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+
+            // full batches reuse one cached statement
+            PreparedStatement statement = prepare(sql.append(")").toString());
+
+            for (int i = 0; i < size; i++) {
+                statement.setInt(i + 1, history.get(offset + i).getId());
+            }
+
+            deleted += statement.executeUpdate();
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Give every protection of one owner to another owner. The protections are updated in the database
+     * directly, in id ranges so no single statement holds its locks for long; protections that are loaded
+     * in memory must be given their new owner by the caller before this is called.
+     *
+     * @param oldOwner
+     * @param newOwner
+     * @param progress called with the total amount of protections transferred so far after each range
+     * @return the amount of protections transferred
+     */
+    public int transferProtections(String oldOwner, String newOwner, IntConsumer progress) {
+        int transferred = 0;
+
         try {
-            PreparedStatement statement = prepare("DELETE FROM " + prefix + "history WHERE id = ?");
-            statement.setInt(1, historyId);
+            int minId = 0;
+            int maxId = 0;
+            PreparedStatement rangeStatement = prepare("SELECT MIN(id) AS minId, MAX(id) AS maxId FROM " + prefix
+                    + "protections WHERE owner = ?");
+            rangeStatement.setString(1, oldOwner);
+
+            try (ResultSet set = rangeStatement.executeQuery()) {
+                if (set.next()) {
+                    minId = set.getInt("minId");
+                    maxId = set.getInt("maxId");
+                }
+            }
 
-            statement.executeUpdate();
+            PreparedStatement statement = prepare("UPDATE " + prefix
+                    + "protections SET owner = ? WHERE owner = ? AND id >= ? AND id < ?");
+
+            for (int start = minId; start > 0 && start <= maxId; start += TRANSFER_RANGE) {
+                logChanges("owner = ? AND id >= ? AND id < ?", oldOwner, start, start + TRANSFER_RANGE);
+
+                statement.setString(1, newOwner);
+                statement.setString(2, oldOwner);
+                statement.setInt(3, start);
+                statement.setInt(4, start + TRANSFER_RANGE);
+
+                int updated = statement.executeUpdate();
+
+                if (updated > 0) {
+                    transferred += updated;
+                    progress.accept(transferred);
+                }
+            }
         } catch (SQLException e) {
             printException(e);
         }
+
+        countIndex.invalidate(oldOwner);
+        countIndex.invalidate(newOwner);
+        return transferred;
     }
 
     /**
@@ -1878,6 +3016,9 @@ public class PhysDB extends Database {
             Statement statement = connection.createStatement();
             statement.executeUpdate("DELETE FROM " + prefix + "protections");
             protectionCount = 0;
+            countIndex.clear();
+            magnetIndex.clear();
+            invalidateChangeLog();
         } catch (SQLException e) {
             printException(e);
         }
@@ -2070,80 +3211,71 @@ public class PhysDB extends Database {
     }
 
     /**
-     * 4.0.0, update 2
+     * 4.0.0, update 2: migrate a batch of the LWC3 rights table to the LWC4 format
+     *
+     * @param after the last migrated rights id
+     * @return the last migrated rights id, or -1 once the rights table is gone
      */
-    private void doUpdate400_2() {
-        Statement statement = null;
-        try {
-            statement = connection.createStatement();
+    private int migrateRightsBatch(int after) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
             statement.execute("SELECT id FROM " + prefix + "rights LIMIT 1");
+        } catch (SQLException e) {
+            // no need to convert!
+            return -1;
+        }
 
+        if (after == 0) {
             log("Migrating LWC3 rights to LWC4 format");
+        }
 
-            // it exists ..!
-            Statement stmt = connection.createStatement();
-            ResultSet set = stmt.executeQuery("SELECT * FROM " + prefix + "rights");
+        Map<Integer, Protection> protections = new HashMap<Integer, Protection>();
+        int last = -1;
 
-            // keep a mini-cache of protections, max size of 100k should be OK!
-            LRUCache<Integer, Protection> cache = new LRUCache<Integer, Protection>(1000 * 100);
+        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM " + prefix
+                + "rights WHERE id > ? ORDER BY id LIMIT ?")) {
+            statement.setInt(1, after);
+            statement.setInt(2, SCHEMA_MIGRATION_BATCH);
 
-            while (set.next()) {
-                // load the data we will be using
-                int protectionId = set.getInt("chest");
-                String entity = set.getString("entity");
-                int access = set.getInt("rights");
-                int type = set.getInt("type");
-
-                // begin loading the protection
-                Protection protection = null;
-
-                // check cache
-                if (cache.containsKey(protectionId)) {
-                    protection = cache.get(protectionId);
-                } else {
-                    // else, load it...
-                    protection = loadProtection(protectionId);
+            try (ResultSet set = statement.executeQuery()) {
+                while (set.next()) {
+                    last = set.getInt("id");
 
-                    if (protection == null) {
-                        continue;
-                    }
+                    // load the data we will be using
+                    int protectionId = set.getInt("chest");
+                    String entity = set.getString("entity");
+                    int access = set.getInt("rights");
+                    int type = set.getInt("type");
 
-                    cache.put(protectionId, protection);
-                }
+                    Protection protection = protections.get(protectionId);
 
-                if (protection == null) {
-                    continue;
-                }
+                    if (protection == null) {
+                        protection = loadProtection(protectionId);
 
-                // create the permission
-                Permission permission = new Permission(entity, Permission.Type.values()[type],
-                        Permission.Access.values()[access]);
+                        if (protection == null) {
+                            continue;
+                        }
 
-                // add it to the protection and queue it for saving!
-                protection.addPermission(permission);
-            }
+                        protections.put(protectionId, protection);
+                    }
 
-            // Save all of the protections
-            for (Protection protection : cache.values()) {
-                protection.saveNow();
+                    // create the permission and add it to the protection
+                    protection.addPermission(new Permission(entity, Permission.Type.values()[type],
+                            Permission.Access.values()[access]));
+                }
             }
+        }
 
-            // Good!
-            set.close();
+        // Save the protections of this batch
+        for (Protection protection : protections.values()) {
+            protection.saveNow();
+        }
 
+        if (last == -1) {
             // drop the rights table
             dropTable(prefix + "rights");
-            precache();
-        } catch (SQLException e) {
-            // no need to convert!
-        } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
-                }
-            }
         }
+
+        return last;
     }
 
     /**
@@ -2168,52 +3300,61 @@ public class PhysDB extends Database {
     }
 
     /**
-     * 4.0.0, update 5
+     * 4.0.0, update 5: move a batch of the old flags column into the protection data
+     *
+     * @param after the last migrated protection id
+     * @return the last migrated protection id, or -1 once the flags column is gone
      */
-    private void doUpdate400_5() {
-        Statement statement = null;
-        try {
-            statement = connection.createStatement();
-            statement.executeQuery("SELECT flags FROM " + prefix + "protections LIMIT 1");
+    private int migrateFlagsBatch(int after) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeQuery("SELECT flags FROM " + prefix + "protections LIMIT 1").close();
+        } catch (SQLException e) {
+            return -1;
+        }
 
-            // The flags column is still there ..!
-            // instead of looping through every protection, let's do this a
-            // better way
-            PreparedStatement pStatement = prepare("SELECT * FROM " + prefix + "protections WHERE flags = 8"); // exempt
+        // only protections with a flag set need to be looked at
+        PreparedStatement statement = connection.prepareStatement("SELECT * FROM " + prefix
+                + "protections WHERE flags IN (2, 3, 8) AND id > ? ORDER BY id LIMIT ?");
+        statement.setInt(1, after);
+        statement.setInt(2, SCHEMA_MIGRATION_BATCH);
 
-            for (Protection protection : resolveProtections(pStatement)) {
-                Flag flag = new Flag(Flag.Type.EXEMPTION);
-                protection.addFlag(flag);
-                protection.save();
-            }
+        List<Protection> protections = resolveProtections(statement);
+        statement.close();
 
-            pStatement = prepare("SELECT * FROM " + prefix + "protections WHERE flags = 3"); // redstone
+        if (protections.isEmpty()) {
+            dropColumn(prefix + "protections", "flags");
+            return -1;
+        }
 
-            for (Protection protection : resolveProtections(pStatement)) {
-                Flag flag = new Flag(Flag.Type.MAGNET);
-                protection.addFlag(flag);
-                protection.save();
-            }
+        try (PreparedStatement flags = connection.prepareStatement("SELECT flags FROM " + prefix + "protections WHERE id = ?")) {
+            for (Protection protection : protections) {
+                flags.setInt(1, protection.getId());
 
-            pStatement = prepare("SELECT * FROM " + prefix + "protections WHERE flags = 2"); // redstone
+                try (ResultSet set = flags.executeQuery()) {
+                    if (!set.next()) {
+                        continue;
+                    }
 
-            for (Protection protection : resolveProtections(pStatement)) {
-                Flag flag = new Flag(Flag.Type.REDSTONE);
-                protection.addFlag(flag);
-                protection.save();
-            }
+                    switch (set.getInt("flags")) {
+                        case 8: // exempt
+                            protection.addFlag(new Flag(Flag.Type.EXEMPTION));
+                            break;
 
-            dropColumn(prefix + "protections", "flags");
-        } catch (SQLException e) {
+                        case 3: // magnet
+                            protection.addFlag(new Flag(Flag.Type.MAGNET));
+                            break;
 
-        } finally {
-            if (statement != null) {
-                try {
-                    statement.close();
-                } catch (SQLException e) {
+                        case 2: // redstone
+                            protection.addFlag(new Flag(Flag.Type.REDSTONE));
+                            break;
+                    }
                 }
+
+                protection.saveNow();
             }
         }
+
+        return protections.get(protections.size() - 1).getId();
     }
 
     /**
@@ -2239,6 +3380,26 @@ public class PhysDB extends Database {
         }
     }
 
+    /**
+     * Add the normalized player key to history
+     */
+    private void doUpdateHistoryPlayerKey() {
+        Statement statement = null;
+        try {
+            statement = connection.createStatement();
+            statement.executeQuery("SELECT playerKey FROM " + prefix + "history LIMIT 1");
+        } catch (SQLException e) {
+            addColumn(prefix + "history", "playerKey", "VARCHAR(36)");
+        } finally {
+            if (statement != null) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                }
+            }
+        }
+    }
+
     /**
      * Update the database for the "Update Aquatic", otherwise known as MineCraft 1.13! (from LWCX 2.0.0 - 2.0.9)
      */
@@ -2368,11 +3529,13 @@ public class PhysDB extends Database {
 
     /**
      * Update the database for the "Village and Pillage" update, otherwise known as MineCraft 1.14.
+     *
+     * @return false if the server is older than 1.14, so the update is applied once it is updated
      */
-    private void doUpdateVillageAndPillage() {
+    private boolean doUpdateVillageAndPillage() {
         Matcher versionCheck = Pattern.compile("\\d[.]\\d+").matcher(Bukkit.getVersion());
         if (!versionCheck.find()) {
-            return;
+            return false;
         }
         int minorVersion = Integer.parseInt(versionCheck.group().substring(2));
         if (minorVersion >= 14) {
@@ -2383,8 +3546,13 @@ public class PhysDB extends Database {
                 statement.executeUpdate("UPDATE " + prefix + "blocks SET name = 'OAK_WALL_SIGN' WHERE name = 'WALL_SIGN'");
             } catch (SQLException e) {
                 e.printStackTrace();
+                return false;
             }
+
+            return true;
         }
+
+        return false;
     }
 
 }
@@ -0,0 +1,242 @@
+package com.griefcraft.sql;
+
+import com.griefcraft.lwc.LWC;
+import com.griefcraft.util.DatabaseThread;
+import com.griefcraft.util.Statistics;
+import com.griefcraft.util.statistics.Timer;
+import org.bukkit.Bukkit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.regex.Pattern;
+
+/**
+ * Wraps a {@link PreparedStatement} and records how long each execution takes, per statement shape
+ * and per calling thread. Executions slower than the configured threshold are logged together with
+ * their bound parameters; only numbers are logged as is, other values by type and length since they may be
+password hashes or player data.
+ */
+class ProfiledStatement implements InvocationHandler {
+
+    /**
+     * The threads a statement can be executed on
+     */
+    private static final String[] THREADS = {"main", "flush", "async"};
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bIN\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    /**
+     * The statement being profiled
+     */
+    private final PreparedStatement delegate;
+
+    /**
+     * The sql the statement was prepared with
+     */
+    private final String sql;
+
+    /**
+     * The normalized sql, which is used to group the timings
+     */
+    private final String shape;
+
+    /**
+     * Executions slower than this are logged, in nanoseconds. 0 disables logging
+     */
+    private final long slowThreshold;
+
+    /**
+     * The timers for each thread, created the first time the statement is executed on it
+     */
+    private final Timer[] timers = new Timer[THREADS.length];
+
+    /**
+     * The currently bound parameters, indexed by parameter index
+     */
+    private Object[] parameters = new Object[8];
+
+    private ProfiledStatement(PreparedStatement delegate, String sql, long slowThreshold) {
+        this.delegate = delegate;
+        this.sql = sql;
+        this.shape = shapeOf(sql);
+        this.slowThreshold = slowThreshold;
+    }
+
+    /**
+     * Wrap a statement so its executions are profiled
+     *
+     * @param statement
+     * @param sql
+     * @param slowThresholdMillis executions slower than this are logged. 0 disables logging
+     * @return
+     */
+    static PreparedStatement wrap(PreparedStatement statement, String sql, long slowThresholdMillis) {
+        ProfiledStatement handler = new ProfiledStatement(statement, sql, slowThresholdMillis * 1000000L);
+
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, handler);
+    }
+
+    /**
+     * Normalize sql so that statements which only differ in literal values are grouped together
+     *
+     * @param sql
+     * @return
+     */
+    static String shapeOf(String sql) {
+        String shape = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        shape = STRING_LITERAL.matcher(shape).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        return IN_LIST.matcher(shape).replaceAll("IN (...)");
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+
+        if (name.startsWith("execute")) {
+            return execute(method, args);
+        }
+
+        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+            bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+        } else if (name.equals("clearParameters")) {
+            parameters = new Object[parameters.length];
+        }
+
+        return invokeDelegate(method, args);
+    }
+
+    /**
+     * Execute the statement and record how long it took
+     *
+     * @param method
+     * @param args
+     * @return
+     * @throws Throwable
+     */
+    private Object execute(Method method, Object[] args) throws Throwable {
+        long start = System.nanoTime();
+
+        try {
+            return invokeDelegate(method, args);
+        } finally {
+            long elapsed = timer().stop(start);
+
+            if (slowThreshold > 0 && elapsed >= slowThreshold) {
+                LWC lwc = LWC.getInstance();
+
+                if (lwc != null) {
+                    lwc.log(String.format("Slow query (%s on %s thread): %s %s", Statistics.formatMillis(elapsed),
+                            THREADS[threadIndex()], sql, describeParameters()));
+                }
+            }
+        }
+    }
+
+    private Object invokeDelegate(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Remember a bound parameter so it can be logged if the query is slow
+     *
+     * @param index
+     * @param value
+     */
+    private void bind(int index, Object value) {
+        if (index < 1) {
+            return;
+        }
+
+        if (index > parameters.length) {
+            Object[] resized = new Object[Math.max(index, parameters.length * 2)];
+            System.arraycopy(parameters, 0, resized, 0, parameters.length);
+            parameters = resized;
+        }
+
+        parameters[index - 1] = value;
+    }
+
+    /**
+     * @return the bound parameters, e.g [1=String(5), 2=54]
+     */
+    private String describeParameters() {
+        StringBuilder builder = new StringBuilder("[");
+        int last = parameters.length;
+
+        while (last > 0 && parameters[last - 1] == null) {
+            last--;
+        }
+
+        for (int i = 0; i < last; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+
+            builder.append(i + 1).append('=').append(redact(parameters[i]));
+        }
+
+        return builder.append(']').toString();
+    }
+
+    /**
+     * @param value
+     * @return the value if it is a number, otherwise its type and length
+     */
+    private static String redact(Object value) {
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            return String.valueOf(value);
+        } else if (value instanceof CharSequence) {
+            return "String(" + ((CharSequence) value).length() + ")";
+        } else if (value instanceof byte[]) {
+            return "byte[" + ((byte[]) value).length + "]";
+        }
+
+        return value.getClass().getSimpleName();
+    }
+
+    /**
+     * @return the timer for the current thread
+     */
+    private Timer timer() {
+        int index = threadIndex();
+        Timer timer = timers[index];
+
+        if (timer == null) {
+            timer = Statistics.getRegistry().timer(Database.QUERY_TIMER, "Time spent executing database statements",
+                    "statement", shape, "thread", THREADS[index]);
+            timers[index] = timer;
+        }
+
+        return timer;
+    }
+
+    /**
+     * @return the index in {@link #THREADS} of the current thread
+     */
+    private static int threadIndex() {
+        if (Bukkit.isPrimaryThread()) {
+            return 0;
+        }
+
+        LWC lwc = LWC.getInstance();
+        DatabaseThread databaseThread = lwc != null ? lwc.getDatabaseThread() : null;
+
+        if (databaseThread != null && databaseThread.isCurrentThread()) {
+            return 1;
+        }
+
+        return 2;
+    }
+
+}
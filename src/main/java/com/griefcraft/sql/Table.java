@@ -157,6 +157,24 @@ public class Table {
         Statistics.addQuery();
     }
 
+    /**
+     * Describe the table and its columns, e.g to tell if the definition changed since the table was created
+     *
+     * @return
+     */
+    public String getDefinition() {
+        StringBuilder buffer = new StringBuilder(name).append("(");
+
+        for (Column column : columns) {
+            buffer.append(column.getName()).append(" ").append(column.getType())
+                    .append(column.isPrimary() ? " primary" : "")
+                    .append(column.shouldAutoIncrement() ? " auto" : "")
+                    .append(" ").append(column.getDefaultValue()).append(";");
+        }
+
+        return buffer.append(")").append(memory ? " memory" : "").toString();
+    }
+
     /**
      * @return
      */
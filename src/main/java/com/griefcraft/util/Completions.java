@@ -13,7 +13,7 @@ import java.util.stream.Collectors;
 public class Completions {
 
     private static final List<String> LWC = Arrays.asList("create", "modify", "unlock", "info", "limits", "remove", "mode", "flag", "admin");
-    private static final List<String> ADMIN = Arrays.asList("view", "find", "forceowner", "remove", "purge", "cleanup", "version", "update", "report", "clear");
+    private static final List<String> ADMIN = Arrays.asList("view", "find", "forceowner", "remove", "purge", "cleanup", "version", "update", "report", "budget", "retention", "clear");
     private static final List<String> PROTECTION_TYPES = Arrays.asList("public", "private", "donation", "password", "display");
     private static final List<String> TOGGLES = Arrays.asList("on", "off");
     private static final List<String> FLAGS = Arrays.asList("redstone", "magnet", "exemption", "autoclose", "allowexplosions", "hopper", "hopperin", "hopperout");
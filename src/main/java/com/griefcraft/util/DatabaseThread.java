@@ -30,7 +30,7 @@ package com.griefcraft.util;
 
 import com.griefcraft.lwc.LWC;
 import com.griefcraft.model.Protection;
-import com.griefcraft.sql.Database;
+import com.griefcraft.sql.PhysDB;
 
 import java.util.Iterator;
 import java.util.Queue;
@@ -51,7 +51,7 @@ public class DatabaseThread implements Runnable {
     /**
      * The thread we are running in
      */
-    private final Thread thread = new Thread(this);
+    private final Thread thread = new Thread(this, "LWC Database Thread");
 
     /**
      * If the database thread is active and running
@@ -109,6 +109,15 @@ public class DatabaseThread implements Runnable {
         return updateQueue.size();
     }
 
+    /**
+     * Check if the calling thread is the database thread
+     *
+     * @return
+     */
+    public boolean isCurrentThread() {
+        return Thread.currentThread() == thread;
+    }
+
     /**
      * Stop the database thread
      */
@@ -131,12 +140,31 @@ public class DatabaseThread implements Runnable {
         lastFlush = System.currentTimeMillis() - 9999999L;
     }
 
+    /**
+     * Flush the queue right away on the calling thread
+     */
+    public void flushNow() {
+        flushDatabase();
+    }
+
+    /**
+     * Flush the queue right away and then run a task while no other flush can start, so the task can use its
+     * own transaction on the shared connection
+     *
+     * @param task
+     */
+    public synchronized void flushAndRun(Runnable task) {
+        flushDatabase();
+        task.run();
+    }
+
     /**
      * Flush the protections to the database
      */
-    private void flushDatabase() {
-        if (!updateQueue.isEmpty()) {
-            Database database = lwc.getPhysicalDatabase();
+    private synchronized void flushDatabase() {
+        PhysDB database = lwc.getPhysicalDatabase();
+
+        if (!updateQueue.isEmpty() || database.getPendingHistoryWrites() > 0) {
             database.setAutoCommit(false);
             database.setUseStatementCache(false);
 
@@ -148,6 +176,9 @@ public class DatabaseThread implements Runnable {
                 protection.saveNow();
             }
 
+            // Write the history journal, including the history saved by the protections above
+            database.flushHistory();
+
             // Commit the changes to the database
             database.setUseStatementCache(true);
             database.setAutoCommit(true);
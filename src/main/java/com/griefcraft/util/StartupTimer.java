@@ -0,0 +1,67 @@
+package com.griefcraft.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Times the phases LWC goes through when it is enabled, so it can be seen where the time goes
+ */
+public class StartupTimer {
+
+    /**
+     * When enabling started, in nanoseconds
+     */
+    private final long started = System.nanoTime();
+
+    /**
+     * Each finished phase and how long it took, in the order they finished
+     */
+    private final List<String> phases = new ArrayList<>();
+
+    /**
+     * Run a phase and record how long it took
+     *
+     * @param phase
+     * @param task
+     */
+    public void time(String phase, Runnable task) {
+        time(phase, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Run a phase and record how long it took. Phases may run on different threads at the same time.
+     *
+     * @param phase
+     * @param task
+     * @return the result of the phase
+     */
+    public <T> T time(String phase, Supplier<T> task) {
+        long start = System.nanoTime();
+
+        try {
+            return task.get();
+        } finally {
+            long took = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            synchronized (phases) {
+                phases.add(phase + " " + took + "ms");
+            }
+        }
+    }
+
+    /**
+     * @return the total time and the time of each phase, e.g "Enabled in 410ms (config 12ms, database 230ms, ...)"
+     */
+    public String summary() {
+        synchronized (phases) {
+            return "Enabled in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + "ms ("
+                    + String.join(", ", phases) + ")";
+        }
+    }
+
+}
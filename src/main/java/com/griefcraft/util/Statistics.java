@@ -28,12 +28,16 @@
 
 package com.griefcraft.util;
 
-import com.griefcraft.cache.MethodCounter;
 import com.griefcraft.cache.ProtectionCache;
 import com.griefcraft.lwc.LWC;
 import com.griefcraft.lwc.LWCInfo;
+import com.griefcraft.modules.doors.DoorsModule;
 import com.griefcraft.scripting.MetaData;
 import com.griefcraft.sql.Database;
+import com.griefcraft.sql.PhysDB;
+import com.griefcraft.util.statistics.Counter;
+import com.griefcraft.util.statistics.MetricRegistry;
+import com.griefcraft.util.statistics.Timer;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
@@ -47,10 +51,16 @@ import java.util.Map;
 
 public class Statistics {
 
+    /**
+     * The registry all of LWC's counters and timers are kept in
+     */
+    private static final MetricRegistry registry = new MetricRegistry();
+
     /**
      * Number of queries executed on the database
      */
-    private static int queries = 0;
+    private static final Counter queries = registry.counter("lwc_database_queries",
+            "Statements prepared against the database");
 
     /**
      * Time when LWC was started
@@ -61,7 +71,14 @@ public class Statistics {
      * Add a query
      */
     public static void addQuery() {
-        queries++;
+        queries.increment();
+    }
+
+    /**
+     * @return the registry all of LWC's counters and timers are kept in
+     */
+    public static MetricRegistry getRegistry() {
+        return registry;
     }
 
     /**
@@ -125,12 +142,21 @@ public class Statistics {
 
             sender.sendMessage("  " + Colors.Dark_Green + plugin.getDescription().getName() + " v" + plugin.getDescription().getVersion() + Colors.Yellow + " -> " + Colors.Dark_Green + modules.size() + Colors.Yellow + " registered modules");
         }
+
+        DoorsModule doors = (DoorsModule) lwc.getModuleLoader().getModule(DoorsModule.class);
+
+        if (doors != null) {
+            sender.sendMessage("  Doors waiting to close: " + Colors.Dark_Green + formatNumber(doors.getPendingCloses()));
+        }
         sender.sendMessage(" ");
 
         sender.sendMessage(Colors.Dark_Red + " ==== Database ====");
         sender.sendMessage("  Engine: " + Colors.Dark_Green + Database.DefaultType);
         sender.sendMessage("  Protections: " + Colors.Dark_Green + formatNumber(lwc.getPhysicalDatabase().getProtectionCount()));
-        sender.sendMessage("  Queries: " + Colors.Dark_Green + formatNumber(queries) + " | " + String.format("%.2f", getAverage(queries)) + " / second");
+        sender.sendMessage("  Queries: " + Colors.Dark_Green + formatNumber(queries.get()) + " | " + String.format("%.2f", getAverage(queries.get())) + " / second");
+        sendTimers(sender, registry.getTimers(PhysDB.LOAD_TIMER));
+        sender.sendMessage("  Slowest statements (total time): ");
+        sendTimers(sender, limit(registry.getTimers(Database.QUERY_TIMER), 10));
         sender.sendMessage(" ");
 
         sender.sendMessage(Colors.Dark_Red + " ==== Cache ==== ");
@@ -149,22 +175,54 @@ public class Statistics {
         }
 
         sender.sendMessage("  Usage: " + cacheColour + String.format("%.2f", cachePercentFilled) + "% " + Colors.White + " ( " + cache.size() + "/" + cache.totalCapacity() + " [" + cache.capacity() + "+" + cache.adaptiveCapacity() + "] )");
+
+        long hits = cache.getHits().get();
+        long lookups = hits + cache.getMisses().get();
+        sender.sendMessage("  Hit rate: " + Colors.Dark_Green + (lookups == 0 ? "n/a" : String.format("%.2f", (double) hits / lookups * 100) + "%") + Colors.White + " ( " + formatNumber(hits) + "/" + formatNumber(lookups) + " )");
         sender.sendMessage("  Profile: ");
-        sendMethodCounter(sender, cache.getMethodCounter());
-        // sender.sendMessage("  Reads: " + formatNumber(cache.getReads()) + " | " + String.format("%.2f", getAverage(cache.getReads())) + " / second");
-        // sender.sendMessage("  Writes: " + formatNumber(cache.getWrites()) + " | " + String.format("%.2f", getAverage(cache.getWrites())) + " / second");
+        sendCounters(sender, registry.getCounters(ProtectionCache.OPERATIONS_COUNTER));
+        sender.sendMessage(" ");
+
+        sender.sendMessage(Colors.Dark_Red + " ==== Modules (event dispatch) ==== ");
+        sendTimers(sender, registry.getTimers("lwc_module_dispatch_seconds"));
     }
 
-    private static void sendMethodCounter(CommandSender sender, MethodCounter counter) {
-        Map<String, Integer> sorted = counter.sortByValue();
+    private static void sendCounters(CommandSender sender, List<Counter> counters) {
+        for (Counter counter : counters) {
+            long count = counter.get();
 
-        for (Map.Entry<String, Integer> entry : sorted.entrySet()) {
-            String method = entry.getKey();
-            int count = entry.getValue();
+            sender.sendMessage("    " + counter.getDisplayName() + ": " + formatNumber(count) + " (" + String.format("%.2f", getAverage(count)) + " / second)");
+        }
+    }
 
-            sender.sendMessage("    " + method + ": " + formatNumber(count) + " (" + String.format("%.2f", getAverage(count)) + " / second)");
+    private static void sendTimers(CommandSender sender, List<Timer> timers) {
+        for (Timer timer : timers) {
+            Timer.Snapshot snapshot = timer.snapshot();
+
+            if (snapshot.getCount() == 0) {
+                continue;
+            }
+
+            sender.sendMessage("    " + timer.getDisplayName() + ": " + formatNumber(snapshot.getCount())
+                    + Colors.Yellow + " avg " + formatMillis(snapshot.getMean())
+                    + " p50 " + formatMillis(snapshot.getPercentile(0.5))
+                    + " p99 " + formatMillis(snapshot.getPercentile(0.99))
+                    + " max " + formatMillis(snapshot.getMax()));
         }
+    }
 
+    private static <T> List<T> limit(List<T> list, int size) {
+        return list.size() > size ? list.subList(0, size) : list;
+    }
+
+    /**
+     * Format nanoseconds as milliseconds
+     *
+     * @param nanos
+     * @return
+     */
+    public static String formatMillis(long nanos) {
+        return String.format("%.2fms", nanos / 1000000D);
     }
 
 
@@ -0,0 +1,47 @@
+package com.griefcraft.util.statistics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class Counter extends Metric {
+
+    /**
+     * The current count. LongAdder keeps increments cheap when several threads
+     * (main thread, database thread, cleanup threads) hit the same counter.
+     */
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name, String help, String... labels) {
+        super(name, help, labels);
+    }
+
+    /**
+     * Increment the counter by one
+     */
+    public void increment() {
+        count.increment();
+    }
+
+    /**
+     * Add to the counter
+     *
+     * @param delta
+     */
+    public void add(long delta) {
+        count.add(delta);
+    }
+
+    /**
+     * @return the current count
+     */
+    public long get() {
+        return count.sum();
+    }
+
+    /**
+     * Reset the counter to 0
+     */
+    public void reset() {
+        count.reset();
+    }
+
+}
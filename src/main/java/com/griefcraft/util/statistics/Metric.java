@@ -0,0 +1,151 @@
+package com.griefcraft.util.statistics;
+
+public abstract class Metric {
+
+    /**
+     * The metric family name, e.g lwc_cache_operations
+     */
+    private final String name;
+
+    /**
+     * A short description of the metric family
+     */
+    private final String help;
+
+    /**
+     * Label key/value pairs, e.g {"operation", "getProtection"}
+     */
+    private final String[] labels;
+
+    protected Metric(String name, String help, String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as key/value pairs");
+        }
+
+        this.name = name;
+        this.help = help;
+        this.labels = labels;
+    }
+
+    /**
+     * @return the metric family name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the description of the metric family
+     */
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * Get the value of a label
+     *
+     * @param key
+     * @return the label value, otherwise NULL if the label is not set
+     */
+    public String getLabel(String key) {
+        for (int i = 0; i < labels.length; i += 2) {
+            if (labels[i].equals(key)) {
+                return labels[i + 1];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A human readable name for the metric, which is the label values joined together
+     *
+     * @return
+     */
+    public String getDisplayName() {
+        if (labels.length == 0) {
+            return name;
+        }
+
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 1; i < labels.length; i += 2) {
+            if (builder.length() > 0) {
+                builder.append('/');
+            }
+
+            builder.append(labels[i]);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Format the labels in the OpenMetrics text format, e.g {operation="getProtection"}
+     *
+     * @param extra additional key/value pairs appended after the metric's own labels
+     * @return
+     */
+    public String formatLabels(String... extra) {
+        if (labels.length == 0 && extra.length == 0) {
+            return "";
+        }
+
+        StringBuilder builder = new StringBuilder("{");
+        appendLabels(builder, labels);
+
+        if (labels.length > 0 && extra.length > 0) {
+            builder.append(',');
+        }
+
+        appendLabels(builder, extra);
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Generate the key the metric is stored under in the registry
+     *
+     * @param name
+     * @param labels
+     * @return
+     */
+    static String key(String name, String... labels) {
+        if (labels.length == 0) {
+            return name;
+        }
+
+        StringBuilder builder = new StringBuilder(name);
+
+        for (String label : labels) {
+            builder.append('\0').append(label);
+        }
+
+        return builder.toString();
+    }
+
+    private static void appendLabels(StringBuilder builder, String[] labels) {
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+
+            builder.append(labels[i]).append("=\"");
+
+            String value = labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+
+                if (c == '"' || c == '\\') {
+                    builder.append('\\').append(c);
+                } else if (c == '\n') {
+                    builder.append("\\n");
+                } else {
+                    builder.append(c);
+                }
+            }
+
+            builder.append('"');
+        }
+    }
+
+}
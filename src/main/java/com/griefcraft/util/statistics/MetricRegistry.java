@@ -0,0 +1,179 @@
+package com.griefcraft.util.statistics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds every counter and timer LWC records. Metrics should be looked up once and
+ * kept in a field; the lookup itself is not meant for hot paths.
+ */
+public class MetricRegistry {
+
+    /**
+     * Counters, keyed by their name and labels
+     */
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Timers, keyed by their name and labels
+     */
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Get or create a counter
+     *
+     * @param name
+     * @param help
+     * @param labels label key/value pairs
+     * @return
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return counters.computeIfAbsent(Metric.key(name, labels), key -> new Counter(name, help, labels));
+    }
+
+    /**
+     * Get or create a timer
+     *
+     * @param name
+     * @param help
+     * @param labels label key/value pairs
+     * @return
+     */
+    public Timer timer(String name, String help, String... labels) {
+        return timers.computeIfAbsent(Metric.key(name, labels), key -> new Timer(name, help, labels));
+    }
+
+    /**
+     * Get all counters in the given family
+     *
+     * @param name
+     * @return
+     */
+    public List<Counter> getCounters(String name) {
+        List<Counter> result = new ArrayList<>();
+
+        for (Counter counter : counters.values()) {
+            if (counter.getName().equals(name)) {
+                result.add(counter);
+            }
+        }
+
+        result.sort((a, b) -> Long.compare(b.get(), a.get()));
+        return result;
+    }
+
+    /**
+     * Get all timers in the given family
+     *
+     * @param name
+     * @return
+     */
+    public List<Timer> getTimers(String name) {
+        List<Timer> result = new ArrayList<>();
+
+        for (Timer timer : timers.values()) {
+            if (timer.getName().equals(name)) {
+                result.add(timer);
+            }
+        }
+
+        result.sort((a, b) -> Long.compare(b.getTotal(), a.getTotal()));
+        return result;
+    }
+
+    /**
+     * Reset every metric
+     */
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+    }
+
+    /**
+     * Write every metric in the OpenMetrics text format. Timers are written as summaries
+     * in seconds.
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void writeOpenMetrics(Writer writer) throws IOException {
+        for (List<Counter> family : group(counters.values()).values()) {
+            Counter first = family.get(0);
+            writer.write("# TYPE " + first.getName() + " counter\n");
+            writer.write("# HELP " + first.getName() + " " + first.getHelp() + "\n");
+
+            for (Counter counter : family) {
+                writer.write(counter.getName() + "_total" + counter.formatLabels() + " " + counter.get() + "\n");
+            }
+        }
+
+        for (List<Timer> family : group(timers.values()).values()) {
+            Timer first = family.get(0);
+            writer.write("# TYPE " + first.getName() + " summary\n");
+            writer.write("# UNIT " + first.getName() + " seconds\n");
+            writer.write("# HELP " + first.getName() + " " + first.getHelp() + "\n");
+
+            for (Timer timer : family) {
+                Timer.Snapshot snapshot = timer.snapshot();
+
+                writer.write(timer.getName() + timer.formatLabels("quantile", "0.5") + " "
+                        + seconds(snapshot.getPercentile(0.5)) + "\n");
+                writer.write(timer.getName() + timer.formatLabels("quantile", "0.99") + " "
+                        + seconds(snapshot.getPercentile(0.99)) + "\n");
+                writer.write(timer.getName() + "_sum" + timer.formatLabels() + " "
+                        + seconds(snapshot.getTotal()) + "\n");
+                writer.write(timer.getName() + "_count" + timer.formatLabels() + " " + snapshot.getCount() + "\n");
+            }
+        }
+
+        writer.write("# EOF\n");
+    }
+
+    /**
+     * Group metrics by their family name, sorted by name
+     *
+     * @param metrics
+     * @param <T>
+     * @return
+     */
+    private static <T extends Metric> Map<String, List<T>> group(Iterable<T> metrics) {
+        List<T> sorted = new ArrayList<>();
+
+        for (T metric : metrics) {
+            sorted.add(metric);
+        }
+
+        sorted.sort((a, b) -> a.getName().compareTo(b.getName()));
+
+        Map<String, List<T>> families = new LinkedHashMap<>();
+        for (T metric : sorted) {
+            families.computeIfAbsent(metric.getName(), key -> new ArrayList<>()).add(metric);
+        }
+
+        return Collections.unmodifiableMap(families);
+    }
+
+    /**
+     * Format nanoseconds as seconds
+     *
+     * @param nanos
+     * @return
+     */
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+}
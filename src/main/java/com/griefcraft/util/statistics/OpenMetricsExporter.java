@@ -0,0 +1,80 @@
+package com.griefcraft.util.statistics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Periodically writes a registry to a file in the OpenMetrics text format so it can be
+ * scraped (e.g by the node_exporter textfile collector).
+ */
+public class OpenMetricsExporter implements Runnable {
+
+    /**
+     * The registry to export
+     */
+    private final MetricRegistry registry;
+
+    /**
+     * The file to write to
+     */
+    private final File file;
+
+    /**
+     * The logger to report failures to
+     */
+    private final Logger logger;
+
+    /**
+     * If a failure has already been logged, to avoid flooding the console
+     */
+    private boolean failed = false;
+
+    public OpenMetricsExporter(MetricRegistry registry, File file, Logger logger) {
+        this.registry = registry;
+        this.file = file;
+        this.logger = logger;
+    }
+
+    public void run() {
+        try {
+            export();
+            failed = false;
+        } catch (IOException e) {
+            if (!failed) {
+                logger.log(Level.WARNING, "Failed to export metrics to " + file, e);
+                failed = true;
+            }
+        }
+    }
+
+    /**
+     * Write the registry to the file. The file is written to a temporary file first and then moved
+     * into place, so a scraper never reads a partially written file.
+     *
+     * @throws IOException
+     */
+    public void export() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        File temp = new File(parent, file.getName() + ".tmp");
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            registry.writeOpenMetrics(writer);
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+}
@@ -0,0 +1,466 @@
+package com.griefcraft.util.statistics;
+
+import org.bukkit.Bukkit;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks how much main thread time LWC uses each tick, in total and per event handler or
+ * scheduled task. Must be scheduled to run every tick; each run closes the previous tick.
+ * <p/>
+ * Only time spent on the main thread is recorded, so the counters need no synchronization. Sections may
+ * however be looked up or wrapped from any thread, so they are kept in a concurrent map.
+ */
+public class TickBudget implements Runnable {
+
+    /**
+     * Ticks in a second
+     */
+    public static final int TICKS_PER_SECOND = 20;
+
+    /**
+     * The amount of seconds of history that is kept (15 minutes)
+     */
+    private static final int SECONDS_KEPT = 15 * 60;
+
+    /**
+     * The amount of nanoseconds LWC aims to stay under each tick
+     */
+    private final long budget;
+
+    /**
+     * If non-critical work should be deferred while LWC is over budget
+     */
+    private final boolean degrade;
+
+    /**
+     * If the bytes allocated by each section should be recorded. Off by default, reading the allocation
+     * counter of the thread on every call is too expensive for a live server.
+     */
+    private boolean trackAllocations = false;
+
+    /**
+     * The time spent by all sections. Nested sections are only counted once
+     */
+    private final Section total = new Section("total");
+
+    /**
+     * The sections, by name
+     */
+    private final Map<String, Section> sections = new ConcurrentHashMap<>();
+
+    /**
+     * How many sections are currently running, used to not count nested sections twice
+     */
+    private int depth = 0;
+
+    /**
+     * The number of ticks closed so far
+     */
+    private long ticks = 0;
+
+    /**
+     * The time spent by all sections during the previous tick
+     */
+    private long lastTick = 0;
+
+    /**
+     * @param budgetMillis the amount of milliseconds LWC aims to stay under each tick
+     * @param degrade      if non-critical work should be deferred while LWC is over budget
+     */
+    public TickBudget(double budgetMillis, boolean degrade) {
+        this.budget = (long) (budgetMillis * 1000000D);
+        this.degrade = degrade;
+    }
+
+    /**
+     * Get or create a section. Sections should be looked up once and kept.
+     *
+     * @param name
+     * @return
+     */
+    public Section section(String name) {
+        return sections.computeIfAbsent(name, key -> new Section(key));
+    }
+
+    /**
+     * Wrap a task so the time it spends on the main thread is recorded
+     *
+     * @param name
+     * @param task
+     * @return
+     */
+    public Runnable wrap(String name, Runnable task) {
+        Section section = section(name);
+
+        return () -> {
+            long start = section.start();
+
+            try {
+                task.run();
+            } finally {
+                section.stop(start);
+            }
+        };
+    }
+
+    /**
+     * Wrap a task so the time it spends on the main thread is recorded
+     *
+     * @param name
+     * @param task
+     * @return
+     */
+    public <T> Callable<T> wrap(String name, Callable<T> task) {
+        Section section = section(name);
+
+        return () -> {
+            long start = section.start();
+
+            try {
+                return task.call();
+            } finally {
+                section.stop(start);
+            }
+        };
+    }
+
+    /**
+     * Closes the current tick
+     */
+    public void run() {
+        lastTick = total.currentTick;
+        total.roll(ticks);
+
+        for (Section section : sections.values()) {
+            section.roll(ticks);
+        }
+
+        ticks++;
+    }
+
+    /**
+     * Check if non-critical work should be deferred. This is only ever true if the degrade policy is
+     * enabled and LWC used up its budget in the current or previous tick.
+     *
+     * @return
+     */
+    public boolean isOverBudget() {
+        return degrade && (total.currentTick >= budget || lastTick >= budget);
+    }
+
+    /**
+     * @return the nanoseconds left in the budget for the current tick, which can be negative
+     */
+    public long getRemaining() {
+        return budget - total.currentTick;
+    }
+
+    /**
+     * Record the bytes allocated by each section from now on, e.g for the listener load test. Only works on
+     * JVMs that track allocations per thread.
+     *
+     * @param trackAllocations
+     */
+    public void setTrackAllocations(boolean trackAllocations) {
+        this.trackAllocations = trackAllocations && allocatedBytes() >= 0;
+    }
+
+    /**
+     * @return true if the bytes allocated by each section are recorded
+     */
+    public boolean isTrackingAllocations() {
+        return trackAllocations;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, or -1 if the JVM does not track it
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the amount of nanoseconds LWC aims to stay under each tick
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * @return true if the degrade policy is enabled
+     */
+    public boolean isDegradeEnabled() {
+        return degrade;
+    }
+
+    /**
+     * @return the time spent by all sections
+     */
+    public Section getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the sections, sorted by the time spent in them over the last minute
+     */
+    public List<Section> getSections() {
+        List<Section> result = new ArrayList<>(sections.values());
+        result.sort((a, b) -> Long.compare(b.getLastMinute(), a.getLastMinute()));
+        return result;
+    }
+
+    /**
+     * @return the number of ticks closed so far
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    public class Section {
+
+        /**
+         * The name of the section, e.g LWCPlayerListener#onPlayerInteract
+         */
+        private final String name;
+
+        /**
+         * Nanoseconds spent in the current tick
+         */
+        private long currentTick = 0;
+
+        /**
+         * Nanoseconds spent in the current second
+         */
+        private long currentSecond = 0;
+
+        /**
+         * Nanoseconds spent in each of the last {@link #TICKS_PER_SECOND} ticks
+         */
+        private final long[] tickHistory = new long[TICKS_PER_SECOND];
+
+        /**
+         * Nanoseconds spent in each of the last {@link #SECONDS_KEPT} seconds
+         */
+        private final long[] secondHistory = new long[SECONDS_KEPT];
+
+        /**
+         * The number of seconds closed so far
+         */
+        private long seconds = 0;
+
+        /**
+         * The number of times the section was entered
+         */
+        private long calls = 0;
+
+        /**
+         * Bytes allocated in the section, including nested sections, while allocations are tracked
+         */
+        private long allocated = 0;
+
+        /**
+         * The number of times the section was entered while allocations were tracked
+         */
+        private long trackedCalls = 0;
+
+        /**
+         * How deep the section is entered into itself and the allocation counter when it was entered first
+         */
+        private int entered = 0;
+        private long allocationStart = 0;
+
+        private Section(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Start timing the section
+         *
+         * @return the value to pass to {@link #stop(long)}
+         */
+        public long start() {
+            if (!Bukkit.isPrimaryThread()) {
+                return -1L;
+            }
+
+            depth++;
+
+            if (trackAllocations && entered++ == 0) {
+                allocationStart = allocatedBytes();
+            }
+
+            return System.nanoTime();
+        }
+
+        /**
+         * Stop timing the section
+         *
+         * @param start the value returned by {@link #start()}
+         */
+        public void stop(long start) {
+            if (start == -1L) {
+                return;
+            }
+
+            long elapsed = System.nanoTime() - start;
+            currentTick += elapsed;
+            calls++;
+
+            if (entered > 0 && --entered == 0) {
+                allocated += allocatedBytes() - allocationStart;
+            }
+
+            if (trackAllocations) {
+                trackedCalls++;
+            }
+
+            if (--depth == 0) {
+                total.currentTick += elapsed;
+                total.calls++;
+            }
+        }
+
+        /**
+         * Close the current tick
+         *
+         * @param tick
+         */
+        private void roll(long tick) {
+            tickHistory[(int) (tick % TICKS_PER_SECOND)] = currentTick;
+            currentSecond += currentTick;
+            currentTick = 0;
+
+            if (tick % TICKS_PER_SECOND == TICKS_PER_SECOND - 1) {
+                secondHistory[(int) (seconds % SECONDS_KEPT)] = currentSecond;
+                currentSecond = 0;
+                seconds++;
+            }
+        }
+
+        /**
+         * @return the name of the section
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of times the section was entered
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * @return the bytes allocated in the section while allocations were tracked
+         */
+        public long getAllocatedBytes() {
+            return allocated;
+        }
+
+        /**
+         * @return the average bytes allocated per call while allocations were tracked
+         */
+        public long getAllocatedBytesPerCall() {
+            return trackedCalls == 0 ? 0 : allocated / trackedCalls;
+        }
+
+        /**
+         * @return nanoseconds spent in the section in the current tick so far
+         */
+        public long getCurrentTick() {
+            return currentTick;
+        }
+
+        /**
+         * @return the most nanoseconds spent in a single tick over the last second
+         */
+        public long getPeakTick() {
+            long peak = 0;
+
+            for (long value : tickHistory) {
+                peak = Math.max(peak, value);
+            }
+
+            return peak;
+        }
+
+        /**
+         * @return nanoseconds spent in the section over the last second (20 ticks)
+         */
+        public long getLastSecond() {
+            long sum = 0;
+
+            for (long value : tickHistory) {
+                sum += value;
+            }
+
+            return sum;
+        }
+
+        /**
+         * @return nanoseconds spent in the section over the last minute
+         */
+        public long getLastMinute() {
+            return sumSeconds(60);
+        }
+
+        /**
+         * @return nanoseconds spent in the section over the last 15 minutes
+         */
+        public long getLast15Minutes() {
+            return sumSeconds(SECONDS_KEPT);
+        }
+
+        /**
+         * Get the average nanoseconds spent per tick over a window
+         *
+         * @param windowSeconds 1, 60 or 900
+         * @return
+         */
+        public long getAveragePerTick(int windowSeconds) {
+            long windowTicks = Math.min((long) windowSeconds * TICKS_PER_SECOND, ticks);
+
+            if (windowTicks == 0) {
+                return 0;
+            }
+
+            long sum;
+
+            if (windowSeconds <= 1) {
+                sum = getLastSecond();
+            } else {
+                sum = sumSeconds(windowSeconds);
+                windowTicks = Math.min((long) windowSeconds, seconds) * TICKS_PER_SECOND;
+            }
+
+            return windowTicks == 0 ? 0 : sum / windowTicks;
+        }
+
+        private long sumSeconds(int count) {
+            long sum = 0;
+            int available = (int) Math.min(count, Math.min(seconds, SECONDS_KEPT));
+
+            for (int i = 1; i <= available; i++) {
+                sum += secondHistory[(int) ((seconds - i) % SECONDS_KEPT)];
+            }
+
+            return sum;
+        }
+
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.griefcraft.util.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations into a log-linear histogram. Each power of two is split into
+ * {@link #SUB_BUCKETS} linear buckets, so percentiles are accurate to roughly 12%
+ * without having to keep every sample.
+ */
+public class Timer extends Metric {
+
+    /**
+     * Durations are bucketed in units of 2^UNIT_SHIFT nanoseconds (~1 microsecond)
+     */
+    private static final int UNIT_SHIFT = 10;
+
+    /**
+     * log2 of the number of linear buckets per power of two
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * The number of linear buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The highest power of two tracked (2^34 units is several hours)
+     */
+    private static final int MAX_EXPONENT = 34;
+
+    /**
+     * The total amount of buckets
+     */
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    /**
+     * The number of samples in each bucket
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /**
+     * The number of samples recorded
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * The sum of all samples in nanoseconds
+     */
+    private final LongAdder total = new LongAdder();
+
+    /**
+     * The largest sample in nanoseconds
+     */
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0L);
+
+    Timer(String name, String help, String... labels) {
+        super(name, help, labels);
+    }
+
+    /**
+     * Record the time elapsed since the given {@link System#nanoTime()} value
+     *
+     * @param startNanos
+     * @return the recorded duration in nanoseconds
+     */
+    public long stop(long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        record(elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Record a duration
+     *
+     * @param nanos
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+
+        buckets.incrementAndGet(bucketIndex(nanos));
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * @return the number of samples recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of all samples in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return the largest sample in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimate a percentile of the recorded samples
+     *
+     * @param quantile between 0 and 1, e.g 0.99
+     * @return the estimated percentile in nanoseconds
+     */
+    public long getPercentile(double quantile) {
+        return snapshot().getPercentile(quantile);
+    }
+
+    /**
+     * Take a snapshot of the timer. Percentiles of a snapshot are consistent with each other.
+     *
+     * @return
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+        }
+
+        return new Snapshot(counts, count.sum(), total.sum(), max.get());
+    }
+
+    /**
+     * Reset the timer
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * Get the bucket a duration belongs in
+     *
+     * @param nanos
+     * @return
+     */
+    static int bucketIndex(long nanos) {
+        long value = nanos >>> UNIT_SHIFT;
+
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        int index = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    /**
+     * Get the smallest duration in nanoseconds that falls into a bucket
+     *
+     * @param index
+     * @return
+     */
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return (long) index << UNIT_SHIFT;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) << UNIT_SHIFT;
+    }
+
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * @return the number of samples
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the sum of all samples in nanoseconds
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the largest sample in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return the mean sample in nanoseconds
+         */
+        public long getMean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        /**
+         * Estimate a percentile. The upper bound of the bucket the percentile falls in is used,
+         * capped at the largest sample seen.
+         *
+         * @param quantile between 0 and 1, e.g 0.99
+         * @return the estimated percentile in nanoseconds
+         */
+        public long getPercentile(double quantile) {
+            long samples = 0;
+
+            for (long bucket : counts) {
+                samples += bucket;
+            }
+
+            if (samples == 0) {
+                return 0;
+            }
+
+            long target = (long) Math.ceil(quantile * samples);
+            long seen = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+
+                if (seen >= target && counts[i] > 0) {
+                    long upper = i + 1 < BUCKETS ? bucketLowerBound(i + 1) : max;
+                    return Math.min(upper, max);
+                }
+            }
+
+            return max;
+        }
+
+    }
+
+}